@@ -53,6 +53,12 @@ public class BisStat {
 	private HashMap<String,PointData[]> nonConvertedPlusPointData;
 	private HashMap<String,PointData[]> nonConvertedMinusPointData;
 	private HashMap<String, BaseContext> baseContexts = null;
+	private BaseContext[] baseContextLookup = null;
+	private static final int[] BASE_CODES = new int[128];
+	static {
+		Arrays.fill(BASE_CODES, -1);
+		BASE_CODES['G'] = 0; BASE_CODES['A'] = 1; BASE_CODES['T'] = 2; BASE_CODES['C'] = 3;
+	}
 	private Pattern CG_Pattern = Pattern.compile("..CG.");
 	private String lambdaChromosome = null;
 	private String phiXChromosome = null;
@@ -60,10 +66,9 @@ public class BisStat {
 
 	//pvalue caching
 	private float numberCachedBinPVals = 500;
-	private Float[][] cachedPValues;
-	private Float zeroFloat = new Float(0.0f);
-	private ArrayList<Point> pointAL = new ArrayList<Point>();
-	private Point[] point;
+	private float[][] cachedPValues;
+	private float[] pValues = new float[1000000];
+	private float[] fdrs;
 	private float minimumPValueToCorrect;
 	private long pValueOffset = 0;
 	private int fdrIndex = 0;
@@ -72,6 +77,7 @@ public class BisStat {
 	private WindowMaker windowMaker; 
 	private int[][] windows;
 	private SmoothingWindow[] smoothingWindow;
+	private float[] windowScores = new float[1000];
 	private String[] scoreNames;
 	private String[] scoreDescriptions;
 	private String[] scoreUnits;
@@ -149,7 +155,7 @@ public class BisStat {
 		if (useLambda) scanLambda();
 
 		//make pvalues after potentially modifying the expect
-		cachedPValues = Num.convertToFloatObjectArray(Num.binomialPValMatrix((int)numberCachedBinPVals+1, expectedNonConverted, saveDirectory, fullPathToR, true));
+		cachedPValues = Num.convertToFloat(Num.binomialPValMatrix((int)numberCachedBinPVals+1, expectedNonConverted, saveDirectory, fullPathToR, true));
 
 		//scan for pvalues
 		String oldChrom = "";
@@ -374,16 +380,31 @@ public class BisStat {
 	}
 
 	public void correctPValues(){
-		//make Points
-		point = new Point[pointAL.size()];
-		pointAL.toArray(point);
-		pointAL = null;
-		//sort by score smallest to largest
-		Arrays.sort(point, new ComparatorPointAscendingScore());
-		//correct
-		Point.benjaminiHochbergCorrect(point, pValueOffset);
-		//sort back to original position
-		Arrays.sort(point, new ComparatorPointPosition());
+		//trim and correct in place, fdrs stay in scan order
+		fdrs = Arrays.copyOf(pValues, fdrIndex);
+		pValues = null;
+		Num.benjaminiHochbergCorrectUnsorted(fdrs, pValueOffset);
+	}
+
+	/**Saves a pvalue for B&H correction, grows the array as needed.*/
+	private void addPValue(float pValue){
+		if (fdrIndex == pValues.length) pValues = Arrays.copyOf(pValues, (int)Math.min(Integer.MAX_VALUE - 8, pValues.length * 2l));
+		pValues[fdrIndex++] = pValue;
+	}
+
+	/**Returns the BaseContext for the 5 bases centered on the position or null if any aren't GATC.
+	 * Set reverseComplement to fetch the context for the minus strand. No Strings are made.*/
+	private BaseContext fetchBaseContext(int position, boolean reverseComplement){
+		int code = 0;
+		for (int i=-2; i< 3; i++){
+			char c = genomicSequence.charAt(reverseComplement ? position - i : position + i);
+			int b = c < 128 ? BASE_CODES[c] : -1;
+			if (b == -1) return null;
+			//G A T C complement is 3-b
+			if (reverseComplement) b = 3 - b;
+			code = (code << 2) | b;
+		}
+		return baseContextLookup[code];
 	}
 
 
@@ -499,28 +520,34 @@ public class BisStat {
 	/*Unstranded.*/
 	private void scoreWindows(PointData pd){
 		smoothingWindow = new SmoothingWindow[windows.length];
+		float[] scores = pd.getScores();
 
 		//for each window
 		for (int i=0; i< windows.length; i++){
 
-			//fetch points 
-			Point[] pts = pd.fetchPoints(windows[i][0], windows[i][1]);
+			//copy the window's scores into the reused buffer
+			int[] indexes = pd.findIndexes(windows[i][0], windows[i][1]);
+			int num = indexes[1] - indexes[0];
+			if (num > windowScores.length) windowScores = new float[num];
+			System.arraycopy(scores, indexes[0], windowScores, 0, num);
 
-			//calculate mean
-			float[] f = Point.extractScores(pts);
-			Arrays.sort(f);
-			float fraction = (float)Num.mean(f);
+			//calculate mean, sorted and summed from the end to match Num.mean()
+			Arrays.sort(windowScores, 0, num);
+			float sum = 0;
+			for (int j=num-1; j>=0; j--) sum += windowScores[j];
+			float fraction = sum/(float)num;
 
 			//count quartiles
 			float first = 0.0f;
 			float secondThird = 0.0f;
 			float fourth = 0.0f;
-			for (float test: f){
+			for (int j=0; j< num; j++){
+				float test = windowScores[j];
 				if (test<= firstQuartileThreshold) first++;
 				else if (test>= fourthQuartileThreshold) fourth++;
 				else secondThird++;
 			}
-			float total = f.length;
+			float total = num;
 
 			//make window
 			smoothingWindow[i] = new SmoothingWindow (windows[i][0], windows[i][1], new float[]{fraction, first/total, secondThird/total, fourth/total});
@@ -546,13 +573,19 @@ public class BisStat {
 		float[] readsNonCon = nonCon.getScores();
 		int[] positionsCon = con.getPositions();
 		float[] readsCon = con.getScores();
-		//make containers for graph data
-		ArrayList<Float> fractionNonConAL = new ArrayList<Float>();
-		ArrayList<Float> fdrAL = new ArrayList<Float>();
-		ArrayList<Integer> positionsAL = new ArrayList<Integer>();
-
 		//collect all positions
 		int[] allPositions = Num.returnUniques(new int[][]{positionsNonCon, positionsCon});
+
+		//make containers for graph data, can't be more than the number of positions
+		int numSaved = 0;
+		int[] savedPositions = null;
+		float[] savedFractions = null;
+		float[] savedFdrs = null;
+		if (printGraphs){
+			savedPositions = new int[allPositions.length];
+			savedFractions = new float[allPositions.length];
+			savedFdrs = new float[allPositions.length];
+		}
 		//for each position 
 		int indexNonCon =0;
 		int indexCon =0;
@@ -607,16 +640,12 @@ public class BisStat {
 
 			//fetch fdr
 			float fdr = 0;
-			if (pValue > minimumPValueToCorrect) fdr = point[fdrIndex++].getScore();
+			if (pValue > minimumPValueToCorrect) fdr = fdrs[fdrIndex++];
 
 			//watch out for out of bounds sequence due to partial matches to sequence termini
 			if (testPos < 2 || testPos > genomicSequenceLengthMinus3) continue;
-			//fetch genomic sequence
-			String genSeq = genomicSequence.substring(testPos-2,testPos+3);
-			if (negativeStrand) genSeq = Seq.reverseComplementDNA(genSeq);
-
 			//fetch BaseContext and increment counters
-			BaseContext bc = baseContexts.get(genSeq);
+			BaseContext bc = fetchBaseContext(testPos, negativeStrand);
 			if (bc != null) {
 				bc.incrementNumberConvertedReads((long)numCon);
 				bc.incrementNumberNonConvertedReads((long)numNonCon);
@@ -629,9 +658,9 @@ public class BisStat {
 				}
 				//save for graphing?
 				if (printGraphs && totalObservations >= minimumReadCoverage){
-					positionsAL.add(new Integer(testPos));
-					fractionNonConAL.add(new Float(fnc));
-					fdrAL.add(new Float(fdr));
+					savedPositions[numSaved] = testPos;
+					savedFractions[numSaved] = fnc;
+					savedFdrs[numSaved++] = fdr;
 				}
 				//TODO: fix! How!?
 				//else bc.incrementNumberConvertedGenomicContexts();
@@ -651,8 +680,8 @@ public class BisStat {
 		PointData[] pds = null;
 		if (printGraphs){
 			//any positions?
-			int[] positions = Num.arrayListOfIntegerToInts(positionsAL);
-			if (positions == null || positions.length ==0) return null;
+			if (numSaved == 0) return null;
+			int[] positions = Arrays.copyOf(savedPositions, numSaved);
 
 			//make PointData for fraction
 			HashMap<String,String> map = new HashMap<String,String>();
@@ -665,7 +694,7 @@ public class BisStat {
 			else info.setStrand("+");
 			fractionPD.setInfo(info);
 			fractionPD.setPositions(positions);
-			float[] fractions = Num.arrayListOfFloatToArray(fractionNonConAL);
+			float[] fractions = Arrays.copyOf(savedFractions, numSaved);
 			fractionPD.setScores(fractions);
 
 			//make PointData for fdr
@@ -679,7 +708,7 @@ public class BisStat {
 			else infoFDR.setStrand("+");
 			fdrPD.setInfo(infoFDR);
 			fdrPD.setPositions(positions);
-			float[] fractionsFDR = Num.arrayListOfFloatToArray(fdrAL);
+			float[] fractionsFDR = Arrays.copyOf(savedFdrs, numSaved);
 			fdrPD.setScores(fractionsFDR);
 
 			pds = new PointData[]{fractionPD, fdrPD};
@@ -695,13 +724,19 @@ public class BisStat {
 		float[] readsNonCon = nonConvertedChrom.getScores();
 		int[] positionsCon = convertedChrom.getPositions();
 		float[] readsCon = convertedChrom.getScores();
-		//make containers for graph data
-		ArrayList<Float> fractionNonConAL = new ArrayList<Float>();
-		ArrayList<Float> fdrAL = new ArrayList<Float>();
-		ArrayList<Integer> positionsAL = new ArrayList<Integer>();
-
 		//collect all positions
 		int[] allPositions = Num.returnUniques(new int[][]{positionsNonCon, positionsCon});
+
+		//make containers for graph data, can't be more than the number of positions
+		int numSaved = 0;
+		int[] savedPositions = null;
+		float[] savedFractions = null;
+		float[] savedFdrs = null;
+		if (printGraphs){
+			savedPositions = new int[allPositions.length];
+			savedFractions = new float[allPositions.length];
+			savedFdrs = new float[allPositions.length];
+		}
 		
 		//for each position 
 		int indexNonCon =0;
@@ -739,11 +774,11 @@ public class BisStat {
 
 			//watch out for out of bounds sequence due to partial matches to sequence termini
 			if (testPos < 2 || testPos > genomicSequenceLengthMinus3) continue;
-			//fetch genomic sequence
-			String genSeq = genomicSequence.substring(testPos-2,testPos+3);
+			//fetch the context now, before a CG shifts the position, minus strand if it's a G
+			BaseContext bc = fetchBaseContext(testPos, genomicSequence.charAt(testPos) == 'G');
 
 			//is this a CG context?
-			if (genomicSequence.subSequence(testPos, testPos+2).equals("CG")){
+			if (genomicSequence.charAt(testPos) == 'C' && genomicSequence.charAt(testPos+1) == 'G'){
 				testPos++;
 				//look to see if any data on neg strand
 				boolean incrementI = false;
@@ -766,13 +801,6 @@ public class BisStat {
 				if (incrementI) i++;
 			}
 
-			//invert sequence?
-			if (genSeq.charAt(2) == 'G') {
-				genSeq = Seq.reverseComplementDNA(genSeq);
-			}
-
-
-
 			float totalObservations = numCon+numNonCon;
 
 			//calc fraction non-converted?
@@ -794,10 +822,9 @@ public class BisStat {
 
 			//fetch fdr
 			float fdr = 0;
-			if (pValue > minimumPValueToCorrect) fdr = point[fdrIndex++].getScore();
+			if (pValue > minimumPValueToCorrect) fdr = fdrs[fdrIndex++];
 
-			//fetch BaseContext and increment counters
-			BaseContext bc = baseContexts.get(genSeq);
+			//increment counters
 			if (bc != null) {
 				bc.incrementNumberConvertedReads((long)numCon);
 				bc.incrementNumberNonConvertedReads((long)numNonCon);
@@ -810,9 +837,9 @@ public class BisStat {
 				}
 				//save for graphing?
 				if (printGraphs && totalObservations >= minimumReadCoverage){
-					positionsAL.add(new Integer(testPos));
-					fractionNonConAL.add(new Float(fnc));
-					fdrAL.add(new Float(fdr));
+					savedPositions[numSaved] = testPos;
+					savedFractions[numSaved] = fnc;
+					savedFdrs[numSaved++] = fdr;
 				}
 
 			}
@@ -829,8 +856,8 @@ public class BisStat {
 		PointData[] pds = null;
 		if (printGraphs){
 			//any positions?
-			int[] positions = Num.arrayListOfIntegerToInts(positionsAL);
-			if (positions == null || positions.length ==0) return null;
+			if (numSaved == 0) return null;
+			int[] positions = Arrays.copyOf(savedPositions, numSaved);
 
 			//make PointData for fraction
 			HashMap<String,String> map = new HashMap<String,String>();
@@ -842,7 +869,7 @@ public class BisStat {
 			info.setStrand(".");
 			fractionPD.setInfo(info);
 			fractionPD.setPositions(positions);
-			float[] fractions = Num.arrayListOfFloatToArray(fractionNonConAL);
+			float[] fractions = Arrays.copyOf(savedFractions, numSaved);
 			fractionPD.setScores(fractions);
 
 			//make PointData for fdr
@@ -855,7 +882,7 @@ public class BisStat {
 			infoFDR.setStrand(".");
 			fdrPD.setInfo(infoFDR);
 			fdrPD.setPositions(positions);
-			float[] fractionsFDR = Num.arrayListOfFloatToArray(fdrAL);
+			float[] fractionsFDR = Arrays.copyOf(savedFdrs, numSaved);
 			fdrPD.setScores(fractionsFDR);
 
 			pds = new PointData[]{fractionPD, fdrPD};
@@ -913,7 +940,7 @@ public class BisStat {
 			//watch out for out of bounds sequence due to partial matches to sequence termini
 			if (testPos < 2 || testPos > genomicSequenceLengthMinus3) continue;
 			//is this a CG context?
-			if (genomicSequence.subSequence(testPos, testPos+2).equals("CG")){
+			if (genomicSequence.charAt(testPos) == 'C' && genomicSequence.charAt(testPos+1) == 'G'){
 				//shift position one base downstream
 				testPos++;
 				//look to see if any data on neg strand
@@ -953,7 +980,7 @@ public class BisStat {
 			}
 
 			//save it or increment the offset
-			if (pValue > minimumPValueToCorrect) pointAL.add(new Point(fdrIndex++, pValue));
+			if (pValue > minimumPValueToCorrect) addPValue(pValue);
 			else pValueOffset++;
 		}
 	}
@@ -1007,7 +1034,7 @@ public class BisStat {
 
 			//calculate pvalue (in -10Log10Space)
 			float totalObservations = numCon+numNonCon;
-			Float pValue = zeroFloat;
+			float pValue = 0;
 			if (numNonCon !=0) {
 				//calculate pValue
 				int nc = (int)numNonCon;
@@ -1021,7 +1048,7 @@ public class BisStat {
 				pValue = cachedPValues[nc][c];	
 			}
 			//save it or increment the offset
-			if (pValue > minimumPValueToCorrect) pointAL.add(new Point(fdrIndex++, pValue));
+			if (pValue > minimumPValueToCorrect) addPValue(pValue);
 			else pValueOffset++;
 		}
 	}
@@ -1091,6 +1118,14 @@ public class BisStat {
 				}
 			}
 		}
+		//index by the 2 bit packed sequence for the String free lookups in fetchBaseContext()
+		baseContextLookup = new BaseContext[1024];
+		for (BaseContext bc: baseContexts.values()){
+			String seq = bc.getSequence();
+			int code = 0;
+			for (int i=0; i< seq.length(); i++) code = (code << 2) | BASE_CODES[seq.charAt(i)];
+			baseContextLookup[code] = bc;
+		}
 	}
 
 	/**Merges PointData from multiple directories.*/
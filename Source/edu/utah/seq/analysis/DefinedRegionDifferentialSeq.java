@@ -3,6 +3,9 @@ package edu.utah.seq.analysis;
 import java.io.*;
 import java.util.regex.*;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
@@ -17,6 +20,7 @@ import edu.utah.seq.analysis.multi.GeneCount;
 import edu.utah.seq.analysis.multi.GeneResult;
 import edu.utah.seq.analysis.multi.PairedCondition;
 import edu.utah.seq.analysis.multi.Replica;
+import edu.utah.seq.analysis.multi.ReplicaGeneCounter;
 import edu.utah.seq.data.HeatMapMakerPosNeg;
 import edu.utah.seq.data.Info;
 import edu.utah.seq.data.PointData;
@@ -83,9 +87,7 @@ public class DefinedRegionDifferentialSeq {
 	public File rLogValues;
 
 	//for loading data
-	private int workingFragmentNameIndexPlus = 1;
-	private int workingFragmentNameIndexMinus = -1;
-	private HashMap<String, Integer> workingFragNameIndex = new HashMap<String, Integer>(10000);
+	private int numberThreads = 0;
 
 	//for paired diff expression
 	private File geneCountTable;
@@ -250,27 +252,8 @@ public class DefinedRegionDifferentialSeq {
 			}
 
 			//load em with data
-			for (int i=0; i< conditions.length; i++) {				
-				for (Replica r: conditions[i].getReplicas()){			
-					if (verbose) System.out.print("\t"+r.getNameNumber());
-					loadReplica(r);
-				}
-			}
-			//any genes with too many reads that were excluded?
-			if (flaggedGeneNames.size() !=0) {
-				String[] badGeneNames = Misc.hashSetToStringArray(flaggedGeneNames);			
-
-				//remove flagged genes from all replicas
-				//for each condition
-				for (Condition c: conditions) {
-					//for each replica
-					for (Replica replica: c.getReplicas()) replica.removeFlaggedGenes(badGeneNames);
-				}
-				//remove them from geneNamesWithMinimumCounts
-				for (String baddie: badGeneNames){
-					geneNamesWithMinimumCounts.remove(baddie);
-				}
-			}
+			countReplicas();
+			if (verbose) for (Condition c: conditions) for (Replica r: c.getReplicas()) System.out.print("\t"+r.getNameNumber());
 			if (verbose) {
 				System.out.println();
 				System.out.println(geneNamesWithMinimumCounts.size()+" genes, with >= "+minimumCounts+" and < "+maxAlignmentsDepth+" counts, will be examined for differential expression.\n ");
@@ -289,41 +272,6 @@ public class DefinedRegionDifferentialSeq {
 		}
 	}
 
-	public void loadBlocks(SAMRecord sam, int chrStartBp, ArrayList<Integer>[] bpNames, boolean[] badBases){
-
-		NameInteger nameIndex = null;
-		boolean addIt;
-		ArrayList<int[]> blocks = fetchAlignmentBlocks(sam.getCigarString(), sam.getUnclippedStart()-1);
-		//add name to each bp
-		for (int[] b : blocks){
-			int start = b[0] - chrStartBp;
-			int stop = b[1] - chrStartBp;
-			//need to watch for out of bounds issues, sometimes the length of the chromosome is incorrect in the bam header.
-			if (stop > badBases.length) stop = badBases.length;
-			for (int i=start; i < stop; i++){
-				//bad base?
-				if (badBases[i]) continue;
-				addIt = true;
-
-				//never seen before?
-				if (bpNames[i] == null) bpNames[i] = new ArrayList<Integer>();
-				//old so check size
-				else if (bpNames[i].size() == maxAlignmentsDepth) {
-					badBases[i] = true;
-					addIt = false;
-					bpNames[i] = null;	
-					if (nameIndex !=null) workingFragNameIndex.remove(nameIndex.name);
-				}
-
-				// add it?
-				if (addIt) {
-					if (nameIndex == null) nameIndex = fetchFragmentNameIndex(sam);
-					bpNames[i].add(nameIndex.index);
-				}
-			}
-		}
-	}
-
 	/**Assumes interbase coordinates for start and returned blocks.*/
 	public static ArrayList<int[]> fetchAlignmentBlocks(String cigar, int start){
 		//for each cigar block
@@ -342,359 +290,38 @@ public class DefinedRegionDifferentialSeq {
 		return blocks;
 	}
 
-	/**Fetches an old or makes a new Integer to represent the sam read name (e.g. fragment name)*/
-	public NameInteger fetchFragmentNameIndex(SAMRecord sam){
-		String samReadName = sam.getReadName();
-		Integer index;
-		Matcher mat = BAD_NAME.matcher(samReadName);
-		if (mat.matches()) samReadName = mat.group(1);
-
-		if (workingFragNameIndex.containsKey(samReadName)) {
-			index = workingFragNameIndex.get(samReadName);
-		}
-
-		else {
-			if (!secondStrandFlipped && sam.getReadPairedFlag()) {
-				if ((sam.getFirstOfPairFlag() && sam.getReadNegativeStrandFlag()) || (sam.getSecondOfPairFlag() && !(sam.getReadNegativeStrandFlag()))) {
-					index = new Integer(workingFragmentNameIndexMinus--);
-				}
-				else {
-					index = new Integer(workingFragmentNameIndexPlus++);
-				}
-			} else {
-				if (sam.getReadNegativeStrandFlag()) {
-					index = new Integer(workingFragmentNameIndexMinus--);
-				} else {
-					index = new Integer(workingFragmentNameIndexPlus++);
-				}
-			}
-
-			workingFragNameIndex.put(samReadName, index);
-		}
-		return new NameInteger (samReadName, index);
-	}
-
-	private class NameInteger {
-		String name;
-		Integer index;
-
-		public NameInteger(String name, Integer index){
-			this.name = name;
-			this.index = index;
-		}
-	}
-
-	public void loadReplica(Replica replica){
-		//the idea here is to take a sorted bam file and add the reads to an ArrayList, basically every base should have a ArrayList of reads that overlap that base
-		//one can then count the number of overlapping fragments for an exon or a collection of exons by hashing the ArrayList
-		//assumes each read (first or second) has the same name
-
-		//make reader
-		SamReader reader = SamReaderFactory.makeDefault().validationStringency(ValidationStringency.SILENT).open(replica.getBamFile());
-
-		//fetch chromName: length for all chroms
-		HashMap<String, Integer> chromLength = new HashMap<String, Integer>();
-		List<SAMSequenceRecord> seqs =  reader.getFileHeader().getSequenceDictionary().getSequences();
-		for (SAMSequenceRecord sr: seqs) chromLength.put(sr.getSequenceName(), sr.getSequenceLength()+1000);
-
-		SAMRecordIterator iterator = reader.iterator();
-
-		HashSet<String> priorChroms = new HashSet<String>();
-		String chrom = null;
-
-		//make first chromosome
-		SAMRecord sam = null;
-		int chrStartBp = -1;
-		ArrayList<Integer>[] bpNames = null;
-		boolean[] badBases = null;
-		while (iterator.hasNext()){
-			sam = iterator.next();
-
-			//unaligned? too many hits?
-			if (alignmentFails(sam)) continue;
-			chrom = sam.getReferenceName();
-
-			if (chromGenes.containsKey(chrom) == false) {
-				continue;
-			}
-			if (verbose) System.out.print(".");			
-			priorChroms.add(chrom);
-			chrStartBp = sam.getUnclippedStart()-1;
-			badBases = new boolean[chromLength.get(chrom) - chrStartBp];
-			bpNames = new ArrayList[badBases.length];
-			break;
-		}
-		//any data found?
-		if (bpNames == null) {
-			try {
-				reader.close();
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
-			return;
-		} 
-
-		//reset working fields
-		workingFragNameIndex.clear();
-		workingFragmentNameIndexPlus = 1;
-		workingFragmentNameIndexMinus = -1;
-
-		//load first alignment into bpNames
-		loadBlocks (sam, chrStartBp, bpNames, badBases);
-
-		//for each record
-		while (iterator.hasNext()){
-			sam = iterator.next();
-
-			//unaligned? too many hits?
-			if (alignmentFails(sam)) continue;
-
-			//same chrom?
-			if (sam.getReferenceName().equals(chrom)){
-				loadBlocks (sam, chrStartBp, bpNames, badBases);
-			}
-			else {
-				//different chrom so time to scan
-				if (printFirstLastCountTable) loadFirstLastGeneCounts(replica, bpNames, chrStartBp, chrom);
-				else loadGeneCounts(replica, bpNames, chrStartBp, chrom, badBases);
-
-				//check that new chrom from SAM is something interrogated by their gene list
-				boolean reset = false;
-				if (chromGenes.containsKey(sam.getReferenceName()) == false) {
-					//advance until it does
-					while (iterator.hasNext()){
-						sam = iterator.next();
-						if (chromGenes.containsKey(sam.getReferenceName())) {
-							reset = true;
-							break;
-						}
-					}
-				}
-				else reset = true;
-
-				//reset
-				if (reset){
-					//reset working fields
-					workingFragNameIndex.clear();
-					workingFragmentNameIndexPlus = 1;
-					workingFragmentNameIndexMinus = -1;
-
-					chrom = sam.getReferenceName();
-					if (verbose) System.out.print(".");
-					if (priorChroms.contains(chrom)) Misc.printErrAndExit("\nError: your sam file isn't sorted by chromosome! Aborting.\n");
-					priorChroms.add(chrom);
-					chrStartBp = sam.getUnclippedStart()-1;
-					badBases = new boolean[chromLength.get(chrom) - chrStartBp];
-					bpNames = new ArrayList[badBases.length];
-
-					//load
-					loadBlocks (sam, chrStartBp, bpNames, badBases);
-				}
-
-			}
-			
-		}
-		//add last
-		if (verbose) System.out.println();
-		
-		if (chromGenes.containsKey(chrom)) {
-			if (printFirstLastCountTable) loadFirstLastGeneCounts(replica, bpNames, chrStartBp, chrom);
-			else loadGeneCounts(replica, bpNames, chrStartBp, chrom, badBases);
-		}
-
+	/**Counts each replica's bam in parallel with a ReplicaGeneCounter then merges the flagged and minimum count gene names
+	 * in replica order. A gene flagged in any replica is then stripped from every replica's gene counts and total counts,
+	 * as it was when the serial loop skipped genes flagged by an earlier replica.*/
+	private void countReplicas(){
+		ArrayList<ReplicaGeneCounter> counters = new ArrayList<ReplicaGeneCounter>();
+		for (Condition c: conditions) {
+			for (Replica r: c.getReplicas()) counters.add(new ReplicaGeneCounter(r, chromGenes, minimimMappingQuality, maxNumAlignments, maxAlignmentsDepth, 
+					secondStrandFlipped, performStrandedAnalysis, performReverseStrandedAnalysis, minimumCounts, printFirstLastCountTable, maxFirstLast));
+		}
+		int numThreads = numberThreads;
+		if (numThreads < 1 || numThreads > counters.size()) numThreads = Math.min(counters.size(), Runtime.getRuntime().availableProcessors());
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		for (ReplicaGeneCounter rc: counters) executor.execute(rc);
+		executor.shutdown();
 		try {
-			reader.close();
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-		bpNames = null;
-		iterator = null;
-		seqs = null;
-		chromLength = null;
-	}
-
-	private boolean alignmentFails(SAMRecord sam){
-		//aligned?
-		if (sam.getReadUnmappedFlag()) return true;
-		//alignment quality?
-		if (sam.getMappingQuality() < minimimMappingQuality) return true;
-		//limit to max matches?
-		if (maxNumAlignments !=0){
-			Object o = sam.getAttribute("NH");
-			if (o != null)  {
-				int num = (Integer)o;
-				if (num > maxNumAlignments) return true;
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+		} catch (InterruptedException e) {
+			Misc.printErrAndExit("\nError: interrupted while counting replicas.\n");
+		}
+		for (ReplicaGeneCounter rc: counters){
+			if (rc.isFailed()) Misc.printErrAndExit("\nError: failed to count "+rc.getReplica().getBamFile()+"\n");
+			flaggedGeneNames.addAll(rc.getFlaggedGeneNames());
+			geneNamesWithMinimumCounts.addAll(rc.getGeneNamesWithMinimumCounts());
+		}
+		for (UCSCGeneLine gene: genes) if (flaggedGeneNames.contains(gene.getDisplayNameThenName())) gene.setFlagged(true);
+		if (flaggedGeneNames.size() !=0) {
+			String[] badGeneNames = Misc.hashSetToStringArray(flaggedGeneNames);
+			for (Condition c: conditions) {
+				for (Replica replica: c.getReplicas()) replica.removeFlaggedGenes(badGeneNames);
 			}
+			for (String baddie: badGeneNames) geneNamesWithMinimumCounts.remove(baddie);
 		}
-
-		return false;
-	}
-
-	private void loadGeneCounts(Replica replica, ArrayList<Integer>[] bpNames, int chrStartBp, String chromosome, boolean[] badBases){
-		HashMap<String, GeneCount> geneCounts = replica.getGeneCounts();
-		HashSet<Integer> allReads = new HashSet<Integer>();
-		HashSet<Integer> exonReads = new HashSet<Integer>();
-		int lengthBpNames = bpNames.length -1;
-
-		//for each gene in the chromosome 
-		UCSCGeneLine[] chrGenes = chromGenes.get(chromosome);
-		
-		for (int i=0; i< chrGenes.length; i++){
-			//flagged gene
-			if (chrGenes[i].isFlagged()) continue;
-
-			String geneName = chrGenes[i].getDisplayNameThenName();
-			boolean plusStrand = chrGenes[i].getStrand().equals("+");					
-			allReads.clear();
-
-			//get exons
-			ExonIntron[] exons = chrGenes[i].getExons();
-			int[] exonCounts = new int[exons.length];
-
-			//for each exon
-			exonLoop:
-				for (int x=0; x< exons.length; x++){
-					exonReads.clear();
-					int start = exons[x].getStart() - chrStartBp;
-					if (start < 0) start = 0;
-
-					int end = exons[x].getEnd() - chrStartBp;
-					if (end > lengthBpNames) end = lengthBpNames;
-					//for each base in the exon, see if there is a read
-					for (int y=start; y< end; y++){
-						//bad base? if so then flag entire gene
-						if (badBases[y]) {
-							chrGenes[i].setFlagged(true);
-							flaggedGeneNames.add(geneName);
-							allReads.clear();
-							break exonLoop;
-						}
-
-						if (bpNames[y] != null) {
-							if (performStrandedAnalysis){
-								for (Integer id : bpNames[y]){
-									if ((id > 0 && plusStrand == true) || (id < 0 && plusStrand == false )) exonReads.add(id);
-								}
-							} else if (performReverseStrandedAnalysis) {
-								for (Integer id: bpNames[y]) {
-									if ((id > 0 && plusStrand == false) || (id < 0 && plusStrand == true)) exonReads.add(id);
-								}
-							}
-							else exonReads.addAll(bpNames[y]);
-						}
-					}
-
-					exonCounts[x] = exonReads.size();
-					allReads.addAll(exonReads);
-				}
-
-			int numCounts = allReads.size();
-
-			if (numCounts !=0){
-				GeneCount tcg = new GeneCount(numCounts, exonCounts);
-				geneCounts.put(geneName, tcg);
-				replica.setTotalCounts(replica.getTotalCounts() + numCounts);
-				if (numCounts >= minimumCounts) geneNamesWithMinimumCounts.add(geneName);
-			}
-		}	
-
-		//clean up
-		allReads = null;
-		exonReads = null;
-	}
-
-	private void loadFirstLastGeneCounts(Replica replica, ArrayList<Integer>[] bpNames, int chrStartBp, String chromosome){
-		HashMap<String, GeneCount> geneCounts = replica.getGeneCounts();
-		HashSet<Integer> allReads = new HashSet<Integer>();
-		
-		int lengthBpNames = bpNames.length -1;
-
-		//for each gene in the chromosome 
-		UCSCGeneLine[] chrGenes = chromGenes.get(chromosome);
-
-		for (int i=0; i< chrGenes.length; i++){
-			//flagged gene
-			if (chrGenes[i].isFlagged()) continue;
-
-			String geneName = chrGenes[i].getDisplayNameThenName();
-			boolean plusStrand = chrGenes[i].getStrand().equals("+");					
-
-			//get exons
-			ExonIntron[] geneExons = chrGenes[i].getExons();
-			
-			//get exon set describing first third and last third of gene
-			ExonIntron[] firstThird = ExonIntron.fetchFirstExonSet(geneExons, maxFirstLast, 3);
-			ExonIntron[] lastThird = ExonIntron.fetchLastExonSet(geneExons, maxFirstLast, 3);
-			
-			//for each first third exons
-			for (int x=0; x< firstThird.length; x++){
-				//set first and last
-				int start = firstThird[x].getStart() - chrStartBp;
-				if (start < 0) start = 0;
-				int end = firstThird[x].getEnd() - chrStartBp;
-				if (end > lengthBpNames) end = lengthBpNames;
-				//for each base in the exon, see if there is a read
-				for (int y=start; y< end; y++){
-					//any reads?
-					if (bpNames[y] != null) {
-						if (performStrandedAnalysis){
-							for (Integer id : bpNames[y]){
-								if ((id > 0 && plusStrand == true) || (id < 0 && plusStrand == false )) allReads.add(id);
-							}
-						} else if (performReverseStrandedAnalysis) {
-							for (Integer id: bpNames[y]) {
-								if ((id > 0 && plusStrand == false) || (id < 0 && plusStrand == true)) allReads.add(id);
-							}
-						}
-						else allReads.addAll(bpNames[y]);
-					}
-				}
-			}
-			int numCountsFirst = allReads.size();
-			allReads.clear();
-			
-			//for each last third exons
-			for (int x=0; x< lastThird.length; x++){
-				//set first and last
-				int start = lastThird[x].getStart() - chrStartBp;
-				if (start < 0) start = 0;
-				int end = lastThird[x].getEnd() - chrStartBp;
-				if (end > lengthBpNames) end = lengthBpNames;
-				//for each base in the exon, see if there is a read
-				for (int y=start; y< end; y++){
-					//any reads?
-					if (bpNames[y] != null) {
-						if (performStrandedAnalysis){
-							for (Integer id : bpNames[y]){
-								if ((id > 0 && plusStrand == true) || (id < 0 && plusStrand == false )) allReads.add(id);
-							}
-						} else if (performReverseStrandedAnalysis) {
-							for (Integer id: bpNames[y]) {
-								if ((id > 0 && plusStrand == false) || (id < 0 && plusStrand == true)) allReads.add(id);
-							}
-						}
-						else allReads.addAll(bpNames[y]);
-					}
-				}
-			}
-			int numCountsSecond = allReads.size();
-			allReads.clear();
-			
-			int totalCounts = numCountsFirst + numCountsSecond;
-			//order counts by gene strand
-			int[] counts;
-			if (chrGenes[i].getStrand().equals("-")) counts = new int[]{numCountsSecond, numCountsFirst};
-			else counts = new int[]{numCountsFirst, numCountsSecond};
-			
-			if (totalCounts !=0){
-				GeneCount tcg = new GeneCount(totalCounts, counts);
-				geneCounts.put(geneName, tcg);
-				replica.setTotalCounts(replica.getTotalCounts() + totalCounts);
-				if (totalCounts >= minimumCounts) geneNamesWithMinimumCounts.add(geneName);
-			}
-		}	
-		//clean up
-		allReads = null;
 	}
 
 	public void loadGeneLineWithExonCounts(UCSCGeneLine gl, Condition treatment, Condition control){
@@ -1939,6 +1566,7 @@ public class DefinedRegionDifferentialSeq {
 					case 'i': scoreIntrons = true; break;
 					case 't': deleteTempFiles = false; break;
 					case 'g': genomeVersion = args[++i]; break;
+					case 'd': numberThreads = Integer.parseInt(args[++i]); break;
 					case 'j': performReverseStrandedAnalysis = true; break;
 					case 'k': secondStrandFlipped = true; break;
 					case 'a': useSamSeq = true; break;
@@ -2018,7 +1646,7 @@ public class DefinedRegionDifferentialSeq {
 	public static void printDocs(){
 		System.out.println("\n" +
 				"**************************************************************************************\n" +
-				"**                     Defined Region Differential Seq: May 2019                    **\n" +
+				"**                     Defined Region Differential Seq: Oct 2026                    **\n" +
 				"**************************************************************************************\n" +
 				"DRDS takes sorted bam files, one per replica, minimum one per condition, minimum two\n" +
 				"conditions (e.g. treatment and control or a time course/ multiple conditions) and\n" +
@@ -2068,6 +1696,8 @@ public class DefinedRegionDifferentialSeq {
 				"      dUTP protocol.\n" +
 				"-k Second read's strand is flipped. Otherwise, assumes this was not done in the \n" +
 				"      SamTranscriptomeParser.\n" +
+				"-d Number of replica bams to count at once, defaults to all or the number of cores.\n"+
+				"      Reduce if out of memory errors occur.\n"+
 				"-t Don't delete temp files (R script, R results, Rout, etc..).\n"+
 				"-a Run SAMseq in place of DESeq2.  This is only recommended with five or more\n" +
 				"      replicates per condition.\n" +
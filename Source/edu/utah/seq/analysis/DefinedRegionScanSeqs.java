@@ -847,8 +847,19 @@ public class DefinedRegionScanSeqs {
 		//get UCSCGeneLine[]
 		UCSCGeneLine[] genes = geneModels.get(chromosome);
 
-		
-		
+		//sum all the exons in one sweep
+		ArrayList<int[]> exonAL = new ArrayList<int[]>();
+		for (int i=0; i< genes.length; i++){
+			for (ExonIntron e: genes[i].getExons()) exonAL.add(new int[]{e.getStart(), e.getEnd()});
+		}
+		int[][] startStops = new int[exonAL.size()][];
+		exonAL.toArray(startStops);
+		float[] exonSumsPlus = null;
+		float[] exonSumsMinus = null;
+		if (treatmentChromPlus != null) exonSumsPlus = treatmentChromPlus.sumScoresPositionsBP(startStops)[1];
+		if (treatmentChromMinus != null) exonSumsMinus = treatmentChromMinus.sumScoresPositionsBP(startStops)[1];
+		int exonIndex = 0;
+
 		//for each gene 
 		for (int i=0; i< genes.length; i++){
 			//Largest Point
@@ -865,24 +876,24 @@ public class DefinedRegionScanSeqs {
 				int start = exons[j].getStart();
 				int stop = exons[j].getEnd();
 				totalBPs += stop - start;
-				float coverage = 0;
+				float[] plusScores = null;
+				float[] minusScores = null;
+				if (treatmentChromPlus != null) plusScores = treatmentChromPlus.sumScorePerBP(start, stop);
+				if (treatmentChromMinus != null) minusScores = treatmentChromMinus.sumScorePerBP(start, stop);
 				for (int k=start;k<stop;k++) {
 					float plusScore = 0;
 					float minusScore = 0;
-					if (treatmentChromPlus != null) {
-						plusScore = treatmentChromPlus.sumScoreBP(k,k+1);
-					}
-					if (treatmentChromMinus != null) {
-						minusScore = treatmentChromMinus.sumScoreBP(k,k+1);
-					}
-					coverage = plusScore + minusScore;
+					if (plusScores != null) plusScore = plusScores[k-start];
+					if (minusScores != null) minusScore = minusScores[k-start];
+					float coverage = plusScore + minusScore;
 					if (coverage > max) {
 						max = coverage;
 						position = k;
 					}
 				}
-				if (treatmentChromPlus != null) tSumPlus += treatmentChromPlus.sumScoreBP(start, stop); 
-				if (treatmentChromMinus != null)tSumMinus += treatmentChromMinus.sumScoreBP(start, stop); 
+				if (exonSumsPlus != null) tSumPlus += exonSumsPlus[exonIndex]; 
+				if (exonSumsMinus != null) tSumMinus += exonSumsMinus[exonIndex]; 
+				exonIndex++;
 			}
 			float tSum = tSumPlus+ tSumMinus;
 			float rpkm = calculateRPKM(millionMappedTreatmentReads, totalBPs, tSum);
@@ -55,6 +55,9 @@ public class ScoreMethylatedRegions {
 	private int[] methylatedBasePositions;
 	private boolean plusStrandPresent;
 	private boolean minusStrandPresent;
+	//nonConPlus, conPlus, nonConMinus, conMinus sums for the regions on the current chromosome
+	private float[][] chromRegionCounts = null;
+	private int firstChromRegion = 0;
 
 
 	public void printDefaultValues(){
@@ -110,7 +113,10 @@ public class ScoreMethylatedRegions {
 					//might be null!
 					methylatedBases = MethylatedBaseObservationOneSample.fetchCommonBasesWithMinimumObservations(mergedNonCon, mergedCon, minimumReadCoverage);
 					methylatedBasePositions = null;
-					if (methylatedBases != null) methylatedBasePositions = MethylatedBaseObservationOneSample.fetchPositions(methylatedBases);
+					if (methylatedBases != null) {
+						methylatedBasePositions = MethylatedBaseObservationOneSample.fetchPositions(methylatedBases);
+						scoreChromRegions(x);
+					}
 				}
 			}
 			regionResults[x] = new RegionResult(regions[x].getIndex());
@@ -121,8 +127,10 @@ public class ScoreMethylatedRegions {
 				continue;
 			}
 			
-			//load select region with PointData
-			loadRegion(regions[x]);
+			//load select region with the chromosome's batch sums
+			float[] c = new float[4];
+			for (int i=0; i< 4; i++) c[i] = chromRegionCounts[i][x-firstChromRegion];
+			loadRegion(regions[x], new double[]{c[0], c[1], c[2], c[3]});
 			
 			//fetch scores numberBaseFractions, mean, median, fractionNonConverted, numberNonCon, numberNonCon+numberCon
 			float[] scores = (float[])(regions[x].getScores().get(0));
@@ -457,10 +465,13 @@ public class ScoreMethylatedRegions {
 
 	/**Loads a Positive with fractionNonConverted.*/
 	public void loadRegion(Positive region){
+		loadRegion(region, scoreRegion(region.getStart(), region.getStop()));
+	}
+
+	/**Loads a Positive with fractionNonConverted given its nonConPlus, conPlus, nonConMinus, conMinus counts.*/
+	private void loadRegion(Positive region, double[] counts){
 		int start = region.getStart();
 		int stop = region.getStop();
-		//nonConPlus, conPlus, nonConMinus, conMinus
-		double[] counts = scoreRegion(start, stop);
 		//calc fraction methylated, numNonCon/total
 		double numberNonConPositions = counts[0]+ counts[2];
 		double total = Num.sumArray(counts);
@@ -508,6 +519,22 @@ public class ScoreMethylatedRegions {
 		return new float[]{fractions.length, mean, median};
 	}
 
+	/**Sums the four datasets over every region on the current chromosome, regions[first] onward, with one merged sweep each
+	 * instead of two binary searches per region and dataset. Random regions are still scored one at a time.*/
+	private void scoreChromRegions(int first){
+		int last = first;
+		while (last < regions.length && regions[last].getChromosome().equals(currentChrom)) last++;
+		int[][] startStops = new int[last-first][];
+		for (int i=first; i< last; i++) startStops[i-first] = new int[]{regions[i].getStart(), regions[i].getStop()};
+		firstChromRegion = first;
+		chromRegionCounts = new float[][]{
+			nonConvertedMergedChromPlus.sumScoresPositionsBP(startStops)[1],
+			convertedMergedChromPlus.sumScoresPositionsBP(startStops)[1],
+			nonConvertedMergedChromMinus.sumScoresPositionsBP(startStops)[1],
+			convertedMergedChromMinus.sumScoresPositionsBP(startStops)[1]
+		};
+	}
+
 	/**Returns nonConPlus, conPlus, nonConMinus, conMinus*/
 	private double[] scoreRegion (int start, int stop){
 		//treatment
@@ -0,0 +1,442 @@
+package edu.utah.seq.analysis.multi;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import htsjdk.samtools.CigarElement;
+import htsjdk.samtools.CigarOperator;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+import htsjdk.samtools.ValidationStringency;
+import util.bio.annotation.ExonIntron;
+import util.bio.parsers.UCSCGeneLine;
+
+/**Counts the fragments overlapping each gene's exons for one Replica's coordinate sorted bam, featureCounts style.
+ * Each chromosome's exons are put in a start sorted interval index, each alignment's blocks are walked once from its cigar, and the
+ * fragment's index is saved to the exons it hits. Mates share an index by read name and are collapsed when the exon's indexes
+ * are sorted and made unique. Per base alignment depth is tracked over exonic bases only so genes with too much coverage
+ * can be flagged. Replaces the per base ArrayList<Integer>[] of fragment indexes the apps used to build for every chromosome.
+ * Genes aren't modified, flagged gene names are collected for the caller to merge so several replicas can be counted in parallel.
+ * @author david.nix@hci.utah.edu*/
+public class ReplicaGeneCounter implements Runnable {
+
+	//fields
+	private Replica replica;
+	private HashMap<String,UCSCGeneLine[]> chromGenes;
+	private int minimumMappingQuality = 0;
+	private int maxNumAlignments = 1;
+	private int maxAlignmentsDepth = 0;
+	private boolean secondStrandFlipped = false;
+	private boolean stranded = false;
+	private boolean reverseStranded = false;
+	private int minimumCounts = 10;
+	private boolean firstLast = false;
+	private int maxFirstLast = 150;
+	private boolean failed = false;
+
+	//results
+	private HashSet<String> flaggedGeneNames = new HashSet<String>();
+	private LinkedHashSet<String> geneNamesWithMinimumCounts = new LinkedHashSet<String>();
+
+	//for loading data
+	private int workingFragmentNameIndexPlus = 1;
+	private int workingFragmentNameIndexMinus = -1;
+	private HashMap<String, Integer> workingFragNameIndex = new HashMap<String, Integer>(10000);
+	private static final Pattern BAD_NAME = Pattern.compile("(.+)/[12]$");
+
+	//per chromosome exon index, sorted by start
+	private UCSCGeneLine[] genes;
+	private int[] featureStarts;
+	private int[] featureEnds;
+	private int[] featureMaxEnds;
+	private int[] featureGenes;
+	private int[] featureSlots;
+	private boolean[] featurePlus;
+	private int[][] featureFragments;
+	private int[] featureNumFragments;
+	private int[][] geneFeatures;
+
+	//merged exonic bases for the depth check
+	private int[] mergedStarts;
+	private int[] mergedEnds;
+	private int[] mergedOffsets;
+	private int[] depth;
+
+	/**Set maxAlignmentsDepth to 0 to skip the depth check. Set firstLast to count the first and last thirds of each gene instead of each exon,
+	 * the depth check then covers the exons in those thirds.*/
+	public ReplicaGeneCounter(Replica replica, HashMap<String,UCSCGeneLine[]> chromGenes, int minimumMappingQuality, int maxNumAlignments, int maxAlignmentsDepth,
+			boolean secondStrandFlipped, boolean stranded, boolean reverseStranded, int minimumCounts, boolean firstLast, int maxFirstLast){
+		this.replica = replica;
+		this.chromGenes = chromGenes;
+		this.minimumMappingQuality = minimumMappingQuality;
+		this.maxNumAlignments = maxNumAlignments;
+		this.maxAlignmentsDepth = maxAlignmentsDepth;
+		this.secondStrandFlipped = secondStrandFlipped;
+		this.stranded = stranded;
+		this.reverseStranded = reverseStranded;
+		this.minimumCounts = minimumCounts;
+		this.firstLast = firstLast;
+		this.maxFirstLast = maxFirstLast;
+	}
+
+	public void run(){
+		SamReader reader = null;
+		try {
+			reader = SamReaderFactory.makeDefault().validationStringency(ValidationStringency.SILENT).open(replica.getBamFile());
+			SAMRecordIterator iterator = reader.iterator();
+			HashSet<String> priorChroms = new HashSet<String>();
+			String chrom = null;
+			while (iterator.hasNext()){
+				SAMRecord sam = iterator.next();
+
+				//unaligned? too many hits? not in the gene list?
+				if (alignmentFails(sam)) continue;
+				String samChrom = sam.getReferenceName();
+				if (samChrom.equals(chrom) == false){
+					if (chromGenes.containsKey(samChrom) == false) continue;
+					if (chrom != null) countGenes();
+					if (priorChroms.contains(samChrom)) throw new IOException("Your bam file isn't sorted by chromosome "+replica.getBamFile());
+					priorChroms.add(samChrom);
+					chrom = samChrom;
+					loadChromosome(chromGenes.get(chrom));
+				}
+				loadBlocks(sam);
+			}
+			if (chrom != null) countGenes();
+		} catch (Exception e) {
+			failed = true;
+			System.err.println("\nError counting "+replica.getBamFile());
+			e.printStackTrace();
+		} finally {
+			try {
+				if (reader != null) reader.close();
+			} catch (IOException e) {}
+			workingFragNameIndex = null;
+			featureFragments = null;
+			depth = null;
+		}
+	}
+
+	private boolean alignmentFails(SAMRecord sam){
+		//aligned?
+		if (sam.getReadUnmappedFlag()) return true;
+		//alignment quality?
+		if (sam.getMappingQuality() < minimumMappingQuality) return true;
+		//limit to max matches?
+		if (maxNumAlignments !=0){
+			Object o = sam.getAttribute("NH");
+			if (o != null)  {
+				int num = (Integer)o;
+				if (num > maxNumAlignments) return true;
+			}
+		}
+		return false;
+	}
+
+	/**Builds the start sorted exon index for a chromosome's genes and resets the fragment indexes.*/
+	private void loadChromosome(UCSCGeneLine[] chrGenes){
+		genes = chrGenes;
+		workingFragNameIndex.clear();
+		workingFragmentNameIndexPlus = 1;
+		workingFragmentNameIndexMinus = -1;
+
+		//collect features, one per exon or two sets for the first and last thirds
+		int num = 0;
+		ExonIntron[][][] geneSlots = new ExonIntron[genes.length][][];
+		for (int i=0; i< genes.length; i++){
+			ExonIntron[] exons = genes[i].getExons();
+			if (firstLast) {
+				geneSlots[i] = new ExonIntron[][]{ExonIntron.fetchFirstExonSet(exons, maxFirstLast, 3), ExonIntron.fetchLastExonSet(exons, maxFirstLast, 3)};
+				num += geneSlots[i][0].length + geneSlots[i][1].length;
+			}
+			else {
+				geneSlots[i] = new ExonIntron[exons.length][];
+				for (int x=0; x< exons.length; x++) geneSlots[i][x] = new ExonIntron[]{exons[x]};
+				num += exons.length;
+			}
+		}
+		long[] order = new long[num];
+		int[] starts = new int[num];
+		int[] ends = new int[num];
+		int[] geneIndex = new int[num];
+		int[] slots = new int[num];
+		int counter = 0;
+		for (int i=0; i< genes.length; i++){
+			for (int s=0; s< geneSlots[i].length; s++){
+				for (ExonIntron e: geneSlots[i][s]){
+					starts[counter] = e.getStart();
+					ends[counter] = e.getEnd();
+					geneIndex[counter] = i;
+					slots[counter] = s;
+					order[counter] = (((long)e.getStart()) << 32) | counter;
+					counter++;
+				}
+			}
+		}
+		Arrays.sort(order);
+
+		featureStarts = new int[num];
+		featureEnds = new int[num];
+		featureMaxEnds = new int[num];
+		featureGenes = new int[num];
+		featureSlots = new int[num];
+		featurePlus = new boolean[num];
+		featureFragments = new int[num][];
+		featureNumFragments = new int[num];
+		int[] numGeneFeatures = new int[genes.length];
+		int maxEnd = Integer.MIN_VALUE;
+		for (int i=0; i< num; i++){
+			int o = (int)order[i];
+			featureStarts[i] = starts[o];
+			featureEnds[i] = ends[o];
+			if (ends[o] > maxEnd) maxEnd = ends[o];
+			featureMaxEnds[i] = maxEnd;
+			featureGenes[i] = geneIndex[o];
+			featureSlots[i] = slots[o];
+			featurePlus[i] = genes[geneIndex[o]].getStrand().equals("+");
+			numGeneFeatures[geneIndex[o]]++;
+		}
+		geneFeatures = new int[genes.length][];
+		for (int i=0; i< genes.length; i++) {
+			geneFeatures[i] = new int[numGeneFeatures[i]];
+			numGeneFeatures[i] = 0;
+		}
+		for (int i=0; i< num; i++) geneFeatures[featureGenes[i]][numGeneFeatures[featureGenes[i]]++] = i;
+
+		//merge the exons for the depth check
+		if (maxAlignmentsDepth > 0){
+			int[] ms = new int[num];
+			int[] me = new int[num];
+			int numMerged = 0;
+			for (int i=0; i< num; i++){
+				if (numMerged != 0 && featureStarts[i] <= me[numMerged-1]) {
+					if (featureEnds[i] > me[numMerged-1]) me[numMerged-1] = featureEnds[i];
+				}
+				else {
+					ms[numMerged] = featureStarts[i];
+					me[numMerged++] = featureEnds[i];
+				}
+			}
+			mergedStarts = Arrays.copyOf(ms, numMerged);
+			mergedEnds = Arrays.copyOf(me, numMerged);
+			mergedOffsets = new int[numMerged];
+			int total = 0;
+			for (int i=0; i< numMerged; i++){
+				mergedOffsets[i] = total;
+				total += mergedEnds[i] - mergedStarts[i];
+			}
+			depth = new int[total+1];
+		}
+		else depth = null;
+	}
+
+	/**Walks the cigar once, saving the fragment index to each overlapping exon and adding to the exonic depth.*/
+	private void loadBlocks(SAMRecord sam){
+		int fragmentIndex = fetchFragmentNameIndex(sam);
+		int start = sam.getUnclippedStart()-1;
+		for (CigarElement ce: sam.getCigar().getCigarElements()){
+			CigarOperator op = ce.getOperator();
+			int len = ce.getLength();
+			if (op == CigarOperator.M || op == CigarOperator.EQ || op == CigarOperator.X) {
+				addBlock(start, start+len, fragmentIndex);
+				start += len;
+			}
+			else if (op == CigarOperator.S || op == CigarOperator.D || op == CigarOperator.N || op == CigarOperator.H) start += len;
+		}
+	}
+
+	private void addBlock(int start, int stop, int fragmentIndex){
+		//exons, walk back from the last one starting before the stop till none can reach the start
+		for (int i= lastStartBefore(featureStarts, stop); i>=0 && featureMaxEnds[i] > start; i--){
+			if (featureEnds[i] <= start) continue;
+			//strand check
+			if (stranded && (fragmentIndex > 0) != featurePlus[i]) continue;
+			if (reverseStranded && (fragmentIndex > 0) == featurePlus[i]) continue;
+			int n = featureNumFragments[i];
+			int[] f = featureFragments[i];
+			//skip the same alignment's other blocks
+			if (n != 0 && f[n-1] == fragmentIndex) continue;
+			if (f == null) featureFragments[i] = f = new int[4];
+			else if (n == f.length) featureFragments[i] = f = Arrays.copyOf(f, n*2);
+			f[n] = fragmentIndex;
+			featureNumFragments[i] = n+1;
+		}
+
+		//depth over the merged exons
+		if (depth != null){
+			for (int i= lastStartBefore(mergedStarts, stop); i>=0 && mergedEnds[i] > start; i--){
+				int s = Math.max(start, mergedStarts[i]);
+				int e = Math.min(stop, mergedEnds[i]);
+				depth[mergedOffsets[i] + s - mergedStarts[i]]++;
+				depth[mergedOffsets[i] + e - mergedStarts[i]]--;
+			}
+		}
+	}
+
+	/**Returns the index of the last start < position or -1.*/
+	private static int lastStartBefore(int[] starts, int position){
+		int low = 0;
+		int high = starts.length - 1;
+		int hit = -1;
+		while (low <= high){
+			int mid = (low + high) >>> 1;
+			if (starts[mid] < position) {
+				hit = mid;
+				low = mid + 1;
+			}
+			else high = mid - 1;
+		}
+		return hit;
+	}
+
+	/**Fetches an old or makes a new index to represent the sam read name (e.g. fragment name), the sign gives the fragment's strand.*/
+	private int fetchFragmentNameIndex(SAMRecord sam){
+		String samReadName = sam.getReadName();
+		Matcher mat = BAD_NAME.matcher(samReadName);
+		if (mat.matches()) samReadName = mat.group(1);
+		Integer index = workingFragNameIndex.get(samReadName);
+		if (index != null) return index;
+		int i;
+		if (!secondStrandFlipped && sam.getReadPairedFlag()) {
+			if ((sam.getFirstOfPairFlag() && sam.getReadNegativeStrandFlag()) || (sam.getSecondOfPairFlag() && !(sam.getReadNegativeStrandFlag()))) i = workingFragmentNameIndexMinus--;
+			else i = workingFragmentNameIndexPlus++;
+		}
+		else {
+			if (sam.getReadNegativeStrandFlag()) i = workingFragmentNameIndexMinus--;
+			else i = workingFragmentNameIndexPlus++;
+		}
+		workingFragNameIndex.put(samReadName, i);
+		return i;
+	}
+
+	/**Makes the GeneCounts for the current chromosome's genes.*/
+	private void countGenes(){
+		//find bad bases, running depth then a running count of bad bases for range lookups
+		int[] badCounts = null;
+		if (depth != null){
+			int[] counts = new int[depth.length];
+			int d = 0;
+			int bad = 0;
+			for (int i=0; i< depth.length-1; i++){
+				d += depth[i];
+				if (d > maxAlignmentsDepth) bad++;
+				counts[i+1] = bad;
+			}
+			if (bad != 0) badCounts = counts;
+		}
+
+		//sort and collapse each feature's fragments, mates and overlapping blocks share an index
+		for (int i=0; i< featureFragments.length; i++){
+			int[] f = featureFragments[i];
+			if (f == null) continue;
+			int n = featureNumFragments[i];
+			Arrays.sort(f, 0, n);
+			featureNumFragments[i] = unique(f, n);
+		}
+
+		HashMap<String, GeneCount> geneCounts = replica.getGeneCounts();
+		for (int g=0; g< genes.length; g++){
+			String geneName = genes[g].getDisplayNameThenName();
+			int[] features = geneFeatures[g];
+
+			//any bad bases in the exons, or first and last thirds? if so then flag the entire gene
+			if (badCounts != null){
+				boolean flag = false;
+				for (int f: features){
+					if (countBadBases(badCounts, featureStarts[f], featureEnds[f]) != 0) {
+						flag = true;
+						break;
+					}
+				}
+				if (flag){
+					flaggedGeneNames.add(geneName);
+					continue;
+				}
+			}
+
+			if (firstLast){
+				int[] counts = new int[2];
+				for (int s=0; s< 2; s++) counts[s] = countUnique(features, s);
+				int totalCounts = counts[0] + counts[1];
+				//order counts by gene strand
+				if (genes[g].getStrand().equals("-")) counts = new int[]{counts[1], counts[0]};
+				if (totalCounts !=0) saveGeneCount(geneCounts, geneName, totalCounts, counts);
+				continue;
+			}
+
+			int[] exonCounts = new int[features.length];
+			for (int f: features) exonCounts[featureSlots[f]] = featureNumFragments[f];
+			int numCounts = countUnique(features, -1);
+			if (numCounts !=0) saveGeneCount(geneCounts, geneName, numCounts, exonCounts);
+		}
+	}
+
+	private void saveGeneCount(HashMap<String, GeneCount> geneCounts, String geneName, int numCounts, int[] counts){
+		geneCounts.put(geneName, new GeneCount(numCounts, counts));
+		replica.setTotalCounts(replica.getTotalCounts() + numCounts);
+		if (numCounts >= minimumCounts) geneNamesWithMinimumCounts.add(geneName);
+	}
+
+	/**Returns the number of unique fragments in the gene's features with the given slot, -1 for all.*/
+	private int countUnique(int[] features, int slot){
+		int num = 0;
+		int numWithFragments = 0;
+		int only = -1;
+		for (int f: features){
+			if (slot != -1 && featureSlots[f] != slot) continue;
+			if (featureNumFragments[f] == 0) continue;
+			num += featureNumFragments[f];
+			numWithFragments++;
+			only = f;
+		}
+		if (num == 0) return 0;
+		//just one feature? already unique
+		if (numWithFragments == 1) return featureNumFragments[only];
+		int[] all = new int[num];
+		int counter = 0;
+		for (int f: features){
+			if ((slot != -1 && featureSlots[f] != slot) || featureNumFragments[f] == 0) continue;
+			System.arraycopy(featureFragments[f], 0, all, counter, featureNumFragments[f]);
+			counter += featureNumFragments[f];
+		}
+		Arrays.sort(all);
+		return unique(all, num);
+	}
+
+	/**Collapses a sorted array in place, returns the number unique.*/
+	private static int unique(int[] sorted, int n){
+		if (n == 0) return 0;
+		int u = 1;
+		for (int i=1; i< n; i++) if (sorted[i] != sorted[u-1]) sorted[u++] = sorted[i];
+		return u;
+	}
+
+	/**Returns the number of bases in start-end with a depth over the max.*/
+	private int countBadBases(int[] badCounts, int start, int end){
+		int m = lastStartBefore(mergedStarts, start+1);
+		int s = mergedOffsets[m] + start - mergedStarts[m];
+		int e = mergedOffsets[m] + end - mergedStarts[m];
+		return badCounts[e] - badCounts[s];
+	}
+
+	public boolean isFailed() {
+		return failed;
+	}
+	public HashSet<String> getFlaggedGeneNames() {
+		return flaggedGeneNames;
+	}
+	/**In the order they were counted.*/
+	public LinkedHashSet<String> getGeneNamesWithMinimumCounts() {
+		return geneNamesWithMinimumCounts;
+	}
+	public Replica getReplica() {
+		return replica;
+	}
+}
@@ -2,8 +2,6 @@ package edu.utah.seq.barcodes;
 
 import java.io.*;
 import java.util.ArrayList;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -54,16 +52,10 @@ public class Consensus {
 			
 			//make mergers, these self feed from the BarcodeLoader
 			System.out.println("Clustering and calling consensus on "+barcodeLoader.getChunks().size()+" chunks (Thread Region RamUsed Time):");
-			ExecutorService executor = Executors.newFixedThreadPool(numberThreads);
 			BarcodeChromMerger[] bcm = new BarcodeChromMerger[numberThreads];
-			for (int i=0; i< numberThreads; i++) {
-				bcm[i] = new BarcodeChromMerger(this, i+1);
-				executor.execute(bcm[i]);
-			}
-			executor.shutdown();
-			//spins here until the executer is terminated, e.g. all threads complete
-	        while (!executor.isTerminated()) {
-	        }
+			for (int i=0; i< numberThreads; i++) bcm[i] = new BarcodeChromMerger(this, i+1);
+			//blocks here until all threads complete
+			ParallelRunner.runAll(bcm, numberThreads);
 	        
 			//close the loader
 			barcodeLoader.completeTasks();
@@ -4,6 +4,7 @@ import java.io.*;
 
 import util.gen.*;
 import edu.utah.seq.parsers.BarParser;
+import edu.utah.seq.useq.RegionSweep;
 
 
 /**Container for holding genomic positions - scores data.
@@ -332,6 +333,26 @@ public class PointData {
 		return new float[]{numReads, sumScores};
 	}
 
+	/**Batch version of sumScoresPositionsBP() for many start bp (included) stop bp (not included) regions, best sorted by start.
+	 * Uses one merged sweep through the positions instead of two binary searches per region.
+	 * @return float[2][startStopBp.length]{numReads[], sumScores[]}*/
+	public float[][] sumScoresPositionsBP (int[][] startStopBp){
+		float[] numReads = new float[startStopBp.length];
+		float[] sumScores = new float[startStopBp.length];
+		RegionSweep.sum(getPositions(), getScores(), startStopBp, numReads, sumScores);
+		return new float[][]{numReads, sumScores};
+	}
+
+	/**Returns the sum of the scores at each bp from start bp (included) to stop bp (not included).*/
+	public float[] sumScorePerBP (int startBp, int stopBp){
+		int length = stopBp - startBp;
+		if (length <= 0) return new float[0];
+		float[] sums = new float[length];
+		int index = RegionSweep.firstIndexAtOrAbove(positions, startBp);
+		for (int i=index; i< positions.length && positions[i] < stopBp; i++) sums[positions[i]-startBp] += scores[i];
+		return sums;
+	}
+
 	/**Returns an array of Point containing the slice defined by the start and stop(excluded).*/
 	public Point[] fetchPoints (int startBp, int stopBp){
 		int[] indexes = findIndexes (startBp, stopBp);	
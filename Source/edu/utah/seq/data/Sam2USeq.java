@@ -10,6 +10,7 @@ import edu.utah.seq.parsers.BarParser;
 import edu.utah.seq.useq.ArchiveInfo;
 import edu.utah.seq.useq.SliceInfo;
 import edu.utah.seq.useq.USeqUtilities;
+import edu.utah.seq.useq.ZoomBuilder;
 import edu.utah.seq.useq.data.*;
 import edu.utah.seq.vcf.anno.AnnotatedVcfParser;
 import htsjdk.samtools.*;
@@ -43,6 +44,7 @@ public class Sam2USeq {
 	private File jsonOutputFile = null;
 	private boolean flipStrandSecondRead = false;
 	private boolean includeNs = false;
+	private boolean makeZoomSummaries = false;
 
 	//internal
 	private ChromData chromData;
@@ -51,8 +53,10 @@ public class Sam2USeq {
 	private HashMap <String, ChromData> chromDataHash = new HashMap <String, ChromData>();
 	private HashMap<String,RegionScoreText[]> regions = null;
 	private ArrayList<String> countedChromosomes = new ArrayList<String>();
-	private Histogram histogram;
+	private DepthHistogram coverageHist = null;
+	private DepthHistogram.Summary coverageSummary = null;
 	private ArrayList<File> files2Zip = new ArrayList<File>();
+	private ArrayList<ZoomBuilder> zoomBuilders = new ArrayList<ZoomBuilder>();
 	private float scalar = 0;
 	private double scalarCount = Double.MAX_VALUE;
 	private Pattern cigarSub = Pattern.compile("(\\d+)([MSDHN])");
@@ -67,7 +71,6 @@ public class Sam2USeq {
 	private boolean verbose = true;
 	private File useqOutputFile;
 	private Gzipper perRegionsGzipper = null;
-	private HashMap<Long,Long> baseCoverageHist = new HashMap<Long,Long>();
 	private File barDirectory;
 	private File chromDataFile = null;
 	//for json
@@ -155,14 +158,7 @@ public class Sam2USeq {
 			for (String chromStrand: countedChromosomes) regions.remove(chromStrand);
 			for (RegionScoreText[] chromRegions: regions.values()){
 				for (RegionScoreText r: chromRegions){
-					int length = r.getLength();					
-					for (int i=0; i < length; i++) {
-						histogram.count(0);
-						if (!baseCoverageHist.containsKey((long)0)) {
-							baseCoverageHist.put((long)0,(long) 0);
-						}
-						baseCoverageHist.put((long)0,baseCoverageHist.get((long)0) + 1);
-					}
+					coverageHist.count(0, r.getLength());
 				}
 			}
 
@@ -338,7 +334,7 @@ public class Sam2USeq {
 			//Write out json, DO NOT change the key names without updated downstream apps that read this file!
 			Gzipper gz = new Gzipper(jsonOutputFile);
 			gz.println("{");
-			gz.printJson("meanOnTargetCoverage", histogram.getStandardDeviation().getMean(), true);
+			gz.printJson("meanOnTargetCoverage", coverageSummary.getMean(), true);
 			gz.printJson("minimumCoverageThreshold", (int)minimumCounts, true);
 			gz.printJson("targetRegionsFileName", regionFile.getName(), true);
 			gz.printJson("coverageAt0.95OfTargetBps", coverageAt95, true);
@@ -402,14 +398,34 @@ public class Sam2USeq {
 
 		File[] files = new File[files2Zip.size()];
 		files2Zip.toArray(files);
+		File zoomFile = ZoomBuilder.fetchZoomFile(useqOutputFile);
+		zoomFile.delete();
 		if (USeqUtilities.zip(files, useqOutputFile)== false) {
 			useqOutputFile.delete();
 			USeqUtilities.deleteDirectory(tempDirectory);
 			USeqUtilities.printErrAndExit("\nProblem zipping data for "+samFiles[0]);
 		}
+		if (makeZoomSummaries) {
+			try {
+				ZoomBuilder.writeZoomArchive(useqOutputFile, zoomBuilders);
+			} catch (IOException e){
+				e.printStackTrace();
+				USeqUtilities.deleteDirectory(tempDirectory);
+				USeqUtilities.printErrAndExit("\nProblem writing zoom summaries for "+useqOutputFile);
+			}
+		}
 		USeqUtilities.deleteDirectory(tempDirectory);
 	}
 
+	/**Summarizes the stair step graph of the current chromData for the zoom file.*/
+	private void addZoomSummaries(PositionScore[] positions) throws IOException{
+		if (makeZoomSummaries == false) return;
+		ZoomBuilder zb = new ZoomBuilder(chromData.chromosome, chromData.strand, true, tempDirectory);
+		for (PositionScore ps: positions) zb.addPosition(ps.getPosition(), ps.getScore());
+		zb.finish();
+		zoomBuilders.add(zb);
+	}
+
 	/**Sums M bases in cigar.*/
 	public int alignmentLength (String cigar){
 		//for each cigar block
@@ -495,23 +511,12 @@ public class Sam2USeq {
 							for (int i=start; i< stop; i++){
 								//before or after scored bases
 								if (i < 0 || i >= baseCounts.length) {
-									histogram.count(0);
-									if (!baseCoverageHist.containsKey((long)0)) {
-										baseCoverageHist.put((long)0,(long) 0);
-									}
-									baseCoverageHist.put((long)0,baseCoverageHist.get((long)0) + 1);
-									//baseCoverage.add(zeroShort);
+									coverageHist.count(0);
 									counts[index++] = 0.0f;
 								}
 								//nope inside
 								else {
-									histogram.count(baseCounts[i]);
-									long bc = (long)baseCounts[i];
-									if (!baseCoverageHist.containsKey(bc)) {
-										baseCoverageHist.put(bc, (long)0);
-									}
-									baseCoverageHist.put(bc,baseCoverageHist.get(bc) + 1);
-									//baseCoverage.add((short)baseCounts[i]);
+									coverageHist.count(baseCounts[i]);
 									counts[index++] = baseCounts[i];
 									if (baseCounts[i] >= minimumCounts) numPass++;
 								}
@@ -549,6 +554,7 @@ public class Sam2USeq {
 					SliceInfo sliceInfo = new SliceInfo(chromData.chromosome, chromData.strand,0,0,0,null);
 					PositionScoreData psd = new PositionScoreData (positions, sliceInfo);
 					psd.sliceWritePositionScoreData(rowChunkSize, tempDirectory, files2Zip);
+					addZoomSummaries(positions);
 
 				}
 				//do they want relative read coverage graphs and good block counts?
@@ -564,6 +570,7 @@ public class Sam2USeq {
 					SliceInfo sliceInfo = new SliceInfo(chromData.chromosome, chromData.strand,0,0,0,null);
 					PositionScoreData psd = new PositionScoreData (positions, sliceInfo);
 					psd.sliceWritePositionScoreData(rowChunkSize, tempDirectory, files2Zip);
+					addZoomSummaries(positions);
 				}
 
 				else {
@@ -574,6 +581,7 @@ public class Sam2USeq {
 					SliceInfo sliceInfo = new SliceInfo(chromData.chromosome, chromData.strand,0,0,0,null);
 					PositionScoreData psd = new PositionScoreData (positions, sliceInfo);
 					psd.sliceWritePositionScoreData(rowChunkSize, tempDirectory, files2Zip);
+					addZoomSummaries(positions);
 
 					if (minimumCounts !=0) {
 						makeGoodBlocks(firstBase, baseCounts, chromData.chromosome, chromData.strand);
@@ -835,6 +843,7 @@ public class Sam2USeq {
 					case 'j': jsonOutputFile = new File(args[++i]); break;
 					case 'z': flipStrandSecondRead = true; break;
 					case 'y': includeNs = true; break;
+					case 'u': makeZoomSummaries = true; break;
 					case 'w': ++i; break;
 					case 'h': printDocs(); System.exit(0);
 					default: Misc.printExit("\nProblem, unknown option! " + mat.group());
@@ -881,7 +890,7 @@ public class Sam2USeq {
 				}
 			}*/
 
-			histogram = new Histogram(0, maximumCoverageCalculated, (int)maximumCoverageCalculated);
+			coverageHist = new DepthHistogram();
 			//watch out for stranded analysis
 			if (stranded) {
 				for (String s : regions.keySet()){ 
@@ -994,24 +1003,24 @@ public class Sam2USeq {
 				System.setOut(new PrintStream(new BufferedOutputStream(new FileOutputStream(logFile))));		
 			}
 			System.out.println("\nInterrogated region read depth coverage statistics");
-			long[] counts = histogram.getBinCounts();
-			double total = histogram.getTotalBinCounts();
+			coverageSummary = coverageHist.summarize();
+			double total = coverageSummary.getTotal();
+			int numberBins = (int)maximumCoverageCalculated;
 
 			System.out.println("BaseCoverage\tObservedBasesWithGivenCoverage\tFractionObserved\tFractionObservedWithGivenOrMoreCoverage");
-			double numCounts = 0;
-			for (int i=0; i< counts.length; i++){
-				double fract = (double)counts[i] / total;
-				double cumFrac = (total-numCounts)/ total;
-				System.out.println(i+"\t"+counts[i]+"\t"+ Num.formatNumber(fract, 3) +"\t"+Num.formatNumber(cumFrac, 3));
+			for (int i=0; i< numberBins; i++){
+				long count = coverageSummary.getCount(i);
+				double fract = (double)count / total;
+				double cumFrac = coverageSummary.getFractionAtOrAbove(i);
+				System.out.println(i+"\t"+count+"\t"+ Num.formatNumber(fract, 3) +"\t"+Num.formatNumber(cumFrac, 3));
 				//save for json
 				fractionTargetBpsAL.add(cumFrac);
-				numCounts += counts[i];
-				if (numCounts == total) break;
+				if (coverageSummary.getNumberAtOrAbove(i+1) == 0) break;
 			}
 			System.out.println("\nTotal interrogated bases\t"+ total);
 
 			//print summary stats
-			System.out.println("Mean Coverage\t"+histogram.getStandardDeviation().getMean()+"\nMedian Coverage\t"+this.calcHistMedian()+"\nMinimum\t"+calcHistMin()+"\nMaximum\t"+calcHistMax());
+			System.out.println("Mean Coverage\t"+coverageSummary.getMean()+"\nMedian Coverage\t"+coverageSummary.getMedian()+"\nMinimum\t"+coverageSummary.getMinimum()+"\nMaximum\t"+coverageSummary.getMaximum());
 
 			if (logFile != null){
 				System.out.close();
@@ -1025,65 +1034,11 @@ public class Sam2USeq {
 
 	}
 
-	private long calcHistMin() {
-		return Collections.min(this.baseCoverageHist.keySet());
-	}
-
-	private long calcHistMax() {
-		return Collections.max(this.baseCoverageHist.keySet());
-	}
-
-	private double calcHistMedian() {
-		int totalPositions = 0;
-		for (long i: this.baseCoverageHist.values()) {
-			totalPositions += i;
-		}
-		int midPosition = totalPositions / 2; 
-		ArrayList<Long> keySet = new ArrayList<Long>();
-		keySet.addAll(this.baseCoverageHist.keySet());
-		Collections.sort(keySet);
-		double median = 0;
-		if (totalPositions % 2 == 1) {
-			long count = 0;
-			for (Long key: keySet) {
-				long elements = this.baseCoverageHist.get(key);
-				if (midPosition > count && midPosition < count+elements) {
-					median = key;
-					break;
-				}
-				count += elements;
-			}
-		} else {
-			long count = 0;
-			long e1 = 0;
-			long e2 = 0;
-			boolean e1found = false;
-			boolean e2found = false;
-			for (long key: keySet) {
-				long elements = this.baseCoverageHist.get(key);
-				if (!e1found && (midPosition > count) && (midPosition < (count+elements))) {
-					e1 = key;
-					e1found = true;
-				} 
-				if (!e2found && ((midPosition+1) > count) && ((midPosition+1) < (count + elements))) {
-					e2 = key;
-					e2found = true;
-				}
-				if (e1found && e2found) {
-					break;
-				}
-				count += elements;
-			}
-			median = (e1 + e2) / 2.0;
-		}
-		return median;
-	}
-
 
 	public static void printDocs(){
 		System.out.println("\n" +
 				"**************************************************************************************\n" +
-				"**                                Sam 2 USeq : April 2019                           **\n" +
+				"**                                Sam 2 USeq : Oct 2026                             **\n" +
 				"**************************************************************************************\n" +
 				"Generates per base read depth stair-step graph files for genome browser visualization.\n" +
 				"By default, values are scaled per million mapped reads with no score thresholding. Can\n" +
@@ -1123,6 +1078,8 @@ public class Sam2USeq {
 				"-j Write summary stats in json format to this file, requires -b and -c.\n"+
 				"-y Include CIGAR Ns in read coverage, defaults to just M values.\n"+
 				"-z Flip the strand of the 2nd of pair alignments.\n"+
+				"-u Save zoom summaries of the graph in xxx.useq.zoom beside the archive for fast\n"+
+				"      whole chromosome views.\n"+
 				"-w Path to a config txt file for setting the above.\n"+
 				
 
@@ -5,8 +5,6 @@ import java.util.regex.*;
 import util.bio.annotation.Bed;
 import util.gen.*;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.SamReader;
 import htsjdk.samtools.SamReaderFactory;
@@ -104,10 +102,7 @@ public class SamAlignmentDepthMatcher{
 		for (int i=0; i< loaders.length; i++) loaders[i] = new SamAlignmentDepthLoader(i, chunks[i], this);
 
 		//load mpileup data
-		ExecutorService executor = Executors.newFixedThreadPool(numberThreads);
-		for (SamAlignmentDepthLoader l: loaders) executor.execute(l);
-		executor.shutdown();
-		while (!executor.isTerminated()) {}
+		ParallelRunner.runAll(loaders, numberThreads);
 
 		//check loaders and fetch gzipped sams
 		for (SamAlignmentDepthLoader l: loaders) {
@@ -4,16 +4,19 @@ import java.io.*;
 import java.util.regex.*;
 import util.gen.*;
 import java.util.*;
+import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.SamReader;
 import htsjdk.samtools.SamReaderFactory;
 import htsjdk.samtools.SAMRecord;
 import htsjdk.samtools.SAMRecordIterator;
 import htsjdk.samtools.ValidationStringency;
+import edu.utah.seq.data.sam.ParallelBamWriter;
 import edu.utah.seq.data.sam.PicardSortSam;
-import edu.utah.seq.data.sam.SamAlignment;
 
-/**
- * @author david.nix@hci.utah.edu 
+/**Subsamples alignments by a seeded hash of their read name so mates are kept or dropped together. A fraction takes one
+ * pass. An exact number takes two, the first counts the passing alignments in each hash bucket, the second writes the
+ * buckets below the cut plus enough whole read names from the cut bucket.
+ * @author david.nix@hci.utah.edu
  **/
 public class SamSubsampler{
 	//user defined fields
@@ -24,17 +27,20 @@ public class SamSubsampler{
 	private String adapter = "chrAdapt";
 	private String phiX = "chrPhiX";
 	private String lambda = "chrLamb";
-	private int numberOfAlignmentsToPrint = 0;
+	private long numberOfAlignmentsToPrint = 0;
 	private double fractionAlignmentsToPrint = 0;
 	private boolean sortFinal = false;
 	private boolean applyFilters = true;
 	private boolean verbose = true;
+	private long seed = 0;
+	private boolean fromTop = false;
+	private int numberThreads = Runtime.getRuntime().availableProcessors();
 
 	//internal fields
-	private Gzipper[] gzippers = null;
-	private Random random = new Random();
-	private int numberChunks = 100;
-	private String samHeader;
+	private SAMFileHeader header = null;
+	private long[] bucketCounts = null;
+	private static final int BUCKET_SHIFT = 43;
+	private static final int NUMBER_BUCKETS = 1 << (63 - BUCKET_SHIFT);
 
 	//alignment counts for sam files
 	private long numberAlignmentsFailingQualityScore = 0;
@@ -49,289 +55,258 @@ public class SamSubsampler{
 	//constructors
 	public SamSubsampler(String[] args){
 		long startTime = System.currentTimeMillis();
-		
+
 		processArgs(args);
-		doWork();
-		
-		//write out final
-		long toSave = numberPassingAlignments;
-		File f = new File (saveDirectory, "randomized"+toSave+".sam.gz");
-		if (fractionAlignmentsToPrint != 0) numberOfAlignmentsToPrint = (int)Math.round(fractionAlignmentsToPrint * (double) numberPassingAlignments); 
-		printRandomAlignments(toSave, f);
+		File temp = new File (saveDirectory, "subsampled.temp.bam");
+		long numberWritten = 0;
+		if (numberOfAlignmentsToPrint != 0){
+			doWork();
+			if (numberOfAlignmentsToPrint > numberPassingAlignments) Misc.printErrAndExit("\nERROR: The number of passing alignments, "+numberPassingAlignments+", is less than the requested number to save!\n");
+			numberWritten = printRandomAlignments(numberOfAlignmentsToPrint, temp);
+		}
+		else {
+			if (verbose) System.out.println("Filtering and subsampling alignments...");
+			double fraction = fractionAlignmentsToPrint == 0 ? 1 : fractionAlignmentsToPrint;
+			numberWritten = subsample(hashThreshold(fraction), -1, 0, temp);
+			printStats();
+		}
+		if (verbose) System.out.println(numberWritten +"\tAlignments written");
+
+		//sort and index?
+		File bam = new File (saveDirectory, "subsampled"+numberWritten+".bam");
+		if (sortFinal){
+			if (verbose) System.out.println("Sorting and indexing...");
+			new PicardSortSam (temp, bam, true);
+			temp.delete();
+		}
+		else temp.renameTo(bam);
 
 		//finish and calc run time
 		double diffTime = ((double)(System.currentTimeMillis() -startTime))/(1000*60);
 		if (verbose) System.out.println("\nDone! "+Math.round(diffTime)+" min\n");
 	}
 
-
-
-
-
-	private void doWork() {
-		if (verbose) System.out.println("Filtering and splitting alignments into "+numberChunks+" chunks...");
-
-		//make Gzippers
-		makeGzippers();
-
-		//for each file, filter, split into numberChunks chunks
-		for (int i=0; i< samFiles.length; i++){
-			if (verbose) System.out.print("\t"+samFiles[i]);
-			if (parseWorkingSAMFile(samFiles[i]) == false) Misc.printExit("\n\tError: failed to parse, aborting.\n");
-		}
-
-		//close Gzippers
-		closeGzippers();
-
-		//Alignment filtering stats
-		if (verbose){
-			double total = numberAlignmentsFailingQualityScore + numberAlignmentsFailingAlignmentScore + numberControlAlignments + numberAlignmentsFailingQC + numberAlignmentsUnmapped + numberPassingAlignments;
-			System.out.println("\nFiltering statistics for "+(int)total+" alignments:");
-			System.out.println(numberAlignmentsFailingQualityScore +"\tFailed mapping quality score ("+minimumPosteriorProbability+")");
-			System.out.println(numberAlignmentsFailingAlignmentScore +"\tFailed alignment score ("+maximumAlignmentScore+")");
-			System.out.println(numberControlAlignments +"\tAligned to chrPhiX*, chrAdapt*, or chrLamb*");
-			System.out.println(numberAlignmentsFailingQC +"\tFailed vendor QC");
-			System.out.println(numberAlignmentsUnmapped +"\tAre unmapped\n");
-			System.out.println(numberPassingAlignments +"\tPassed filters ("+Num.formatPercentOneFraction(((double)numberPassingAlignments)/ total)+")");
-		}
-		
-		//randomize each
-		randomizeChunks();
-
-		//ok now ready to write out
+	/**For subsampling a bam without filters, call printRandomAlignments() for each number to save.*/
+	public SamSubsampler(File bam, boolean verbose) {
+		this(bam, verbose, false);
 	}
 
-
-
-
-
-	public SamSubsampler(File bam, boolean verbose) {
+	/**Set fromTop to pick read names from the highest hash down. Its subsamples then never share a name with those of a 
+	 * default subsampler on a bam with the same names unless together they ask for more than all of them.*/
+	public SamSubsampler(File bam, boolean verbose, boolean fromTop) {
 		this.verbose = verbose;
+		this.fromTop = fromTop;
 		applyFilters = false;
 		sortFinal = false;
 		samFiles = new File[]{bam};
 		doWork();
-		//now call printRandomAlignments()
 	}
 
+	/**Counts the passing alignments in each hash bucket.*/
+	private void doWork() {
+		if (verbose) System.out.println("Filtering and counting alignments...");
+		bucketCounts = new long[NUMBER_BUCKETS];
+		resetCounts();
+		for (File f: samFiles){
+			if (verbose) System.out.print("\t"+f);
+			try {
+				SamReader reader = SamReaderFactory.makeDefault().validationStringency(ValidationStringency.SILENT).open(f);
+				if (header == null) header = reader.getFileHeader();
+				SAMRecordIterator it = reader.iterator();
+				int counter = 0;
+				while (it.hasNext()){
+					SAMRecord sam = it.next();
+					if (++counter == 1000000){
+						if (verbose) System.out.print(".");
+						counter = 0;
+					}
+					if (passFilters(sam) == false) continue;
+					bucketCounts[(int)(fetchHash(sam.getReadName()) >>> BUCKET_SHIFT)]++;
+				}
+				it.close();
+				reader.close();
+				if (verbose) System.out.println();
+			} catch (Exception e){
+				e.printStackTrace();
+				Misc.printErrAndExit("\nError: failed to parse "+f+", aborting.\n");
+			}
+		}
+		printStats();
+	}
 
+	/**Writes a bam with toSave alignments, or all of the passing ones if there are fewer, returns the number written.
+	 * Mates are never split so a pair that would overshoot is skipped and the count may fall short by a few when the
+	 * read names in the cut bucket can't add up to toSave.*/
+	public long printRandomAlignments(long toSave, File outputBamFile) {
+		if (toSave >= numberPassingAlignments) return subsample(Long.MAX_VALUE, -1, 0, outputBamFile);
+		//find the bucket holding the cut
+		long sum = 0;
+		int cut = 0;
+		while (sum + bucketCounts[cut] <= toSave) sum+= bucketCounts[cut++];
+		return subsample(((long)cut) << BUCKET_SHIFT, cut, toSave - sum, outputBamFile);
+	}
 
-	
-
-	public void printRandomAlignments(long toSave, File outputGzSamFile) {
+	/**Writes the passing alignments whose name hash is below the threshold, then up to numberFromCut alignments from the
+	 * cut bucket, whole read names in hash order.
+	 * @param cutBucket -1 for none
+	 * @return the number written*/
+	private long subsample(long threshold, int cutBucket, long numberFromCut, File outputBamFile){
+		resetCounts();
+		ArrayList<HashedRecord> cutRecords = new ArrayList<HashedRecord>();
+		ParallelBamWriter out = null;
 		try {
-			//do they want a diff number than all?
-			if (numberOfAlignmentsToPrint != 0){
-				//too many requested
-				if (numberOfAlignmentsToPrint> numberPassingAlignments){
-					Misc.printErrAndExit("\nERROR: The number of passing alignments is less than the requested number to save!  Saving only "+numberPassingAlignments+" alignments.\n");
+			for (File f: samFiles){
+				if (verbose) System.out.print("\t"+f);
+				SamReader reader = SamReaderFactory.makeDefault().validationStringency(ValidationStringency.SILENT).open(f);
+				if (out == null){
+					if (header == null) header = reader.getFileHeader();
+					//the cut records are added at the end and multiple files are concatenated
+					if (cutBucket != -1 || samFiles.length > 1) header.setSortOrder(SAMFileHeader.SortOrder.unsorted);
+					out = new ParallelBamWriter(header, outputBamFile, numberThreads);
 				}
-				else toSave = numberOfAlignmentsToPrint;
-			}
-			//make readers
-			BufferedReader[] readers = new BufferedReader[numberChunks];
-			for (int i=0; i<readers.length; i++) readers[i] = IO.fetchBufferedReader(gzippers[i].getGzipFile());
-
-			if (verbose) System.out.println("Writing randomized alignments...");
-			
-
-			Gzipper out = new Gzipper(outputGzSamFile);
-			out.println(samHeader);
-
-			for (int i=0; i< toSave; i++){
-				//pick random reader
-				while (true){
-					int num = random.nextInt(readers.length);
-					BufferedReader test = readers[num];
-					String line = test.readLine();
-					if (line == null){
-						//close old
-						test.close();
-						//remove it from the readers
-						BufferedReader[] newReaders = new BufferedReader[readers.length -1];
-						for (int j=0; j< num; j++) newReaders[j] = readers[j];
-						for (int j=num+1; j< readers.length; j++) newReaders[j-1] = readers[j];
-						readers = newReaders;
-					}
-					else {
-						out.println(line);
-						break;
+				SAMRecordIterator it = reader.iterator();
+				int counter = 0;
+				while (it.hasNext()){
+					SAMRecord sam = it.next();
+					if (++counter == 1000000){
+						if (verbose) System.out.print(".");
+						counter = 0;
 					}
+					if (passFilters(sam) == false) continue;
+					long hash = fetchHash(sam.getReadName());
+					if (samFiles.length > 1) sam.setHeader(header);
+					if (hash < threshold) out.addAlignment(sam);
+					else if (cutBucket != -1 && (hash >>> BUCKET_SHIFT) == cutBucket) cutRecords.add(new HashedRecord(hash, sam));
 				}
+				it.close();
+				reader.close();
+				if (verbose) System.out.println();
 			}
 
-			//close final sam
-			out.close();
-
-			//close readers
-			for (int i=0; i<readers.length; i++) if (readers[i]!= null) readers[i].close();
-
-			//sort and write bam?
-			if (sortFinal){
-				if (verbose) System.out.println("Sorting and indexing...");
-				File bam = new File (saveDirectory, "randomized"+toSave+".bam");
-				//sort and convert to BAM
-				new PicardSortSam (outputGzSamFile, bam, true);
-				outputGzSamFile.delete();
+			//add whole names from the cut bucket
+			Collections.sort(cutRecords);
+			long added = 0;
+			int i = 0;
+			while (i < cutRecords.size() && added < numberFromCut){
+				int j = i + 1;
+				while (j < cutRecords.size() && cutRecords.get(j).sameName(cutRecords.get(i))) j++;
+				if (added + j - i <= numberFromCut){
+					for (int x = i; x < j; x++) out.addAlignment(cutRecords.get(x).sam);
+					added += j - i;
+				}
+				i = j;
 			}
-
-		} catch (Exception e) {
+			out.close();
+		} catch (Exception e){
 			e.printStackTrace();
-			Misc.printErrAndExit("\nError: problem writing final merged sam file\n");
-		} 
+			Misc.printErrAndExit("\nError: problem writing the subsampled bam "+outputBamFile+"\n");
+		}
+		return out.getNumberWritten();
 	}
 
-
-
-
-
-	private void randomizeChunks() {
-		try {
-			if (verbose) System.out.print("\nRandomizing chunks");
-			for (int i=0; i< numberChunks; i++){
-				if (verbose) System.out.print(".");
-				//load chunk
-				File ori = gzippers[i].getGzipFile();
-				String[] lines = IO.loadFile(ori);
-				//randomize and print
-				Misc.randomize(lines, System.currentTimeMillis());
-				File rnd = new File(ori.getParentFile(), i+"rand.sam.gz");
-				rnd.deleteOnExit();
-				gzippers[i] = new Gzipper(rnd);
-				gzippers[i].println(lines);
-				gzippers[i].close();
-				//delete temp file
-				ori.delete();
+	/**Returns false and counts the reason if the alignment fails a filter, otherwise counts it as passing.*/
+	private boolean passFilters(SAMRecord sam){
+		if (applyFilters){
+			//is it aligned?
+			if (sam.getReadUnmappedFlag()) {
+				numberAlignmentsUnmapped++;
+				return false;
 			}
-			if (verbose) System.out.println();
-		} catch (Exception e) {
-			e.printStackTrace();
-			Misc.printErrAndExit("\nError writting randomized chunk.\n");
-		} 
-	}
-
-
 
+			//does it pass the vendor qc?
+			if (sam.getReadFailsVendorQualityCheckFlag()) {
+				numberAlignmentsFailingQC++;
+				return false;
+			}
 
+			//skip phiX, adapter, lambda
+			String chr = sam.getReferenceName();
+			if (chr.startsWith(phiX) || chr.startsWith(adapter) || chr.startsWith(lambda)) {
+				numberControlAlignments++;
+				return false;
+			}
 
-	private void makeGzippers() {
-		try {
-			gzippers = new Gzipper[numberChunks];
-			File tempDir = new File (saveDirectory, "TempFiles");
-			tempDir.mkdirs();
-			tempDir.deleteOnExit();
-			for (int i=0; i< gzippers.length; i++) {
-				File t = new File (tempDir, i+"_temp.sam.gz");
-				t.deleteOnExit();
-				gzippers[i] = new Gzipper(t);
+			//does it pass the scores threshold?
+			Integer as = sam.getIntegerAttribute("AS");
+			if (as != null && as > maximumAlignmentScore) {
+				numberAlignmentsFailingAlignmentScore++;
+				return false;
 			}
-		} catch (Exception e) {
-			e.printStackTrace();
-			Misc.printErrAndExit("\nProblem making temporary gzippers\n");
-		} 
+			if (sam.getMappingQuality() < minimumPosteriorProbability) {
+				numberAlignmentsFailingQualityScore++;
+				return false;
+			}
+		}
+		numberPassingAlignments++;
+		return true;
 	}
 
-	private void closeGzippers() {
-		try {
-			for (int i=0; i< gzippers.length; i++) gzippers[i].close();
-		} catch (Exception e) {
-			e.printStackTrace();
-			Misc.printErrAndExit("\nProblem closing temporary gzippers\n");
-		} 
+	private void resetCounts(){
+		numberAlignmentsFailingQualityScore = 0;
+		numberAlignmentsFailingAlignmentScore = 0;
+		numberControlAlignments = 0;
+		numberAlignmentsFailingQC = 0;
+		numberAlignmentsUnmapped = 0;
+		numberPassingAlignments = 0;
 	}
 
-	private Gzipper fetchRandomGzipper(){
-		int randInt = random.nextInt(numberChunks);
-		return gzippers[randInt];
+	private void printStats(){
+		if (verbose == false) return;
+		double total = numberAlignmentsFailingQualityScore + numberAlignmentsFailingAlignmentScore + numberControlAlignments + numberAlignmentsFailingQC + numberAlignmentsUnmapped + numberPassingAlignments;
+		System.out.println("\nFiltering statistics for "+(long)total+" alignments:");
+		System.out.println(numberAlignmentsFailingQualityScore +"\tFailed mapping quality score ("+minimumPosteriorProbability+")");
+		System.out.println(numberAlignmentsFailingAlignmentScore +"\tFailed alignment score ("+maximumAlignmentScore+")");
+		System.out.println(numberControlAlignments +"\tAligned to chrPhiX*, chrAdapt*, or chrLamb*");
+		System.out.println(numberAlignmentsFailingQC +"\tFailed vendor QC");
+		System.out.println(numberAlignmentsUnmapped +"\tAre unmapped\n");
+		System.out.println(numberPassingAlignments +"\tPassed filters ("+Num.formatPercentOneFraction(((double)numberPassingAlignments)/ total)+")");
 	}
 
-
-
-
-
-	public boolean parseWorkingSAMFile(File workingFile){
-		try{
-			//make reader
-			SamReader reader = SamReaderFactory.makeDefault().validationStringency(ValidationStringency.SILENT).open(workingFile);
-			SAMRecordIterator iterator = reader.iterator();
-			if (samHeader == null) samHeader = reader.getFileHeader().getSAMString().trim();
-
-			int counter =0;
-			int numBadLines = 0;
-			//for each record
-			while (iterator.hasNext()){
-				SAMRecord samRecord = iterator.next();
-
-				//print status blip
-				if (++counter == 1000000){
-					if (verbose) System.out.print(".");
-					counter = 0;
-				}
-
-				//this is a bit inefficient but gives absolute control on the sam data
-				SamAlignment sa;
-				String samLine = samRecord.getSAMString().trim();
-				try {
-					sa = new SamAlignment(samLine, false);
-				} catch (Exception e) {
-					if (verbose) System.out.println("\nSkipping malformed sam alignment ->\n"+samRecord.getSAMString()+"\n"+e.getMessage());
-					if (numBadLines++ > 1000) Misc.printErrAndExit("\nAboring: too many malformed SAM alignments.\n");
-					continue;
-				}
-
-				if (applyFilters){
-					//is it aligned?
-					if (sa.isUnmapped()) {
-						numberAlignmentsUnmapped++;
-						continue;
-					}
-
-					//does it pass the vendor qc?
-					if (sa.failedQC()) {
-						numberAlignmentsFailingQC++;
-						continue;
-					}
-
-					//skip phiX, adapter, lambda
-					String chr = sa.getReferenceSequence();
-					if (chr.startsWith(phiX) || chr.startsWith(adapter) || chr.startsWith(lambda)) {
-						numberControlAlignments++;
-						continue;
-					}
-
-					//does it pass the scores threshold?
-					if (sa.getAlignmentScore() > maximumAlignmentScore) {
-						numberAlignmentsFailingAlignmentScore++;
-						continue;
-					}
-					if (sa.getMappingQuality() < minimumPosteriorProbability) {
-						numberAlignmentsFailingQualityScore++;
-						continue;
-					}
-				}
-
-				//increment counter
-				numberPassingAlignments++;
-
-				//save it to a random gzipper
-				fetchRandomGzipper().println(samLine);
-
-			}
-			reader.close();
-			if (verbose) System.out.println();
-		} catch (Exception e){
-			System.err.println("\nError parsing Novoalign file or writing split binary chromosome files.\nToo many open files? Too many chromosomes? " +
-					"If so then login as root and set the default higher using the ulimit command (e.g. ulimit -n 10000)\n");
-			e.printStackTrace();
-			return false;
+	/**Returns a 63 bit hash of the read name, the same for both mates and for the same seed from run to run.*/
+	public static long hashName(String readName, long seed){
+		long h = seed ^ 0x9E3779B97F4A7C15L;
+		for (int i=0; i< readName.length(); i++){
+			h ^= readName.charAt(i);
+			h *= 0x100000001B3L;
 		}
-		return true;
+		//murmur3 finalizer to spread the bits
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h >>> 1;
 	}
 
+	/**The name hash, flipped when picking from the top.*/
+	private long fetchHash(String readName){
+		long hash = hashName(readName, seed);
+		if (fromTop) return Long.MAX_VALUE - hash;
+		return hash;
+	}
 
+	/**Names hashing below this are kept, about the fraction of them.*/
+	private static long hashThreshold(double fraction){
+		if (fraction >= 1) return Long.MAX_VALUE;
+		return (long)(fraction * Long.MAX_VALUE);
+	}
 
+	private static class HashedRecord implements Comparable<HashedRecord>{
+		long hash;
+		SAMRecord sam;
 
-
+		HashedRecord(long hash, SAMRecord sam){
+			this.hash = hash;
+			this.sam = sam;
+		}
+		boolean sameName(HashedRecord other){
+			return hash == other.hash && sam.getReadName().equals(other.sam.getReadName());
+		}
+		public int compareTo(HashedRecord other){
+			if (hash != other.hash) return hash < other.hash ? -1 : 1;
+			return sam.getReadName().compareTo(other.sam.getReadName());
+		}
+	}
 
 	public static void main(String[] args) {
 		if (args.length ==0){
@@ -339,7 +314,7 @@ public class SamSubsampler{
 			System.exit(0);
 		}
 		new SamSubsampler(args);
-	}		
+	}
 
 	/**This method will process each argument and assign new varibles*/
 	public void processArgs(String[] args){
@@ -357,8 +332,10 @@ public class SamSubsampler{
 					case 'r': saveDirectory = new File(args[++i]); saveDirectory.mkdir(); break;
 					case 'x': maximumAlignmentScore = Float.parseFloat(args[++i]); break;
 					case 'q': minimumPosteriorProbability = Float.parseFloat(args[++i]); break;
-					case 'n': numberOfAlignmentsToPrint = Integer.parseInt(args[++i]); break;
+					case 'n': numberOfAlignmentsToPrint = Long.parseLong(args[++i]); break;
 					case 'f': fractionAlignmentsToPrint = Double.parseDouble(args[++i]); break;
+					case 'e': seed = Long.parseLong(args[++i]); break;
+					case 't': numberThreads = Integer.parseInt(args[++i]); break;
 					case 's': sortFinal = true; break;
 					case 'b': applyFilters = false; break;
 					case 'h': printDocs(); System.exit(0);
@@ -380,14 +357,20 @@ public class SamSubsampler{
 
 		if (samFiles == null || samFiles.length ==0 || samFiles[0].canRead() == false) Misc.printErrAndExit("\nError: cannot find your alignment file(s)!\n");
 		if (saveDirectory == null || saveDirectory.isDirectory() == false) Misc.printErrAndExit("\nPlease enter a directory to use in saving your results.\n");
-	}	
+		if (numberOfAlignmentsToPrint < 0 || fractionAlignmentsToPrint < 0 || fractionAlignmentsToPrint > 1) Misc.printErrAndExit("\nError: the number and fraction of alignments to keep must be positive and the fraction no more than 1.\n");
+		if (numberOfAlignmentsToPrint != 0 && fractionAlignmentsToPrint != 0) Misc.printErrAndExit("\nError: enter either a number (-n) or a fraction (-f) of alignments to keep, not both.\n");
+	}
 
 	public static void printDocs(){
 		System.out.println("\n" +
 				"**************************************************************************************\n" +
-				"**                              SamSubsampler: June 2016                            **\n" +
+				"**                              SamSubsampler: Oct 2026                             **\n" +
 				"**************************************************************************************\n" +
-				"Filters, randomizes, subsamples and sorts sam/bam alignments, doesn't keep pairs.\n" +
+				"Filters and subsamples sam/bam alignments, keeping or dropping all of the alignments\n" +
+				"with the same read name together so pairs aren't split. Reads are picked by a seeded\n" +
+				"hash of their name so the same seed gives the same subsample. A fraction is taken in\n" +
+				"one pass, an exact number in two. Alignments are written in input order to a bam\n" +
+				"named subsampledxxx.bam, xxx is the number written.\n" +
 
 				"\nOptions:\n"+
 				"-a Alignment file or directory containing SAM/BAM (xxx.sam(.zip/.gz OK) or xxx.bam).\n" +
@@ -395,16 +378,19 @@ public class SamSubsampler{
 				"-r Results directory.\n"+
 
 				"\nDefault Options:\n"+
-				"-n Number of alignments to print, defaults to all passing thresholds.\n"+
+				"-n Number of alignments to print, defaults to all passing thresholds. A few less may\n"+
+				"      be printed when a pair would overshoot the number.\n"+
 				"-f Fraction alignments to keep, defaults to 1.\n"+
+				"-e Seed for the read name hash, defaults to 0.\n"+
+				"-t Number of threads for compressing the bam, defaults to all.\n"+
 				"-s Sort and index output alignments.\n"+
 				"-x Maximum alignment score. Defaults to 300, smaller numbers are more stringent.\n"+
 				"-q Minimum mapping quality score. Defaults to 13, bigger numbers are more stringent.\n" +
 				"      For RNASeq data, set this to 0.\n" +
 				"-b Bypass all filters and thresholds.\n"+
 
-				"\nExample: java -Xmx25G -jar pathToUSeq/Apps/SamSubsampler -x 240 -q 20 -a\n" +
-				"      /Novo/Run7/ -s /Novo/Run7/SR -f 0.05 \n\n" +
+				"\nExample: java -Xmx4G -jar pathToUSeq/Apps/SamSubsampler -x 240 -q 20 -a\n" +
+				"      /Novo/Run7/ -r /Novo/Run7/SR -f 0.05 -e 7 -s\n\n" +
 
 
 				"**************************************************************************************\n");
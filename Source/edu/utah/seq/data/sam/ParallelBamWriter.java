@@ -0,0 +1,63 @@
+package edu.utah.seq.data.sam;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+import htsjdk.samtools.BAMRecordCodec;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.SAMTextHeaderCodec;
+import htsjdk.samtools.util.BinaryCodec;
+import util.gen.ParallelBgzfOutputStream;
+
+/**Writes SAMRecords to a bam file in the order given, deflating the BGZF blocks in parallel. No index is made, sort and
+ * index with PicardSortSam if needed. Not thread safe.
+ * @author david.nix@hci.utah.edu*/
+public class ParallelBamWriter {
+
+	//fields
+	private SAMFileHeader header;
+	private ParallelBgzfOutputStream out;
+	private BAMRecordCodec codec;
+	private long numberWritten = 0;
+
+	public ParallelBamWriter(SAMFileHeader header, File bam, int numberThreads) throws IOException{
+		this.header = header;
+		out = new ParallelBgzfOutputStream(bam, numberThreads);
+		writeHeader();
+		codec = new BAMRecordCodec(header);
+		codec.setOutputStream(out, bam.toString());
+	}
+
+	private void writeHeader(){
+		StringWriter sw = new StringWriter();
+		new SAMTextHeaderCodec().encode(sw, header);
+		byte[] text = sw.toString().getBytes(StandardCharsets.UTF_8);
+		BinaryCodec bc = new BinaryCodec(out);
+		bc.writeBytes("BAM\1".getBytes(StandardCharsets.US_ASCII));
+		bc.writeInt(text.length);
+		bc.writeBytes(text);
+		bc.writeInt(header.getSequenceDictionary().size());
+		for (SAMSequenceRecord ssr: header.getSequenceDictionary().getSequences()){
+			bc.writeString(ssr.getSequenceName(), true, true);
+			bc.writeInt(ssr.getSequenceLength());
+		}
+	}
+
+	/**Adds the record, its reference must be in the header given to the constructor.*/
+	public void addAlignment(SAMRecord sam){
+		codec.encode(sam);
+		numberWritten++;
+	}
+
+	public void close() throws IOException{
+		out.close();
+	}
+
+	public long getNumberWritten() {
+		return numberWritten;
+	}
+}
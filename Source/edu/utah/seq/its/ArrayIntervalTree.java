@@ -0,0 +1,279 @@
+package edu.utah.seq.its;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**Memory compact interval tree held in primitive arrays, an implicit augmented binary tree over the intervals sorted by
+ * start (the cgranges layout). Node i of level k sits at the sorted index with its k lowest bits set to 1, its children
+ * are i -/+ 2^(k-1), and maxStops[i] holds the largest stop in its subtree. No node objects are made so a tree of n
+ * intervals takes 16 bytes per interval plus the values.
+ *
+ * Uses interbase coordinates, start included stop not, same as IntervalTree: an interval intersects a query if
+ * start < queryStop and stop > queryStart. Hits are reported as the index of the interval in the arrays given to the
+ * constructor, in order of their starts. Searches don't modify the tree so one may be shared between threads.
+ * @author david.nix@hci.utah.edu*/
+public class ArrayIntervalTree<T> {
+
+	//fields
+	private int size;
+	private int rootLevel;
+	private int[] starts;
+	private int[] stops;
+	private int[] maxStops;
+	private int[] indexes;
+	private T[] values;
+
+	public static final int MAGIC = 0x41495431;
+	/**Subtrees at or below this level are scanned rather than walked.*/
+	private static final int SCAN_LEVEL = 3;
+
+	/**Called for each intersecting interval.*/
+	public interface HitListener {
+		public void hit(int index);
+	}
+
+	/**@param starts interbase starts, sorted input skips the sort
+	 * @param stops stops, not included
+	 * @param values parallel to the starts, may be null, the arrays aren't modified*/
+	public ArrayIntervalTree(int[] starts, int[] stops, T[] values){
+		if (starts.length != stops.length || (values != null && values.length != starts.length)) throw new IllegalArgumentException("The starts, stops and values must be the same length.");
+		size = starts.length;
+		this.values = values;
+		this.starts = new int[size];
+		this.stops = new int[size];
+		indexes = new int[size];
+
+		//sorted?
+		boolean sorted = true;
+		for (int i=1; i< size; i++){
+			if (starts[i] < starts[i-1]) {
+				sorted = false;
+				break;
+			}
+		}
+		if (sorted){
+			System.arraycopy(starts, 0, this.starts, 0, size);
+			System.arraycopy(stops, 0, this.stops, 0, size);
+			for (int i=0; i< size; i++) indexes[i] = i;
+		}
+		else {
+			//sort start index pairs as longs
+			long[] keys = new long[size];
+			for (int i=0; i< size; i++) keys[i] = (((long)starts[i]) << 32) | i;
+			Arrays.sort(keys);
+			for (int i=0; i< size; i++){
+				int index = (int)keys[i];
+				indexes[i] = index;
+				this.starts[i] = starts[index];
+				this.stops[i] = stops[index];
+			}
+		}
+		maxStops = new int[size];
+		rootLevel = index();
+	}
+
+	private ArrayIntervalTree(int rootLevel, int[] starts, int[] stops, int[] maxStops, int[] indexes, T[] values){
+		size = starts.length;
+		this.rootLevel = rootLevel;
+		this.starts = starts;
+		this.stops = stops;
+		this.maxStops = maxStops;
+		this.indexes = indexes;
+		this.values = values;
+	}
+
+	/**Sets the maxStops bottom up and returns the level of the root, -1 if empty.*/
+	private int index(){
+		if (size == 0) return -1;
+		int lastIndex = 0;
+		int last = 0;
+		for (int i=0; i< size; i+=2) {
+			lastIndex = i;
+			last = maxStops[i] = stops[i];
+		}
+		int k = 1;
+		for (; (1L << k) <= size; k++){
+			int x = 1 << (k-1);
+			long step = ((long)x) << 2;
+			for (long j = (x << 1) - 1; j < size; j+= step){
+				int i = (int)j;
+				int left = maxStops[i - x];
+				int right = (long)i + x < size ? maxStops[i + x] : last;
+				int max = stops[i];
+				if (left > max) max = left;
+				if (right > max) max = right;
+				maxStops[i] = max;
+			}
+			//the rightmost node of this level, needed for parents whose right child is past the end
+			lastIndex = ((lastIndex >> k) & 1) == 1 ? lastIndex - x : lastIndex + x;
+			if (lastIndex < size && maxStops[lastIndex] > last) last = maxStops[lastIndex];
+		}
+		return k - 1;
+	}
+
+	/**Walks the tree reporting each hit to the listener or adding it to the hits, stops after the first if firstOnly.
+	 * @return the number of hits*/
+	private int query(int start, int stop, HitListener listener, Hits hits, boolean firstOnly, int[] stack){
+		if (size == 0) return 0;
+		int numberHits = 0;
+		//each entry is the node index then its level shifted left one with the left child done flag
+		int t = 0;
+		stack[t++] = (1 << rootLevel) - 1;
+		stack[t++] = rootLevel << 1;
+		while (t != 0){
+			int kw = stack[--t];
+			int x = stack[--t];
+			int k = kw >> 1;
+			if (k <= SCAN_LEVEL){
+				//small subtree, scan it
+				int i0 = x >> k << k;
+				long i1 = i0 + (1L << (k+1)) - 1;
+				if (i1 > size) i1 = size;
+				for (int i= i0; i< i1 && starts[i] < stop; i++){
+					if (start < stops[i]) {
+						numberHits++;
+						if (listener != null) listener.hit(indexes[i]);
+						else if (hits != null) hits.add(indexes[i]);
+						if (firstOnly) return numberHits;
+					}
+				}
+			}
+			else if ((kw & 1) == 0){
+				//revisit this node after its left child
+				stack[t++] = x;
+				stack[t++] = kw | 1;
+				int y = x - (1 << (k-1));
+				if (y >= size || maxStops[y] > start){
+					stack[t++] = y;
+					stack[t++] = (k-1) << 1;
+				}
+			}
+			else if (x < size && starts[x] < stop){
+				if (start < stops[x]) {
+					numberHits++;
+					if (listener != null) listener.hit(indexes[x]);
+					else if (hits != null) hits.add(indexes[x]);
+					if (firstOnly) return numberHits;
+				}
+				//right child
+				stack[t++] = x + (1 << (k-1));
+				stack[t++] = (k-1) << 1;
+			}
+		}
+		return numberHits;
+	}
+
+	private static int[] makeStack(){
+		return new int[128];
+	}
+
+	/**Calls the listener with the index of each interval that intersects start (included) to stop (not included).
+	 * @return the number of hits*/
+	public int search(int start, int stop, HitListener listener){
+		return query(start, stop, listener, null, false, makeStack());
+	}
+
+	/**Clears the hits and adds the index of each interval that intersects, reuse one Hits per thread to avoid allocating.
+	 * @return the number of hits*/
+	public int search(int start, int stop, Hits hits){
+		hits.clear();
+		return query(start, stop, null, hits, false, hits.stack);
+	}
+
+	/**Returns the values that intersect, same as IntervalTree.search(), requires values.*/
+	public ArrayList<T> search(int start, int stop){
+		final ArrayList<T> al = new ArrayList<T>();
+		query(start, stop, new HitListener(){
+			public void hit(int index){
+				al.add(values[index]);
+			}
+		}, null, false, makeStack());
+		return al;
+	}
+
+	/**Returns true if any interval intersects, stops at the first hit.*/
+	public boolean intersects(int start, int stop){
+		return query(start, stop, null, null, true, makeStack()) != 0;
+	}
+
+	/**Returns the number of intervals that intersect without collecting them.*/
+	public int count(int start, int stop){
+		return query(start, stop, null, null, false, makeStack());
+	}
+
+	/**Writes the sorted arrays and index so the tree can be loaded without sorting, the values aren't saved.*/
+	public void save(File file) throws IOException{
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 65536));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(size);
+			out.writeInt(rootLevel);
+			for (int[] a: new int[][]{starts, stops, maxStops, indexes}) {
+				for (int i=0; i< size; i++) out.writeInt(a[i]);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**Memory maps a file made by save() and attaches the values, which may be null, in the order they were given to the
+	 * constructor.*/
+	public static <T> ArrayIntervalTree<T> load(File file, T[] values) throws IOException{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			MappedByteBuffer mbb = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			IntBuffer ib = mbb.asIntBuffer();
+			if (channel.size() < 12 || ib.get() != MAGIC) throw new IOException("This does not appear to be an ArrayIntervalTree file "+file);
+			int size = ib.get();
+			int rootLevel = ib.get();
+			if (channel.size() != 12 + 16L * size) throw new IOException("Truncated ArrayIntervalTree file "+file);
+			if (values != null && values.length != size) throw new IOException("The number of values, "+values.length+", doesn't match the "+size+" intervals in "+file);
+			int[][] arrays = new int[4][size];
+			for (int[] a: arrays) ib.get(a);
+			return new ArrayIntervalTree<T>(rootLevel, arrays[0], arrays[1], arrays[2], arrays[3], values);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**Reusable buffer of hit indexes, not thread safe.*/
+	public static class Hits {
+		private int[] indexes = new int[16];
+		private int size = 0;
+		private int[] stack = makeStack();
+
+		void add(int index){
+			if (size == indexes.length) indexes = Arrays.copyOf(indexes, size * 2);
+			indexes[size++] = index;
+		}
+		public void clear(){
+			size = 0;
+		}
+		public int size(){
+			return size;
+		}
+		/**Index into the arrays given to the tree constructor.*/
+		public int get(int i){
+			return indexes[i];
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+	/**The value for an index from a hit, null if the tree has no values.*/
+	public T getValue(int index) {
+		if (values == null) return null;
+		return values[index];
+	}
+}
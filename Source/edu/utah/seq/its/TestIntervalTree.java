@@ -29,6 +29,12 @@ public class TestIntervalTree {
 			System.out.println(x+ "\t"+ (System.currentTimeMillis() - start));
 		}*/
 		
+		//compare the IntervalTree and ArrayIntervalTree? e.g. 2000000 1000000
+		if (args.length == 2) {
+			compareTrees(Integer.parseInt(args[0]), Integer.parseInt(args[1]));
+			return;
+		}
+		
 		//make 100 chIPSeq datasets
 		new TestIntervalTree();
 		
@@ -163,6 +169,57 @@ public class TestIntervalTree {
 	}
 
 
+	/**Times building and searching the same random intervals with the IntervalTree and the ArrayIntervalTree,
+	 * each search is run several times to let the JIT settle, the last round is the one to compare.*/
+	public static void compareTrees(int numberIntervals, int numberQueries){
+		Random rand = new Random(1);
+		int chromLength = 250000000;
+		int[] starts = new int[numberIntervals];
+		int[] stops = new int[numberIntervals];
+		Integer[] values = new Integer[numberIntervals];
+		for (int i=0; i< numberIntervals; i++){
+			starts[i] = rand.nextInt(chromLength);
+			stops[i] = starts[i] + 1 + rand.nextInt(1000);
+			values[i] = new Integer(i);
+		}
+		int[] queryStarts = new int[numberQueries];
+		for (int i=0; i< numberQueries; i++) queryStarts[i] = rand.nextInt(chromLength);
+		int querySize = 500;
+
+		//build
+		Runtime rt = Runtime.getRuntime();
+		System.gc();
+		long mem = rt.totalMemory() - rt.freeMemory();
+		long begin = System.currentTimeMillis();
+		List<Interval<Integer>> intervals = new ArrayList<Interval<Integer>>(numberIntervals);
+		for (int i=0; i< numberIntervals; i++) intervals.add(new Interval<Integer>(starts[i], stops[i], values[i]));
+		IntervalTree<Integer> tree = new IntervalTree<Integer>(intervals, false);
+		System.gc();
+		System.out.println("IntervalTree build\t"+(System.currentTimeMillis()-begin)+" ms\t"+((rt.totalMemory() - rt.freeMemory() - mem)/1048576)+" MB");
+		mem = rt.totalMemory() - rt.freeMemory();
+		begin = System.currentTimeMillis();
+		ArrayIntervalTree<Integer> arrayTree = new ArrayIntervalTree<Integer>(starts, stops, values);
+		System.gc();
+		System.out.println("ArrayIntervalTree build\t"+(System.currentTimeMillis()-begin)+" ms\t"+((rt.totalMemory() - rt.freeMemory() - mem)/1048576)+" MB");
+
+		//search
+		ArrayIntervalTree.Hits hits = new ArrayIntervalTree.Hits();
+		for (int round = 0; round < 3; round++){
+			long numHits = 0;
+			begin = System.currentTimeMillis();
+			for (int q: queryStarts) numHits += tree.search(q, q+querySize).size();
+			System.out.println(round+"\tIntervalTree search\t"+(System.currentTimeMillis()-begin)+" ms\t"+numHits+" hits");
+			numHits = 0;
+			begin = System.currentTimeMillis();
+			for (int q: queryStarts) numHits += arrayTree.search(q, q+querySize).size();
+			System.out.println(round+"\tArrayIntervalTree search\t"+(System.currentTimeMillis()-begin)+" ms\t"+numHits+" hits");
+			numHits = 0;
+			begin = System.currentTimeMillis();
+			for (int q: queryStarts) numHits += arrayTree.search(q, q+querySize, hits);
+			System.out.println(round+"\tArrayIntervalTree reused Hits search\t"+(System.currentTimeMillis()-begin)+" ms\t"+numHits+" hits");
+		}
+	}
+
 	public static List<Interval<Integer>> getRegions(){
 		List<Interval<Integer>> intervals = new ArrayList<Interval<Integer>>(20000);
 		for (int i=0; i< 20000; i++){
@@ -4,8 +4,6 @@ import java.io.*;
 import java.util.regex.*;
 import util.gen.*;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import edu.utah.seq.analysis.OverdispersedRegionScanSeqs;
 import edu.utah.seq.data.ChromDataSave;
@@ -160,10 +158,7 @@ public class MergePairedAlignments {
 
 	private void runThreads() {
 		try {
-			ExecutorService executor = Executors.newFixedThreadPool(numberConcurrentThreads);
-			for (PairedAlignmentChrParser p : parsers) executor.execute(p);
-			executor.shutdown();
-			while (!executor.isTerminated()) {}
+			ParallelRunner.runAll(parsers, numberConcurrentThreads);
 
 			//check loaders 
 			for (PairedAlignmentChrParser p : parsers) {
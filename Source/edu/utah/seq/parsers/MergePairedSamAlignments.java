@@ -6,12 +6,24 @@ import java.util.regex.*;
 
 import util.gen.*;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMFileWriter;
+import htsjdk.samtools.SAMFileWriterFactory;
+import htsjdk.samtools.SAMTextHeaderCodec;
 import htsjdk.samtools.SamReader;
 import htsjdk.samtools.SamReaderFactory;
 import htsjdk.samtools.ValidationStringency;
 import htsjdk.samtools.SAMRecord;
 import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.TextTagCodec;
+import htsjdk.samtools.SAMRecord.SAMTagAndValue;
 import htsjdk.samtools.SAMFileHeader.SortOrder;
+import htsjdk.samtools.util.BufferedLineReader;
 import edu.utah.seq.data.sam.*;
 
 /**
@@ -34,6 +46,8 @@ public class MergePairedSamAlignments{
 	private String namePhiXChromosome = "chrPhiX";
 	private String nameAdapterChromosome = "chrAdap";
 	private boolean printPairedStatsAndHistogram = false;
+	private int numberThreads = 0;
+	private int maxRecordsInRam = 500000;
 
 	//counters for initial filtering
 	private int numberAlignments = 0;
@@ -75,6 +89,16 @@ public class MergePairedSamAlignments{
 	private String programArguments;
 	private boolean alignmentsOverlap;
 	
+	//multi threaded bam mode
+	private int numberRecordsPerBatch = 10000;
+	private SAMFileHeader bamHeader = null;
+	private SAMFileWriter bamWriter = null;
+	private ArrayList<SAMRecord> batchAlignments = null;
+	private ArrayList<String> batchFailed = null;
+	private MergePairedSamWorker[] workers = null;
+	private AtomicInteger numberMalformed = new AtomicInteger(0);
+	private TextTagCodec tagCodec = null;
+	
 
 	//constructors
 	public MergePairedSamAlignments(String[] args){
@@ -93,7 +117,34 @@ public class MergePairedSamAlignments{
 		}
 	}
 
+	/**Creates a worker engine that shares the parent's settings and malformed alignment count but has its own counters. 
+	 * Alignments are collected in memory as SAMRecords and failed lines as text for the calling worker to write.*/
+	MergePairedSamAlignments(MergePairedSamAlignments parent){
+		maximumAlignmentScore = parent.maximumAlignmentScore;
+		minimumMappingQualityScore = parent.minimumMappingQualityScore;
+		secondPairReverseStrand = parent.secondPairReverseStrand;
+		skipMergingPairs = parent.skipMergingPairs;
+		onlyMergeOverlappingAlignments = parent.onlyMergeOverlappingAlignments;
+		minimumDiffQualScore = parent.minimumDiffQualScore;
+		minimumFractionInFrameMismatch = parent.minimumFractionInFrameMismatch;
+		maximumProperPairDistanceForMerging = parent.maximumProperPairDistanceForMerging;
+		namePhiXChromosome = parent.namePhiXChromosome;
+		nameAdapterChromosome = parent.nameAdapterChromosome;
+		crossCheckMateCoordinates = parent.crossCheckMateCoordinates;
+		bamHeader = parent.bamHeader;
+		numberMalformed = parent.numberMalformed;
+		tagCodec = new TextTagCodec();
+		batchAlignments = new ArrayList<SAMRecord>();
+		batchFailed = new ArrayList<String>();
+	}
+
 	public void doWork() throws IOException{
+		if (numberThreads > 1) {
+			doWorkThreaded();
+			printStats();
+			return;
+		}
+		
 		//make print writer
 		outputFile = new File(saveFile+"_temp");
 		samOut = new PrintWriter( new FileWriter (outputFile));
@@ -126,6 +177,269 @@ public class MergePairedSamAlignments{
 			addHeaderAndSort();
 		}
 
+		printStats();
+	}
+	
+	/**Name sorted bam to coordinate sorted bam. The main thread reads name grouped blocks of SAMRecords and queues them 
+	 * in batches. Workers merge the blocks and hand back SAMRecords that htsjdk sorts on the fly, spilling to disk in the 
+	 * save file's directory, so no separate sort is needed. The queue is bounded so memory stays flat.*/
+	private void doWorkThreaded() throws IOException{
+		//make gzipper for failed examples
+		String name = Misc.removeExtension(saveFile.getName());
+		File failedReadOutputFile = new File(saveFile.getParentFile(), name+"_UnMappedPoorScore.sam.gz");
+		failedSamOut = new Gzipper(failedReadOutputFile);
+		
+		//make the sorting bam writer from the combined headers
+		makeBamWriter();
+
+		//launch workers
+		ArrayBlockingQueue<ArrayList<ArrayList<SAMRecord>>> queue = new ArrayBlockingQueue<ArrayList<ArrayList<SAMRecord>>>(numberThreads * 2);
+		workers = new MergePairedSamWorker[numberThreads];
+		ExecutorService executor = Executors.newFixedThreadPool(numberThreads);
+		for (int i=0; i< numberThreads; i++) {
+			workers[i] = new MergePairedSamWorker(this, queue);
+			executor.execute(workers[i]);
+		}
+
+		System.out.println("\nParsing, filtering, and merging BAM files with "+numberThreads+" threads...");
+		try {
+			for (int i=0; i< dataFiles.length; i++){
+				System.out.print("\t"+dataFiles[i].getName());
+				queueBamFile(dataFiles[i], queue);
+				System.out.println();
+			}
+			//one empty batch per worker signals the end
+			for (int i=0; i< numberThreads; i++) queueBatch(new ArrayList<ArrayList<SAMRecord>>(), queue);
+			executor.shutdown();
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			throw new IOException(e);
+		}
+		if (workersFailed()) Misc.printErrAndExit("\nERROR: problem merging alignments in a worker thread, aborting.\n");
+
+		//collect stats from the worker engines
+		for (MergePairedSamWorker w: workers) addCounts(w.getEngine());
+
+		System.out.println("\nSorting and writing bam output...");
+		failedSamOut.close();
+		bamWriter.close();
+	}
+	
+	private void makeBamWriter() throws IOException{
+		//load and combine the headers
+		for (File f: dataFiles){
+			SamReader samReader = SamReaderFactory.makeDefault().validationStringency(ValidationStringency.SILENT).open(f);
+			String[] header = samReader.getFileHeader().getSAMString().split("\\n");
+			for (String h: header) samHeader.add(h);
+			samReader.close();
+		}
+		samHeader.add("@PG\tID:MergePairedSamAlignments\tCL: "+programArguments);
+		StringBuilder sb = new StringBuilder();
+		for (String h: samHeader) {
+			//drop the old sort order, it's set below
+			if (h.startsWith("@HD")) continue;
+			sb.append(h);
+			sb.append("\n");
+		}
+		bamHeader = new SAMTextHeaderCodec().decode(BufferedLineReader.fromString(sb.toString()), null);
+		bamHeader.setSortOrder(SortOrder.coordinate);
+		
+		SAMFileWriterFactory factory = new SAMFileWriterFactory();
+		factory.setCreateIndex(true);
+		factory.setTempDirectory(saveFile.getCanonicalFile().getParentFile());
+		factory.setMaxRecordsInRam(maxRecordsInRam);
+		bamWriter = factory.makeBAMWriter(bamHeader, false, saveFile);
+	}
+	
+	/**Reads a name sorted bam and queues batches of name grouped SAMRecord blocks for the workers.*/
+	private void queueBamFile(File bamFile, ArrayBlockingQueue<ArrayList<ArrayList<SAMRecord>>> queue) throws IOException, InterruptedException{
+		SamReader samReader = SamReaderFactory.makeDefault().validationStringency(ValidationStringency.SILENT).open(bamFile);
+		if (samReader.getFileHeader().getSortOrder().compareTo(SortOrder.coordinate) == 0){
+			Misc.printErrAndExit("\nError, your bam file appears sorted by coordinate. Sort by query name and restart.\n");
+		}
+		SAMRecordIterator it = samReader.iterator();
+		ArrayList<ArrayList<SAMRecord>> batch = new ArrayList<ArrayList<SAMRecord>>();
+		ArrayList<SAMRecord> block = new ArrayList<SAMRecord>();
+		String priorReadName = null;
+		int numberInBatch = 0;
+		int dotCounter = 0;
+		while (it.hasNext()) {
+			SAMRecord sam = it.next();
+			if (++dotCounter > 1000000){
+				System.out.print(".");
+				dotCounter = 0;
+			}
+			String readName = sam.getReadName();
+			if (priorReadName != null && readName.equals(priorReadName) == false){
+				batch.add(block);
+				block = new ArrayList<SAMRecord>();
+				//only break batches between read names
+				if (numberInBatch >= numberRecordsPerBatch){
+					queueBatch(batch, queue);
+					batch = new ArrayList<ArrayList<SAMRecord>>();
+					numberInBatch = 0;
+				}
+			}
+			priorReadName = readName;
+			block.add(sam);
+			numberInBatch++;
+		}
+		if (block.size() !=0) batch.add(block);
+		if (batch.size() !=0) queueBatch(batch, queue);
+		it.close();
+		samReader.close();
+	}
+	
+	/**Blocks until the batch can be queued, bails if a worker dies so the reader doesn't hang on a full queue.*/
+	private void queueBatch(ArrayList<ArrayList<SAMRecord>> batch, ArrayBlockingQueue<ArrayList<ArrayList<SAMRecord>>> queue) throws InterruptedException{
+		while (queue.offer(batch, 1, TimeUnit.SECONDS) == false){
+			if (workersFailed()) Misc.printErrAndExit("\nERROR: problem merging alignments in a worker thread, aborting.\n");
+		}
+	}
+	
+	private boolean workersFailed(){
+		for (MergePairedSamWorker w: workers) if (w.isFailed()) return true;
+		return false;
+	}
+	
+	/**Called by the workers, htsjdk's writer isn't thread safe.*/
+	synchronized void writeBatch(ArrayList<SAMRecord> alignments, ArrayList<String> failed) throws IOException{
+		for (SAMRecord sam: alignments) bamWriter.addAlignment(sam);
+		for (String line: failed) failedSamOut.println(line);
+	}
+	
+	/**Sums the counters of a worker engine into this.*/
+	private void addCounts(MergePairedSamAlignments e){
+		numberAlignments += e.numberAlignments;
+		numberUnmapped += e.numberUnmapped;
+		numberFailingVendorQC += e.numberFailingVendorQC;
+		numberFailingAlignmentScore += e.numberFailingAlignmentScore;
+		numberFailingMappingQualityScore += e.numberFailingMappingQualityScore;
+		numberAdapter += e.numberAdapter;
+		numberPhiX += e.numberPhiX;
+		numberDuplicates += e.numberDuplicates;
+		numberPassingAlignments += e.numberPassingAlignments;
+		numberPrintedAlignments += e.numberPrintedAlignments;
+		numberOverlappingBases += e.numberOverlappingBases;
+		numberNonOverlappingBases += e.numberNonOverlappingBases;
+		numberMergedPairs += e.numberMergedPairs;
+		numberFailedMergedPairs += e.numberFailedMergedPairs;
+		numberNonPairedAlignments += e.numberNonPairedAlignments;
+		numberNonProperPairedAlignments += e.numberNonProperPairedAlignments;
+		numberUnmappedMatePairedAlignments += e.numberUnmappedMatePairedAlignments;
+		numberAlignmentsMissingPair += e.numberAlignmentsMissingPair;
+		numberPairsFailingChrDistStrand += e.numberPairsFailingChrDistStrand;
+		numberPairsFailingMateCrossCoordinateCheck += e.numberPairsFailingMateCrossCoordinateCheck;
+		numberRepeatAlignmentsLackingMate += e.numberRepeatAlignmentsLackingMate;
+		try {
+			insertSize.addCounts(e.insertSize);
+		} catch (Exception ex) {
+			System.err.println("Problem collecting insert size histogram!");
+			ex.printStackTrace();
+		}
+	}
+	
+	/**Loads, checks, and merges one block of alignments sharing the same read name. Used by the workers.*/
+	void processReadBlock(ArrayList<SAMRecord> block, ArrayList<SamAlignment> alignmentsToSave) throws IOException{
+		alignmentsToSave.clear();
+		for (SAMRecord sam: block){
+			SamAlignment sa;
+			try {
+				sa = loadSamAlignment(sam);
+			} catch (MalformedSamAlignmentException e) {
+				System.out.println("\nSkipping malformed sam alignment -> "+e.getMessage());
+				if (numberMalformed.getAndIncrement() > 100) Misc.printErrAndExit("\nAboring: too many malformed SAM alignments.\n");
+				continue;
+			}
+			numberAlignments++;
+			if (checkSamAlignment(sa, null, sam)) alignmentsToSave.add(sa);
+		}
+		if (alignmentsToSave.size() !=0) filterPrintAlignments(alignmentsToSave);
+	}
+	
+	/**Fills a SamAlignment from the record's fields, matching what parsing its SAM text line would give.*/
+	private SamAlignment loadSamAlignment(SAMRecord sam) throws MalformedSamAlignmentException{
+		SamAlignment sa = new SamAlignment();
+		String name = sam.getReadName();
+		Matcher mat = SamAlignment.BAD_NAME.matcher(name);
+		if (mat.matches()) name = mat.group(1);
+		sa.setName(name);
+		sa.setFlags((short)sam.getFlags());
+		String chrom = sam.getReferenceName();
+		sa.setReferenceSequence(chrom);
+		sa.setPosition(sam.getAlignmentStart()-1);
+		sa.setMappingQuality(sam.getMappingQuality());
+		sa.setCigar(sam.getCigarString());
+		String mateChrom = sam.getMateReferenceName();
+		if (mateChrom.equals(chrom) && mateChrom.equals(SAMRecord.NO_ALIGNMENT_REFERENCE_NAME) == false) mateChrom = "=";
+		sa.setMateReferenceSequence(mateChrom);
+		sa.setMatePosition(sam.getMateAlignmentStart()-1);
+		sa.setInferredInsertSize(sam.getInferredInsertSize());
+		String seq = sam.getReadString();
+		String qual = sam.getBaseQualityString();
+		if (seq.length() != qual.length()) throw new MalformedSamAlignmentException("Cannot parse SamAlignment, sequence length does not match quality string length see -> "+sam.getSAMString().trim());
+		sa.setSequence(seq);
+		sa.setQualities(qual);
+		List<SAMTagAndValue> atts = sam.getAttributes();
+		if (atts.size() !=0){
+			String[] tags = new String[atts.size()];
+			for (int i=0; i< tags.length; i++) tags[i] = tagCodec.encode(atts.get(i).tag, atts.get(i).value);
+			sa.setTags(tags);
+		}
+		return sa;
+	}
+	
+	/**Builds a SAMRecord against the combined header from the SamAlignment's fields.*/
+	private SAMRecord makeSAMRecord(SamAlignment sa){
+		SAMRecord sam = new SAMRecord(bamHeader);
+		sam.setReadName(sa.getName());
+		sam.setFlags(sa.getFlags());
+		sam.setReferenceName(sa.getReferenceSequence());
+		sam.setAlignmentStart(sa.getPosition()+1);
+		sam.setMappingQuality(sa.getMappingQuality());
+		sam.setCigarString(sa.getCigar());
+		String mateChrom = sa.getMateReferenceSequence();
+		if (mateChrom.equals("=")) mateChrom = sa.getReferenceSequence();
+		sam.setMateReferenceName(mateChrom);
+		sam.setMateAlignmentStart(sa.getMatePosition()+1);
+		sam.setInferredInsertSize(sa.getInferredInsertSize());
+		sam.setReadString(sa.getSequence());
+		sam.setBaseQualityString(sa.getQualities());
+		String[] tags = sa.getTags();
+		if (tags != null){
+			for (String t: tags) {
+				Map.Entry<String, Object> tv = tagCodec.decode(t);
+				sam.setAttribute(tv.getKey(), tv.getValue());
+			}
+		}
+		return sam;
+	}
+	
+	/**Writes to the temp sam or, for worker engines, to the in memory batch. Worker engines pass SamAlignments or 
+	 * SAMRecords, the single threaded path SamAlignments or SAM lines.*/
+	private void printAlignment(Object sam){
+		if (batchAlignments != null) {
+			if (sam instanceof SAMRecord) batchAlignments.add((SAMRecord)sam);
+			else batchAlignments.add(makeSAMRecord((SamAlignment)sam));
+		}
+		else samOut.println(sam);
+	}
+	
+	private void printFailed(String line) throws IOException{
+		if (batchFailed != null) batchFailed.add(line);
+		else failedSamOut.println(line);
+	}
+	
+	ArrayList<SAMRecord> getBatchAlignments() {
+		return batchAlignments;
+	}
+
+	ArrayList<String> getBatchFailed() {
+		return batchFailed;
+	}
+
+	public void printStats(){
 		//stats
 		System.out.println("\nStats (some flags aren't set so be suspicious of zero read catagories):\n");
 		System.out.println(numberAlignments+"\tTotal # alignments from sam/bam file");
@@ -325,6 +639,11 @@ public class MergePairedSamAlignments{
 
 	/**Checks a bunch of flags and scores to see if alignment should be saved for attempted merging.*/
 	public boolean checkSamAlignment(SamAlignment sa, String line) throws IOException{
+		return checkSamAlignment(sa, line, null);
+	}
+	
+	/**Pass either the SAM line or, from the workers, the record it came from. The record is only converted to text if it fails.*/
+	private boolean checkSamAlignment(SamAlignment sa, String line, SAMRecord record) throws IOException{
 		boolean isGood = true;
 
 		//is it aligned?
@@ -378,7 +697,8 @@ public class MergePairedSamAlignments{
 		
 		//did any fail?
 		if (isGood == false){
-			failedSamOut.println(line);
+			if (line == null) line = record.getSAMString().trim();
+			printFailed(line);
 			return false;
 		}
 		
@@ -401,7 +721,7 @@ public class MergePairedSamAlignments{
 		//is it not part of a pair?
 		if (sa.isPartOfAPairedAlignment()== false){
 			numberNonPairedAlignments++;
-			samOut.println(sa);
+			printAlignment(sa);
 			numberPrintedAlignments++;
 			return false;
 		}
@@ -409,14 +729,14 @@ public class MergePairedSamAlignments{
 		//is it not part of a proper pair?
 		if (sa.isAProperPairedAlignment() == false){
 			numberNonProperPairedAlignments++;
-			samOut.println(sa);
+			printAlignment(sa);
 			numberPrintedAlignments++;
 			return false;
 		}
 		//is mate unmapped
 		if (sa.isMateUnMapped()){
 			numberUnmappedMatePairedAlignments++;
-			samOut.println(sa);
+			printAlignment(sa);
 			numberPrintedAlignments++;
 			return false;
 		}
@@ -444,7 +764,7 @@ public class MergePairedSamAlignments{
 			if (numFirstPairs == 0 || numSecondPairs == 0){
 				for (SamAlignment sam : al) {
 					numberAlignmentsMissingPair++;
-					samOut.println(sam);
+					printAlignment(sam);
 					numberPrintedAlignments++;
 				}
 				return;
@@ -483,8 +803,8 @@ public class MergePairedSamAlignments{
 						}
 						//failed distance or strand so not a proper pair
 						else {
-							samOut.println(firsts[i]);
-							samOut.println(seconds[j]);
+							printAlignment(firsts[i]);
+							printAlignment(seconds[j]);
 							numberPrintedAlignments+=2;
 							numberPairsFailingChrDistStrand++;
 						}
@@ -502,14 +822,14 @@ public class MergePairedSamAlignments{
 			for (SamAlignment s: firsts){
 				if (s !=null){
 					numberRepeatAlignmentsLackingMate++;
-					samOut.println(s);
+					printAlignment(s);
 					numberPrintedAlignments++;
 				}
 			}
 			for (SamAlignment s: seconds){
 				if (s !=null){
 					numberRepeatAlignmentsLackingMate++;
-					samOut.println(s);
+					printAlignment(s);
 					numberPrintedAlignments++;
 				}
 			}
@@ -540,8 +860,8 @@ public class MergePairedSamAlignments{
 					mergeAndScorePair(first, second);
 				}
 				else {
-					samOut.println(first);
-					samOut.println(second);
+					printAlignment(first);
+					printAlignment(second);
 					numberPrintedAlignments+=2;
 					numberPairsFailingMateCrossCoordinateCheck++;
 				}
@@ -552,8 +872,8 @@ public class MergePairedSamAlignments{
 			}
 		}
 		else {
-			samOut.println(first);
-			samOut.println(second);
+			printAlignment(first);
+			printAlignment(second);
 			numberPrintedAlignments+=2;
 			numberPairsFailingChrDistStrand++;
 		}
@@ -563,13 +883,22 @@ public class MergePairedSamAlignments{
 	/**Attempts to merge a proper paired alignment.  Increments counters and sends examples to the gzipper.*/
 	private void mergeAndScorePair(SamAlignment first, SamAlignment second) throws IOException{
 		//collect string rep since the merge method will modify the SamAlignment while merging so if it fails you can output the unmodified SamAlignment
-		String firstSamString = first.toString();
-		String secondSamString = second.toString();
+		//worker engines snapshot SAMRecords instead
+		Object firstSamString;
+		Object secondSamString;
+		if (batchAlignments != null){
+			firstSamString = makeSAMRecord(first);
+			secondSamString = makeSAMRecord(second);
+		}
+		else {
+			firstSamString = first.toString();
+			secondSamString = second.toString();
+		}
 		
 		//do they want to skip
 		if (skipMergingPairs){
-			samOut.println(firstSamString);
-			samOut.println(secondSamString);
+			printAlignment(firstSamString);
+			printAlignment(secondSamString);
 			numberPrintedAlignments+=2;
 			return;
 		}
@@ -578,8 +907,8 @@ public class MergePairedSamAlignments{
 		
 		//do they want to not merge non overlapping alignemnts
 		if (onlyMergeOverlappingAlignments == true && alignmentsOverlap == false){
-			samOut.println(firstSamString);
-			samOut.println(secondSamString);
+			printAlignment(firstSamString);
+			printAlignment(secondSamString);
 			numberPrintedAlignments+=2;
 		}
 		
@@ -587,15 +916,15 @@ public class MergePairedSamAlignments{
 			//failed to merge?
 			if (mergedSam!=null) {
 				numberMergedPairs++;
-				samOut.println(mergedSam);
+				printAlignment(mergedSam);
 				numberPrintedAlignments++;
 				//if (first.getCigar().contains("D") || second.getCigar().contains("D") || first.getCigar().contains("I") || second.getCigar().contains("I")){
 				//System.out.println(first.getName()+"\t"+first.getReferenceSequence()+"\t"+first.getPosition()+"\t"+first.getCigar()+"\t"+second.getCigar());
 				//}
 			}
 			else {
-				samOut.println(firstSamString);
-				samOut.println(secondSamString);
+				printAlignment(firstSamString);
+				printAlignment(secondSamString);
 				numberPrintedAlignments+=2;
 				numberFailedMergedPairs++;
 			}
@@ -884,6 +1213,8 @@ public class MergePairedSamAlignments{
 					case 'r': secondPairReverseStrand = true; break;
 					case 'k': skipMergingPairs = true; break;
 					case 'p': printPairedStatsAndHistogram = true; break;
+					case 't': numberThreads = Integer.parseInt(args[++i]); break;
+					case 'x': maxRecordsInRam = Integer.parseInt(args[++i]); break;
 					case 'd': maximumProperPairDistanceForMerging = Integer.parseInt(args[++i]); break;
 					case 'a': maximumAlignmentScore = Float.parseFloat(args[++i]); break;
 					case 'q': minimumMappingQualityScore = Float.parseFloat(args[++i]); break;
@@ -934,6 +1265,12 @@ public class MergePairedSamAlignments{
 		System.out.println(crossCheckMateCoordinates +"\tCross check read mate coordinates.");
 		System.out.println(maximumProperPairDistanceForMerging +"\tMaximum bp distance for merging paired alignments.");
 		System.out.println(onlyMergeOverlappingAlignments +"\tOnly merge overlapping alignments.");
+		if (numberThreads > 1){
+			for (File f: dataFiles) if (f.getName().endsWith(".bam") == false) Misc.printErrAndExit("\nError: multi threaded mode (-t) requires name sorted xxx.bam input -> "+f);
+			if (saveFile.getName().endsWith(".bam") == false) Misc.printErrAndExit("\nError: multi threaded mode (-t) requires an xxx.bam save file -> "+saveFile);
+			System.out.println(numberThreads +"\tWorker threads, writing coordinate sorted bam directly.");
+			System.out.println(maxRecordsInRam +"\tMax records in RAM before spilling to disk while sorting.");
+		}
 		if (skipMergingPairs) System.out.println(skipMergingPairs +"\tSkip merging paired alignments, useful for testing effect of merging on downstream analysis.");
 
 
@@ -943,7 +1280,7 @@ public class MergePairedSamAlignments{
 	public static void printDocs(){
 		System.out.println("\n" +
 				"**************************************************************************************\n" +
-				"**                          MergePairedSamAlignments: Dec 2012                      **\n" +
+				"**                          MergePairedSamAlignments: Oct 2026                      **\n" +
 				"**************************************************************************************\n" +
 				"Merges proper paired alignments that pass a variety of checks and thresholds. Only\n" +
 				"unambiguous pairs will be merged. Increases base calling accuracy in overlap and helps\n" +
@@ -972,6 +1309,11 @@ public class MergePairedSamAlignments{
 				"-k Skip merging paired alignments. Defaults to merging. Useful for testing effect of\n" +
 				"      merging on downstream analysis.\n"+
 				"-p Print paired alignment statistics and insert size histogram.\n"+
+				"-t Number of worker threads for name sorted bam input and a bam save file. Merges\n" +
+				"      in parallel and writes a coordinate sorted bam directly, no Picard sort pass.\n"+
+				"      Defaults to single threaded.\n"+
+				"-x Max records held in RAM before spilling to disk while sorting in -t mode,\n" +
+				"      defaults to 500000.\n"+
 
 				"\nExample: java -Xmx1500M -jar pathToUSeq/Apps/MergePairedSamAlignments -f /Novo/Run7/\n" +
 				"     -c -s /Novo/STPParsedBams/run7.bam -d 10000 \n\n" +
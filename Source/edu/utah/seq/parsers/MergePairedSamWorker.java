@@ -0,0 +1,56 @@
+package edu.utah.seq.parsers;
+
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import edu.utah.seq.data.sam.SamAlignment;
+import htsjdk.samtools.SAMRecord;
+
+/**Pulls batches of name grouped alignment blocks off the MergePairedSamAlignments queue, merges them with its own
+ * engine and counters, and hands the resulting SAMRecords back to the parent's sorting bam writer.
+ * An empty batch signals there's no more work.
+ * @author david.nix@hci.utah.edu*/
+public class MergePairedSamWorker implements Runnable {
+
+	//fields
+	private MergePairedSamAlignments parent;
+	private MergePairedSamAlignments engine;
+	private ArrayBlockingQueue<ArrayList<ArrayList<SAMRecord>>> queue;
+	private ArrayList<SamAlignment> alignmentsToSave = new ArrayList<SamAlignment>();
+	//polled by the reading thread while workers run
+	private volatile boolean failed = false;
+
+	public MergePairedSamWorker (MergePairedSamAlignments parent, ArrayBlockingQueue<ArrayList<ArrayList<SAMRecord>>> queue){
+		this.parent = parent;
+		this.queue = queue;
+		engine = new MergePairedSamAlignments(parent);
+	}
+
+	public void run(){
+		try {
+			while (true){
+				ArrayList<ArrayList<SAMRecord>> batch = queue.take();
+				if (batch.size() == 0) break;
+
+				//merge each read block, output is collected in the engine
+				for (ArrayList<SAMRecord> block: batch) engine.processReadBlock(block, alignmentsToSave);
+
+				parent.writeBatch(engine.getBatchAlignments(), engine.getBatchFailed());
+				engine.getBatchAlignments().clear();
+				engine.getBatchFailed().clear();
+			}
+		} catch (Exception e) {
+			failed = true;
+			System.err.println("\nError merging alignments in worker thread!");
+			e.printStackTrace();
+		}
+	}
+
+	public boolean isFailed() {
+		return failed;
+	}
+
+	public MergePairedSamAlignments getEngine() {
+		return engine;
+	}
+}
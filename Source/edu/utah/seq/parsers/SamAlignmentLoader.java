@@ -4,8 +4,6 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import htsjdk.samtools.QueryInterval;
 import htsjdk.samtools.SAMSequenceDictionary;
 import htsjdk.samtools.SamReader;
@@ -15,6 +13,7 @@ import util.bio.annotation.Bed;
 import util.gen.Gzipper;
 import util.gen.IO;
 import util.gen.Misc;
+import util.gen.ParallelRunner;
 
 public class SamAlignmentLoader {
 	
@@ -49,10 +48,7 @@ public class SamAlignmentLoader {
 			if (chunkSize < 10) chunkSize = 10;
 
 			//launch em!
-			ExecutorService executor = Executors.newFixedThreadPool(numberThreads);
-			for (BamLoader l: loaders) executor.execute(l);
-			executor.shutdown();
-			while (!executor.isTerminated()) {}  //wait here until complete
+			ParallelRunner.runAll(loaders, numberThreads);
 
 			//check loaders 
 			for (BamLoader l: loaders) {
@@ -114,10 +110,7 @@ public class SamAlignmentLoader {
 		if (numThreads > maxNumThreads) numThreads = maxNumThreads;
 		
 		//launch em!
-		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
-		for (SamSorter l: ss) executor.execute(l);
-		executor.shutdown();
-		while (!executor.isTerminated()) {}  //wait here until complete
+		ParallelRunner.runAll(ss, numThreads);
 		
 		//check loaders 
 		for (SamSorter l: ss) if (l.isFailed()) throw new IOException("ERROR: Failed to sort alignments!");
@@ -3,13 +3,12 @@ package edu.utah.seq.parsers.jpileup;
 import java.io.*;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.regex.*;
 import htsjdk.samtools.*;
 import htsjdk.samtools.cram.ref.ReferenceSource;
 import util.apps.MergeRegions;
 import util.bio.annotation.Bed;
+import util.bio.seq.TwoBitGenome;
 import util.gen.*;
 import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream; //needed by cram
 
@@ -68,6 +67,7 @@ public class BamPileup {
 	private File tempDir;
 	private File results;
 	private File fastaFile;
+	private TwoBitGenome twoBitGenome = null;
 	private File tabix;
 	private File bgzip;
 	private int minMappingQuality = 13;
@@ -80,7 +80,11 @@ public class BamPileup {
 	private int maxBpOfRegion = 1000;
 	private boolean verbose = true;
 	private int maximumCoverageCalculated = 1001;
+	private DepthHistogram coverageHistogram = new DepthHistogram();
+	private boolean columnar = false;
 	private ArrayList<File> tempPileupFiles = new ArrayList<File>();
+	private ArrayList<ArrayList<BpileupColumnarWriter.Block>> tempPileupBlocks = new ArrayList<ArrayList<BpileupColumnarWriter.Block>>();
+	private String pileupHeader = null;
 	private ArrayList<File> tempBedFiles = new ArrayList<File>();
 
 	//constructor for stand alone use
@@ -111,16 +115,21 @@ public class BamPileup {
 		this.bgzip = bgzip;
 		this.tabix = tabix;
 		this.verbose = verbose;
+		columnar = BpileupColumnarReader.isColumnar(gzResultFile);
 		numCpu = Runtime.getRuntime().availableProcessors();
 		doWork();
 	}
 	
 	public void doWork() throws Exception {
 		//create reader
-		samFactory = SamReaderFactory.makeDefault().referenceSource(new ReferenceSource(fastaFile)).validationStringency(ValidationStringency.SILENT);
+		//a .2bit is memory mapped once and shared by all the loaders
+		if (fastaFile.getName().endsWith(".2bit")) {
+			twoBitGenome = new TwoBitGenome(fastaFile);
+			samFactory = SamReaderFactory.makeDefault().referenceSource(twoBitGenome).validationStringency(ValidationStringency.SILENT);
+		}
+		else samFactory = SamReaderFactory.makeDefault().referenceSource(new ReferenceSource(fastaFile)).validationStringency(ValidationStringency.SILENT);
 		
 		//load and chunk the bed file of regions to scan
-		int numRegionsPerWorker = 0;
 		Bed[] regions = Bed.parseFile(bedFile, 0, 0);
 		Arrays.sort(regions);
 		int numOriRegions = regions.length;
@@ -129,51 +138,55 @@ public class BamPileup {
 		regions = Bed.splitBigRegions(regions, maxBpOfRegion);
 		if (verbose) IO.pl(numOriRegions+" regions split into "+regions.length+" regions with a max size of "+maxBpOfRegion+" bps\n");
 		
-		if (regions.length <= numCpu) {
-			numCpu = regions.length;
-			numRegionsPerWorker = 1;
-		}
-		else numRegionsPerWorker = (int)Math.round( (double)regions.length/(double)numCpu );
-		Object[][] chunks = Misc.chunk(regions, numRegionsPerWorker);
+		//several chunks per thread, idle threads pull the next chunk so a slow region doesn't hold up the rest
+		if (regions.length < numCpu) numCpu = regions.length;
+		Object[][] chunks = Misc.chunk(regions, ParallelRunner.fetchChunkSize(regions.length, numCpu));
 		
 		//make and execute loaders
-		if (verbose) IO.p("Launching "+chunks.length+" loaders");
-		ExecutorService executor = Executors.newFixedThreadPool(chunks.length);
+		if (verbose) IO.p("Launching "+chunks.length+" loaders on "+numCpu+" threads");
 		BamPileupLoader[] loaders = new BamPileupLoader[chunks.length];
 		for (int i=0; i< chunks.length; i++) {
 			Bed[] b = new Bed[chunks[i].length];
 			for (int x = 0; x< b.length; x++) b[x] = (Bed)chunks[i][x];
 			loaders[i] = new BamPileupLoader(this, i, b);
-			executor.execute(loaders[i]);
 		}
-		executor.shutdown();
-		while (!executor.isTerminated()) {}
+		ParallelRunner.runAll(loaders, numCpu);
 		if (verbose) IO.pl();
+		if (loaders.length != 0) pileupHeader = loaders[0].fetchHeader();
 		
 		//check loaders fetch files
-		Histogram histogram = new Histogram(0, maximumCoverageCalculated, maximumCoverageCalculated);
 		for (BamPileupLoader l: loaders) {
 			if (l.isFailed()) throw new IOException("ERROR: File Loader issue! \n");
 			tempPileupFiles.add(l.getPileupFile());
+			tempPileupBlocks.add(l.getColumnarBlocks());
 			if (l.getCoverageFile()!= null)tempBedFiles.add(l.getCoverageFile());
-			histogram.addCounts(l.getHistogram());
 		}
 		
 		procTempFiles();
-		printCoverageStats(histogram);
+		printCoverageStats(coverageHistogram.summarize());
 
 	}
 
 	private void procTempFiles() throws IOException {
 		//concatinate pileup files
 		String name = results.getCanonicalPath();
-		name = name.substring(0, name.length()-3);
-		
-		//create the final pileup file
-		if (verbose) IO.pl("Merging pileup, bgzipping, and tabixing...");
-		File resultsNoGz = new File (name);
-		IO.concatinateFiles(tempPileupFiles, resultsNoGz);
-		BamPileupMerger.compressAndIndex(bgzip, tabix, resultsNoGz, new String[] {"-f", "-s", "1", "-b", "2", "-e", "2"}, false);
+		if (columnar) {
+			name = name.substring(0, name.length()-BpileupColumnarWriter.EXTENSION.length());
+			if (verbose) IO.pl("Merging binary pileup blocks and writing the index...");
+			File[] temp = new File[tempPileupFiles.size()];
+			tempPileupFiles.toArray(temp);
+			BpileupColumnarWriter.merge(pileupHeader, bamFiles.length, temp, tempPileupBlocks, results);
+			for (File f: temp) f.delete();
+		}
+		else {
+			name = name.substring(0, name.length()-3);
+
+			//create the final pileup file
+			if (verbose) IO.pl("Merging pileup, bgzipping, and tabixing...");
+			File resultsNoGz = new File (name);
+			IO.concatinateFiles(tempPileupFiles, resultsNoGz);
+			BamPileupMerger.compressAndIndex(bgzip, tabix, resultsNoGz, new String[] {"-f", "-s", "1", "-b", "2", "-e", "2"}, false);
+		}
 		
 		//passing bed files
 		if (tempBedFiles.size()!=0) {
@@ -186,23 +199,19 @@ public class BamPileup {
 		}
 	}
 	
-	public void printCoverageStats(Histogram histogram){
+	public void printCoverageStats(DepthHistogram.Summary summary){
 
-			long[] counts = histogram.getBinCounts();
-			double total = histogram.getTotalBinCounts();
+			long total = summary.getTotal();
 			ArrayList<Double> fractionTargetBpsAL = new ArrayList<Double>();
 
 			IO.pl("\nBaseCoverage\tFractionTargetBPs");
-			double numCounts = 0;
 			String zero = "0";
-			for (int i=0; i< counts.length; i++){
-				double cumFrac = (total-numCounts)/ total;
+			for (int i=0; i< maximumCoverageCalculated; i++){
 				//runout up to just two decimals for calculating 0.90 and 0.95
-				String formNum = Num.formatNumber(cumFrac, 2);
+				String formNum = Num.formatNumber(summary.getFractionAtOrAbove(i), 2);
 				if (formNum.equals(zero) == false) IO.pl(i+"\t"+formNum);
 				fractionTargetBpsAL.add(Double.parseDouble(formNum));
-				numCounts += counts[i];
-				if (numCounts == total) break;
+				if (summary.getNumberAtOrAbove(i+1) == 0) break;
 			}
 			
 			//calc 0.95 and 0.9
@@ -219,7 +228,7 @@ public class BamPileup {
 			
 			//print summary stats
 			IO.pl("\nTotal interrogated bases\t"+ (int)total);
-			IO.pl("Mean Coverage\t"+Num.formatNumber(histogram.getStandardDeviation().getMean(), 1));
+			IO.pl("Mean Coverage\t"+Num.formatNumber(summary.getMean(), 1));
 			IO.pl("CoverageAt0.95OfTargetBps\t" + coverageAt95);
 			IO.pl("CoverageAt0.90OfTargetBps\t" + coverageAt90);
 	}
@@ -279,15 +288,18 @@ public class BamPileup {
 		if (bamFiles.length == 1) printAll = true;
 		
 		//Create fasta fetcher
-		if (fastaFile == null || fastaFile.canRead() == false)  Misc.printErrAndExit("\nError: please provide an reference genome fasta file and it's index.");		
+		if (fastaFile == null || fastaFile.canRead() == false)  Misc.printErrAndExit("\nError: please provide an reference genome fasta file and it's index or a xxx.2bit.");		
 		if (bedFile == null ||  bedFile.canRead() == false) Misc.printErrAndExit("\nError: please provide a file of regions in bed format.");
-		if (results == null ) Misc.printErrAndExit("\nError: please provide a results file that ends with xxx.gz");
+		if (results == null ) Misc.printErrAndExit("\nError: please provide a results file that ends with xxx.gz or xxx"+BpileupColumnarWriter.EXTENSION);
+		columnar = BpileupColumnarReader.isColumnar(results);
 		
-		//pull tabix and bgzip
-		if (tabixBinDirectory == null) Misc.printExit("\nError: please point to your HTSlib directory containing the tabix and bgzip executables (e.g. ~/BioApps/HTSlib/1.10.2/bin/ )\n");
-		bgzip = new File (tabixBinDirectory, "bgzip");
-		tabix = new File (tabixBinDirectory, "tabix");
-		if (bgzip.canExecute() == false || tabix.canExecute() == false) Misc.printExit("\nCannot find or execute bgzip or tabix executables from "+tabixBinDirectory);
+		//pull tabix and bgzip, not needed for the binary format unless a coverage bed is made
+		if (columnar == false || minimumReadDepth > 0) {
+			if (tabixBinDirectory == null) Misc.printExit("\nError: please point to your HTSlib directory containing the tabix and bgzip executables (e.g. ~/BioApps/HTSlib/1.10.2/bin/ )\n");
+			bgzip = new File (tabixBinDirectory, "bgzip");
+			tabix = new File (tabixBinDirectory, "tabix");
+			if (bgzip.canExecute() == false || tabix.canExecute() == false) Misc.printExit("\nCannot find or execute bgzip or tabix executables from "+tabixBinDirectory);
+		}
 
 				
 		//number of workers
@@ -300,7 +312,7 @@ public class BamPileup {
 	public static void printDocs(){
 		System.out.println("\n" +
 				"**************************************************************************************\n" +
-				"**                                Bam Pileup:  March 2021                           **\n" +
+				"**                                Bam Pileup:  Oct 2026                             **\n" +
 				"**************************************************************************************\n" +
 				"BP extracts pileup information for each bam file over a list of regions. This includes\n"+
 				"the # A,C,G,T,N,Del,Ins,FailingBQ bps for each bam. Provide the max memory available\n"+
@@ -315,10 +327,13 @@ public class BamPileup {
 				"-b Path to a coordinate sorted bam/cram file with index or directory containing such.\n"+
 				"-r Bed file of regions to extract pileup information. MUST BE NON OVERLAPPING. Run\n"+
 				"      the USeq MergeRegions app if unsure. xxx.bed.gz/.zip OK\n"+
-				"-f Path to the reference fasta with and xxx.fai index.\n"+
-				"-s Path to a gzip file to save the pileup information, must end in xxx.gz\n"+
+				"-f Path to the reference fasta with and xxx.fai index or a xxx.2bit made with\n"+
+				"      Fasta2TwoBit, the later is memory mapped and shared by all the threads.\n"+
+				"-s Path to a gzip file to save the pileup information, must end in xxx.gz, or end in\n"+
+				"      xxx.bpc to write a binary columnar file with a block index instead of text. It\n"+
+				"      is several times smaller and faster to query, VCFBkz reads either.\n"+
 				"-t Path to a directory containing the bgzip and tabix executables to compress and index\n"+
-				"      the bp file, see htslib.org \n"+
+				"      the bp file, see htslib.org. Not needed for xxx.bpc unless -o is set.\n"+
 
 				"\nDefault Options:\n"+
 				"-q Minimum base quality, defaults to 10\n"+
@@ -348,6 +363,9 @@ public class BamPileup {
 	public File getFastaFile() {
 		return fastaFile;
 	}
+	public TwoBitGenome getTwoBitGenome() {
+		return twoBitGenome;
+	}
 	public int getMinMappingQuality() {
 		return minMappingQuality;
 	}
@@ -373,6 +391,14 @@ public class BamPileup {
 		return maximumCoverageCalculated;
 	}
 
+	public DepthHistogram getCoverageHistogram() {
+		return coverageHistogram;
+	}
+
+	public boolean isColumnar() {
+		return columnar;
+	}
+
 	public int getMinimumReadDepth() {
 		return minimumReadDepth;
 	}
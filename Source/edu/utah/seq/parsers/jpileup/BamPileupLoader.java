@@ -1,9 +1,13 @@
 package edu.utah.seq.parsers.jpileup;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 
 import edu.utah.seq.data.sam.SamAlignment;
 import edu.utah.seq.data.sam.SamLayoutForMutation;
@@ -13,7 +17,8 @@ import htsjdk.samtools.SamReader;
 import htsjdk.samtools.reference.IndexedFastaSequenceFile;
 import htsjdk.samtools.reference.ReferenceSequence;
 import util.bio.annotation.Bed;
-import util.gen.Histogram;
+import util.bio.seq.TwoBitGenome;
+import util.gen.DepthHistogram;
 import util.gen.IO;
 
 public class BamPileupLoader implements Runnable { 
@@ -25,8 +30,11 @@ public class BamPileupLoader implements Runnable {
 	private int minMappingQuality = 0;
 	private int minimumReadDepth = 0;
 	private PrintWriter pileupOut = null;
+	private OutputStream columnarStream = null;
+	private BpileupColumnarWriter columnarOut = null;
 	private PrintWriter bedOut= null;
 	private IndexedFastaSequenceFile fasta = null;
+	private TwoBitGenome twoBitGenome = null;
 	private Bed[] regions = null;
 	private File pileupFile = null;
 	private File coverageFile = null;
@@ -34,10 +42,14 @@ public class BamPileupLoader implements Runnable {
 	private boolean includeOverlaps;
 	private boolean printAll;
 	private boolean verbose; 
-	private Histogram histogram = null;
-
-
-	public BamPileupLoader (BamPileup bamPileup, int loaderIndex, Bed[] regions) throws IOException{
+	private DepthHistogram.Shard coverageShard = null;
+	private BamPileup bamPileup;
+	private int loaderIndex;
+
+	/**Readers and writers aren't opened until the loader is run so only one set per thread is open at a time.*/
+	public BamPileupLoader (BamPileup bamPileup, int loaderIndex, Bed[] regions) {
+		this.bamPileup = bamPileup;
+		this.loaderIndex = loaderIndex;
 		minBaseQuality = bamPileup.getMinBaseQuality();
 		minMappingQuality = bamPileup.getMinMappingQuality();
 		minimumReadDepth = bamPileup.getMinimumReadDepth();
@@ -46,19 +58,29 @@ public class BamPileupLoader implements Runnable {
 		printAll = bamPileup.isPrintAll();
 		verbose = bamPileup.isVerbose();
 
-		//create writers
-		pileupFile = new File(bamPileup.getTempDir(), loaderIndex+"_tempBamPileup.txt");
+		if (bamPileup.isColumnar()) pileupFile = new File(bamPileup.getTempDir(), loaderIndex+"_tempBamPileup"+BpileupColumnarWriter.EXTENSION);
+		else pileupFile = new File(bamPileup.getTempDir(), loaderIndex+"_tempBamPileup.txt");
 		pileupFile.deleteOnExit();
-		pileupOut = new PrintWriter (new FileWriter(pileupFile));
-		
 		if (minimumReadDepth > 0) {
 			coverageFile = new File(bamPileup.getTempDir(), loaderIndex+"_temp.bed");
 			coverageFile.deleteOnExit();
-			bedOut = new PrintWriter (new FileWriter(coverageFile));
 		}
 		
-		//create sam readers
+		//shard of the shared histogram to count read depth
+		coverageShard = bamPileup.getCoverageHistogram().fetchShard();
+	}
+
+	private void open() throws IOException{
+		//create writers
 		File[] bamFiles = bamPileup.getBamFiles();
+		if (bamPileup.isColumnar()) {
+			columnarStream = new BufferedOutputStream(new FileOutputStream(pileupFile), 65536);
+			columnarOut = new BpileupColumnarWriter(columnarStream, bamFiles.length);
+		}
+		else pileupOut = new PrintWriter (new FileWriter(pileupFile));
+		if (coverageFile != null) bedOut = new PrintWriter (new FileWriter(coverageFile));
+		
+		//create sam readers
 		samReaders = new SamReader[bamFiles.length];
 		for (int i=0; i< samReaders.length; i++) {
 			samReaders[i] = bamPileup.getSamFactory().open(bamFiles[i]);
@@ -68,31 +90,38 @@ public class BamPileupLoader implements Runnable {
 			}
 		}
 
-		//add header?
-		if (loaderIndex == 0) {
-			pileupOut.println("# MinMapQual\t"+minMappingQuality);
-			pileupOut.println("# MinBaseQual\t"+minBaseQuality);
-			pileupOut.println("# IncludeOverlappingBpCounts "+includeOverlaps);
-			pileupOut.println("# PrintAll "+printAll);
-			pileupOut.println("# Bed "+IO.getCanonicalPath(bamPileup.getBedFile()));
-			for (int i=0; i<bamFiles.length; i++) pileupOut.println("# BamCram\t"+i+"\t"+IO.getCanonicalPath(bamFiles[i]));
-			pileupOut.println("# Chr\t1BasePos\tRef\tA,C,G,T,N,Del,Ins,FailBQ");
-		}
-
-		//create fasta sequence reader
-		fasta = new IndexedFastaSequenceFile(bamPileup.getFastaFile());
-		if (fasta.isIndexed() == false) throw new IOException("\nError: cannot find your xxx.fai index or the multi fasta file isn't indexed\n");
-		
-		//create histogram to count read depth
-		histogram = new Histogram(0, bamPileup.getMaximumCoverageCalculated(), (int)bamPileup.getMaximumCoverageCalculated());
+		//add header? the binary format saves it when merging
+		if (loaderIndex == 0 && pileupOut != null) pileupOut.print(fetchHeader());
 
+		//create fasta sequence reader or use the shared 2bit
+		twoBitGenome = bamPileup.getTwoBitGenome();
+		if (twoBitGenome == null) {
+			fasta = new IndexedFastaSequenceFile(bamPileup.getFastaFile());
+			if (fasta.isIndexed() == false) throw new IOException("\nError: cannot find your xxx.fai index or the multi fasta file isn't indexed\n");
+		}
+	}
 
+	/**The # header lines with the settings and bam order, each ending with a line return.*/
+	public String fetchHeader(){
+		File[] bamFiles = bamPileup.getBamFiles();
+		StringBuilder sb = new StringBuilder();
+		sb.append("# MinMapQual\t"+minMappingQuality+"\n");
+		sb.append("# MinBaseQual\t"+minBaseQuality+"\n");
+		sb.append("# IncludeOverlappingBpCounts "+includeOverlaps+"\n");
+		sb.append("# PrintAll "+printAll+"\n");
+		sb.append("# Bed "+IO.getCanonicalPath(bamPileup.getBedFile())+"\n");
+		for (int i=0; i<bamFiles.length; i++) sb.append("# BamCram\t"+i+"\t"+IO.getCanonicalPath(bamFiles[i])+"\n");
+		sb.append("# Chr\t1BasePos\tRef\tA,C,G,T,N,Del,Ins,FailBQ\n");
+		return sb.toString();
 	}
 
 	public void run() {	
 		try {
+			open();
 			//for each region
 			int counter = 0;			
+			StringBuilder sb  = new StringBuilder();
+			BaseCount[] column = new BaseCount[samReaders.length];
 			for (Bed region: regions) {
 				if (counter++ > 100) {
 					counter = 0;
@@ -107,62 +136,73 @@ public class BamPileupLoader implements Runnable {
 				}
 
 				//for each base in the region
-				StringBuilder sb  = null;
-				boolean noCounts = true;
 				for (int bp=0; bp< region.getLength(); bp++) {
-					sb  = new StringBuilder();
-					noCounts = true;
-					
-					sb.append(chr); sb.append("\t");
-					sb.append((bamBC[0][bp].bpPosition +1)); sb.append("\t");
-					sb.append(bamBC[0][bp].ref);
-					
-					//out.print(chr+"\t"+ (bamBC[0][bp].bpPosition +1)+ "\t"+ bamBC[0][bp].ref);
+					boolean noCounts = true;
 
 					//for each bam
 					double totalReadDepth = 0;
 					for (int b = 0; b<samReaders.length; b++ ) {
-						sb.append("\t");
-						if (bamBC[b][bp].loadStringBuilderWithCounts(sb)  == true) {
+						column[b] = bamBC[b][bp];
+						if (column[b].getTotalReadCoverage() != 0) {
 							noCounts = false;
-							totalReadDepth += bamBC[b][bp].getPassingReadCoverage();
+							totalReadDepth += column[b].getPassingReadCoverage();
+						}
+					}
+					if (noCounts == false || printAll == true) {
+						if (columnarOut != null) columnarOut.add(chr, column[0].bpPosition +1, column[0].ref, column);
+						else {
+							sb.setLength(0);
+							sb.append(chr); sb.append("\t");
+							sb.append((column[0].bpPosition +1)); sb.append("\t");
+							sb.append(column[0].ref);
+							for (int b = 0; b<samReaders.length; b++ ) {
+								sb.append("\t");
+								column[b].loadStringBuilderWithCounts(sb);
+							}
+							pileupOut.println(sb);
 						}
 					}
-					if (noCounts == false || printAll == true) pileupOut.println(sb.toString());
 					//save to histogram
-					histogram.count(totalReadDepth);
+					coverageShard.count(totalReadDepth);
 					
 					//here
 					if (bedOut!= null && totalReadDepth >= minimumReadDepth) bedOut.println(chr+"\t"+bamBC[0][bp].bpPosition+"\t"+(bamBC[0][bp].bpPosition+1));
 				}
 			}
+			if (columnarOut != null) columnarOut.finish();
 		} catch (Exception e) {
 			failed = true;
 			System.err.println("\nError: problem processing\n" );
 			e.printStackTrace();
 		} finally {
 			try {
-				pileupOut.close();
+				if (pileupOut != null) pileupOut.close();
+				if (columnarStream != null) columnarStream.close();
 				if(bedOut != null) bedOut.close();
-				fasta.close();
-				for (SamReader sr: samReaders) sr.close();
+				if (fasta != null) fasta.close();
+				for (SamReader sr: samReaders) if (sr != null) sr.close();
 			} catch (IOException e) {}
 		}
 	}
 
 	private BaseCount[] pileup(String chr, int start, int stop, SamReader samReader) throws Exception{
-		//watch end
-		int stopPlusOne = stop+1;
-		int chromEnd = (int)fasta.getIndex().getIndexEntry(chr).getSize();
-		if (stopPlusOne > chromEnd) stopPlusOne = chromEnd;
-		
 		//create container for counts
-		ReferenceSequence p = fasta.getSubsequenceAt(chr, start+1, stopPlusOne);
-		
-		char[] refSeq = new String(p.getBases()).toCharArray();
 		BaseCount[] bc = new BaseCount[stop-start];
 		int counter = 0;
-		for (int i=start; i< stop; i++) bc[counter] = new BaseCount(i, refSeq[counter++]);
+		if (twoBitGenome != null) {
+			int contig = twoBitGenome.getContigIndex(chr);
+			if (contig == -1) throw new IOException("\nError: failed to find "+chr+" in "+twoBitGenome.getTwoBitFile());
+			for (int i=start; i< stop; i++) bc[counter++] = new BaseCount(i, (char)twoBitGenome.getBase(contig, i));
+		}
+		else {
+			//watch end
+			int stopPlusOne = stop+1;
+			int chromEnd = (int)fasta.getIndex().getIndexEntry(chr).getSize();
+			if (stopPlusOne > chromEnd) stopPlusOne = chromEnd;
+			ReferenceSequence p = fasta.getSubsequenceAt(chr, start+1, stopPlusOne);
+			byte[] refSeq = p.getBases();
+			for (int i=start; i< stop; i++) bc[counter] = new BaseCount(i, (char)refSeq[counter++]);
+		}
 
 		//fetch alignments
 		SAMRecordIterator it = samReader.queryOverlapping(chr, start-1, stop+1);
@@ -280,7 +320,9 @@ public class BamPileupLoader implements Runnable {
 		return coverageFile;
 	}
 
-	public Histogram getHistogram() {
-		return histogram;
+	/**The block index of the binary pileup file, null if writing text.*/
+	public ArrayList<BpileupColumnarWriter.Block> getColumnarBlocks() {
+		if (columnarOut == null) return null;
+		return columnarOut.getBlocks();
 	}
 }
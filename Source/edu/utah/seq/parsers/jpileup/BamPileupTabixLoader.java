@@ -10,19 +10,23 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import edu.utah.seq.query.QueryIndexFileLoader;
+import edu.utah.seq.query.TabixSweepReader;
 import edu.utah.seq.vcf.VCFBkz;
 import htsjdk.tribble.readers.TabixReader;
 import util.gen.IO;
 import util.gen.Misc;
 import util.gen.Num;
 
-/**Pulls bpileup lines that overlap each vcf record and calculates AF and z-score stats.*/
+/**Pulls bpileup lines that overlap each vcf record and calculates AF and z-score stats. In merge join mode each chunk
+ * is one chromosome of position sorted records that are walked against a single stream of bpileup lines.*/
 public class BamPileupTabixLoader implements Runnable{
 
 	//fields
 	private boolean failed = false;
 	private VCFBkz vbp;
 	private TabixReader tabixReader = null;
+	private TabixSweepReader<BpileupLine> sweepReader = null;
+	private BpileupColumnarReader columnarReader = null;
 	private ArrayList<String> vcfLines = new ArrayList<String>();
 	private ArrayList<String> modVcfRecords = new ArrayList<String>();
 	private ArrayList<String> tooFewSamples = new ArrayList<String>();
@@ -55,7 +59,18 @@ public class BamPileupTabixLoader implements Runnable{
 		minimumZScore = vbp.getMinimumZScore();
 		maxSampleAF = vbp.getMaxSampleAF();
 		replaceQualScore = vbp.isReplaceQualScore();
-		tabixReader = new TabixReader(bpileupFile.getCanonicalPath());
+		//binary columnar bpileup? its block cache already serves sorted records
+		if (BpileupColumnarReader.isColumnar(bpileupFile)) columnarReader = new BpileupColumnarReader(bpileupFile);
+		else if (vbp.isMergeJoin()) {
+			//later records may start up to the indel pad before the current deletion start
+			sweepReader = new TabixSweepReader<BpileupLine>(bpileupFile, vbp.getBpIndelPad()+2) {
+				protected BpileupLine parse(String line) throws Exception {
+					return new BpileupLine(line);
+				}
+			};
+			tabixReader = sweepReader.getTabixReader();
+		}
+		else tabixReader = new TabixReader(bpileupFile.getCanonicalPath());
 		fourDecimalMax.setMaximumFractionDigits(4);
 		sampleIndexesToExclude = vbp.getSampleIndexesToExclude();
 		excludeBKAFs = vbp.isExcludeBKAFs();
@@ -170,7 +185,8 @@ if (debug) IO.el("\nProc "+record);
 	private ScoreAfs scoreIndel(String[] fields, double altAF, char allele) throws Exception {
 		
 		if (debug) IO.pl("\tScoring INDEL "+altAF+" "+allele);
-		String tabixCoor = null;
+		int start = 0;
+		int stop = 0;
 		//fetch interbase coordinates for del
 		if (allele == 'D') {
 			int[] startStop = QueryIndexFileLoader.fetchEffectedBps(fields, true);
@@ -182,40 +198,38 @@ if (debug) IO.el("\nProc "+record);
 			}
 			if (debug) IO.pl("\tStartEnd "+startStop[0]+ " to "+startStop[1]);
 			//pull bpileup records over deleted bps
-			tabixCoor = fields[0]+":"+(startStop[0]+2)+"-"+ (startStop[1]);
+			start = startStop[0]+2;
+			stop = startStop[1];
 		}
 		else if (allele ==  'I') {
 			//single downstream base
-			int start = Integer.parseInt(fields[1])+1;
-			int stop = start;
+			start = Integer.parseInt(fields[1])+1;
+			stop = start;
 			if (bpIndelPad !=0) {
 				start = start-bpIndelPad;
 				if (start <0) start = 0;
 				stop = stop+bpIndelPad;
 			}
-			tabixCoor = fields[0]+":"+start+"-"+stop;
 		}
 		
 		
-		if (debug) IO.pl("\tTabCoor "+tabixCoor);
-		TabixReader.Iterator it = fetchInteratorOnCoordinates(tabixCoor);
-		if (it == null) {
+		if (debug) IO.pl("\tTabCoor "+fields[0]+":"+start+"-"+stop);
+		ArrayList<BpileupLine> lines = fetchBpileupLines(fields[0], start, stop);
+		if (lines == null) {
 			if (debug) IO.pl("No bpileup lines for "+Misc.stringArrayToString(fields, "\t"));		
 			return null;
 		}
 
 		//for each bpileup record, find lowest zscore
-		String bpileupLine = null;
 		ScoreAfs scoreAfs = null;
 
-		while ((bpileupLine = it.next()) != null){
-			if (debug) IO.pl("\nLine "+bpileupLine);
+		for (BpileupLine ml: lines){
+			if (debug) IO.pl("\nLine "+ml.getLine());
 
-			//parse bpileup line and pull filtered set of samples
-			BpileupLine ml = new BpileupLine(bpileupLine);
+			//pull filtered set of samples
 			ArrayList<Double> altAFs  = calcAltIndelAFs(allele, ml);
 			if (altAFs.size() < minNumSamples) {
-				if (debug) IO.pl("Too few passing samples to calc bkz "+bpileupLine);
+				if (debug) IO.pl("Too few passing samples to calc bkz "+ml.getLine());
 				continue;
 			}
 
@@ -241,19 +255,14 @@ if (debug) IO.el("\nProc "+record);
 
 	private ScoreAfs scoreSnv(String[] fields, double testAF, char allele) throws Exception {
 		//pull bpileup record, if none return null;
-		String tabixCoor = fields[0]+":"+fields[1]+"-"+fields[1];
-		TabixReader.Iterator it = fetchInteratorOnCoordinates(tabixCoor);
-		if (it == null) {
-			return null;
-		}
-
-		String bpileupLine = it.next();
-		if (bpileupLine == null) {
+		int pos = Integer.parseInt(fields[1]);
+		ArrayList<BpileupLine> lines = fetchBpileupLines(fields[0], pos, pos);
+		if (lines == null || lines.size() == 0) {
 			return null;
 		}
 
-		//parse bpileup line calculate alt AF for samples not germline (het or homo) for the alt
-		BpileupLine ml = new BpileupLine(bpileupLine);
+		//calculate alt AF for samples not germline (het or homo) for the alt
+		BpileupLine ml = lines.get(0);
 		ArrayList<Double> altAFs = calcAltSnvAFs(allele, ml);
 		if (altAFs.size() < minNumSamples) {
 			return null;
@@ -324,6 +333,18 @@ if (debug) IO.el("\nProc "+record);
 		return new double[]{mean, stdev};
 	}
 	
+	/**Returns the parsed bpileup lines between the 1 based start and stop, inclusive, or null if tabix found no data for the chromosome.*/
+	private ArrayList<BpileupLine> fetchBpileupLines(String chr, int start, int stop) throws Exception {
+		if (columnarReader != null) return columnarReader.fetchBpileupLines(chr, start, stop);
+		if (sweepReader != null) return sweepReader.fetch(chr, start, stop);
+		TabixReader.Iterator it = fetchInteratorOnCoordinates(chr+":"+start+"-"+stop);
+		if (it == null) return null;
+		ArrayList<BpileupLine> al = new ArrayList<BpileupLine>();
+		String bpileupLine = null;
+		while ((bpileupLine = it.next()) != null) al.add(new BpileupLine(bpileupLine));
+		return al;
+	}
+
 	private TabixReader.Iterator fetchInteratorOnCoordinates(String coordinates) {
 		TabixReader.Iterator it = null;
 		//watch out for no retrieved data error from tabix
@@ -432,4 +453,9 @@ if (debug) IO.el("\nProc "+record);
 	public TabixReader getTabixReader() {
 		return tabixReader;
 	}
+
+	public void close() {
+		if (columnarReader != null) columnarReader.close();
+		if (tabixReader != null) tabixReader.close();
+	}
 }
@@ -0,0 +1,191 @@
+package edu.utah.seq.parsers.jpileup;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**Random access reader for the binary columnar bpileup xxx.bpc files made by BamPileup, see BpileupColumnarWriter.
+ * The block index is loaded when opened. The last decoded block is cached so queries walking along a chromosome decode
+ * each block once. Not thread safe, make one per thread.
+ * @author david.nix@hci.utah.edu*/
+public class BpileupColumnarReader {
+
+	//fields
+	private File bpcFile;
+	private RandomAccessFile raf;
+	private String header;
+	private int numberSamples;
+	private HashMap<String, BpileupColumnarWriter.Block[]> chrBlocks = new HashMap<String, BpileupColumnarWriter.Block[]>();
+	private Inflater inflater = new Inflater();
+	private BpileupColumnarWriter.Block cachedBlock = null;
+	private BpileupColumns cachedColumns = null;
+	private long numberBlocksDecoded = 0;
+
+	public BpileupColumnarReader(File bpcFile) throws IOException{
+		this.bpcFile = bpcFile;
+		raf = new RandomAccessFile(bpcFile, "r");
+		if (raf.length() < 28 || raf.readInt() != BpileupColumnarWriter.MAGIC) throw new IOException("This does not appear to be a binary bpileup file "+bpcFile);
+		int version = raf.readInt();
+		if (version != BpileupColumnarWriter.VERSION) throw new IOException("Unsupported binary bpileup version "+version+" in "+bpcFile);
+		byte[] headerBytes = new byte[raf.readInt()];
+		raf.readFully(headerBytes);
+		header = new String(headerBytes, StandardCharsets.UTF_8);
+		numberSamples = raf.readInt();
+		loadIndex();
+	}
+
+	private void loadIndex() throws IOException{
+		raf.seek(raf.length() - 12);
+		long indexOffset = raf.readLong();
+		if (raf.readInt() != BpileupColumnarWriter.MAGIC) throw new IOException("Truncated binary bpileup file, missing the index "+bpcFile);
+		byte[] index = new byte[(int)(raf.length() - 12 - indexOffset)];
+		raf.seek(indexOffset);
+		raf.readFully(index);
+		DataInputStream dis = new DataInputStream(new ByteArrayInputStream(index));
+		String[] chrs = new String[dis.readInt()];
+		for (int i=0; i< chrs.length; i++) chrs[i] = dis.readUTF();
+		int numBlocks = dis.readInt();
+		HashMap<String, ArrayList<BpileupColumnarWriter.Block>> map = new HashMap<String, ArrayList<BpileupColumnarWriter.Block>>();
+		for (int i=0; i< numBlocks; i++){
+			String chr = chrs[dis.readInt()];
+			BpileupColumnarWriter.Block b = new BpileupColumnarWriter.Block(chr, dis.readInt(), dis.readInt(), dis.readLong(), 0);
+			b.length = dis.readInt();
+			b.numberBases = dis.readInt();
+			ArrayList<BpileupColumnarWriter.Block> al = map.get(chr);
+			if (al == null) {
+				al = new ArrayList<BpileupColumnarWriter.Block>();
+				map.put(chr, al);
+			}
+			al.add(b);
+		}
+		//blocks are written in position order for each chromosome
+		for (String chr: map.keySet()) {
+			ArrayList<BpileupColumnarWriter.Block> al = map.get(chr);
+			chrBlocks.put(chr, al.toArray(new BpileupColumnarWriter.Block[al.size()]));
+		}
+	}
+
+	/**Returns the bases with a 1 based position between start and stop, inclusive, possibly none,
+	 * or null if the chromosome isn't in the file.*/
+	public BpileupColumns fetch(String chr, int start, int stop) throws IOException{
+		BpileupColumnarWriter.Block[] blocks = chrBlocks.get(chr);
+		if (blocks == null) return null;
+
+		//find the first block that ends at or after the start
+		int lo = 0;
+		int hi = blocks.length;
+		while (lo < hi){
+			int mid = (lo + hi) >>> 1;
+			if (blocks[mid].lastPos < start) lo = mid+1;
+			else hi = mid;
+		}
+
+		BpileupColumns result = null;
+		for (int i=lo; i< blocks.length && blocks[i].firstPos <= stop; i++){
+			BpileupColumns bc = decode(blocks[i]);
+			int[] pos = bc.getPositions();
+			int first = Arrays.binarySearch(pos, start);
+			if (first < 0) first = -first -1;
+			int last = first;
+			while (last < pos.length && pos[last] <= stop) last++;
+			BpileupColumns slice = bc.slice(first, last);
+			if (result == null) result = slice;
+			else result = result.append(slice);
+		}
+		if (result == null) result = new BpileupColumns(chr, numberSamples, 0, new int[0], new byte[0], new int[numberSamples * BpileupColumnarWriter.NUM_FIELDS][0]);
+		return result;
+	}
+
+	/**Same as fetch() but returns BpileupLines for code written for the text format, null if the chromosome isn't in the file.*/
+	public ArrayList<BpileupLine> fetchBpileupLines(String chr, int start, int stop) throws IOException{
+		BpileupColumns bc = fetch(chr, start, stop);
+		if (bc == null) return null;
+		ArrayList<BpileupLine> al = new ArrayList<BpileupLine>(bc.getNumberBases());
+		for (int i=0; i< bc.getNumberBases(); i++) al.add(bc.fetchBpileupLine(i));
+		return al;
+	}
+
+	private BpileupColumns decode(BpileupColumnarWriter.Block block) throws IOException{
+		if (block == cachedBlock) return cachedColumns;
+		byte[] comp = new byte[block.length];
+		raf.seek(block.offset);
+		raf.readFully(comp);
+		int rawLength = ((comp[0] & 0xFF) << 24) | ((comp[1] & 0xFF) << 16) | ((comp[2] & 0xFF) << 8) | (comp[3] & 0xFF);
+		byte[] raw = new byte[rawLength];
+		inflater.reset();
+		inflater.setInput(comp, 8, comp.length - 8);
+		try {
+			int n = 0;
+			while (n < rawLength && inflater.finished() == false) {
+				int x = inflater.inflate(raw, n, rawLength - n);
+				if (x == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+				n += x;
+			}
+			if (n != rawLength) throw new IOException("Failed to inflate the block at "+block.offset+" in "+bpcFile);
+		} catch (DataFormatException e) {
+			throw new IOException("Corrupt block at "+block.offset+" in "+bpcFile, e);
+		}
+
+		//positions, refs, then the count columns
+		int num = block.numberBases;
+		int[] index = new int[]{0};
+		int[] positions = new int[num];
+		positions[0] = readVarInt(raw, index);
+		for (int i=1; i< num; i++) positions[i] = positions[i-1] + readVarInt(raw, index);
+		byte[] refs = new byte[num];
+		System.arraycopy(raw, index[0], refs, 0, num);
+		index[0] += num;
+		int[][] counts = new int[numberSamples * BpileupColumnarWriter.NUM_FIELDS][num];
+		for (int[] column: counts) {
+			for (int i=0; i< num; i++) column[i] = readVarInt(raw, index);
+		}
+
+		cachedBlock = block;
+		cachedColumns = new BpileupColumns(block.chr, numberSamples, num, positions, refs, counts);
+		numberBlocksDecoded++;
+		return cachedColumns;
+	}
+
+	private static int readVarInt(byte[] b, int[] index){
+		int i = index[0];
+		int value = 0;
+		int shift = 0;
+		while (true){
+			int x = b[i++];
+			value |= (x & 0x7F) << shift;
+			if ((x & 0x80) == 0) break;
+			shift += 7;
+		}
+		index[0] = i;
+		return value;
+	}
+
+	public static boolean isColumnar(File f){
+		return f.getName().endsWith(BpileupColumnarWriter.EXTENSION);
+	}
+
+	public void close(){
+		try {
+			inflater.end();
+			raf.close();
+		} catch (IOException e){}
+	}
+
+	public String getHeader() {
+		return header;
+	}
+	public int getNumberSamples() {
+		return numberSamples;
+	}
+	public long getNumberBlocksDecoded() {
+		return numberBlocksDecoded;
+	}
+}
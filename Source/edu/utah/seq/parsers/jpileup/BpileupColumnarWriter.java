@@ -0,0 +1,209 @@
+package edu.utah.seq.parsers.jpileup;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.zip.Deflater;
+
+/**Writes the binary columnar bpileup format, xxx.bpc, an alternative to the bgzipped tabix indexed text bpileup.
+ * Bases are grouped into blocks of up to BASES_PER_BLOCK lines from one chromosome. Each block holds the delta coded
+ * positions, the reference bases, and then for each sample a column of varints for each of the A,C,G,T,N,Del,Ins,FailBQ
+ * counts, all deflated together. The file starts with the magic number, version, text header and number of samples.
+ * It ends with the chromosome names, the block index, and the file offset of the index, see BpileupColumnarReader.
+ * @author david.nix@hci.utah.edu*/
+public class BpileupColumnarWriter {
+
+	//fields
+	private OutputStream out;
+	private long bytesWritten = 0;
+	private int numberSamples;
+	private String chr = null;
+	private int numberBases = 0;
+	private int[] positions = new int[BASES_PER_BLOCK];
+	private byte[] refs = new byte[BASES_PER_BLOCK];
+	private int[][] counts;
+	private ArrayList<Block> blocks = new ArrayList<Block>();
+	private Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+	private ByteArrayOutputStream raw = new ByteArrayOutputStream();
+	private byte[] compressed = new byte[65536];
+
+	public static final int MAGIC = 0x42504331;
+	public static final int VERSION = 1;
+	/**A,C,G,T,N,Del,Ins,FailBQ*/
+	public static final int NUM_FIELDS = 8;
+	public static final int BASES_PER_BLOCK = 4096;
+	public static final String EXTENSION = ".bpc";
+
+	/**Writes just the blocks to the stream, no header or index, for temp files that are joined with merge().*/
+	public BpileupColumnarWriter(OutputStream out, int numberSamples){
+		this.out = out;
+		this.numberSamples = numberSamples;
+		counts = new int[numberSamples * NUM_FIELDS][BASES_PER_BLOCK];
+	}
+
+	/**Adds a line, call in position order for each chromosome.
+	 * @param samples one BaseCount for each sample*/
+	public void add(String chromosome, int oneBasePosition, char ref, BaseCount[] samples) throws IOException{
+		if (chromosome.equals(chr) == false || numberBases == BASES_PER_BLOCK) {
+			flush();
+			chr = chromosome;
+		}
+		positions[numberBases] = oneBasePosition;
+		refs[numberBases] = (byte)ref;
+		int col = 0;
+		for (int s=0; s< numberSamples; s++){
+			BaseCount bc = samples[s];
+			counts[col++][numberBases] = bc.a;
+			counts[col++][numberBases] = bc.c;
+			counts[col++][numberBases] = bc.g;
+			counts[col++][numberBases] = bc.t;
+			counts[col++][numberBases] = bc.n;
+			counts[col++][numberBases] = bc.del;
+			counts[col++][numberBases] = bc.ins;
+			counts[col++][numberBases] = bc.failQual;
+		}
+		numberBases++;
+	}
+
+	/**Compresses and writes any pending lines as a block.*/
+	public void flush() throws IOException{
+		if (numberBases == 0) return;
+		raw.reset();
+		writeVarInt(raw, positions[0]);
+		for (int i=1; i< numberBases; i++) writeVarInt(raw, positions[i] - positions[i-1]);
+		raw.write(refs, 0, numberBases);
+		for (int[] column: counts) {
+			for (int i=0; i< numberBases; i++) writeVarInt(raw, column[i]);
+		}
+		byte[] rawBytes = raw.toByteArray();
+
+		deflater.reset();
+		deflater.setInput(rawBytes);
+		deflater.finish();
+		int compLength = 0;
+		while (deflater.finished() == false){
+			if (compLength == compressed.length) {
+				byte[] bigger = new byte[compressed.length * 2];
+				System.arraycopy(compressed, 0, bigger, 0, compLength);
+				compressed = bigger;
+			}
+			compLength += deflater.deflate(compressed, compLength, compressed.length - compLength);
+		}
+
+		Block b = new Block(chr, positions[0], positions[numberBases-1], bytesWritten, numberBases);
+		writeInt(out, rawBytes.length);
+		writeInt(out, compLength);
+		out.write(compressed, 0, compLength);
+		b.length = 8 + compLength;
+		bytesWritten += b.length;
+		blocks.add(b);
+		numberBases = 0;
+	}
+
+	/**Flushes and releases the compressor, does not close the stream.*/
+	public void finish() throws IOException{
+		flush();
+		deflater.end();
+	}
+
+	/**Writes the final xxx.bpc file: the header, the blocks from each temp file in order, then the index.
+	 * @param tempBlocks the blocks returned by getBlocks() for each temp file*/
+	public static void merge(String header, int numberSamples, File[] tempFiles, ArrayList<ArrayList<Block>> tempBlocks, File result) throws IOException{
+		DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(result), 65536));
+		try {
+			byte[] headerBytes = header.getBytes(StandardCharsets.UTF_8);
+			dos.writeInt(MAGIC);
+			dos.writeInt(VERSION);
+			dos.writeInt(headerBytes.length);
+			dos.write(headerBytes);
+			dos.writeInt(numberSamples);
+			//DataOutputStream.size() stops at 2GB so count the bytes here
+			long fileOffset = 16 + headerBytes.length;
+
+			//copy the blocks and shift their offsets
+			ArrayList<Block> all = new ArrayList<Block>();
+			byte[] buffer = new byte[65536];
+			for (int i=0; i< tempFiles.length; i++){
+				long base = fileOffset;
+				InputStream in = new BufferedInputStream(new FileInputStream(tempFiles[i]));
+				int n;
+				while ((n = in.read(buffer)) != -1) {
+					dos.write(buffer, 0, n);
+					fileOffset += n;
+				}
+				in.close();
+				for (Block b: tempBlocks.get(i)) {
+					b.offset += base;
+					all.add(b);
+				}
+			}
+
+			//chromosome names then the index
+			long indexOffset = fileOffset;
+			LinkedHashMap<String, Integer> chrIndex = new LinkedHashMap<String, Integer>();
+			for (Block b: all) if (chrIndex.containsKey(b.chr) == false) chrIndex.put(b.chr, chrIndex.size());
+			dos.writeInt(chrIndex.size());
+			for (String c: chrIndex.keySet()) dos.writeUTF(c);
+			dos.writeInt(all.size());
+			for (Block b: all){
+				dos.writeInt(chrIndex.get(b.chr));
+				dos.writeInt(b.firstPos);
+				dos.writeInt(b.lastPos);
+				dos.writeLong(b.offset);
+				dos.writeInt(b.length);
+				dos.writeInt(b.numberBases);
+			}
+			dos.writeLong(indexOffset);
+			dos.writeInt(MAGIC);
+		} finally {
+			dos.close();
+		}
+	}
+
+	private static void writeVarInt(ByteArrayOutputStream out, int value){
+		while ((value & ~0x7F) != 0){
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	private static void writeInt(OutputStream out, int v) throws IOException{
+		out.write((v >>> 24) & 0xFF);
+		out.write((v >>> 16) & 0xFF);
+		out.write((v >>> 8) & 0xFF);
+		out.write(v & 0xFF);
+	}
+
+	/**Index entry for one block, positions are 1 based and inclusive, the offset is from the start of the file.*/
+	public static class Block {
+		String chr;
+		int firstPos;
+		int lastPos;
+		long offset;
+		int length;
+		int numberBases;
+
+		Block(String chr, int firstPos, int lastPos, long offset, int numberBases){
+			this.chr = chr;
+			this.firstPos = firstPos;
+			this.lastPos = lastPos;
+			this.offset = offset;
+			this.numberBases = numberBases;
+		}
+	}
+
+	public ArrayList<Block> getBlocks() {
+		return blocks;
+	}
+}
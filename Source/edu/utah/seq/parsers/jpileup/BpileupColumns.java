@@ -0,0 +1,110 @@
+package edu.utah.seq.parsers.jpileup;
+
+/**Primitive count columns for a run of bpileup lines from one chromosome, returned by BpileupColumnarReader.
+ * @author david.nix@hci.utah.edu*/
+public class BpileupColumns {
+
+	//fields
+	private String chr;
+	private int numberSamples;
+	private int numberBases;
+	private int[] positions;
+	private byte[] refs;
+	private int[][] counts;
+
+	//field indexes, A,C,G,T,N,Del,Ins,FailBQ
+	public static final int A = 0;
+	public static final int C = 1;
+	public static final int G = 2;
+	public static final int T = 3;
+	public static final int N = 4;
+	public static final int DEL = 5;
+	public static final int INS = 6;
+	public static final int FAIL_BQ = 7;
+
+	/**@param counts [sample * NUM_FIELDS + field][base index]*/
+	BpileupColumns(String chr, int numberSamples, int numberBases, int[] positions, byte[] refs, int[][] counts){
+		this.chr = chr;
+		this.numberSamples = numberSamples;
+		this.numberBases = numberBases;
+		this.positions = positions;
+		this.refs = refs;
+		this.counts = counts;
+	}
+
+	/**Returns a copy of the bases from index start (included) to stop (not included).*/
+	BpileupColumns slice(int start, int stop){
+		int num = stop - start;
+		int[] p = new int[num];
+		byte[] r = new byte[num];
+		System.arraycopy(positions, start, p, 0, num);
+		System.arraycopy(refs, start, r, 0, num);
+		int[][] c = new int[counts.length][num];
+		for (int i=0; i< counts.length; i++) System.arraycopy(counts[i], start, c[i], 0, num);
+		return new BpileupColumns(chr, numberSamples, num, p, r, c);
+	}
+
+	/**Appends the bases in other, both must be from the same chromosome.*/
+	BpileupColumns append(BpileupColumns other){
+		int num = numberBases + other.numberBases;
+		int[] p = new int[num];
+		byte[] r = new byte[num];
+		System.arraycopy(positions, 0, p, 0, numberBases);
+		System.arraycopy(other.positions, 0, p, numberBases, other.numberBases);
+		System.arraycopy(refs, 0, r, 0, numberBases);
+		System.arraycopy(other.refs, 0, r, numberBases, other.numberBases);
+		int[][] c = new int[counts.length][num];
+		for (int i=0; i< counts.length; i++) {
+			System.arraycopy(counts[i], 0, c[i], 0, numberBases);
+			System.arraycopy(other.counts[i], 0, c[i], numberBases, other.numberBases);
+		}
+		return new BpileupColumns(chr, numberSamples, num, p, r, c);
+	}
+
+	/**Returns the count column for one sample and field, e.g. BpileupColumns.DEL, do not modify.*/
+	public int[] getCounts(int sampleIndex, int field){
+		return counts[sampleIndex * BpileupColumnarWriter.NUM_FIELDS + field];
+	}
+
+	public int getCount(int sampleIndex, int field, int baseIndex){
+		return counts[sampleIndex * BpileupColumnarWriter.NUM_FIELDS + field][baseIndex];
+	}
+
+	/**Makes a BpileupLine for the base index for code that works with the text format.*/
+	public BpileupLine fetchBpileupLine(int baseIndex){
+		int zeroPos = positions[baseIndex] - 1;
+		char ref = (char)refs[baseIndex];
+		BaseCount[] samples = new BaseCount[numberSamples];
+		int col = 0;
+		for (int s=0; s< numberSamples; s++){
+			BaseCount bc = new BaseCount(zeroPos, ref);
+			bc.a = counts[col++][baseIndex];
+			bc.c = counts[col++][baseIndex];
+			bc.g = counts[col++][baseIndex];
+			bc.t = counts[col++][baseIndex];
+			bc.n = counts[col++][baseIndex];
+			bc.del = counts[col++][baseIndex];
+			bc.ins = counts[col++][baseIndex];
+			bc.failQual = counts[col++][baseIndex];
+			samples[s] = bc;
+		}
+		return new BpileupLine(chr, zeroPos, ref, samples);
+	}
+
+	public String getChr() {
+		return chr;
+	}
+	public int getNumberSamples() {
+		return numberSamples;
+	}
+	public int getNumberBases() {
+		return numberBases;
+	}
+	/**1 based positions, do not modify.*/
+	public int[] getPositions() {
+		return positions;
+	}
+	public char getRef(int baseIndex) {
+		return (char)refs[baseIndex];
+	}
+}
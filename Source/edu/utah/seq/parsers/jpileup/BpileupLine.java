@@ -29,6 +29,14 @@ public class BpileupLine {
 		for (int i=3; i< numFields; i++) samples[index++] = new BaseCount(zeroPos, ref, fields[i]);	
 	}
 	
+	/**For lines loaded from a binary columnar bpileup, the text line is built on request.*/
+	public BpileupLine(String chr, int zeroPos, char ref, BaseCount[] samples){
+		this.chr = chr;
+		this.zeroPos = zeroPos;
+		this.ref = ref;
+		this.samples = samples;
+	}
+	
 	public String getBed(){
 		StringBuilder sb = new StringBuilder(chr);
 		sb.append("\t");
@@ -52,6 +60,18 @@ public class BpileupLine {
 		return samples;
 	}
 	public String getLine() {
+		if (line == null) {
+			StringBuilder sb = new StringBuilder(chr);
+			sb.append("\t");
+			sb.append(zeroPos+1);
+			sb.append("\t");
+			sb.append(ref);
+			for (BaseCount bc: samples) {
+				sb.append("\t");
+				sb.append(bc.toString());
+			}
+			line = sb.toString();
+		}
 		return line;
 	}
 }
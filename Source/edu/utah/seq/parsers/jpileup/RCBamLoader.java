@@ -11,7 +11,7 @@ import htsjdk.samtools.SAMRecord;
 import htsjdk.samtools.SAMRecordIterator;
 import htsjdk.samtools.SamReader;
 import util.bio.annotation.Bed;
-import util.gen.Histogram;
+import util.gen.DepthHistogram;
 import util.gen.IO;
 import util.gen.Misc;
 
@@ -26,18 +26,25 @@ public class RCBamLoader implements Runnable {
 	private PrintWriter bedOut= null;
 	private Bed[] regions = null;
 	private File coverageFile = null;
-	private Histogram histogram = null;
+	private DepthHistogram.Shard coverageShard = null;
+	private UniObRC uniObRC;
 
-
-	public RCBamLoader (UniObRC uniObRC, int loaderIndex, Bed[] regions) throws IOException{
+	/**The reader and writer aren't opened until the loader is run so only one set per thread is open at a time.*/
+	public RCBamLoader (UniObRC uniObRC, int loaderIndex, Bed[] regions) {
+		this.uniObRC = uniObRC;
 		minBaseQuality = uniObRC.getMinBaseQuality();
 		minMappingQuality = uniObRC.getMinMappingQuality();
 		minimumReadDepth = uniObRC.getMinimumReadDepth();
 		this.regions = regions;
-
-		//create writers
 		coverageFile = new File(uniObRC.getTempDir(), Misc.getRandomString(10)+"_"+loaderIndex+"_temp.bed");
 		coverageFile.deleteOnExit();
+
+		//shard of the shared histogram to count read depth
+		coverageShard = uniObRC.getCoverageHistogram().fetchShard();
+	}
+
+	private void open() throws IOException{
+		//create writer
 		bedOut = new PrintWriter (new FileWriter(coverageFile));
 
 		//create sam reader
@@ -46,13 +53,11 @@ public class RCBamLoader implements Runnable {
 			failed = true;
 			throw new IOException("Failed to find an index for "+uniObRC.getBamFile());
 		}
-
-		//create histogram to count read depth
-		histogram = new Histogram(0, uniObRC.getMaximumCoverageCalculated(), (int)uniObRC.getMaximumCoverageCalculated());
 	}
 
 	public void run() {	
 		try {
+			open();
 			//for each region
 			int counter = 0;			
 			for (Bed region: regions) {
@@ -67,7 +72,7 @@ public class RCBamLoader implements Runnable {
 
 				//for each base in the region
 				for (int bp=0; bp< region.getLength(); bp++) {
-					histogram.count(bamBC[bp].baseCount);
+					coverageShard.count(bamBC[bp].baseCount);
 					if (bamBC[bp].baseCount >= minimumReadDepth) bedOut.println(chr+"\t"+bamBC[bp].bpPosition+"\t"+(bamBC[bp].bpPosition+1));
 				}
 			}
@@ -77,8 +82,8 @@ public class RCBamLoader implements Runnable {
 			e.printStackTrace();
 		} finally {
 			try {
-				bedOut.close();
-				samReader.close();
+				if (bedOut != null) bedOut.close();
+				if (samReader != null) samReader.close();
 			} catch (IOException e) {}
 		}
 	}
@@ -187,8 +192,4 @@ public class RCBamLoader implements Runnable {
 	public File getCoverageFile() {
 		return coverageFile;
 	}
-
-	public Histogram getHistogram() {
-		return histogram;
-	}
 }
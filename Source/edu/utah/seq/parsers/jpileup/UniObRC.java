@@ -3,8 +3,6 @@ package edu.utah.seq.parsers.jpileup;
 import java.io.*;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.regex.*;
 import htsjdk.samtools.*;
 import htsjdk.samtools.cram.ref.ReferenceSource;
@@ -35,7 +33,8 @@ public class UniObRC {
 	private int maximumCoverageCalculated = 1001;
 	private File tempDir = null;
 	private ArrayList<File> tempBedFiles = new ArrayList<File>();
-	private Histogram histogram = null;
+	private DepthHistogram coverageHistogram = new DepthHistogram();
+	private DepthHistogram.Summary coverageSummary = null;
 	private ArrayList<Double> fractionTargetBpsAL = null;
 	private int coverageAt95 = 0;
 	private int coverageAt90 = -1;
@@ -63,7 +62,6 @@ public class UniObRC {
 		samFactory = SamReaderFactory.makeDefault().referenceSource(new ReferenceSource(fastaFile)).validationStringency(ValidationStringency.SILENT);
 		
 		//load and chunk the bed file of regions to scan
-		int numRegionsPerWorker = 0;
 		Bed[] regions = Bed.parseFile(bedFile, 0, 0);
 		Arrays.sort(regions);
 		int numOriRegions = regions.length;
@@ -72,36 +70,29 @@ public class UniObRC {
 		regions = Bed.splitBigRegions(regions, maxBpOfRegion);
 		IO.pl("Splitting "+numOriRegions+" regions into "+regions.length+" with a max size of "+maxBpOfRegion+" bps...");
 		
-		if (regions.length <= numCpu) {
-			numCpu = regions.length;
-			numRegionsPerWorker = 1;
-		}
-		else numRegionsPerWorker = (int)Math.round( (double)regions.length/(double)numCpu );
-		Object[][] chunks = Misc.chunk(regions, numRegionsPerWorker);
+		//several chunks per thread, idle threads pull the next chunk so a slow region doesn't hold up the rest
+		if (regions.length < numCpu) numCpu = regions.length;
+		Object[][] chunks = Misc.chunk(regions, ParallelRunner.fetchChunkSize(regions.length, numCpu));
 		
 		//make and execute loaders
-		IO.p("Launching "+chunks.length+" loaders...");
-		ExecutorService executor = Executors.newFixedThreadPool(chunks.length);
+		IO.p("Launching "+chunks.length+" loaders on "+numCpu+" threads...");
 		RCBamLoader[] loaders = new RCBamLoader[chunks.length];
 		for (int i=0; i< chunks.length; i++) {
 			Bed[] b = new Bed[chunks[i].length];
 			for (int x = 0; x< b.length; x++) b[x] = (Bed)chunks[i][x];
 			loaders[i] = new RCBamLoader(this, i, b);
-			executor.execute(loaders[i]);
 		}
-		executor.shutdown();
-		while (!executor.isTerminated()) {}
+		ParallelRunner.runAll(loaders, numCpu);
 		IO.pl();
 		
 		//check loaders fetch files
-		histogram = new Histogram(0, maximumCoverageCalculated, maximumCoverageCalculated);
 		for (RCBamLoader l: loaders) {
 			if (l.isFailed()) throw new IOException("ERROR: File Loader issue! \n");
 			tempBedFiles.add(l.getCoverageFile());
-			histogram.addCounts(l.getHistogram());
 		}
 		
-		printCoverageStats(histogram);
+		coverageSummary = coverageHistogram.summarize();
+		printCoverageStats(coverageSummary);
 		procTempFiles();
 		printJson();
 
@@ -112,7 +103,7 @@ public class UniObRC {
 		String jPath = Misc.removeExtension(results.getName()) + ".json.gz";
 		Gzipper gz = new Gzipper(new File (results.getParentFile(), jPath));
 		gz.println("{");
-		gz.printJson("meanCoverage", Num.formatNumber(histogram.getStandardDeviation().getMean(), 1), true);
+		gz.printJson("meanCoverage", Num.formatNumber(coverageSummary.getMean(), 1), true);
 		gz.printJson("coverageAt0.95OfTargetBps", coverageAt95, true);
 		gz.printJson("coverageAt0.90OfTargetBps", coverageAt90, true);
 		gz.printJson("minimumMappingQuality", minMappingQuality, true);
@@ -157,7 +148,7 @@ public class UniObRC {
 		out.println("# MinUniObRC\t"+minimumReadDepth);
 		out.println("# MinMapQual\t"+minMappingQuality);
 		out.println("# MinBaseQual\t"+minBaseQuality);
-		out.println("# MeanCoverage\t" +Num.formatNumber(histogram.getStandardDeviation().getMean(), 1));
+		out.println("# MeanCoverage\t" +Num.formatNumber(coverageSummary.getMean(), 1));
 		out.println("# CoverageAt0.95OfTargetBps\t"+ coverageAt95);
 		out.println("# CoverageAt0.90OfTargetBps\t"+ coverageAt90);
 
@@ -173,27 +164,23 @@ public class UniObRC {
 	}
 
 	
-	public void printCoverageStats(Histogram histogram){
+	public void printCoverageStats(DepthHistogram.Summary summary){
 
-			long[] counts = histogram.getBinCounts();
-			double total = histogram.getTotalBinCounts();
+			long total = summary.getTotal();
 			fractionTargetBpsAL = new ArrayList<Double>();
 
 			IO.pl("\nUniObAlignmentCoverage\tFractionTargetBPs");
-			double numCounts = 0;
 			String zero = "0";
-			for (int i=0; i< counts.length; i++){
-				double cumFrac = (total-numCounts)/ total;
+			for (int i=0; i< maximumCoverageCalculated; i++){
 				//runout up to just two decimals for calculating 0.90 and 0.95
-				String formNum = Num.formatNumber(cumFrac, 2);
+				String formNum = Num.formatNumber(summary.getFractionAtOrAbove(i), 2);
 				if (formNum.equals(zero)) {
 					fractionTargetBpsAL.add(0.0);
 					break;
 				}
 				IO.pl(i+"\t"+formNum);
 				fractionTargetBpsAL.add(Double.parseDouble(formNum));
-				numCounts += counts[i];
-				if (numCounts == total) break;
+				if (summary.getNumberAtOrAbove(i+1) == 0) break;
 			}
 			
 			//calc 0.95 and 0.9
@@ -209,7 +196,7 @@ public class UniObRC {
 			
 			//print summary stats
 			IO.pl("\nTotal interrogated bases\t"+ (int)total);
-			IO.pl("Mean Coverage\t"+Num.formatNumber(histogram.getStandardDeviation().getMean(), 1));
+			IO.pl("Mean Coverage\t"+Num.formatNumber(summary.getMean(), 1));
 			IO.pl("CoverageAt0.95OfTargetBps\t" + coverageAt95);
 			IO.pl("CoverageAt0.90OfTargetBps\t" + coverageAt90);
 	}
@@ -339,6 +326,10 @@ public class UniObRC {
 	public double getMaximumCoverageCalculated() {
 		return maximumCoverageCalculated;
 	}
+
+	public DepthHistogram getCoverageHistogram() {
+		return coverageHistogram;
+	}
 	public int getMinimumReadDepth() {
 		return minimumReadDepth;
 	}
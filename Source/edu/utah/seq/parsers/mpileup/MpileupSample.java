@@ -15,6 +15,7 @@ public class MpileupSample {
 	private String qualitySymbols = "";
 	private char[] maskedBaseCalls = new char[0];
 	private MpileupLine record;
+	private char refBase;
 	private int minBaseQuality;
 	
 	//mpileup only marks the upstream base as having an insertion, not the downstream, IGV marks both
@@ -46,6 +47,7 @@ public class MpileupSample {
 		this.baseSymbols = baseSymbols;
 		this.qualitySymbols = qualitySymbols;
 		this.record = record;
+		refBase = record.getRef().charAt(0);
 		minBaseQuality = record.getMinBaseQuality();
 		
 		if (mpileupReadCount !=0 ){
@@ -54,6 +56,22 @@ public class MpileupSample {
 		}
 	}
 	
+	/**For counts made directly from alignments, see ConcordancePileup. The bases, deletions, and insertions should
+	 * already pass the min base quality, the ref should be upper case. There's no MpileupLine record.*/
+	public MpileupSample(char refBase, int[] forwardGATC, int[] reverseGATC, int insertions, int deletions, int poorQualBases, boolean pass) {
+		this.refBase = refBase;
+		this.forwardGATC = forwardGATC;
+		this.reverseGATC = reverseGATC;
+		this.insertions = insertions;
+		this.deletions = deletions;
+		this.poorQualBases = poorQualBases;
+		this.pass = pass;
+		readCoverageForwardBases = Num.sumIntArray(forwardGATC);
+		readCoverageReverseBases = Num.sumIntArray(reverseGATC);
+		mpileupReadCount = poorQualBases+ deletions+ readCoverageForwardBases+ readCoverageReverseBases;
+		readCoverageAll = deletions + insertions + readCoverageForwardBases + readCoverageReverseBases;
+	}
+	
 	public MpileupSample() {}
 
 	/**Appends a comma delimited list counts of observed base observations that pass the minBaseQual: GATC forward, GATC reverse, ins, del, as well as the num that failed minBaseQual so 11 values*/
@@ -245,7 +263,7 @@ public class MpileupSample {
 	}
 	
 	public int getNonRefBaseCounts() {
-		char ref = record.getRef().charAt(0);
+		char ref = refBase;
 		int index = -1;
 		if (ref == 'G') index = G_INDEX;
 		else if (ref == 'A') index = A_INDEX;
@@ -302,7 +320,7 @@ public class MpileupSample {
 	
 	public double findMaxSnvAF(){
 		double maxAF = Double.MIN_NORMAL;
-		char ref = record.getRef().charAt(0);
+		char ref = refBase;
 		int[] indexesToScan = null;
 		if (ref == 'G') indexesToScan = new int[]{A_INDEX, T_INDEX, C_INDEX};
 		else if (ref == 'A') indexesToScan = new int[]{G_INDEX, T_INDEX, C_INDEX};
@@ -319,7 +337,7 @@ public class MpileupSample {
 	public double[] findMaxNonReferenceSnvAFAndIndex(){
 		double maxAF = Double.MIN_NORMAL;
 		int maxIndex = -1;
-		char ref = record.getRef().charAt(0);
+		char ref = refBase;
 		int[] indexesToScan = null;
 		if (ref == 'G') indexesToScan = new int[]{A_INDEX, T_INDEX, C_INDEX};
 		else if (ref == 'A') indexesToScan = new int[]{G_INDEX, T_INDEX, C_INDEX};
@@ -6,19 +6,22 @@ import java.util.ArrayList;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import edu.utah.seq.query.QueryIndexFileLoader;
+import edu.utah.seq.query.TabixSweepReader;
 import edu.utah.seq.vcf.VCFMpileupAnnotator;
 import htsjdk.tribble.readers.TabixReader;
 import util.gen.IO;
 import util.gen.Misc;
 import util.gen.Num;
 
-/**Pulls mpileup lines that overlap each vcf record and calculates AF and z-score stats.*/
+/**Pulls mpileup lines that overlap each vcf record and calculates AF and z-score stats. In merge join mode each chunk
+ * is one chromosome of position sorted records that are walked against a single stream of mpileup lines.*/
 public class MpileupTabixLoaderAFDP implements Runnable{
 
 	//fields
 	private boolean failed = false;
 	private VCFMpileupAnnotator vbc;
 	private TabixReader tabixReader = null;
+	private TabixSweepReader<MpileupLine> sweepReader = null;
 	private ArrayList<String> vcfLines = new ArrayList<String>();
 	private ArrayList<String> modVcfRecords = new ArrayList<String>();
 	private int minBaseQuality;
@@ -33,7 +36,15 @@ public class MpileupTabixLoaderAFDP implements Runnable{
 		this.vbc = vbc;
 		minBaseQuality = vbc.getMinBaseQuality();
 		verbose = vbc.isVerbose();
-		tabixReader = new TabixReader(mpileupFile.getCanonicalPath());
+		if (vbc.isMergeJoin()) {
+			sweepReader = new TabixSweepReader<MpileupLine>(mpileupFile, 1) {
+				protected MpileupLine parse(String line) throws Exception {
+					return new MpileupLine(line, minBaseQuality);
+				}
+			};
+			tabixReader = sweepReader.getTabixReader();
+		}
+		else tabixReader = new TabixReader(mpileupFile.getCanonicalPath());
 		numDecimals = vbc.getNumDecimals();
 	}
 
@@ -86,19 +97,14 @@ public class MpileupTabixLoaderAFDP implements Runnable{
 		//pull mpileup record(s)
 		int start = startStop[0]+1;
 		if (start < 1) start = 1;
-		String tabixCoor = fields[0]+":"+start+"-"+(startStop[1]);
-		TabixReader.Iterator it = fetchInteratorOnCoordinates(tabixCoor);
+		ArrayList<MpileupLine> lines = fetchMpileupLines(fields[0], start, startStop[1]);
 		
 		//any records? Might be none
-		if (it != null) {
+		if (lines != null) {
 
 			//for each mpileup record, find highest AF, should only be one for snvs
-			String mpileupLine = null;
-
-			while ((mpileupLine = it.next()) != null){
-
-				//parse mpilup line and pull filtered set of samples
-				MpileupLine ml = new MpileupLine(mpileupLine, minBaseQuality);
+			for (MpileupLine ml: lines){
+				String mpileupLine = ml.getLine();
 				if (ml.getChr() == null) throw new IOException ("Failed to parse the mpileup line:\n"+mpileupLine);
 
 				//if snv them check position and ref
@@ -161,19 +167,14 @@ public class MpileupTabixLoaderAFDP implements Runnable{
 		//pull mpileup record(s)
 		int start = startStop[0]+1;
 		if (start < 1) start = 1;
-		String tabixCoor = fields[0]+":"+start+"-"+(startStop[1]);
-		TabixReader.Iterator it = fetchInteratorOnCoordinates(tabixCoor);
+		ArrayList<MpileupLine> lines = fetchMpileupLines(fields[0], start, startStop[1]);
 		
 		//any records? Might be none
-		if (it != null) {
+		if (lines != null) {
 
 			//for each mpileup record, find highest AF, should only be one for snvs
-			String mpileupLine = null;
-
-			while ((mpileupLine = it.next()) != null){
-
-				//parse mpilup line and pull filtered set of samples
-				MpileupLine ml = new MpileupLine(mpileupLine, minBaseQuality);
+			for (MpileupLine ml: lines){
+				String mpileupLine = ml.getLine();
 				if (ml.getChr() == null) throw new IOException ("Failed to parse the mpileup line:\n"+mpileupLine);
 
 				//if snv them check position and ref
@@ -282,6 +283,17 @@ public class MpileupTabixLoaderAFDP implements Runnable{
 		return new double[]{insCounts/total, total};
 	}
 
+	/**Returns the parsed mpileup lines between the 1 based start and stop, inclusive, or null if tabix found no data for the chromosome.*/
+	private ArrayList<MpileupLine> fetchMpileupLines(String chr, int start, int stop) throws Exception {
+		if (sweepReader != null) return sweepReader.fetch(chr, start, stop);
+		TabixReader.Iterator it = fetchInteratorOnCoordinates(chr+":"+start+"-"+stop);
+		if (it == null) return null;
+		ArrayList<MpileupLine> al = new ArrayList<MpileupLine>();
+		String mpileupLine = null;
+		while ((mpileupLine = it.next()) != null) al.add(new MpileupLine(mpileupLine, minBaseQuality));
+		return al;
+	}
+
 	private TabixReader.Iterator fetchInteratorOnCoordinates(String coordinates) {
 		TabixReader.Iterator it = null;
 		//watch out for no retrieved data error from tabix
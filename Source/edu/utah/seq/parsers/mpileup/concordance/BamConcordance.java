@@ -5,8 +5,6 @@ import java.util.regex.*;
 import util.bio.annotation.Bed;
 import util.gen.*;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 /**
  * @author david.nix@hci.utah.edu 
@@ -16,7 +14,6 @@ public class BamConcordance {
 	//user defined fields
 	private File bedFile;
 	private File commonSnvBed;
-	private File samtools;
 	private File fasta;
 	private File gender;
 	private File[] bamFiles;
@@ -96,30 +93,21 @@ public class BamConcordance {
 		//parse regions and sort
 		Bed[] regions = Bed.parseFile(bedFile, 0, 0);
 		Arrays.sort(regions);
-		int numRegionsPerChunk = 1+ (int)Math.round( (double)regions.length/ (double)numberThreads );
 		
-		//split regions
-		ArrayList<Bed[]> splitBed = Bed.splitByNumber(regions, numRegionsPerChunk);
+		//split regions, several chunks per thread, each piles up its regions from all of the bams
+		ArrayList<Bed[]> splitBed = Bed.splitByNumber(regions, ParallelRunner.fetchChunkSize(regions.length, numberThreads));
 		
 		//create runners and start
-		System.out.println("\nLaunching "+splitBed.size() +" jobs...");
+		System.out.println("\nLaunching "+splitBed.size() +" jobs on "+numberThreads+" threads...");
 		runners = new ConcordanceChunk[splitBed.size()];
-		ExecutorService executor = Executors.newFixedThreadPool(runners.length);
-		
-		for (int i=0; i< runners.length; i++) {
-			runners[i] = new ConcordanceChunk(splitBed.get(i), this, ""+i);
-			executor.execute(runners[i]);
-		}
-		executor.shutdown();
-		//spins here until the executer is terminated, e.g. all threads complete
-        while (!executor.isTerminated()) {
-        }
+		for (int i=0; i< runners.length; i++) runners[i] = new ConcordanceChunk(splitBed.get(i), this, ""+i);
+		//blocks here until all threads complete
+		ParallelRunner.runAll(runners, numberThreads);
 		
 		//check runners and pull bed gzippers
         ArrayList<File> toMerge = new ArrayList<File>();
         for (ConcordanceChunk c: runners) {
-			if (c.isFailed()) Misc.printErrAndExit("\nERROR: Failed runner, aborting! \n"+c.getCmd());
-			c.getTempBed().delete();
+			if (c.isFailed()) Misc.printErrAndExit("\nERROR: Failed runner, aborting! \n"+c.getChunkName());
 			toMerge.add(c.getMisMatchBed().getGzipFile());
 		}
         
@@ -393,7 +381,7 @@ public class BamConcordance {
 					switch (test){
 					case 'r': bedFile = new File(args[++i]); break;
 					case 'c': commonSnvBed = new File(args[++i]); break;
-					case 's': samtools = new File(args[++i]); break;
+					case 's': i++; break; //samtools is no longer needed, skip it so old command lines still run
 					case 'f': fasta = new File(args[++i]); break;
 					case 'g': gender = new File(args[++i]); break;
 					case 'b': bamCramDir = new File(args[++i]); break;
@@ -419,10 +407,8 @@ public class BamConcordance {
 
 		//check bed
 		if (bedFile == null || bedFile.canRead() == false) Misc.printErrAndExit("\nError: cannot find your bed file of regions to interrogate? "+bedFile);
-		//check samtools
-		if (samtools == null || samtools.canExecute() == false) Misc.printErrAndExit("\nError: cannot find your samtools executable? "+samtools);
 		//check bed
-		if (fasta == null || fasta.canRead() == false) Misc.printErrAndExit("\nError: cannot find your indexed fasta reference file "+fasta);
+		if (fasta == null || fasta.canRead() == false) Misc.printErrAndExit("\nError: cannot find your indexed fasta or .2bit reference file "+fasta);
 		//check bams
 		if (bamCramDir == null || bamCramDir.exists() == false || bamCramDir.isDirectory() == false) Misc.printErrAndExit("\nError: cannot find your directory containing bam and cram files ? "+bamCramDir);
 		File[][] tot = new File[2][];
@@ -466,7 +452,7 @@ public class BamConcordance {
 	public static void printDocs(){
 		System.out.println("\n" +
 				"**************************************************************************************\n" +
-				"**                              Bam Concordance: July 2021                          **\n" +
+				"**                              Bam Concordance: Oct 2026                           **\n" +
 				"**************************************************************************************\n" +
 				"BC calculates sample level concordance based on uncommon homozygous SNVs found in bam\n"+
 				"files. Samples from the same person will show high similarity (>0.9). Run BC on\n"+
@@ -476,17 +462,16 @@ public class BamConcordance {
 				"threaded, BC runs slowly with more that a few bams. Use the USeq ClusterMultiSampleVCF\n"+
 				"app to check large batches of vcfs to identify the likely mismatched sample pairs.\n\n"+
 				
-				"WARNING: Mpileup does not check that the chr order is the same across samples and the\n"+
-				"fasta reference, be certain they are or mpileup will produce incorrect counts. Use\n"+
-				"Picard's ReorderSam app if in doubt.\n\n"+
+				"Alignments are piled up in process with the same filters and overlapping mate base\n"+
+				"quality adjustments as 'samtools mpileup -B -Q minBaseQual -q minMapQual', samtools is\n"+
+				"no longer needed.\n\n"+
 				
 				"Note re FFPE derived RNASeq data: A fair bit of systematic error is found in these\n"+
 				"datasets.  As such, the RNA-> DNA contrasts are low. Yet the DNA->RNA are > 0.9\n\n"+
 
 				"Options:\n"+
 				"-r Path to a bed file of regions to interrogate.\n"+
-				"-s Path to the samtools executable.\n"+
-				"-f Path to an indexed reference fasta file.\n"+
+				"-f Path to an indexed reference fasta file or a xxx.2bit made with Fasta2TwoBit.\n"+
 				"-b Path to a directory containing indexed bam and cram files.\n"+
 				"-c Path to a tabix indexed bed file of common dbSNPs. Download 00-common_all.vcf.gz \n"+
 				"       from ftp://ftp.ncbi.nih.gov/snp/organisms/, grep for 'G5;' containing lines, \n"+
@@ -509,7 +494,7 @@ public class BamConcordance {
 				"      threads and memory available to the JVM so set the -Xmx value to the max.\n\n"+
 
 				"Example: java -Xmx100G -jar pathTo/USeq/Apps/BamConcordance -r ~/exomeTargets.bed\n"+
-				"      -s ~/ST/1.12/bin/samtools -b ~/Patient7Crams -d 10 -a 0.9 -m 0.8 -f\n"+
+				"      -b ~/Patient7Crams -d 10 -a 0.9 -m 0.8 -f\n"+
 				"      ~/B37/human_g1k_v37.fasta -c ~/B37/b38ComSnps.bed.gz -j bc.json.gz -g \n"+
 				"      gender.json.gz\n\n" +
 
@@ -517,10 +502,6 @@ public class BamConcordance {
 
 	}
 
-	public File getSamtools() {
-		return samtools;
-	}
-
 	public int getMinSnvDP() {
 		return minSnvDP;
 	}
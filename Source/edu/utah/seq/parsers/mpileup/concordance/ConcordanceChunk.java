@@ -1,14 +1,12 @@
 package edu.utah.seq.parsers.mpileup.concordance;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import edu.utah.seq.its.Interval1D;
 import edu.utah.seq.its.IntervalST;
-import edu.utah.seq.parsers.mpileup.MpileupLine;
 import edu.utah.seq.parsers.mpileup.MpileupSample;
 import htsjdk.tribble.readers.TabixReader;
 import util.bio.annotation.Bed;
@@ -25,8 +23,6 @@ public class ConcordanceChunk implements Runnable{
 	private BamConcordance bcc;
 	private Bed[] regions;
 	private String chunkName;
-	private String cmd = null;
-	private File tempBed;
 	private File commonSnvBed;
 	private Gzipper misMatchBed;
 	private int minSnvDP;
@@ -59,105 +55,104 @@ public class ConcordanceChunk implements Runnable{
 	}
 	
 	public void run(){
+		ConcordancePileup pileup = null;
 		try {	
-			//write out bed
-			tempBed = new File (bcc.getTempDirectory(), chunkName+"_temp.bed");
-			if (Bed.writeToFile(regions, tempBed) == false) Misc.printErrAndExit("\nERROR: failed to write bed regions to "+tempBed);
-			
 			//make gzipper
 			misMatchBed = new Gzipper(new File (bcc.getTempDirectory(), chunkName+"_MisMatch.bed.gz"));
 
-			//build and execute samtools call
-			cmd = bcc.getSamtools()+" mpileup -B -Q "+ minBaseQuality +" -q "+ minMapQuality +" -d 1000000 -f "+bcc.getFasta()+" -l "+tempBed+" "+bcc.getBamNames();
-			ProcessBuilder pb = new ProcessBuilder(Misc.WHITESPACE.split(cmd));
-
-			Process proc = pb.start();
-
-			BufferedReader data = new BufferedReader(new InputStreamReader(proc.getInputStream()));
-			String line;
+			//pileup the bams in process, one window of bases at a time
+			pileup = new ConcordancePileup(bcc.getBamFiles(), bcc.getFasta(), minBaseQuality, minMapQuality);
+			int numSamples = pileup.getNumberSamples();
 			ParsedSample[] parsedSamples = null;
+			MpileupSample[] samples = new MpileupSample[numSamples];
 
-//boolean printMe = false;
-			while ((line=data.readLine())!= null){
-				if (line.startsWith("#")){
-					System.out.println("\t"+line);
-					continue;
-				}
-				numMpileupLinesProc++;
-//printMe = false;
-				//parse line
-				MpileupLine ml = new MpileupLine(line, minBaseQuality);
-				String chr = ml.getChr();
-				if (chr == null || ml.getRef().equals("N")) continue;
+			for (Bed region: mergeRegions(regions)){
+				String chr = region.getChromosome();
 				boolean chrX = (chr.equals("X") || chr.equals("chrX"));
-				
-//if (chr.equals("chr1") && ml.getZeroPos() > 146983121 && ml.getZeroPos()< 146983141) printMe=true;
-//if (printMe) System.out.println(ml.getLine());
-				
-				//load common snv interval tree?
-				if (chr.equals(currCommonChr) == false) loadIntervalTree(chr);
+				for (int start = region.getStart(); start < region.getStop(); start += ConcordancePileup.WINDOW_SIZE){
+					int stop = Math.min(start + ConcordancePileup.WINDOW_SIZE, region.getStop());
+					if (pileup.pileup(chr, start, stop) == false) break;
 
-				//get samples
-				MpileupSample[] samples = ml.getSamples();
-				if (samples == null) continue;
+					for (int pos = start; pos < stop; pos++){
+						//like mpileup, only bases with an alignment in one or more bams
+						if (pileup.isCovered(pos) == false) continue;
+						numMpileupLinesProc++;
+						if (pileup.getRef(pos) == 'N') continue;
 
-				//first set?
-				if (afHist == null) {
-					makeCounters(samples.length);
-					parsedSamples = new ParsedSample[samples.length];
-				}
+						//load common snv interval tree?
+						if (chr.equals(currCommonChr) == false) loadIntervalTree(chr);
 
-				//check for proper number of samples
-				if (samples.length != afHist.length) continue;
+						//first set?
+						if (afHist == null) {
+							makeCounters(numSamples);
+							parsedSamples = new ParsedSample[numSamples];
+						}
 
-				//parse and check samples, this increments the histograms
-				boolean passDPIndel = false;
-				boolean passAF = false;
-				for (int i=0; i<samples.length; i++) {
-//if (printMe) System.out.println(samples[i].toStringCounts());
-					parsedSamples[i] = new ParsedSample(samples[i], chrX, i);
-					if (parsedSamples[i].passDpIndel) {
-						passDPIndel = true;
-						if (parsedSamples[i].maxAFIndex!=null && parsedSamples[i].maxAFIndex[0] >= minAFForHom) passAF = true;
-					}
-				}
-				
-//if (printMe) System.out.println(passDPIndel+" "+passAF);
-				
-				//any that pass?
-				if (passDPIndel == true && passAF == true){
-					//common?
-					if (commonSnp(ml.getZeroPos()) == false) {
-						//contrast samples
-						boolean foundMisMatch = false;
-//numSimCheck++;
-						for (int i=0; i< similarities.length; i++) {
-							if (similarities[i].contrast(parsedSamples)) foundMisMatch = true;
+						//parse and check samples, this increments the histograms
+						boolean passDPIndel = false;
+						boolean passAF = false;
+						for (int i=0; i<numSamples; i++) {
+							samples[i] = pileup.fetchSample(i, pos);
+							parsedSamples[i] = new ParsedSample(samples[i], chrX, i);
+							if (parsedSamples[i].passDpIndel) {
+								passDPIndel = true;
+								if (parsedSamples[i].maxAFIndex!=null && parsedSamples[i].maxAFIndex[0] >= minAFForHom) passAF = true;
+							}
+						}
+
+						//any that pass?
+						if (passDPIndel == true && passAF == true){
+							//common?
+							if (commonSnp(pos) == false) {
+								//contrast samples
+								boolean foundMisMatch = false;
+								for (int i=0; i< similarities.length; i++) {
+									if (similarities[i].contrast(parsedSamples)) foundMisMatch = true;
+								}
+								//save it?
+								if (foundMisMatch) misMatchBed.println(chr+"\t"+pos+"\t"+(pos+1));
+							}
 						}
-						//save it?
-						if (foundMisMatch) misMatchBed.println(ml.getBed());
 					}
 				}
 			}
 
 			//finish
-			data.close();
 			misMatchBed.close();
 			if (commonSnvBed != null) tabixReader.close();
-			if (numMpileupLinesProc == 0) throw new IOException("Failed to parse any mpileup lines? "+chunkName);
+			if (numMpileupLinesProc == 0) throw new IOException("Failed to pileup any bases? "+chunkName);
 			complete = true;
 			failed = false;
 System.out.println(chunkName+ " job complete. "+numMpileupLinesProc+" bases parsed.");
-//System.out.println(chunkName+ " job complete. "+numSimCheck+" sim check.");
 			
 		} catch (Exception e) {
-			System.err.println("Problem executing -> "+cmd);
+			System.err.println("Problem processing chunk "+chunkName);
 			e.printStackTrace();
 			complete = false;
 			failed = true;
-		} 
+		} finally {
+			if (pileup != null) pileup.close();
+		}
 	}
 	
+	/**Sorts and merges overlapping regions so each base is only piled up once, like 'mpileup -l'.*/
+	private static ArrayList<Bed> mergeRegions(Bed[] regions){
+		Bed[] sorted = regions.clone();
+		Arrays.sort(sorted);
+		ArrayList<Bed> merged = new ArrayList<Bed>();
+		Bed last = null;
+		for (Bed b: sorted){
+			if (last != null && last.getChromosome().equals(b.getChromosome()) && b.getStart() <= last.getStop()){
+				if (b.getStop() > last.getStop()) last.setStop(b.getStop());
+			}
+			else {
+				last = new Bed(b.getChromosome(), b.getStart(), b.getStop(), b.getName(), b.getScore(), b.getStrand());
+				merged.add(last);
+			}
+		}
+		return merged;
+	}
+
 	private boolean commonSnp(int zeroPos) {
 		if (commonSnvRegions == null) return false;
 		Interval1D interval = new Interval1D (zeroPos, zeroPos);
@@ -227,7 +222,7 @@ System.out.println(chunkName+ " job complete. "+numMpileupLinesProc+" bases pars
 		if (numBams != numSamples) {
 			this.failed = true;
 			this.complete = false;
-			throw new Exception("\nERROR: the number of samples in the mpileup file ("+numSamples+") don't equal the number of bams! "+numBams);
+			throw new Exception("\nERROR: the number of piled up samples ("+numSamples+") don't equal the number of bams! "+numBams);
 		}
 		
 		//make histograms
@@ -251,8 +246,8 @@ System.out.println(chunkName+ " job complete. "+numMpileupLinesProc+" bases pars
 
 	
 	//getters and setters
-	public String getCmd() {
-		return cmd;
+	public String getChunkName() {
+		return chunkName;
 	}
 	public boolean isComplete() {
 		return complete;
@@ -260,9 +255,6 @@ System.out.println(chunkName+ " job complete. "+numMpileupLinesProc+" bases pars
 	public boolean isFailed() {
 		return failed;
 	}
-	public File getTempBed() {
-		return tempBed;
-	}
 
 	public Histogram[] getAfHist() {
 		return afHist;
@@ -0,0 +1,316 @@
+package edu.utah.seq.parsers.mpileup.concordance;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import edu.utah.seq.parsers.mpileup.MpileupSample;
+import htsjdk.samtools.Cigar;
+import htsjdk.samtools.CigarElement;
+import htsjdk.samtools.CigarOperator;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+import htsjdk.samtools.ValidationStringency;
+import htsjdk.samtools.cram.ref.ReferenceSource;
+import htsjdk.samtools.reference.IndexedFastaSequenceFile;
+import util.bio.seq.TwoBitGenome;
+
+/**Piles up alignments from each bam or cram over a window of bases and keeps primitive counts for every sample and base.
+ * Replicates what 'samtools mpileup -B -Q minBaseQual -q minMapQual' prints and MpileupSample parses: unmapped, secondary,
+ * failed QC, duplicate, low mapping quality, and paired but not proper pair alignments are skipped, overlapping mate base
+ * qualities are adjusted like htslib, and bases, deletions, and ref skips below the min base quality are dropped.
+ * Not thread safe, make one per thread.
+ * @author david.nix@hci.utah.edu*/
+public class ConcordancePileup {
+
+	//count fields for each base, forward bases use the MpileupSample GATC indexes, reverse bases add 4
+	public static final int REVERSE = 4;
+	public static final int INSERTIONS = 8;
+	public static final int DELETIONS = 9;
+	public static final int POOR_QUALITY = 10;
+	public static final int REF_SKIPS = 11;
+	public static final int DEPTH = 12;
+	public static final int NUMBER_FIELDS = 13;
+
+	/**Max number of bases to pile up at once.*/
+	public static final int WINDOW_SIZE = 10000;
+
+	//fields
+	private SamReader[] samReaders;
+	private IndexedFastaSequenceFile fasta = null;
+	private TwoBitGenome twoBitGenome = null;
+	private int minBaseQuality;
+	private int minMappingQuality;
+	private int[][] counts;
+	private boolean[] covered = new boolean[WINDOW_SIZE];
+	private byte[] refBases = new byte[WINDOW_SIZE];
+	private int windowStart = 0;
+	private int windowStop = 0;
+	private ArrayList<SAMRecord> alignments = new ArrayList<SAMRecord>();
+	private HashMap<String, SAMRecord> firstMates = new HashMap<String, SAMRecord>();
+
+	public ConcordancePileup(File[] bamFiles, File fastaFile, int minBaseQuality, int minMappingQuality) throws IOException{
+		this.minBaseQuality = minBaseQuality;
+		this.minMappingQuality = minMappingQuality;
+
+		//reference, a .2bit is memory mapped and also used to decode crams
+		SamReaderFactory factory;
+		if (fastaFile.getName().endsWith(".2bit")) {
+			twoBitGenome = new TwoBitGenome(fastaFile);
+			factory = SamReaderFactory.makeDefault().referenceSource(twoBitGenome).validationStringency(ValidationStringency.SILENT);
+		}
+		else {
+			fasta = new IndexedFastaSequenceFile(fastaFile);
+			if (fasta.isIndexed() == false) throw new IOException("\nError: cannot find your xxx.fai index or the multi fasta file isn't indexed "+fastaFile);
+			factory = SamReaderFactory.makeDefault().referenceSource(new ReferenceSource(fastaFile)).validationStringency(ValidationStringency.SILENT);
+		}
+
+		samReaders = new SamReader[bamFiles.length];
+		counts = new int[bamFiles.length][WINDOW_SIZE * NUMBER_FIELDS];
+		for (int i=0; i< bamFiles.length; i++) {
+			samReaders[i] = factory.open(bamFiles[i]);
+			if (samReaders[i].hasIndex() == false) throw new IOException("\nError: failed to find an index for "+bamFiles[i]);
+		}
+	}
+
+	/**Loads the counts for the interbase coordinates start-stop, stop - start must be <= WINDOW_SIZE.
+	 * Returns false if the chromosome isn't in the reference.*/
+	public boolean pileup(String chr, int start, int stop) throws IOException{
+		windowStart = start;
+		windowStop = stop;
+		int size = stop - start;
+		Arrays.fill(covered, 0, size, false);
+		if (loadReference(chr) == false) return false;
+
+		for (int i=0; i< samReaders.length; i++){
+			Arrays.fill(counts[i], 0, size * NUMBER_FIELDS, 0);
+			loadAlignments(samReaders[i], chr);
+			for (SAMRecord sam: alignments) count(sam, counts[i]);
+		}
+		return true;
+	}
+
+	/**Returns false if the chr isn't found, otherwise loads the upper case ref bases, those past the end are N.*/
+	private boolean loadReference(String chr){
+		int size = windowStop - windowStart;
+		int length;
+		if (twoBitGenome != null) {
+			int contig = twoBitGenome.getContigIndex(chr);
+			if (contig == -1) return false;
+			length = twoBitGenome.getLength(chr);
+			int stop = Math.min(windowStop, length);
+			if (stop > windowStart) twoBitGenome.getBases(contig, windowStart, stop, refBases, 0, false);
+		}
+		else {
+			if (fasta.getIndex().hasIndexEntry(chr) == false) return false;
+			length = (int)fasta.getIndex().getIndexEntry(chr).getSize();
+			int stop = Math.min(windowStop, length);
+			if (stop > windowStart) {
+				byte[] seq = fasta.getSubsequenceAt(chr, windowStart+1, stop).getBases();
+				System.arraycopy(seq, 0, refBases, 0, seq.length);
+			}
+		}
+		for (int i=0; i< size; i++){
+			if (windowStart + i >= length) refBases[i] = 'N';
+			else if (refBases[i] >= 'a') refBases[i] -= 32;
+		}
+		return true;
+	}
+
+	/**Loads the passing alignments and adjusts the base qualities of overlapping mates.*/
+	private void loadAlignments(SamReader reader, String chr){
+		alignments.clear();
+		firstMates.clear();
+		SAMRecordIterator it = reader.queryOverlapping(chr, windowStart+1, windowStop);
+		while (it.hasNext()){
+			SAMRecord sam = it.next();
+			if (sam.getReadUnmappedFlag() || sam.isSecondaryAlignment() || sam.getReadFailsVendorQualityCheckFlag() || sam.getDuplicateReadFlag()) continue;
+			if (sam.getMappingQuality() < minMappingQuality) continue;
+			if (sam.getReadPairedFlag() && sam.getProperPairFlag() == false) continue;
+			if (sam.getCigar().getReferenceLength() == 0) continue;
+			alignments.add(sam);
+			pairOverlappingMate(sam);
+		}
+		it.close();
+	}
+
+	/**Same logic as htslib's overlap_push(), the first mate is saved by name and the second adjusted against it.*/
+	private void pairOverlappingMate(SAMRecord sam){
+		if (sam.getReadPairedFlag() == false || sam.getMateUnmappedFlag() || sam.getProperPairFlag() == false) return;
+		int pos = sam.getAlignmentStart() - 1;
+		int matePos = sam.getMateAlignmentStart() - 1;
+		int mateRefIndex = sam.getMateReferenceIndex();
+		if (mateRefIndex >= 0 && sam.getReferenceIndex().intValue() != mateRefIndex) return;
+		if (Math.abs(sam.getInferredInsertSize()) >= 2 * sam.getReadLength() && matePos >= sam.getAlignmentEnd()) return;
+
+		String name = sam.getReadName();
+		SAMRecord first = firstMates.get(name);
+		if (first == null) {
+			if (matePos >= pos || matePos == -1) firstMates.put(name, sam);
+		}
+		else {
+			adjustOverlapQuality(first, sam);
+			firstMates.remove(name);
+		}
+	}
+
+	/**Same logic as htslib's tweak_overlap_quality(). Where both mates align a base to the same position, matching bases
+	 * give the sum of the qualities, max 200, to a, mismatches keep 80% of the higher, the other is set to zero.*/
+	private static void adjustOverlapQuality(SAMRecord a, SAMRecord b){
+		byte[] aQual = a.getBaseQualities();
+		byte[] bQual = b.getBaseQualities();
+		if (aQual.length == 0 || bQual.length == 0) return;
+		byte[] aSeq = a.getReadBases();
+		byte[] bSeq = b.getReadBases();
+
+		int[] bReadIndexes = alignedReadIndexes(b);
+		int bStart = b.getAlignmentStart();
+		int aRef = a.getAlignmentStart();
+		int aRead = 0;
+		for (CigarElement ce: a.getCigar().getCigarElements()){
+			CigarOperator op = ce.getOperator();
+			int len = ce.getLength();
+			if (op == CigarOperator.M || op == CigarOperator.EQ || op == CigarOperator.X){
+				for (int i=0; i< len; i++){
+					int bIndex = aRef + i - bStart;
+					if (bIndex < 0 || bIndex >= bReadIndexes.length || bReadIndexes[bIndex] == -1) continue;
+					int aq = aQual[aRead + i] & 0xff;
+					int bi = bReadIndexes[bIndex];
+					int bq = bQual[bi] & 0xff;
+					if (Character.toUpperCase(aSeq[aRead + i]) == Character.toUpperCase(bSeq[bi])){
+						int q = aq + bq;
+						aQual[aRead + i] = (byte)(q > 200 ? 200 : q);
+						bQual[bi] = 0;
+					}
+					else if (aq >= bq){
+						aQual[aRead + i] = (byte)(int)(0.8 * aq);
+						bQual[bi] = 0;
+					}
+					else {
+						bQual[bi] = (byte)(int)(0.8 * bq);
+						aQual[aRead + i] = 0;
+					}
+				}
+				aRef += len;
+				aRead += len;
+			}
+			else if (op == CigarOperator.D || op == CigarOperator.N) aRef += len;
+			else if (op == CigarOperator.I || op == CigarOperator.S) aRead += len;
+		}
+	}
+
+	/**Returns the read index aligned to each reference base from the alignment start to end, -1 for deletions and ref skips.*/
+	private static int[] alignedReadIndexes(SAMRecord sam){
+		int[] indexes = new int[sam.getAlignmentEnd() - sam.getAlignmentStart() + 1];
+		int ref = 0;
+		int read = 0;
+		for (CigarElement ce: sam.getCigar().getCigarElements()){
+			CigarOperator op = ce.getOperator();
+			int len = ce.getLength();
+			if (op == CigarOperator.M || op == CigarOperator.EQ || op == CigarOperator.X){
+				for (int i=0; i< len; i++) indexes[ref++] = read++;
+			}
+			else if (op == CigarOperator.D || op == CigarOperator.N){
+				for (int i=0; i< len; i++) indexes[ref++] = -1;
+			}
+			else if (op == CigarOperator.I || op == CigarOperator.S) read += len;
+		}
+		return indexes;
+	}
+
+	/**Walks the cigar and increments the counts for each base in the window. Deletions and ref skips use the quality
+	 * of the next read base, an insertion is counted on the base before it.*/
+	private void count(SAMRecord sam, int[] c){
+		byte[] quals = sam.getBaseQualities();
+		byte[] bases = sam.getReadBases();
+		int readLength = bases.length;
+		boolean noQuals = quals.length == 0;
+		int strand = sam.getReadNegativeStrandFlag() ? REVERSE : 0;
+		Cigar cigar = sam.getCigar();
+		int numOps = cigar.numCigarElements();
+		int ref = sam.getAlignmentStart() - 1;
+		int read = 0;
+
+		for (int e=0; e< numOps; e++){
+			CigarElement ce = cigar.getCigarElement(e);
+			CigarOperator op = ce.getOperator();
+			int len = ce.getLength();
+			if (op == CigarOperator.M || op == CigarOperator.EQ || op == CigarOperator.X){
+				boolean insertionNext = e+1 < numOps && cigar.getCigarElement(e+1).getOperator() == CigarOperator.I;
+				int first = Math.max(ref, windowStart);
+				int last = Math.min(ref + len, windowStop);
+				for (int pos = first; pos < last; pos++){
+					int offset = pos - windowStart;
+					covered[offset] = true;
+					int index = offset * NUMBER_FIELDS;
+					c[index + DEPTH]++;
+					int r = read + pos - ref;
+					int q = noQuals ? 255 : quals[r] & 0xff;
+					if (q < minBaseQuality) continue;
+					int baseIndex = MpileupSample.getIndex(Character.toUpperCase((char)bases[r]));
+					if (baseIndex == -1) c[index + POOR_QUALITY]++;
+					else c[index + strand + baseIndex]++;
+					if (insertionNext && pos == ref + len -1) c[index + INSERTIONS]++;
+				}
+				ref += len;
+				read += len;
+			}
+			else if (op == CigarOperator.D || op == CigarOperator.N){
+				int field = op == CigarOperator.D ? DELETIONS : REF_SKIPS;
+				int q = 0;
+				if (read < readLength) q = noQuals ? 255 : quals[read] & 0xff;
+				int first = Math.max(ref, windowStart);
+				int last = Math.min(ref + len, windowStop);
+				for (int pos = first; pos < last; pos++){
+					int offset = pos - windowStart;
+					covered[offset] = true;
+					int index = offset * NUMBER_FIELDS;
+					c[index + DEPTH]++;
+					if (q >= minBaseQuality) c[index + field]++;
+				}
+				ref += len;
+			}
+			else if (op == CigarOperator.I || op == CigarOperator.S) read += len;
+			if (ref >= windowStop) break;
+		}
+	}
+
+	/**Returns true if any sample has an alignment over the position.*/
+	public boolean isCovered(int pos){
+		return covered[pos - windowStart];
+	}
+
+	public char getRef(int pos){
+		return (char)refBases[pos - windowStart];
+	}
+
+	public int getCount(int sampleIndex, int pos, int field){
+		return counts[sampleIndex][(pos - windowStart) * NUMBER_FIELDS + field];
+	}
+
+	/**Makes a MpileupSample from the counts. Like MpileupSample, any ref skip with a passing quality fails the sample.*/
+	public MpileupSample fetchSample(int sampleIndex, int pos){
+		int index = (pos - windowStart) * NUMBER_FIELDS;
+		int[] c = counts[sampleIndex];
+		int[] forwardGATC = new int[4];
+		int[] reverseGATC = new int[4];
+		System.arraycopy(c, index, forwardGATC, 0, 4);
+		System.arraycopy(c, index + REVERSE, reverseGATC, 0, 4);
+		return new MpileupSample(getRef(pos), forwardGATC, reverseGATC, c[index+INSERTIONS], c[index+DELETIONS], c[index+POOR_QUALITY], c[index+REF_SKIPS] == 0);
+	}
+
+	public int getNumberSamples(){
+		return samReaders.length;
+	}
+
+	public void close(){
+		try {
+			for (SamReader sr: samReaders) if (sr != null) sr.close();
+			if (fasta != null) fasta.close();
+		} catch (IOException e){}
+	}
+}
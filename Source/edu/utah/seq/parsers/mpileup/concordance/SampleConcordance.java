@@ -5,8 +5,6 @@ import java.util.regex.*;
 import util.bio.annotation.Bed;
 import util.gen.*;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 /**
  * @author david.nix@hci.utah.edu 
@@ -142,15 +140,9 @@ public class SampleConcordance {
 		//create runners and start
 		System.out.println("\nLaunching "+splitBed.size() +" jobs...");
 		runners = new ConcordanceChunkBamPileup[splitBed.size()];
-		ExecutorService executor = Executors.newFixedThreadPool(runners.length);
-		
-		for (int i=0; i< runners.length; i++) {
-			runners[i] = new ConcordanceChunkBamPileup(splitBed.get(i), this, ""+i);
-			executor.execute(runners[i]);
-		}
-		executor.shutdown();
-		//spins here until the executer is terminated, e.g. all threads complete
-        while (!executor.isTerminated()) {}
+		for (int i=0; i< runners.length; i++) runners[i] = new ConcordanceChunkBamPileup(splitBed.get(i), this, ""+i);
+		//blocks here until all threads complete
+		ParallelRunner.runAll(runners, runners.length);
 		
 		//check runners and pull bed gzippers
         ArrayList<File> toMerge = new ArrayList<File>();
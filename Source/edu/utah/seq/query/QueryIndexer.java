@@ -11,8 +11,6 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.TreeMap;
 import java.util.TreeSet;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import edu.utah.seq.useq.data.RegionScoreText;
@@ -22,6 +20,7 @@ import util.bio.annotation.Bed;
 import util.gen.IO;
 import util.gen.Misc;
 import util.gen.Num;
+import util.gen.ParallelRunner;
 
 public class QueryIndexer {
 
@@ -248,15 +247,10 @@ public class QueryIndexer {
 			int numToMake= workingFilesToParse.size();
 			if (numToMake > numberThreads) numToMake = numberThreads;			
 			QueryIndexFileLoader[] loader = new QueryIndexFileLoader[numToMake];			
-			ExecutorService executor = Executors.newFixedThreadPool(numToMake);
-			for (int i=0; i< loader.length; i++){
-				loader[i] = new QueryIndexFileLoader(this, workingChr, workingStartBp, workingStopBp);
-				executor.execute(loader[i]);
-			}
-			executor.shutdown();
+			for (int i=0; i< loader.length; i++) loader[i] = new QueryIndexFileLoader(this, workingChr, workingStartBp, workingStopBp);
 
-			//spins here until the executer is terminated, e.g. all threads complete
-			while (!executor.isTerminated()) {}
+			//blocks here until all threads complete
+			ParallelRunner.runAll(loader, numToMake);
 
 			//check loaders 
 			for (QueryIndexFileLoader c: loader) {
@@ -3,9 +3,8 @@ package edu.utah.seq.query;
 import java.io.File;
 import java.io.IOException;
 import java.util.HashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import htsjdk.tribble.readers.TabixReader;
+import util.gen.ParallelRunner;
 
 public class QueryLoader {
 	
@@ -65,15 +64,10 @@ public class QueryLoader {
 		int numToMake= qr.getTabixChunks().size();
 		if (numToMake > tQuery.getNumberThreads()) numToMake = tQuery.getNumberThreads();
 		TabixLoader[] loader = new TabixLoader[numToMake];
-		ExecutorService executor = Executors.newFixedThreadPool(numToMake);
-		for (int i=0; i< loader.length; i++){
-			loader[i] = new TabixLoader(this, tQuery.isPrintWarnings());
-			executor.execute(loader[i]);
-		}
-		executor.shutdown();
+		for (int i=0; i< loader.length; i++) loader[i] = new TabixLoader(this, tQuery.isPrintWarnings());
 
-		//spins here until the executer is terminated, e.g. all threads complete
-		while (!executor.isTerminated()) {}
+		//blocks here until all threads complete
+		ParallelRunner.runAll(loader, numToMake);
 
 		//check loaders 
 		for (TabixLoader c: loader) {
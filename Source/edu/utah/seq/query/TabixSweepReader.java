@@ -0,0 +1,182 @@
+package edu.utah.seq.query;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import htsjdk.tribble.readers.TabixReader;
+
+/**Forward only reader for a tabix indexed file with one line per base (e.g. bpileup, mpileup) that is queried with
+ * position sorted regions from one chromosome at a time. Instead of a tabix query per region, a single iterator walks
+ * the chromosome and lines are held in a small window so overlapping and repeated regions, e.g. decomposed multi allelic
+ * vcf records, reuse the same lines. Each line is parsed once, the first time it falls in a region. A new tabix seek is
+ * made when the next region is more than RESEEK_GAP bp past the window or starts before it.
+ * @author david.nix@hci.utah.edu*/
+public abstract class TabixSweepReader<T> {
+
+	//fields
+	private TabixReader tabixReader;
+	private int lookBehind;
+	private String chr = null;
+	private TabixReader.Iterator it = null;
+	private boolean exhausted = false;
+	private ArrayDeque<WindowLine> window = new ArrayDeque<WindowLine>();
+	private int coveredFrom = 0;
+	private int lastReadPos = 0;
+	private long numberSeeks = 0;
+	private long numberParsed = 0;
+
+	/**Max bp gap to stream over between regions before making a new tabix seek.*/
+	public static final int RESEEK_GAP = 10000;
+
+	/**@param lookBehind how many bp below the start of the current region later regions may begin, lines before this are dropped.*/
+	public TabixSweepReader(File tabixFile, int lookBehind) throws IOException{
+		tabixReader = new TabixReader(tabixFile.getCanonicalPath());
+		this.lookBehind = lookBehind < 0 ? 0: lookBehind;
+	}
+
+	/**Converts a raw line into the object returned by fetch().*/
+	protected abstract T parse(String line) throws Exception;
+
+	/**Returns the parsed lines with a 1 based position between start and stop, inclusive, in file order.
+	 * Call with regions sorted by start on each chromosome. Those that step back more than the lookBehind are still
+	 * correct but force a new seek.*/
+	public ArrayList<T> fetch(String chromosome, int start, int stop) throws Exception {
+		if (start < 1) start = 1;
+		if (chromosome.equals(chr) == false || start < coveredFrom || (exhausted == false && start > lastReadPos + RESEEK_GAP)) {
+			seek(chromosome, start - lookBehind);
+		}
+
+		//drop lines that no later region can reach
+		int minPos = start - lookBehind;
+		while (window.isEmpty() == false && window.peekFirst().pos < minPos) window.removeFirst();
+		if (minPos > coveredFrom) coveredFrom = minPos;
+
+		//read forward until past the stop
+		while (exhausted == false && lastReadPos <= stop) {
+			String line = it.next();
+			if (line == null) exhausted = true;
+			else {
+				lastReadPos = parsePosition(line);
+				window.addLast(new WindowLine(lastReadPos, line));
+			}
+		}
+
+		ArrayList<T> al = new ArrayList<T>();
+		Iterator<WindowLine> wit = window.iterator();
+		while (wit.hasNext()) {
+			WindowLine wl = wit.next();
+			if (wl.pos > stop) break;
+			if (wl.pos < start) continue;
+			if (wl.parsed == null) {
+				wl.parsed = parse(wl.line);
+				numberParsed++;
+			}
+			al.add(wl.parsed);
+		}
+		return al;
+	}
+
+	private void seek(String chromosome, int from) throws IOException {
+		if (from < 1) from = 1;
+		chr = chromosome;
+		window.clear();
+		coveredFrom = from;
+		lastReadPos = from - 1;
+		exhausted = false;
+		numberSeeks++;
+		//watch out for no retrieved data error from tabix
+		it = null;
+		try {
+			it = tabixReader.query(chr+":"+from+"-"+Integer.MAX_VALUE);
+		} catch (ArrayIndexOutOfBoundsException e){}
+		if (it == null) exhausted = true;
+	}
+
+	/**Reads the remaining non blank, non # lines (e.g. vcf records) and groups them by chromosome, first column, in the
+	 * order each was first seen. Each group is sorted by the 1 based position in the second column, ties keep file order.*/
+	public static ArrayList<ArrayList<String>> groupByChromosome(BufferedReader in) throws IOException {
+		LinkedHashMap<String, ArrayList<PositionedLine>> chrLines = new LinkedHashMap<String, ArrayList<PositionedLine>>();
+		String line;
+		while ((line = in.readLine()) != null){
+			line = line.trim();
+			if (line.length() == 0 || line.startsWith("#")) continue;
+			int firstTab = line.indexOf('\t');
+			if (firstTab == -1) throw new IOException("Failed to parse the chromosome from "+line);
+			String chr = line.substring(0, firstTab);
+			ArrayList<PositionedLine> al = chrLines.get(chr);
+			if (al == null) {
+				al = new ArrayList<PositionedLine>();
+				chrLines.put(chr, al);
+			}
+			al.add(new PositionedLine(parsePosition(line), line));
+		}
+
+		ArrayList<ArrayList<String>> groups = new ArrayList<ArrayList<String>>(chrLines.size());
+		for (ArrayList<PositionedLine> al: chrLines.values()) {
+			PositionedLine[] pl = al.toArray(new PositionedLine[al.size()]);
+			Arrays.sort(pl);
+			ArrayList<String> lines = new ArrayList<String>(pl.length);
+			for (PositionedLine p: pl) lines.add(p.line);
+			groups.add(lines);
+		}
+		return groups;
+	}
+
+	private static class PositionedLine implements Comparable<PositionedLine> {
+		int pos;
+		String line;
+
+		PositionedLine(int pos, String line){
+			this.pos = pos;
+			this.line = line;
+		}
+
+		public int compareTo(PositionedLine other) {
+			if (pos < other.pos) return -1;
+			if (pos > other.pos) return 1;
+			return 0;
+		}
+	}
+
+	/**Pulls the 1 based position from the second column without splitting the whole line.*/
+	private static int parsePosition(String line) throws IOException {
+		int firstTab = line.indexOf('\t');
+		int secondTab = line.indexOf('\t', firstTab+1);
+		if (firstTab == -1) throw new IOException("Failed to parse the position from "+line);
+		if (secondTab == -1) secondTab = line.length();
+		return Integer.parseInt(line.substring(firstTab+1, secondTab));
+	}
+
+	private class WindowLine {
+		int pos;
+		String line;
+		T parsed = null;
+
+		WindowLine(int pos, String line){
+			this.pos = pos;
+			this.line = line;
+		}
+	}
+
+	public void close() {
+		tabixReader.close();
+	}
+
+	public TabixReader getTabixReader() {
+		return tabixReader;
+	}
+
+	public long getNumberSeeks() {
+		return numberSeeks;
+	}
+
+	public long getNumberParsed() {
+		return numberParsed;
+	}
+}
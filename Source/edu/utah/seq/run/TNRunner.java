@@ -51,11 +51,21 @@ public class TNRunner {
 
 	private String pathToTrim = null;
 	private String nice = "";
+	
+	//state cache and slurm queue snapshot
+	private boolean useStateCache = true;
+	private TNStateCache stateCache = null;
+	private HashMap<String, String> slurmQueue = null;
+	private String programArguments = null;
+	private static final Pattern TAB = Pattern.compile("\t");
 
 	public TNRunner (String[] args) {
 		long startTime = System.currentTimeMillis();
 
 		processArgs(args);
+		
+		//load the state cache? a forced restart needs to see every sample
+		if (useStateCache && forceRestart == false) stateCache = new TNStateCache(new File(sampleDir, ".TNRunnerStateCache.txt"), programArguments);
 
 		//loop?
 		int iterations = 1;
@@ -67,11 +77,13 @@ public class TNRunner {
 				processSampleGroup();
 				if (complete()) {
 					IO.pl("\nALL COMPLETE!");
+					saveStateCache();
 					break;
 				}
 				else IO.pl("\nNOT COMPLETE!");
 			}
 			else IO.pl("\nNOT COMPLETE!");
+			saveStateCache();
 			if (iterations !=1){
 				try {
 					IO.pl("\nWaiting... "+i);
@@ -88,6 +100,16 @@ public class TNRunner {
 		IO.pl("\nDone! "+Math.round(diffTime)+" Sec\n");
 	}
 
+	private void saveStateCache() {
+		if (stateCache == null) return;
+		try {
+			stateCache.save();
+		} catch (IOException e) {
+			System.err.println("\nWARNING: problem saving the state cache, next run will do a full scan.");
+			e.printStackTrace();
+		}
+	}
+
 	private void printSamplesWithFastqIssues() {
 		ArrayList<String> issues = new ArrayList<String>();
 		for (TNSample t: tNSamples){
@@ -126,6 +148,8 @@ public class TNRunner {
 					groupProcessingComplete = true;
 					return;
 				}
+				//settled samples without it have no normal DNA, see canSettle()
+				if (tns.isSettled()) continue;
 				
 				//OK doesn't exist so wait until all gvcfs become available
 				//does this sample have a normal sample?
@@ -264,7 +288,7 @@ public class TNRunner {
 		}		
 		//STARTED
 		else if (nameFile.containsKey("STARTED")){
-			if (TNSample.checkQueue(nameFile, jobDir, info) == false) groupProcessingFailed = true;
+			if (TNSample.checkQueue(nameFile, jobDir, info, slurmQueue) == false) groupProcessingFailed = true;
 		}
 		//FAILED but no forceRestart
 		else if (nameFile.containsKey("FAILED")){
@@ -310,11 +334,36 @@ public class TNRunner {
 		
 	}
 	
-	private static int countNumberRunningJobs(String partition) throws IOException {
-		String [] cmd = new String[]{"squeue", "-p", partition};
+	/**Loads all the jobs in the queue with one squeue call per sweep, job id to squeue line.*/
+	private void fetchSlurmQueue() throws IOException {
+		String [] cmd = new String[]{"squeue", "-h", "-o", "%i\t%P\t%j\t%u\t%T\t%M"};
 		String[] output = IO.executeViaProcessBuilder(cmd, false);
-		return output.length -1;
-		
+		if (output == null) throw new IOException("Failed to execute "+Misc.stringArrayToString(cmd, " "));
+		slurmQueue = new HashMap<String, String>();
+		for (String o: output){
+			String[] fields = TAB.split(o);
+			//an error message? don't want to mark every STARTED job as FAILED
+			if (fields.length < 6) throw new IOException("Failed to parse the squeue output -> "+o);
+			slurmQueue.put(fields[0], o);
+		}
+	}
+	
+	private int countNumberRunningJobs() {
+		int num = 0;
+		for (String line: slurmQueue.values()){
+			if (TAB.split(line)[1].equals(partition)) num++;
+		}
+		return num;
+	}
+	
+	/**A sample is settled if nothing was launched, is running, or failed. With joint genotyping it also needs the 
+	 * GermlineVariantCalling dir or no normal DNA, otherwise its gvcf could be left out of the group.*/
+	private boolean canSettle(TNSample t){
+		if (t.isFailed() || t.isRunning() || t.getNumJobsLaunched() !=0 || t.isFastqIssue()) return false;
+		if (jointGenotypingDocs != null && t.getNormalDNAFastq() != null && t.getNormalDNAFastq().isFastqDirExists()){
+			if (new File(t.getRootDir(), "GermlineVariantCalling").exists() == false) return false;
+		}
+		return true;
 	}
 	
 
@@ -334,18 +383,32 @@ public class TNRunner {
 			if (verbose) IO.pl("\nChecking individual samples...");
 			else IO.pl("\nChecking individual samples (SampleID RunningJobs)");
 			
-			int numJobsLaunched = countNumberRunningJobs(partition);
+			fetchSlurmQueue();
+			int numJobsLaunched = countNumberRunningJobs();
+			int numSettled = 0;
 			tNSamples = new TNSample[rootDirs.length];
 			for (int i=0; i< rootDirs.length; i++){
 				if (numJobsLaunched >= maxNumJobs) {
 					IO.pl("\nMaximum number jobs launched, skipping remaining samples.");
 					return false;
 				}
+				File rootDir = rootDirs[i].getCanonicalFile();
+				//unchanged since last settled? then skip the rescan
+				if (stateCache != null && stateCache.isSettled(rootDir)){
+					tNSamples[i] = new TNSample(rootDir, this, true);
+					numSettled++;
+					continue;
+				}
 				if (verbose == false) IO.p("\t"+rootDirs[i].getName());
-				tNSamples[i] = new TNSample(rootDirs[i].getCanonicalFile(), this);
+				tNSamples[i] = new TNSample(rootDir, this);
 				if (verbose == false) IO.pl("\t"+tNSamples[i].isRunning());
 				numJobsLaunched += tNSamples[i].getNumJobsLaunched();
+				if (stateCache != null){
+					if (canSettle(tNSamples[i])) stateCache.setSettled(rootDir);
+					else stateCache.remove(rootDir);
+				}
 			}
+			if (numSettled !=0) IO.pl("\nSkipped "+numSettled+" settled samples with no changes since the last check.");
 			return true;
 		} catch (IOException e) {
 			System.err.println("\n\nProblem processing individual sample:");
@@ -365,7 +428,8 @@ public class TNRunner {
 	/**This method will process each argument and assign new variables*/
 	public void processArgs(String[] args){
 		try {
-			IO.pl("\n"+IO.fetchUSeqVersion()+" Arguments: "+ Misc.stringArrayToString(args, " ") +"\n");
+			programArguments = Misc.stringArrayToString(args, " ");
+			IO.pl("\n"+IO.fetchUSeqVersion()+" Arguments: "+ programArguments +"\n");
 			Pattern pat = Pattern.compile("-[a-z]");
 			File DNAWorkflowDir = null;
 			File somVarCallWorkflowDir = null;
@@ -412,6 +476,7 @@ public class TNRunner {
 						case 'd': restartFailed = true; break;
 						case 'r': softRestart = true; break;
 						case 'n': partition = args[++i]; break;
+						case 'S': useStateCache = false; break;
 						default: Misc.printErrAndExit("\nProblem, unknown option! " + mat.group());
 						}
 					}
@@ -567,6 +632,7 @@ public class TNRunner {
 				IO.pl("Nice jobs\t"+niceJobs);
 				IO.pl("Job Partition\t"+partition);
 				IO.pl("Relaunch jobs until complete\t"+loop);
+				IO.pl("Skip unchanged settled samples\t"+useStateCache);
 			}
 		} catch (IOException e) {
 			e.printStackTrace();
@@ -578,7 +644,7 @@ public class TNRunner {
 	public static void printDocs(){
 		IO.pl("\n" +
 				"**************************************************************************************\n" +
-				"**                                  TNRunner : May 2021                             **\n" +
+				"**                                  TNRunner : Oct 2026                             **\n" +
 				"**************************************************************************************\n" +
 				"TNRunner is designed to execute several containerized snakmake workflows on tumor\n"+
 				"normal datasets via a slurm cluster.  Based on the availability of fastq, \n"+
@@ -648,6 +714,9 @@ public class TNRunner {
 				"-z Do not nice jobs (--nice=10000), run at maximum primority.\n"+
 				"-l Check and launch jobs every hour until all are complete.\n"+
 				"-n Cluster partitian, defaults to hci-rw\n"+
+				"-S Don't use the .TNRunnerStateCache.txt file in the -p dir to skip settled samples\n"+
+				"      (nothing running, failed, or launched) whose directories haven't changed since\n"+
+				"      the last check. Changing any other options also triggers a full rescan.\n"+
 
 				"\nExample: java -jar pathToUSeq/Apps/TNRunner -p PatientDirs -o ~/FoundationPatients/\n"+
 				"     -e ~/Hg38/DNAAlignQC/ -c ~/Hg38/SomaticCaller/ -a ~/Hg38/Annotator/ -b \n"+
@@ -713,6 +782,9 @@ public class TNRunner {
 	public File getFemaleBkg() {
 		return femaleBkg;
 	}
+	public HashMap<String, String> getSlurmQueue() {
+		return slurmQueue;
+	}
 	public boolean isSoftRestart() {
 		return softRestart;
 	}
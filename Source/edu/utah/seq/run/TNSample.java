@@ -47,6 +47,7 @@ public class TNSample {
 	private boolean failed = false;
 	private boolean running = false;
 	private int numJobsLaunched = 0;
+	private boolean settled = false;
 
 
 	public TNSample(File rootDir, TNRunner tnRunner) throws IOException{
@@ -98,6 +99,13 @@ public class TNSample {
 		}
 	}
 
+	/**Placeholder for a sample found unchanged and settled in the TNStateCache, nothing is checked or launched.*/
+	public TNSample(File rootDir, TNRunner tnRunner, boolean settled){
+		this.rootDir = rootDir;
+		this.tnRunner = tnRunner;
+		this.settled = settled;
+		id = rootDir.getName();
+	}
 	
 		private void parseMergeClinicalVars() throws IOException {
 			info.add("Checking clinical variant integration...");
@@ -834,6 +842,11 @@ public class TNSample {
 	}
 
 	public static boolean checkQueue(HashMap<String, File> nameFile, File jobDir, ArrayList<String> info) throws IOException{
+		return checkQueue(nameFile, jobDir, info, null);
+	}
+	
+	/**Provide the job id to squeue line snapshot from TNRunner to skip calling squeue for each job, otherwise null.*/
+	public static boolean checkQueue(HashMap<String, File> nameFile, File jobDir, ArrayList<String> info, HashMap<String, String> slurmQueue) throws IOException{
 		//find slurm script(s), pull the ID, and check it is still in the queue
 		ArrayList<File> jobs = new ArrayList<File>();
 		for (String s: nameFile.keySet()) {
@@ -859,14 +872,19 @@ public class TNSample {
 		if (mat.matches() == false) throw new IOException("\tFailed to parse the job id from  "+slurm);
 		String jobId = mat.group(1);
 		//check the queue
-		String[] res = IO.executeViaProcessBuilder(new String[]{"squeue", "-j", jobId}, false);
-		if (res.length < 2) {
+		String queueLine = null;
+		if (slurmQueue != null) queueLine = slurmQueue.get(jobId);
+		else {
+			String[] res = IO.executeViaProcessBuilder(new String[]{"squeue", "-j", jobId}, false);
+			if (res.length > 1) queueLine = res[1];
+		}
+		if (queueLine == null) {
 			new File(jobDir,"STARTED").delete();
 			new File(jobDir,"FAILED").createNewFile();
 			info.add("The job was marked as STARTED but failed to find the "+slurm+" job in the queue for "+jobDir+", marking FAILED.");
 			return false;
 		}
-		info.add("\tSTARTED and in queue, "+jobDir+"\t"+res[1]);
+		info.add("\tSTARTED and in queue, "+jobDir+"\t"+queueLine);
 		return true;
 	}
 
@@ -977,7 +995,7 @@ public class TNSample {
 		}
 		//STARTED
 		else if (nameFile.containsKey("STARTED")) {
-			if (TNSample.checkQueue(nameFile, jobDir, info) == false) failed = true;
+			if (TNSample.checkQueue(nameFile, jobDir, info, tnRunner.getSlurmQueue()) == false) failed = true;
 			else running = true;
 		}
 		//hmm no status files, probably something went wrong on the cluster? mark it as FAILED
@@ -1040,6 +1058,10 @@ public class TNSample {
 		return numJobsLaunched;
 	}
 
+	public boolean isSettled() {
+		return settled;
+	}
+
 	public boolean isFastqIssue() {
 		return fastqIssue;
 	}
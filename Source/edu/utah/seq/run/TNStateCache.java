@@ -0,0 +1,149 @@
+package edu.utah.seq.run;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+import util.gen.IO;
+
+/**Persists which TNSamples were settled (nothing launched, running, or failed) at the end of the last sweep along with the
+ * mtimes of the sample's root, first, and second level dirs. The job dirs and their status files live in these so any change
+ * bumps a recorded mtime and triggers a rescan. mtimes are used instead of a WatchService since inotify doesn't see changes
+ * made by other nodes on Lustre/NFS. Changing the TNRunner arguments invalidates the cache.*/
+public class TNStateCache {
+
+	//fields
+	private File cacheFile;
+	private String runnerArguments;
+	private TreeMap<String, SettledSample> settled = new TreeMap<String, SettledSample>();
+	private static final Pattern TAB = Pattern.compile("\t");
+	private static final String ARG_LINE = "#Arguments\t";
+
+	public TNStateCache(File cacheFile, String runnerArguments){
+		this.cacheFile = cacheFile;
+		this.runnerArguments = runnerArguments;
+		if (cacheFile.exists()) load();
+	}
+
+	/**Returns true if the sample was settled last sweep and none of its recorded directories have changed.*/
+	public boolean isSettled(File rootDir){
+		SettledSample ss = settled.get(rootDir.getName());
+		if (ss == null) return false;
+		for (int i=0; i< ss.relativePaths.length; i++){
+			File f = ss.relativePaths[i].length() == 0 ? rootDir : new File(rootDir, ss.relativePaths[i]);
+			//lastModified returns 0 if it no longer exists
+			if (f.lastModified() != ss.lastModified[i]) {
+				settled.remove(rootDir.getName());
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**Records the current mtimes of the root dir and its first and second level sub directories.*/
+	public void setSettled(File rootDir){
+		ArrayList<String> paths = new ArrayList<String>();
+		ArrayList<Long> times = new ArrayList<Long>();
+		paths.add("");
+		times.add(rootDir.lastModified());
+		File[] firstLevel = IO.extractOnlyDirectories(rootDir);
+		if (firstLevel != null) {
+			for (File d: firstLevel){
+				paths.add(d.getName());
+				times.add(d.lastModified());
+				File[] secondLevel = IO.extractOnlyDirectories(d);
+				if (secondLevel == null) continue;
+				for (File dd: secondLevel){
+					paths.add(d.getName()+"/"+dd.getName());
+					times.add(dd.lastModified());
+				}
+			}
+		}
+		SettledSample ss = new SettledSample(paths.size());
+		for (int i=0; i< ss.lastModified.length; i++){
+			ss.relativePaths[i] = paths.get(i);
+			ss.lastModified[i] = times.get(i);
+		}
+		settled.put(rootDir.getName(), ss);
+	}
+
+	public void remove(File rootDir){
+		settled.remove(rootDir.getName());
+	}
+
+	/**Writes to a temp file then renames so a killed run doesn't leave a partial cache.*/
+	public void save() throws IOException{
+		File tmp = new File(cacheFile.getParentFile(), cacheFile.getName()+".tmp");
+		PrintWriter out = new PrintWriter(tmp);
+		out.println(ARG_LINE+runnerArguments);
+		for (String id: settled.keySet()){
+			SettledSample ss = settled.get(id);
+			for (int i=0; i< ss.relativePaths.length; i++){
+				out.print(id);
+				out.print("\t");
+				out.print(ss.relativePaths[i]);
+				out.print("\t");
+				out.println(ss.lastModified[i]);
+			}
+		}
+		out.close();
+		if (tmp.renameTo(cacheFile) == false) throw new IOException("Failed to move "+tmp+" to "+cacheFile);
+	}
+
+	private void load(){
+		HashMap<String, ArrayList<String[]>> idLines = new HashMap<String, ArrayList<String[]>>();
+		BufferedReader in = null;
+		try {
+			in = IO.fetchBufferedReader(cacheFile);
+			String line = in.readLine();
+			//different run parameters? then toss it
+			if (line == null || line.equals(ARG_LINE+runnerArguments) == false) return;
+			while ((line = in.readLine()) != null){
+				String[] t = TAB.split(line, -1);
+				if (t.length != 3) continue;
+				ArrayList<String[]> al = idLines.get(t[0]);
+				if (al == null){
+					al = new ArrayList<String[]>();
+					idLines.put(t[0], al);
+				}
+				al.add(t);
+			}
+			for (String id: idLines.keySet()){
+				ArrayList<String[]> al = idLines.get(id);
+				SettledSample ss = new SettledSample(al.size());
+				for (int i=0; i< al.size(); i++){
+					ss.relativePaths[i] = al.get(i)[1];
+					ss.lastModified[i] = Long.parseLong(al.get(i)[2]);
+				}
+				settled.put(id, ss);
+			}
+		} catch (Exception e){
+			//a bad cache just means a full rescan
+			System.err.println("\tWARNING: problem loading the state cache, ignoring "+cacheFile);
+			settled.clear();
+		} finally {
+			try {
+				if (in != null) in.close();
+			} catch (IOException e) {}
+		}
+	}
+
+	public int getNumberSettled(){
+		return settled.size();
+	}
+
+	private static class SettledSample {
+		String[] relativePaths;
+		long[] lastModified;
+
+		SettledSample(int size){
+			relativePaths = new String[size];
+			lastModified = new long[size];
+		}
+	}
+}
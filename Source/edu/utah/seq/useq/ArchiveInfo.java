@@ -13,9 +13,10 @@ import java.util.zip.*;
 public class ArchiveInfo {
 
 	//required fields
-	/**Version of the USeq Archive, current version is 1.0*/
+	/**Version of the USeq Archive, 1.0 or 2.0 if the slices use the compact columnar binary types*/
 	public static final String ARCHIVE_VERSION_KEY = "useqArchiveVersion";
 	public static final String ARCHIVE_VERSION_VALUE_ONE = "1.0";
+	public static final String ARCHIVE_VERSION_VALUE_TWO = "2.0";
 	public static final String ARCHIVE_README_NAME = "archiveReadMe.txt";
 
 	/**Preferably of the DAS/2 form (e.g. H_sapiens_Mar_2006, C_elegans_May_2008)*/
@@ -87,8 +88,8 @@ public class ArchiveInfo {
 			throw new IOException ("Error: text archiveReadMe.txt file does not contain required keys.  Add '"+ARCHIVE_VERSION_KEY+"' and or '"+VERSIONED_GENOME_KEY+"' and or '"+DATA_TYPE_KEY+"' to "+readMeTxtFile);
 		}
 		//check archive version
-		if (keyValues.get(ARCHIVE_VERSION_KEY).equals(ARCHIVE_VERSION_VALUE_ONE) == false ){
-			throw new IOException ("Error: this ArchiveInfo parser only supports "+ARCHIVE_VERSION_KEY+" = "+ARCHIVE_VERSION_VALUE_ONE);
+		if (isSupportedVersion() == false){
+			throw new IOException ("Error: this ArchiveInfo parser only supports "+ARCHIVE_VERSION_KEY+" = "+ARCHIVE_VERSION_VALUE_ONE+" or "+ARCHIVE_VERSION_VALUE_TWO);
 		}
 	}
 	/**One way to get this is by zipFile.getInputStream(zipEntry)*/
@@ -278,6 +279,11 @@ public class ArchiveInfo {
 	public String getArchiveVersion(){
 		return keyValues.get(ARCHIVE_VERSION_KEY);
 	}
+	/**Returns true for versions 1.0 and 2.0, or if no version was given.*/
+	public boolean isSupportedVersion(){
+		String version = keyValues.get(ARCHIVE_VERSION_KEY);
+		return version == null || version.equals(ARCHIVE_VERSION_VALUE_ONE) || version.equals(ARCHIVE_VERSION_VALUE_TWO);
+	}
 	public String getDataType(){
 		return keyValues.get(DATA_TYPE_KEY);
 	}
@@ -0,0 +1,655 @@
+package edu.utah.seq.useq;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.Deflater;
+
+/**Writes UCSC bigWig and bigBed files, version 4, without the wigToBigWig and bedToBigBed apps. Chromosomes are fed
+ * in parallel, each into its own ChromosomeBuilder that packs and compresses the data blocks and builds every zoom
+ * level in the same pass, then the blocks are written in chromosome order followed by the R tree indexes, the zoom
+ * levels, the chromosome B+ tree and the header. Zoom levels are picked from reductions of 16bp to 64Mb in steps of
+ * four, keeping those that at least halve the records of the level below, at most 10. bigBed zooms score each
+ * item as 1 over its bases.
+ * @author david.nix@hci.utah.edu*/
+public class BbiWriter {
+
+	//fields
+	private File file;
+	private boolean bigBed;
+	private String[] chromosomes;
+	private int[] chromosomeSizes;
+	private int numberThreads;
+	private int itemsPerSlot;
+	private int fieldCount = 0;
+	private String autoSql = null;
+	private long numberItems = 0;
+
+	public static final int BIG_WIG_MAGIC = 0x888FFC26;
+	public static final int BIG_BED_MAGIC = 0x8789F2EB;
+	private static final int CHROM_TREE_MAGIC = 0x78CA8C91;
+	private static final int R_TREE_MAGIC = 0x2468ACE0;
+	private static final int VERSION = 4;
+	private static final int BLOCK_SIZE = 256;
+	private static final int MAX_ZOOM_LEVELS = 10;
+	private static final int HEADER_SIZE = 64;
+	private static final int ZOOM_HEADER_SIZE = 24;
+	private static final int SUMMARY_SIZE = 40;
+	private static final int ZOOM_RECORD_SIZE = 32;
+	private static final int[] REDUCTIONS = new int[12];
+	static {
+		for (int i=0; i< REDUCTIONS.length; i++) REDUCTIONS[i] = 16 << (2*i);
+	}
+	private static final byte SECTION_BED_GRAPH = 1;
+	private static final byte SECTION_VAR_STEP = 2;
+
+	/**Adds the data for one chromosome, called from multiple threads.*/
+	public interface DataFeeder {
+		/**Add the items in order of their starts.*/
+		public void feed(String chromosome, ChromosomeBuilder builder) throws IOException;
+	}
+
+	/**@param chromosomes names, the files hold them sorted
+	 * @param chromosomeSizes no item may end past these*/
+	public BbiWriter(File file, boolean bigBed, String[] chromosomes, int[] chromosomeSizes, int numberThreads){
+		this.file = file;
+		this.bigBed = bigBed;
+		this.numberThreads = Math.max(1, numberThreads);
+		itemsPerSlot = bigBed ? 512 : 1024;
+		//sort by name keeping the sizes
+		Integer[] order = new Integer[chromosomes.length];
+		for (int i=0; i< order.length; i++) order[i] = i;
+		final String[] names = chromosomes;
+		Arrays.sort(order, new java.util.Comparator<Integer>(){
+			public int compare(Integer a, Integer b){
+				return names[a].compareTo(names[b]);
+			}
+		});
+		this.chromosomes = new String[order.length];
+		this.chromosomeSizes = new int[order.length];
+		for (int i=0; i< order.length; i++){
+			this.chromosomes[i] = chromosomes[order[i]];
+			this.chromosomeSizes[i] = chromosomeSizes[order[i]];
+		}
+	}
+
+	/**Sets the autoSql describing the bigBed fields, defaults to the standard bed fields for the most seen on an item.*/
+	public void setAutoSql(String autoSql){
+		this.autoSql = autoSql;
+	}
+
+	/**Returns the number of items written, zero if the feeder added nothing.*/
+	public long getNumberItems(){
+		return numberItems;
+	}
+
+	/**Writes the file, calling the feeder for each chromosome in parallel.*/
+	public void write(final DataFeeder feeder) throws IOException{
+		ExecutorService pool = Executors.newFixedThreadPool(numberThreads, new ThreadFactory(){
+			public Thread newThread(Runnable r){
+				Thread t = new Thread(r);
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		Out out = new Out(file);
+		try {
+			//header, zoom headers and total summary are filled in at the end
+			out.write(new byte[HEADER_SIZE + ZOOM_HEADER_SIZE * MAX_ZOOM_LEVELS + SUMMARY_SIZE]);
+			long fullDataOffset = out.position;
+			out.writeLong(0);
+
+			//build chromosomes in parallel a few ahead, writing their data blocks in order
+			ArrayList<Future<ChromosomeBuilder>> futures = new ArrayList<Future<ChromosomeBuilder>>();
+			int submitted = 0;
+			int lookAhead = numberThreads * 2;
+			ArrayList<long[]> dataIndex = new ArrayList<long[]>();
+			ArrayList<ArrayList<Block>> zoomBlocks = new ArrayList<ArrayList<Block>>();
+			for (int i=0; i< REDUCTIONS.length; i++) zoomBlocks.add(new ArrayList<Block>());
+			long[] zoomCounts = new long[REDUCTIONS.length];
+			long dataCount = 0;
+			long itemCount = 0;
+			int maxUncompressed = 0;
+			ZoomSummary total = new ZoomSummary();
+			for (int i=0; i< chromosomes.length; i++){
+				while (submitted < chromosomes.length && submitted < i + lookAhead){
+					final ChromosomeBuilder b = new ChromosomeBuilder(submitted);
+					futures.add(pool.submit(new Callable<ChromosomeBuilder>(){
+						public ChromosomeBuilder call() throws IOException{
+							feeder.feed(b.getChromosome(), b);
+							b.finish();
+							return b;
+						}
+					}));
+					submitted++;
+				}
+				ChromosomeBuilder b = fetch(futures.get(i));
+				futures.set(i, null);
+				for (Block block: b.blocks){
+					dataIndex.add(new long[]{i, block.start, i, block.end, out.position, block.bytes.length});
+					out.write(block.bytes);
+					maxUncompressed = Math.max(maxUncompressed, block.uncompressedSize);
+				}
+				dataCount += bigBed ? b.numberItems : b.blocks.size();
+				itemCount += b.numberItems;
+				fieldCount = Math.max(fieldCount, b.fieldCount);
+				for (int z=0; z< REDUCTIONS.length; z++){
+					zoomBlocks.get(z).addAll(b.levels[z].blocks);
+					zoomCounts[z] += b.levels[z].numberRecords;
+				}
+				total.add(b.total);
+			}
+
+			//data index
+			long fullIndexOffset = out.position;
+			writeRTree(out, dataIndex, fullDataOffset + 8 + sum(dataIndex), fullIndexOffset);
+
+			//pick and write zoom levels
+			ArrayList<long[]> zoomHeaders = new ArrayList<long[]>();
+			long previous = itemCount;
+			for (int z=0; z< REDUCTIONS.length && zoomHeaders.size() < MAX_ZOOM_LEVELS; z++){
+				if (zoomCounts[z] == 0 || zoomCounts[z] * 2 > previous) continue;
+				previous = zoomCounts[z];
+				long dataOffset = out.position;
+				out.writeInt((int)zoomCounts[z]);
+				ArrayList<long[]> zoomIndex = new ArrayList<long[]>();
+				for (Block block: zoomBlocks.get(z)){
+					zoomIndex.add(new long[]{block.chromId, block.start, block.chromId, block.end, out.position, block.bytes.length});
+					out.write(block.bytes);
+					maxUncompressed = Math.max(maxUncompressed, block.uncompressedSize);
+				}
+				long indexOffset = out.position;
+				writeRTree(out, zoomIndex, indexOffset, indexOffset);
+				zoomHeaders.add(new long[]{REDUCTIONS[z], dataOffset, indexOffset});
+			}
+			zoomBlocks = null;
+
+			numberItems = itemCount;
+			//chromosome tree and autoSql
+			long chromTreeOffset = out.position;
+			writeChromosomeTree(out);
+			long autoSqlOffset = 0;
+			if (bigBed){
+				autoSqlOffset = out.position;
+				out.write((autoSql != null ? autoSql : makeBedAutoSql(fieldCount)).getBytes(StandardCharsets.US_ASCII));
+				out.write(new byte[1]);
+			}
+			out.close();
+
+			//fill in the header
+			ByteBuffer bb = ByteBuffer.allocate(HEADER_SIZE + ZOOM_HEADER_SIZE * MAX_ZOOM_LEVELS + SUMMARY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			bb.putInt(bigBed ? BIG_BED_MAGIC : BIG_WIG_MAGIC);
+			bb.putShort((short)VERSION);
+			bb.putShort((short)zoomHeaders.size());
+			bb.putLong(chromTreeOffset);
+			bb.putLong(fullDataOffset);
+			bb.putLong(fullIndexOffset);
+			bb.putShort((short)fieldCount);
+			bb.putShort((short)fieldCount);
+			bb.putLong(autoSqlOffset);
+			bb.putLong(HEADER_SIZE + ZOOM_HEADER_SIZE * MAX_ZOOM_LEVELS);
+			bb.putInt(maxUncompressed);
+			bb.putLong(0);
+			for (long[] z: zoomHeaders){
+				bb.putInt((int)z[0]);
+				bb.putInt(0);
+				bb.putLong(z[1]);
+				bb.putLong(z[2]);
+			}
+			bb.position(HEADER_SIZE + ZOOM_HEADER_SIZE * MAX_ZOOM_LEVELS);
+			bb.putLong(total.getCount());
+			bb.putDouble(total.getMin());
+			bb.putDouble(total.getMax());
+			bb.putDouble(total.getSum());
+			bb.putDouble(total.getSumSquares());
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try {
+				raf.write(bb.array());
+				raf.seek(fullDataOffset);
+				raf.write(ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putLong(dataCount).array());
+			} finally {
+				raf.close();
+			}
+		} catch (IOException e){
+			out.closeQuietly();
+			file.delete();
+			throw e;
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	private static ChromosomeBuilder fetch(Future<ChromosomeBuilder> f) throws IOException{
+		try {
+			return f.get();
+		} catch (InterruptedException e) {
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) throw (IOException)e.getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+
+	private static long sum(ArrayList<long[]> index){
+		long total = 0;
+		for (long[] i: index) total += i[5];
+		return total;
+	}
+
+	/**Writes the R tree index, each item is {startChromIx, startBase, endChromIx, endBase, offset, size}. Nodes are
+	 * padded to the block size as the UCSC tools do.*/
+	private void writeRTree(Out out, ArrayList<long[]> items, long endFileOffset, long treeOffset) throws IOException{
+		//bounds of each node by level, leaves first, each entry {startChrom, startBase, endChrom, endBase, firstChild, numChildren}
+		ArrayList<long[][]> levels = new ArrayList<long[][]>();
+		long[][] current = new long[items.size()][];
+		for (int i=0; i< current.length; i++) current[i] = items.get(i);
+		do {
+			int numNodes = Math.max(1, (current.length + BLOCK_SIZE - 1) / BLOCK_SIZE);
+			long[][] nodes = new long[numNodes][];
+			for (int n=0; n< numNodes; n++){
+				int first = n * BLOCK_SIZE;
+				int last = Math.min(current.length, first + BLOCK_SIZE);
+				long[] node = {0, 0, 0, 0, first, last - first};
+				if (last > first){
+					node[0] = current[first][0];
+					node[1] = current[first][1];
+					node[2] = current[first][2];
+					node[3] = current[first][3];
+					for (int c=first+1; c< last; c++){
+						if (current[c][2] > node[2] || (current[c][2] == node[2] && current[c][3] > node[3])){
+							node[2] = current[c][2];
+							node[3] = current[c][3];
+						}
+					}
+				}
+				nodes[n] = node;
+			}
+			levels.add(nodes);
+			current = nodes;
+		} while (current.length > 1);
+
+		long[] root = current[0];
+		out.writeInt(R_TREE_MAGIC);
+		out.writeInt(BLOCK_SIZE);
+		out.writeLong(items.size());
+		out.writeInt((int)root[0]);
+		out.writeInt((int)root[1]);
+		out.writeInt((int)root[2]);
+		out.writeInt((int)root[3]);
+		out.writeLong(endFileOffset);
+		out.writeInt(itemsPerSlot);
+		out.writeInt(0);
+
+		//write from the root down, a level's children follow it
+		int leafSize = 4 + BLOCK_SIZE * 32;
+		int nonLeafSize = 4 + BLOCK_SIZE * 24;
+		long levelOffset = out.position;
+		for (int l = levels.size()-1; l >= 0; l--){
+			long[][] nodes = levels.get(l);
+			boolean leaf = l == 0;
+			long childLevelOffset = levelOffset + (long)nodes.length * (leaf ? leafSize : nonLeafSize);
+			int childSize = l == 1 ? leafSize : nonLeafSize;
+			long[][] children = leaf ? null : levels.get(l-1);
+			for (long[] node: nodes){
+				out.writeByte(leaf ? 1 : 0);
+				out.writeByte(0);
+				out.writeShort((int)node[5]);
+				for (int c=0; c< node[5]; c++){
+					int index = (int)node[4] + c;
+					long[] child = leaf ? items.get(index) : children[index];
+					out.writeInt((int)child[0]);
+					out.writeInt((int)child[1]);
+					out.writeInt((int)child[2]);
+					out.writeInt((int)child[3]);
+					if (leaf){
+						out.writeLong(child[4]);
+						out.writeLong(child[5]);
+					}
+					else out.writeLong(childLevelOffset + (long)index * childSize);
+				}
+				out.write(new byte[(int)(BLOCK_SIZE - node[5]) * (leaf ? 32 : 24)]);
+			}
+			levelOffset = childLevelOffset;
+		}
+	}
+
+	/**Writes the B+ tree of chromosome names to ids and sizes.*/
+	private void writeChromosomeTree(Out out) throws IOException{
+		int count = chromosomes.length;
+		int blockSize = Math.max(1, Math.min(BLOCK_SIZE, count));
+		byte[][] keys = new byte[count][];
+		int keySize = 1;
+		for (int i=0; i< count; i++){
+			keys[i] = chromosomes[i].getBytes(StandardCharsets.US_ASCII);
+			keySize = Math.max(keySize, keys[i].length);
+		}
+		out.writeInt(CHROM_TREE_MAGIC);
+		out.writeInt(blockSize);
+		out.writeInt(keySize);
+		out.writeInt(8);
+		out.writeLong(count);
+		out.writeLong(0);
+
+		//number of nodes per level, leaves first
+		ArrayList<Integer> levelSizes = new ArrayList<Integer>();
+		int n = Math.max(1, (count + blockSize - 1) / blockSize);
+		levelSizes.add(n);
+		while (n > 1){
+			n = (n + blockSize - 1) / blockSize;
+			levelSizes.add(n);
+		}
+		//items under each node at a level, blockSize^level
+		int nodeSize = 4 + blockSize * (keySize + 8);
+		long levelOffset = out.position;
+		for (int l = levelSizes.size()-1; l >= 0; l--){
+			int numNodes = levelSizes.get(l);
+			long span = 1;
+			for (int i=0; i< l; i++) span *= blockSize;
+			long childLevelOffset = levelOffset + (long)numNodes * nodeSize;
+			for (int node=0; node< numNodes; node++){
+				long firstItem = node * span * blockSize;
+				int numChildren = 0;
+				for (int c=0; c< blockSize; c++) if (firstItem + c * span < count) numChildren++;
+				out.writeByte(l == 0 ? 1 : 0);
+				out.writeByte(0);
+				out.writeShort(numChildren);
+				for (int c=0; c< numChildren; c++){
+					int item = (int)(firstItem + c * span);
+					byte[] key = Arrays.copyOf(keys[item], keySize);
+					out.write(key);
+					if (l == 0){
+						out.writeInt(item);
+						out.writeInt(chromosomeSizes[item]);
+					}
+					else out.writeLong(childLevelOffset + (long)(node * blockSize + c) * nodeSize);
+				}
+				out.write(new byte[(blockSize - numChildren) * (keySize + 8)]);
+			}
+			levelOffset = childLevelOffset;
+		}
+	}
+
+	/**Returns the autoSql for the first fieldCount standard bed fields.*/
+	public static String makeBedAutoSql(int fieldCount){
+		String[] fields = {
+				"string chrom;       \"Reference sequence chromosome or scaffold\"",
+				"uint   chromStart;  \"Start position in chromosome\"",
+				"uint   chromEnd;    \"End position in chromosome\"",
+				"string name;        \"Name of item\"",
+				"uint score;          \"Score from 0-1000\"",
+				"char[1] strand;     \"+ or -\"",
+				"uint thickStart;   \"Start of where display should be thick (start codon)\"",
+				"uint thickEnd;     \"End of where display should be thick (stop codon)\"",
+				"uint reserved;     \"Used as itemRgb as of 2004-11-22\"",
+				"int blockCount;    \"Number of blocks\"",
+				"int[blockCount] blockSizes; \"Comma separated list of block sizes\"",
+				"int[blockCount] chromStarts; \"Start positions relative to chromStart\""};
+		StringBuilder sb = new StringBuilder("table bed\n\"Browser Extensible Data\"\n    (\n");
+		for (int i=0; i< fieldCount; i++){
+			sb.append("    ");
+			if (i < fields.length) sb.append(fields[i]);
+			else sb.append("lstring field"+(i+1)+";  \"Undocumented field\"");
+			sb.append("\n");
+		}
+		sb.append("    )\n");
+		return sb.toString();
+	}
+
+	/**Collects one chromosome's items into compressed data blocks and zoom levels, not thread safe.*/
+	public class ChromosomeBuilder {
+		private int chromId;
+		private int chromSize;
+		private ArrayList<Block> blocks = new ArrayList<Block>();
+		private ZoomLevel[] levels = new ZoomLevel[REDUCTIONS.length];
+		private ZoomSummary total = new ZoomSummary();
+		private long numberItems = 0;
+		private int fieldCount = 0;
+		private Deflater deflater = new Deflater();
+		private byte[] deflateBuffer = new byte[65536];
+		private ByteBuffer items = ByteBuffer.allocate(65536).order(ByteOrder.LITTLE_ENDIAN);
+		private int numberInBlock = 0;
+		private byte sectionType = 0;
+		private int blockStart;
+		private int blockEnd;
+		private int lastStart = -1;
+
+		ChromosomeBuilder(int chromId){
+			this.chromId = chromId;
+			chromSize = chromosomeSizes[chromId];
+			for (int i=0; i< levels.length; i++) levels[i] = new ZoomLevel(REDUCTIONS[i]);
+		}
+
+		public String getChromosome(){
+			return chromosomes[chromId];
+		}
+
+		/**Adds a single base value, bigWig only, same as a variableStep line with span 1.*/
+		public void addVarStep(int start, float value) throws IOException{
+			check(start, start + 1, SECTION_VAR_STEP);
+			ensure(8);
+			items.putInt(start);
+			items.putFloat(value);
+			added(start, start + 1, value);
+		}
+
+		/**Adds a span with a value, bigWig only, same as a bedGraph line.*/
+		public void addBedGraph(int start, int end, float value) throws IOException{
+			check(start, end, SECTION_BED_GRAPH);
+			ensure(12);
+			items.putInt(start);
+			items.putInt(end);
+			items.putFloat(value);
+			added(start, end, value);
+		}
+
+		/**Adds a bed item, bigBed only.
+		 * @param rest the tab delimited fields after the end, may be empty*/
+		public void addBed(int start, int end, String rest) throws IOException{
+			check(start, end, (byte)0);
+			byte[] r = rest.getBytes(StandardCharsets.US_ASCII);
+			ensure(13 + r.length);
+			items.putInt(chromId);
+			items.putInt(start);
+			items.putInt(end);
+			items.put(r);
+			items.put((byte)0);
+			int fields = 3;
+			if (r.length != 0) {
+				fields++;
+				for (byte c: r) if (c == '\t') fields++;
+			}
+			if (fields > fieldCount) fieldCount = fields;
+			added(start, end, 1);
+		}
+
+		private void check(int start, int end, byte type) throws IOException{
+			if (bigBed != (type == 0)) throw new IOException("Wrong item type for a "+(bigBed ? "bigBed " : "bigWig ")+file);
+			if (start < lastStart) throw new IOException("Items are not sorted, "+start+" follows "+lastStart+" on "+getChromosome());
+			if (end > chromSize || start > end || start < 0) throw new IOException("Item "+start+"-"+end+" is off the end of "+getChromosome()+" ("+chromSize+")");
+			if (numberInBlock == itemsPerSlot || (numberInBlock != 0 && type != sectionType)) finishBlock();
+			if (numberInBlock == 0) {
+				blockStart = start;
+				blockEnd = end;
+				sectionType = type;
+			}
+			lastStart = start;
+		}
+
+		private void ensure(int bytes){
+			if (items.remaining() < bytes){
+				ByteBuffer bigger = ByteBuffer.allocate(Math.max(items.capacity() * 2, items.position() + bytes)).order(ByteOrder.LITTLE_ENDIAN);
+				items.flip();
+				bigger.put(items);
+				items = bigger;
+			}
+		}
+
+		private void added(int start, int end, float value) throws IOException{
+			numberInBlock++;
+			numberItems++;
+			if (end > blockEnd) blockEnd = end;
+			total.add(value, end - start);
+			for (ZoomLevel z: levels) z.add(start, end, value);
+		}
+
+		private void finishBlock(){
+			if (numberInBlock == 0) return;
+			byte[] raw;
+			if (bigBed) raw = Arrays.copyOf(items.array(), items.position());
+			else {
+				//section header
+				ByteBuffer b = ByteBuffer.allocate(24 + items.position()).order(ByteOrder.LITTLE_ENDIAN);
+				b.putInt(chromId);
+				b.putInt(blockStart);
+				b.putInt(blockEnd);
+				b.putInt(0);
+				b.putInt(sectionType == SECTION_VAR_STEP ? 1 : 0);
+				b.put(sectionType);
+				b.put((byte)0);
+				b.putShort((short)numberInBlock);
+				b.put(items.array(), 0, items.position());
+				raw = b.array();
+			}
+			blocks.add(new Block(chromId, blockStart, blockEnd, compress(raw), raw.length));
+			items.clear();
+			numberInBlock = 0;
+		}
+
+		private byte[] compress(byte[] raw){
+			deflater.reset();
+			deflater.setInput(raw);
+			deflater.finish();
+			java.io.ByteArrayOutputStream bos = new java.io.ByteArrayOutputStream(raw.length / 2 + 64);
+			while (deflater.finished() == false){
+				int n = deflater.deflate(deflateBuffer);
+				bos.write(deflateBuffer, 0, n);
+			}
+			return bos.toByteArray();
+		}
+
+		void finish() throws IOException{
+			finishBlock();
+			for (ZoomLevel z: levels) z.finish();
+			deflater.end();
+		}
+
+		/**Writes the summaries of one reduction into compressed zoom blocks.*/
+		private class ZoomLevel extends ZoomBins {
+			private ArrayList<Block> blocks = new ArrayList<Block>();
+			private long numberRecords = 0;
+			private ByteBuffer records = ByteBuffer.allocate(ZOOM_RECORD_SIZE * itemsPerSlot).order(ByteOrder.LITTLE_ENDIAN);
+			private int numberInBlock = 0;
+			private int zoomBlockStart;
+			private int zoomBlockEnd;
+
+			ZoomLevel(int reduction){
+				super(reduction);
+			}
+
+			protected void write(long bin, ZoomSummary s){
+				int reduction = getBinSize();
+				int start = (int)(bin * reduction);
+				int end = (int)Math.min((long)chromSize, bin * reduction + reduction);
+				if (numberInBlock == 0) zoomBlockStart = start;
+				zoomBlockEnd = end;
+				records.putInt(chromId);
+				records.putInt(start);
+				records.putInt(end);
+				records.putInt((int)s.getCount());
+				records.putFloat(s.getMin());
+				records.putFloat(s.getMax());
+				records.putFloat((float)s.getSum());
+				records.putFloat((float)s.getSumSquares());
+				numberRecords++;
+				if (++numberInBlock == itemsPerSlot) finishZoomBlock();
+			}
+
+			private void finishZoomBlock(){
+				if (numberInBlock == 0) return;
+				byte[] raw = Arrays.copyOf(records.array(), records.position());
+				blocks.add(new Block(chromId, zoomBlockStart, zoomBlockEnd, compress(raw), raw.length));
+				records.clear();
+				numberInBlock = 0;
+			}
+
+			public void finish() throws IOException{
+				super.finish();
+				finishZoomBlock();
+			}
+		}
+	}
+
+	private static class Block {
+		int chromId;
+		int start;
+		int end;
+		byte[] bytes;
+		int uncompressedSize;
+		Block(int chromId, int start, int end, byte[] bytes, int uncompressedSize){
+			this.chromId = chromId;
+			this.start = start;
+			this.end = end;
+			this.bytes = bytes;
+			this.uncompressedSize = uncompressedSize;
+		}
+	}
+
+	/**Little endian buffered output tracking the file position.*/
+	private static class Out {
+		private OutputStream out;
+		private ByteBuffer buffer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+		long position = 0;
+
+		Out(File file) throws IOException{
+			out = new BufferedOutputStream(new FileOutputStream(file), 1 << 20);
+		}
+		void write(byte[] b) throws IOException{
+			out.write(b);
+			position += b.length;
+		}
+		void writeByte(int b) throws IOException{
+			out.write(b);
+			position++;
+		}
+		void writeShort(int s) throws IOException{
+			buffer.clear();
+			buffer.putShort((short)s);
+			out.write(buffer.array(), 0, 2);
+			position += 2;
+		}
+		void writeInt(int i) throws IOException{
+			buffer.clear();
+			buffer.putInt(i);
+			out.write(buffer.array(), 0, 4);
+			position += 4;
+		}
+		void writeLong(long l) throws IOException{
+			buffer.clear();
+			buffer.putLong(l);
+			out.write(buffer.array(), 0, 8);
+			position += 8;
+		}
+		void close() throws IOException{
+			out.close();
+		}
+		void closeQuietly(){
+			try {
+				out.close();
+			} catch (IOException e){}
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package edu.utah.seq.useq;
+
+/**Counts and sums the scores of sorted positions that fall in many regions with one merged pass. Regions are start
+ * (included) stop (not included) pairs, best sorted by start. The position index gallops forward from the last region's
+ * start so sorted regions cost O(log gap) each and only a start smaller than the last one needs a full binary search.
+ * @author david.nix@hci.utah.edu*/
+public class RegionSweep {
+
+	/**Adds, to numberObservations[i] and scoreSums[i], the count and score sum of the positions in startStopBp[i].
+	 * @param positions sorted
+	 * @param scores parallel to positions, if null each position is scored as 1
+	 * @return the number of regions with at least one position*/
+	public static int sum(int[] positions, float[] scores, int[][] startStopBp, float[] numberObservations, float[] scoreSums){
+		return sum(positions, scores, startStopBp, 0, startStopBp.length, numberObservations, scoreSums);
+	}
+
+	/**Same as above but only for the regions from fromIndex (included) to toIndex (not included).*/
+	public static int sum(int[] positions, float[] scores, int[][] startStopBp, int fromIndex, int toIndex, float[] numberObservations, float[] scoreSums){
+		int numPos = positions.length;
+		int numHit = 0;
+		int index = 0;
+		int lastStart = Integer.MIN_VALUE;
+		for (int i=fromIndex; i< toIndex; i++){
+			int start = startStopBp[i][0];
+			int stop = startStopBp[i][1];
+			//find first position >= start
+			if (start < lastStart) index = firstIndexAtOrAbove(positions, start);
+			else index = firstIndexAtOrAbove(positions, start, index);
+			lastStart = start;
+			//walk to stop
+			int end = index;
+			float sum = 0;
+			if (scores == null) {
+				while (end < numPos && positions[end] < stop) end++;
+				sum = end - index;
+			}
+			else {
+				while (end < numPos && positions[end] < stop) sum+= scores[end++];
+			}
+			int num = end - index;
+			if (num > 0){
+				numberObservations[i] += num;
+				scoreSums[i] += sum;
+				numHit++;
+			}
+		}
+		return numHit;
+	}
+
+	/**Returns the index of the first value >= the target or the length if none.*/
+	public static int firstIndexAtOrAbove(int[] sorted, int target){
+		int lo = 0;
+		int hi = sorted.length;
+		while (lo < hi){
+			int mid = (lo + hi) >>> 1;
+			if (sorted[mid] < target) lo = mid+1;
+			else hi = mid;
+		}
+		return lo;
+	}
+
+	/**Returns the index of the first value >= the target searching forward from fromIndex with doubling steps,
+	 * the length if none.*/
+	public static int firstIndexAtOrAbove(int[] sorted, int target, int fromIndex){
+		int num = sorted.length;
+		if (fromIndex >= num || sorted[fromIndex] >= target) return fromIndex;
+		//last index known to be < target
+		int below = fromIndex;
+		int step = 1;
+		while (below + step < num && sorted[below + step] < target) {
+			below += step;
+			step <<= 1;
+		}
+		int lo = below + 1;
+		int hi = below + step;
+		if (hi > num) hi = num;
+		while (lo < hi){
+			int mid = (lo + hi) >>> 1;
+			if (sorted[mid] < target) lo = mid+1;
+			else hi = mid;
+		}
+		return lo;
+	}
+
+	/**Returns true if startStopBp is sorted by start.*/
+	public static boolean isSorted(int[][] startStopBp){
+		for (int i=1; i< startStopBp.length; i++) if (startStopBp[i][0] < startStopBp[i-1][0]) return false;
+		return true;
+	}
+}
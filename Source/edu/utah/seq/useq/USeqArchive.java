@@ -5,6 +5,8 @@ import java.io.*;
 import java.util.zip.*;
 import java.util.*;
 
+import util.gen.ParallelRunner;
+
 /**Class for parsing USeq binary files for DAS2 requests and writing the data to stream. A USeqArchive is created upon request for a USeq data file
  * this should be cached to speed up subsequent retrieval.
  * 
@@ -22,6 +24,16 @@ public class USeqArchive {
 	private boolean stranded = false;
 	private boolean plusStrandedPresent = false;
 	private boolean minusStrandedPresent = false;
+	//optional zoom summaries from the xxx.useq.zoom file
+	private ZipFile zoomArchive = null;
+	private HashMap<String, TreeMap<Integer, ArrayList<ZoomSlice>>> chromStrandZooms = new HashMap<String, TreeMap<Integer, ArrayList<ZoomSlice>>>();
+	private static final int ZOOM_CACHE_SIZE = 64;
+	@SuppressWarnings("serial")
+	private LinkedHashMap<String, ZoomSlice> zoomCache = new LinkedHashMap<String, ZoomSlice>(16, 0.75f, true){
+		protected boolean removeEldestEntry(Map.Entry<String, ZoomSlice> eldest){
+			return size() > ZOOM_CACHE_SIZE;
+		}
+	};
 
 	public USeqArchive (File zipFile) throws Exception{
 		this.zipFile = zipFile;
@@ -77,6 +89,277 @@ public class USeqArchive {
 	}
 
 
+	/**Returns the number of observations and the sum of their scores in each start (included) stop (not included) region
+	 * on the chromosome with one merged sweep through its slices. Slices that intersect no region are never read and each
+	 * slice is read once no matter how many regions hit it. Only position data types are supported, those without scores
+	 * count each observation as 1.
+	 * @param strand + or - to only count that strand, null for all
+	 * @param startStopBp sorted by start
+	 * @return float[2][startStopBp.length]{numObservations[], sumScores[]}*/
+	public float[][] sumScoresPositions (String chromosome, String strand, int[][] startStopBp) throws IOException{
+		int numRegions = startStopBp.length;
+		float[] numObs = new float[numRegions];
+		float[] sums = new float[numRegions];
+		DataRange[] dr = chromStrandRegions.get(chromosome);
+		if (dr == null || numRegions == 0) return new float[][]{numObs, sums};
+		if (RegionSweep.isSorted(startStopBp) == false) throw new IOException("Regions must be sorted by start for "+chromosome);
+
+		//starts and the max stop up to each region, lets a slice find the regions that can reach it
+		int[] starts = new int[numRegions];
+		int[] maxStops = new int[numRegions];
+		int maxStop = Integer.MIN_VALUE;
+		for (int i=0; i< numRegions; i++){
+			starts[i] = startStopBp[i][0];
+			if (startStopBp[i][1] > maxStop) maxStop = startStopBp[i][1];
+			maxStops[i] = maxStop;
+		}
+
+		for (DataRange d: dr){
+			//regions with a start <= the slice's last position and a stop > its first, the slice range is inclusive
+			int last = d.endingBP == Integer.MAX_VALUE ? numRegions : RegionSweep.firstIndexAtOrAbove(starts, d.endingBP+1);
+			int first = RegionSweep.firstIndexAtOrAbove(maxStops, d.beginningBP+1);
+			if (first >= last) continue;
+			SliceInfo sliceInfo = new SliceInfo(d.zipEntry.getName());
+			if (strand != null && sliceInfo.getStrand().equals(strand) == false) continue;
+			DataInputStream dis = null;
+			try {
+				dis = new DataInputStream(new BufferedInputStream(zipArchive.getInputStream(d.zipEntry)));
+				int[] positions;
+				float[] scores = null;
+				if (USeqUtilities.POSITION_SCORE.matcher(binaryDataType).matches()) {
+					PositionScoreData psd = new PositionScoreData(dis, sliceInfo);
+					positions = psd.getBasePositions();
+					scores = psd.getBaseScores();
+				}
+				else if (USeqUtilities.POSITION_SCORE_TEXT.matcher(binaryDataType).matches()) {
+					PositionScoreTextData pstd = new PositionScoreTextData(dis, sliceInfo);
+					positions = pstd.getBasePositions();
+					scores = pstd.getBaseScores();
+				}
+				else if (USeqUtilities.POSITION.matcher(binaryDataType).matches()) positions = fetchBasePositions(new PositionData(dis, sliceInfo).getPositions());
+				else if (USeqUtilities.POSITION_TEXT.matcher(binaryDataType).matches()) positions = fetchBasePositions(new PositionTextData(dis, sliceInfo).getPositionTexts());
+				else throw new IOException ("Region counts are not supported for the USeq data type '"+binaryDataType+"' in "+zipFile);
+				RegionSweep.sum(positions, scores, startStopBp, first, last, numObs, sums);
+			} finally {
+				USeqUtilities.safeClose(dis);
+			}
+		}
+		return new float[][]{numObs, sums};
+	}
+
+	/**Runs sumScoresPositions() on each chromosome in parallel, largest region sets first. Chromosomes not in the archive get zeros.
+	 * @param chromRegions chromosome : start stop regions sorted by start
+	 * @return chromosome : float[2][]{numObservations[], sumScores[]}*/
+	public HashMap<String, float[][]> sumScoresPositions (HashMap<String, int[][]> chromRegions, String strand, int numberThreads) throws IOException{
+		ArrayList<RegionCounter> counters = new ArrayList<RegionCounter>();
+		for (String chrom: chromRegions.keySet()) counters.add(new RegionCounter(chrom, strand, chromRegions.get(chrom)));
+		Collections.sort(counters);
+		ParallelRunner.runAll(counters, numberThreads);
+		HashMap<String, float[][]> results = new HashMap<String, float[][]>();
+		for (RegionCounter rc: counters){
+			if (rc.failed != null) throw rc.failed;
+			results.put(rc.chromosome, rc.counts);
+		}
+		return results;
+	}
+
+	/**Counts the regions on one chromosome, sorts by the number of regions, largest first.*/
+	private class RegionCounter implements Runnable, Comparable<RegionCounter>{
+		String chromosome;
+		String strand;
+		int[][] startStopBp;
+		float[][] counts = null;
+		IOException failed = null;
+
+		RegionCounter(String chromosome, String strand, int[][] startStopBp){
+			this.chromosome = chromosome;
+			this.strand = strand;
+			this.startStopBp = startStopBp;
+		}
+
+		public void run(){
+			try {
+				counts = sumScoresPositions(chromosome, strand, startStopBp);
+			} catch (IOException e){
+				failed = e;
+			}
+		}
+
+		public int compareTo(RegionCounter other){
+			if (startStopBp.length > other.startStopBp.length) return -1;
+			if (startStopBp.length < other.startStopBp.length) return 1;
+			return 0;
+		}
+	}
+
+	private static int[] fetchBasePositions(Position[] p){
+		int[] positions = new int[p.length];
+		for (int i=0; i< p.length; i++) positions[i] = p[i].getPosition();
+		return positions;
+	}
+
+	/**Returns summaries of the data in equal bins across the start (included) stop (not included) region, served from the
+	 * coarsest zoom level with at least two bins in each, so the work follows the number of bins, not the size of the
+	 * region. Regions finer than every zoom level, and archives without a xxx.useq.zoom file, are summarized from the
+	 * slices. Zoom bins that straddle a requested bin are split by their overlap. Chromosomes not in the archive get empty
+	 * summaries.*/
+	public ZoomSummary[] fetchSummary (String chromosome, int start, int end, int bins) throws IOException{
+		return fetchSummary(chromosome, null, start, end, bins);
+	}
+
+	/**Same as fetchSummary() but only for the strand, + or - or ., null for all.*/
+	public ZoomSummary[] fetchSummary (String chromosome, String strand, int start, int end, int bins) throws IOException{
+		if (bins < 1 || end <= start) throw new IOException("Bad summary request, "+chromosome+":"+start+"-"+end+" in "+bins+" bins");
+		SummaryBins sb = new SummaryBins(start, end, bins);
+		DataRange[] dr = chromStrandRegions.get(chromosome);
+		if (dr == null) return sb.summaries;
+		double basesPerBin = (double)(end - start) / bins;
+
+		//each strand separately, the zoom levels may differ
+		LinkedHashSet<String> strands = new LinkedHashSet<String>();
+		for (DataRange d: dr) if (strand == null || d.strand.equals(strand)) strands.add(d.strand);
+		for (String s: strands){
+			ArrayList<ZoomSlice> level = null;
+			TreeMap<Integer, ArrayList<ZoomSlice>> levels = chromStrandZooms.get(chromosome+s);
+			if (levels != null){
+				Map.Entry<Integer, ArrayList<ZoomSlice>> e = levels.floorEntry((int)Math.min(Integer.MAX_VALUE, Math.floor(basesPerBin / 2)));
+				if (e != null) level = e.getValue();
+			}
+			if (level != null) summarizeZoomSlices(level, sb);
+			else summarizeSlices(dr, s, sb);
+		}
+		return sb.summaries;
+	}
+
+	private void summarizeZoomSlices(ArrayList<ZoomSlice> level, SummaryBins sb) throws IOException{
+		for (ZoomSlice zs: level){
+			if (zs.intersects(sb.start, sb.end) == false) continue;
+			ZoomSlice loaded = loadZoomSlice(zs);
+			int[] starts = loaded.getStarts();
+			ZoomSummary[] summaries = loaded.getSummaries();
+			int binSize = loaded.getBinSize();
+			for (int i=0; i< starts.length; i++) sb.add(starts[i], (int)Math.min((long)Integer.MAX_VALUE, (long)starts[i] + binSize), summaries[i]);
+		}
+	}
+
+	/**Feeds the slices of the strand from the last one starting at or before the region through those starting in it,
+	 * plus the next for stair steps to close the last position.*/
+	private void summarizeSlices(DataRange[] dr, String strand, final SummaryBins sb) throws IOException{
+		ArrayList<DataRange> al = new ArrayList<DataRange>();
+		for (DataRange d: dr) if (d.strand.equals(strand)) al.add(d);
+		int first = 0;
+		int last = -1;
+		for (int i=0; i< al.size(); i++){
+			if (al.get(i).beginningBP <= sb.start) first = i;
+			if (al.get(i).beginningBP < sb.end) last = i;
+		}
+		ZoomFeeder feeder = new ZoomFeeder(ZoomFeeder.isStairStep(archiveInfo)){
+			protected void addSpan(int start, int end, float value){
+				sb.add(start, end, value);
+			}
+		};
+		if (feeder.isStairStep() && last + 1 < al.size()) last++;
+		for (int i= first; i<= last; i++) feeder.addSlice(loadSlice(al.get(i).zipEntry));
+		feeder.finish();
+	}
+
+	/**Returns the loaded copy of the ZoomSlice from the cache.*/
+	private ZoomSlice loadZoomSlice(ZoomSlice zs) throws IOException{
+		String name = zs.getZoomName();
+		synchronized (zoomCache){
+			ZoomSlice loaded = zoomCache.get(name);
+			if (loaded != null) return loaded;
+		}
+		ZoomSlice loaded = new ZoomSlice(name);
+		DataInputStream dis = null;
+		try {
+			dis = new DataInputStream(new BufferedInputStream(zoomArchive.getInputStream(zoomArchive.getEntry(name))));
+			loaded.load(dis);
+		} finally {
+			USeqUtilities.safeClose(dis);
+		}
+		synchronized (zoomCache){
+			zoomCache.put(name, loaded);
+		}
+		return loaded;
+	}
+
+	/**Indexes the xxx.useq.zoom file beside the archive if present and made for it.*/
+	private void loadZoomArchive() throws IOException{
+		File zoomFile = ZoomBuilder.fetchZoomFile(zipFile);
+		if (zoomFile.exists() == false) return;
+		ZipFile zf = new ZipFile(zoomFile);
+		if (ZoomBuilder.fetchZoomComment(zipFile).equals(zf.getComment()) == false){
+			System.err.println("WARNING: ignoring zoom summaries made for a different archive -> "+zoomFile);
+			zf.close();
+			return;
+		}
+		Enumeration<? extends ZipEntry> e = zf.entries();
+		while (e.hasMoreElements()){
+			ZoomSlice zs = new ZoomSlice(e.nextElement().getName());
+			String chromStrand = zs.getChromosome()+zs.getStrand();
+			TreeMap<Integer, ArrayList<ZoomSlice>> levels = chromStrandZooms.get(chromStrand);
+			if (levels == null){
+				levels = new TreeMap<Integer, ArrayList<ZoomSlice>>();
+				chromStrandZooms.put(chromStrand, levels);
+			}
+			ArrayList<ZoomSlice> al = levels.get(zs.getBinSize());
+			if (al == null){
+				al = new ArrayList<ZoomSlice>();
+				levels.put(zs.getBinSize(), al);
+			}
+			al.add(zs);
+		}
+		zoomArchive = zf;
+	}
+
+	/**Equal bins across a region, the bin for a base is (base-start)*bins/length.*/
+	private static class SummaryBins {
+		int start;
+		int end;
+		int bins;
+		long length;
+		ZoomSummary[] summaries;
+
+		SummaryBins(int start, int end, int bins){
+			this.start = start;
+			this.end = end;
+			this.bins = bins;
+			length = end - start;
+			summaries = new ZoomSummary[bins];
+			for (int i=0; i< bins; i++) summaries[i] = new ZoomSummary();
+		}
+		private int boundary(int bin){
+			return start + (int)((length * bin + bins - 1) / bins);
+		}
+		private int binOf(int base){
+			return (int)((base - start) * (long)bins / length);
+		}
+		/**Adds a span covering its bases with the value.*/
+		void add(int spanStart, int spanEnd, float value){
+			int s = Math.max(spanStart, start);
+			int e = Math.min(spanEnd, end);
+			if (e <= s) return;
+			int last = binOf(e - 1);
+			for (int i= binOf(s); i<= last; i++){
+				int overlap = Math.min(e, boundary(i+1)) - Math.max(s, boundary(i));
+				summaries[i].add(value, overlap);
+			}
+		}
+		/**Adds the part of a summarized span that overlaps each bin.*/
+		void add(int spanStart, int spanEnd, ZoomSummary z){
+			int s = Math.max(spanStart, start);
+			int e = Math.min(spanEnd, end);
+			if (e <= s) return;
+			double spanLength = spanEnd - spanStart;
+			int last = binOf(e - 1);
+			for (int i= binOf(s); i<= last; i++){
+				int overlap = Math.min(e, boundary(i+1)) - Math.max(s, boundary(i));
+				summaries[i].add(z, overlap / spanLength);
+			}
+		}
+	}
+
 	/**Merges an ArrayList of the same dataType.*/
 	public USeqData mergeUSeqData(ArrayList<USeqData> useqDataAL) {
 		//Position
@@ -353,6 +636,40 @@ public class USeqArchive {
 		return al;
 	}
 
+	/**Returns every slice on the chromosome sorted by first start, only those on the strand if not null. Returns null
+	 * if the chromosome isn't present.*/
+	public ArrayList<ZipEntry> fetchChromosomeSlices (String chromosome, String strand) {
+		DataRange[] dr = chromStrandRegions.get(chromosome);
+		if (dr == null) return null;
+		ArrayList<ZipEntry> al = new ArrayList<ZipEntry>();
+		for (DataRange d: dr){
+			if (strand != null && d.strand.equals(strand) == false) continue;
+			al.add(d.zipEntry);
+		}
+		return al;
+	}
+
+	/**Loads an entire slice, safe to call from multiple threads.*/
+	public USeqData loadSlice (ZipEntry entry) throws IOException{
+		SliceInfo si = new SliceInfo(entry.getName());
+		DataInputStream dis = null;
+		try {
+			dis = new DataInputStream(new BufferedInputStream(zipArchive.getInputStream(entry)));
+			String type = si.getBinaryType();
+			if (USeqUtilities.POSITION.matcher(type).matches()) return new PositionData (dis, si);
+			if (USeqUtilities.POSITION_SCORE.matcher(type).matches()) return new PositionScoreData (dis, si);
+			if (USeqUtilities.POSITION_TEXT.matcher(type).matches()) return new PositionTextData (dis, si);
+			if (USeqUtilities.POSITION_SCORE_TEXT.matcher(type).matches()) return new PositionScoreTextData (dis, si);
+			if (USeqUtilities.REGION.matcher(type).matches()) return new RegionData (dis, si);
+			if (USeqUtilities.REGION_SCORE.matcher(type).matches()) return new RegionScoreData (dis, si);
+			if (USeqUtilities.REGION_TEXT.matcher(type).matches()) return new RegionTextData (dis, si);
+			if (USeqUtilities.REGION_SCORE_TEXT.matcher(type).matches()) return new RegionScoreTextData (dis, si);
+			throw new IOException("\nFailed to recognize the binary file extension! "+entry.getName());
+		} finally {
+			USeqUtilities.safeClose(dis);
+		}
+	}
+
 	/**Loads the zip entries into the chromosomeStrand DataRange[] HashMap*/
 	@SuppressWarnings("unchecked")
 	private void parseZipFile() {
@@ -365,6 +682,7 @@ public class USeqArchive {
 			archiveReadMeEntry = (ZipEntry) e.nextElement();
 			is = zipArchive.getInputStream(archiveReadMeEntry);
 			archiveInfo = new ArchiveInfo(is, false);
+			if (archiveInfo.isSupportedVersion() == false) throw new IOException("Unsupported "+ArchiveInfo.ARCHIVE_VERSION_KEY+" "+archiveInfo.getArchiveVersion()+" in "+zipFile);
 
 			//load
 			HashMap<String, ArrayList<DataRange>> map = new HashMap<String,ArrayList<DataRange>> ();
@@ -391,7 +709,7 @@ public class USeqArchive {
 					al = new ArrayList<DataRange>();
 					map.put(chromName, al);
 				}
-				al.add(new DataRange(zipEntry,sliceInfo.getFirstStartPosition(), sliceInfo.getLastStartPosition()));
+				al.add(new DataRange(zipEntry, sliceInfo.getStrand(), sliceInfo.getFirstStartPosition(), sliceInfo.getLastStartPosition()));
 
 			}
 			//convert to arrays and sort
@@ -404,6 +722,8 @@ public class USeqArchive {
 				Arrays.sort(dr);
 				chromStrandRegions.put(chromName, dr);
 			}
+
+			loadZoomArchive();
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
@@ -414,10 +734,12 @@ public class USeqArchive {
 
 	private class DataRange implements Comparable<DataRange>{
 		ZipEntry zipEntry;
+		String strand;
 		int beginningBP;
 		int endingBP;
-		public DataRange (ZipEntry zipEntry, int beginningBP, int endingBP){
+		public DataRange (ZipEntry zipEntry, String strand, int beginningBP, int endingBP){
 			this.zipEntry = zipEntry;
+			this.strand = strand;
 			this.beginningBP = beginningBP;
 			this.endingBP = endingBP;
 		}
@@ -555,6 +877,11 @@ public class USeqArchive {
 		return zipFile;
 	}
 
+	/**True if summaries are served from a xxx.useq.zoom file.*/
+	public boolean isZoomed() {
+		return zoomArchive != null;
+	}
+
 	public boolean isStranded() {
 		return stranded;
 	}
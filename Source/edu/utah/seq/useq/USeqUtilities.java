@@ -31,46 +31,50 @@ public class USeqUtilities {
 	public static final String DOUBLE = "d";
 	public static final String TEXT = "t";
 	public static final String BOOLEAN = "o";
+	/**Prefix of the compact columnar binary types, see ColumnarCodec, these are only in useqArchiveVersion 2.0 archives.*/
+	public static final String COLUMNAR = "c";
 	public static final String USEQ_EXTENSION_NO_PERIOD = "useq";
 	public static final String USEQ_EXTENSION_WITH_PERIOD = ".useq";
+	/**Optional zoom summaries of a xxx.useq archive are saved beside it in xxx.useq.zoom*/
+	public static final String USEQ_ZOOM_EXTENSION = ".zoom";
 
-	//possible binary file types
+	//possible binary file types, the family patterns also match their COLUMNAR types (e.g. cif)
 	//Position
-	public static final Pattern POSITION = Pattern.compile("["+INT+SHORT+"]");
+	public static final Pattern POSITION = Pattern.compile(COLUMNAR+"?["+INT+SHORT+"]");
 	public static final Pattern POSITION_INT = Pattern.compile(INT);
 	public static final Pattern POSITION_SHORT = Pattern.compile(SHORT);
 	//PositionScore
-	public static final Pattern POSITION_SCORE = Pattern.compile("["+INT+SHORT+"]"+FLOAT);
+	public static final Pattern POSITION_SCORE = Pattern.compile(COLUMNAR+"?["+INT+SHORT+"]"+FLOAT);
 	public static final Pattern POSITION_SCORE_INT_FLOAT = Pattern.compile(INT+FLOAT);
 	public static final Pattern POSITION_SCORE_SHORT_FLOAT = Pattern.compile(SHORT+FLOAT);
 	//PositionText
-	public static final Pattern POSITION_TEXT = Pattern.compile("["+INT+SHORT+"]"+TEXT);
+	public static final Pattern POSITION_TEXT = Pattern.compile(COLUMNAR+"?["+INT+SHORT+"]"+TEXT);
 	public static final Pattern POSITION_TEXT_INT_TEXT = Pattern.compile(INT+TEXT);
 	public static final Pattern POSITION_TEXT_SHORT_TEXT = Pattern.compile(SHORT+TEXT);
 	//PositionScoreText
-	public static final Pattern POSITION_SCORE_TEXT = Pattern.compile("["+INT+SHORT+"]"+FLOAT+TEXT);
+	public static final Pattern POSITION_SCORE_TEXT = Pattern.compile(COLUMNAR+"?["+INT+SHORT+"]"+FLOAT+TEXT);
 	public static final Pattern POSITION_SCORE_TEXT_INT_FLOAT_TEXT = Pattern.compile(INT+FLOAT+TEXT);
 	public static final Pattern POSITION_SCORE_TEXT_SHORT_FLOAT_TEXT = Pattern.compile(SHORT+FLOAT+TEXT);
 	//Region
-	public static final Pattern REGION = Pattern.compile("["+INT+SHORT+"]{2}");
+	public static final Pattern REGION = Pattern.compile(COLUMNAR+"?["+INT+SHORT+"]{2}");
 	public static final Pattern REGION_INT_INT = Pattern.compile(INT+INT);
 	public static final Pattern REGION_INT_SHORT = Pattern.compile(INT+SHORT);
 	public static final Pattern REGION_SHORT_INT = Pattern.compile(SHORT+INT);
 	public static final Pattern REGION_SHORT_SHORT = Pattern.compile(SHORT+SHORT);
 	//RegionScore
-	public static final Pattern REGION_SCORE = Pattern.compile("["+INT+SHORT+"]{2}"+FLOAT);
+	public static final Pattern REGION_SCORE = Pattern.compile(COLUMNAR+"?["+INT+SHORT+"]{2}"+FLOAT);
 	public static final Pattern REGION_SCORE_INT_INT_FLOAT = Pattern.compile(INT+INT+FLOAT);
 	public static final Pattern REGION_SCORE_INT_SHORT_FLOAT = Pattern.compile(INT+SHORT+FLOAT);
 	public static final Pattern REGION_SCORE_SHORT_INT_FLOAT = Pattern.compile(SHORT+INT+FLOAT);
 	public static final Pattern REGION_SCORE_SHORT_SHORT_FLOAT = Pattern.compile(SHORT+SHORT+FLOAT);
 	//RegionText
-	public static final Pattern REGION_TEXT = Pattern.compile("["+INT+SHORT+"]{2}"+TEXT);
+	public static final Pattern REGION_TEXT = Pattern.compile(COLUMNAR+"?["+INT+SHORT+"]{2}"+TEXT);
 	public static final Pattern REGION_TEXT_INT_INT_TEXT = Pattern.compile(INT+INT+TEXT);
 	public static final Pattern REGION_TEXT_INT_SHORT_TEXT = Pattern.compile(INT+SHORT+TEXT);
 	public static final Pattern REGION_TEXT_SHORT_INT_TEXT = Pattern.compile(SHORT+INT+TEXT);
 	public static final Pattern REGION_TEXT_SHORT_SHORT_TEXT = Pattern.compile(SHORT+SHORT+TEXT);
 	//RegionScoreText
-	public static final Pattern REGION_SCORE_TEXT = Pattern.compile("["+INT+SHORT+"]{2}"+FLOAT+TEXT);
+	public static final Pattern REGION_SCORE_TEXT = Pattern.compile(COLUMNAR+"?["+INT+SHORT+"]{2}"+FLOAT+TEXT);
 	public static final Pattern REGION_SCORE_TEXT_INT_INT_FLOAT_TEXT = Pattern.compile(INT+INT+FLOAT+TEXT);
 	public static final Pattern REGION_SCORE_TEXT_INT_SHORT_FLOAT_TEXT = Pattern.compile(INT+SHORT+FLOAT+TEXT);
 	public static final Pattern REGION_SCORE_TEXT_SHORT_INT_FLOAT_TEXT = Pattern.compile(SHORT+INT+FLOAT+TEXT);
@@ -0,0 +1,71 @@
+package edu.utah.seq.useq;
+
+import java.io.IOException;
+
+/**Summarizes sorted spans into fixed bins of the binSize starting at base 0. A bin is handed to write() once no later
+ * span can reach it, the open bins are held in a ring so memory follows the longest span, not the chromosome.
+ * @author david.nix@hci.utah.edu*/
+public abstract class ZoomBins {
+
+	//fields
+	private int binSize;
+	private ZoomSummary[] ring = new ZoomSummary[16];
+	private int head = 0;
+	private int size = 0;
+	private long firstBin = 0;
+
+	public ZoomBins(int binSize){
+		this.binSize = binSize;
+	}
+
+	/**Called for each bin with data in order, the ZoomSummary is not reused.*/
+	protected abstract void write(long bin, ZoomSummary s) throws IOException;
+
+	/**Adds a span, these must be sorted by start. Spans with no bases open their bin but add nothing to it.*/
+	public void add(int start, int end, float value) throws IOException{
+		long startBin = start / binSize;
+		//close bins before this span
+		while (size != 0 && firstBin < startBin) {
+			close();
+		}
+		if (size == 0) firstBin = startBin;
+		long endBin = (Math.max(end, start + 1) - 1) / binSize;
+		for (long bin = startBin; bin <= endBin; bin++){
+			int index = (int)(bin - firstBin);
+			while (index >= size) {
+				if (size == ring.length) grow();
+				ring[(head + size) % ring.length] = new ZoomSummary();
+				size++;
+			}
+			long binStart = bin * binSize;
+			int overlap = (int)(Math.min(end, binStart + binSize) - Math.max(start, binStart));
+			if (end == start) overlap = 0;
+			ring[(head + index) % ring.length].add(value, overlap);
+		}
+	}
+
+	/**Writes the open bins.*/
+	public void finish() throws IOException{
+		while (size != 0) close();
+	}
+
+	private void close() throws IOException{
+		ZoomSummary s = ring[head];
+		ring[head] = null;
+		head = (head + 1) % ring.length;
+		size--;
+		if (s.getCount() != 0) write(firstBin, s);
+		firstBin++;
+	}
+
+	private void grow(){
+		ZoomSummary[] bigger = new ZoomSummary[ring.length * 2];
+		for (int i=0; i< size; i++) bigger[i] = ring[(head + i) % ring.length];
+		ring = bigger;
+		head = 0;
+	}
+
+	public int getBinSize() {
+		return binSize;
+	}
+}
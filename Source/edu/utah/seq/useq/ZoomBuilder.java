@@ -0,0 +1,185 @@
+package edu.utah.seq.useq;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**Builds the zoom levels of one chromosome strand for a xxx.useq.zoom file in one pass over its sorted records. Bins of
+ * 16bp to 64Mb in steps of four are each streamed to a temp file, those with at most an eighth of the records of the
+ * level below are kept, at most 10, and saved in ZoomSlices of 10000 records. A zoom record is several times the size of
+ * a slice record so finer levels would outweigh the data. The zoom file is a zip beside the archive with the archive's
+ * size in its comment so a stale one is ignored, readers of the archive never see it.
+ * @author david.nix@hci.utah.edu*/
+public class ZoomBuilder extends ZoomFeeder {
+
+	//fields
+	private String chromosome;
+	private String strand;
+	private File tempDirectory;
+	private Level[] levels = new Level[BIN_SIZES.length];
+	private ArrayList<Level> keptLevels = new ArrayList<Level>();
+	private long numberSpans = 0;
+
+	public static final int[] BIN_SIZES = new int[12];
+	static {
+		for (int i=0; i< BIN_SIZES.length; i++) BIN_SIZES[i] = 16 << (2*i);
+	}
+	public static final int MAX_ZOOM_LEVELS = 10;
+	public static final int LEVEL_REDUCTION = 8;
+	public static final int ZOOM_SLICE_SIZE = 10000;
+	public static final String ARCHIVE_SIZE_KEY = "useqArchiveSize=";
+
+	/**@param stairStep see ZoomFeeder.isStairStep()
+	 * @param tempDirectory for the level files, these are deleted by writeEntries()*/
+	public ZoomBuilder(String chromosome, String strand, boolean stairStep, File tempDirectory){
+		super(stairStep);
+		this.chromosome = chromosome;
+		this.strand = strand;
+		this.tempDirectory = tempDirectory;
+		for (int i=0; i< levels.length; i++) levels[i] = new Level(BIN_SIZES[i]);
+	}
+
+	protected void addSpan(int start, int end, float value) throws IOException{
+		numberSpans++;
+		for (Level l: levels) l.add(start, end, value);
+	}
+
+	/**Closes the levels and picks those to keep, deleting the rest.*/
+	public void finish() throws IOException{
+		super.finish();
+		long previous = numberSpans;
+		for (Level l: levels){
+			l.finish();
+			l.close();
+			if (l.numberRecords == 0 || l.numberRecords * LEVEL_REDUCTION > previous || keptLevels.size() == MAX_ZOOM_LEVELS) l.delete();
+			else {
+				keptLevels.add(l);
+				previous = l.numberRecords;
+			}
+		}
+	}
+
+	/**Adds a ZoomSlice entry for each block of the kept levels, call after finish().*/
+	public void writeEntries(ZipOutputStream out) throws IOException{
+		DataOutputStream dos = new DataOutputStream(out);
+		byte[] buffer = new byte[ZoomSlice.RECORD_SIZE * ZOOM_SLICE_SIZE];
+		try {
+			for (Level l: keptLevels){
+				DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(l.file), 65536));
+				try {
+					for (int[] block: l.blocks){
+						out.putNextEntry(new ZipEntry(ZoomSlice.fetchZoomName(chromosome, strand, block[0], block[1], l.getBinSize())));
+						dos.writeInt(block[2]);
+						int length = block[2] * ZoomSlice.RECORD_SIZE;
+						dis.readFully(buffer, 0, length);
+						dos.write(buffer, 0, length);
+						dos.flush();
+						out.closeEntry();
+					}
+				} finally {
+					dis.close();
+				}
+			}
+		} finally {
+			deleteTempFiles();
+		}
+	}
+
+	public void deleteTempFiles(){
+		for (Level l: levels) {
+			l.close();
+			l.delete();
+		}
+	}
+
+	/**Returns xxx.useq.zoom beside the archive.*/
+	public static File fetchZoomFile(File useqArchive){
+		return new File(useqArchive.getPath()+USeqUtilities.USEQ_ZOOM_EXTENSION);
+	}
+
+	/**The zip comment linking a zoom file to its archive, call once the archive is closed.*/
+	public static String fetchZoomComment(File useqArchive){
+		return ARCHIVE_SIZE_KEY+useqArchive.length();
+	}
+
+	/**Writes the zoom file for a closed archive from finished builders, in chromosome strand order.*/
+	public static File writeZoomArchive(File useqArchive, ArrayList<ZoomBuilder> builders) throws IOException{
+		ArrayList<ZoomBuilder> sorted = new ArrayList<ZoomBuilder>(builders);
+		Collections.sort(sorted, new Comparator<ZoomBuilder>(){
+			public int compare(ZoomBuilder a, ZoomBuilder b){
+				return (a.chromosome+a.strand).compareTo(b.chromosome+b.strand);
+			}
+		});
+		File zoomFile = fetchZoomFile(useqArchive);
+		ZipOutputStream out = null;
+		try {
+			out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(zoomFile), 65536));
+			for (ZoomBuilder b: sorted) b.writeEntries(out);
+			out.setComment(fetchZoomComment(useqArchive));
+			out.close();
+			out = null;
+		} finally {
+			if (out != null){
+				USeqUtilities.safeClose(out);
+				zoomFile.delete();
+			}
+			for (ZoomBuilder b: sorted) b.deleteTempFiles();
+		}
+		return zoomFile;
+	}
+
+	/**Records of one bin size streamed to a temp file, noting the first and last base and number of records of each
+	 * block of ZOOM_SLICE_SIZE.*/
+	private class Level extends ZoomBins {
+		private File file = null;
+		private DataOutputStream out = null;
+		private ArrayList<int[]> blocks = new ArrayList<int[]>();
+		private int[] block = null;
+		private long numberRecords = 0;
+
+		Level(int binSize){
+			super(binSize);
+		}
+
+		protected void write(long bin, ZoomSummary s) throws IOException{
+			if (out == null) {
+				file = File.createTempFile(chromosome+strand+getBinSize()+".", ".zoom", tempDirectory);
+				out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 65536));
+			}
+			int start = (int)(bin * getBinSize());
+			int end = (int)Math.min((long)Integer.MAX_VALUE, bin * getBinSize() + getBinSize());
+			if (block == null || block[2] == ZOOM_SLICE_SIZE){
+				block = new int[]{start, end, 0};
+				blocks.add(block);
+			}
+			block[1] = end;
+			block[2]++;
+			out.writeInt(start);
+			out.writeLong(s.getCount());
+			out.writeFloat(s.getMin());
+			out.writeFloat(s.getMax());
+			out.writeDouble(s.getSum());
+			out.writeDouble(s.getSumSquares());
+			numberRecords++;
+		}
+
+		void close(){
+			if (out != null) USeqUtilities.safeClose(out);
+			out = null;
+		}
+
+		void delete(){
+			if (file != null) file.delete();
+		}
+	}
+
+	public String getChromosome() {
+		return chromosome;
+	}
+	public String getStrand() {
+		return strand;
+	}
+}
@@ -0,0 +1,88 @@
+package edu.utah.seq.useq;
+
+import java.io.IOException;
+
+import edu.utah.seq.useq.data.*;
+
+/**Turns the sorted records of one chromosome strand into spans with a value for summarizing. Positions cover one base,
+ * regions their bases, records without a score count as 1. Stair step graphs hold each position's score until the next
+ * position, the last covers one base.
+ * @author david.nix@hci.utah.edu*/
+public abstract class ZoomFeeder {
+
+	//fields
+	private boolean stairStep;
+	private boolean pending = false;
+	private int pendingPosition;
+	private float pendingScore;
+
+	public ZoomFeeder(boolean stairStep){
+		this.stairStep = stairStep;
+	}
+
+	/**Called with each span in order of start.*/
+	protected abstract void addSpan(int start, int end, float value) throws IOException;
+
+	/**Adds a position, these must be sorted.*/
+	public void addPosition(int position, float score) throws IOException{
+		if (stairStep == false) {
+			addSpan(position, position + 1, score);
+			return;
+		}
+		if (pending) addSpan(pendingPosition, Math.max(position, pendingPosition + 1), pendingScore);
+		pending = true;
+		pendingPosition = position;
+		pendingScore = score;
+	}
+
+	/**Adds a region, these must be sorted by start. Empty regions cover their start.*/
+	public void addRegion(int start, int stop, float score) throws IOException{
+		addSpan(start, Math.max(stop, start + 1), score);
+	}
+
+	/**Adds every record in the slice, slices must be added in order.*/
+	public void addSlice(USeqData data) throws IOException{
+		if (data instanceof PositionData) {
+			for (Position p: ((PositionData)data).getPositions()) addPosition(p.getPosition(), 1);
+		}
+		else if (data instanceof PositionTextData) {
+			for (Position p: ((PositionTextData)data).getPositionTexts()) addPosition(p.getPosition(), 1);
+		}
+		else if (data instanceof PositionScoreData) {
+			for (PositionScore p: ((PositionScoreData)data).getPositionScores()) addPosition(p.getPosition(), p.getScore());
+		}
+		else if (data instanceof PositionScoreTextData) {
+			for (PositionScore p: ((PositionScoreTextData)data).getPositionScoreTexts()) addPosition(p.getPosition(), p.getScore());
+		}
+		else if (data instanceof RegionData) {
+			for (Region r: ((RegionData)data).getRegions()) addRegion(r.getStart(), r.getStop(), 1);
+		}
+		else if (data instanceof RegionTextData) {
+			for (Region r: ((RegionTextData)data).getRegionTexts()) addRegion(r.getStart(), r.getStop(), 1);
+		}
+		else if (data instanceof RegionScoreData) {
+			for (RegionScore r: ((RegionScoreData)data).getRegionScores()) addRegion(r.getStart(), r.getStop(), r.getScore());
+		}
+		else if (data instanceof RegionScoreTextData) {
+			for (RegionScore r: ((RegionScoreTextData)data).getRegionScoreTexts()) addRegion(r.getStart(), r.getStop(), r.getScore());
+		}
+		else throw new IOException("Zoom summaries are not supported for "+data.getClass().getSimpleName());
+	}
+
+	/**Adds the last stair step position.*/
+	public void finish() throws IOException{
+		if (pending) addSpan(pendingPosition, pendingPosition + 1, pendingScore);
+		pending = false;
+	}
+
+	/**Stair step and heat map graphs hold their scores between positions, same as the USeq2Text bed graph output.*/
+	public static boolean isStairStep(ArchiveInfo ai){
+		if (ai == null || ai.isGraphData() == false) return false;
+		String style = ai.getValue(ArchiveInfo.GRAPH_STYLE_KEY);
+		return ArchiveInfo.GRAPH_STYLE_VALUE_STAIRSTEP.equals(style) || ArchiveInfo.GRAPH_STYLE_VALUE_HEATMAP.equals(style);
+	}
+
+	public boolean isStairStep() {
+		return stairStep;
+	}
+}
@@ -0,0 +1,86 @@
+package edu.utah.seq.useq;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**A block of zoom summaries from a xxx.useq.zoom file, one chromosome strand and bin size. Each entry name looks like
+ * chr5+1024-8394854-1024.zoom, chromosome, strand, first base, last base (not included) and the bin size. The entry holds
+ * the number of records followed by each record's start, count, min, max, sum and sum of squares, bins without data are
+ * left out.
+ * @author david.nix@hci.utah.edu*/
+public class ZoomSlice {
+
+	//fields
+	public static final Pattern ZOOM_NAME_SPLITTER = Pattern.compile("^(.+)([+-.])(\\d+)-(\\d+)-(\\d+)\\.zoom$");
+	public static final int RECORD_SIZE = 36;
+	private String chromosome;
+	private String strand;
+	private int firstBase;
+	private int lastBase;
+	private int binSize;
+	private int[] starts = null;
+	private ZoomSummary[] summaries = null;
+
+	public ZoomSlice (String zoomName) throws IOException {
+		Matcher mat = ZOOM_NAME_SPLITTER.matcher(zoomName);
+		if (mat.matches() == false) throw new IOException ("Malformed zoom name! Failed to parse the zoom info from -> "+zoomName);
+		chromosome = mat.group(1);
+		strand = mat.group(2);
+		firstBase = Integer.parseInt(mat.group(3));
+		lastBase = Integer.parseInt(mat.group(4));
+		binSize = Integer.parseInt(mat.group(5));
+	}
+
+	public static String fetchZoomName(String chromosome, String strand, int firstBase, int lastBase, int binSize){
+		return chromosome+strand+firstBase+"-"+lastBase+"-"+binSize+".zoom";
+	}
+
+	/**Loads the records, does not close the stream.*/
+	public void load(DataInputStream dis) throws IOException{
+		int num = dis.readInt();
+		starts = new int[num];
+		summaries = new ZoomSummary[num];
+		for (int i=0; i< num; i++){
+			starts[i] = dis.readInt();
+			long count = dis.readLong();
+			float min = dis.readFloat();
+			float max = dis.readFloat();
+			double sum = dis.readDouble();
+			double sumSquares = dis.readDouble();
+			summaries[i] = new ZoomSummary(count, min, max, sum, sumSquares);
+		}
+	}
+
+	public boolean intersects (int start, int stop){
+		return stop > firstBase && start < lastBase;
+	}
+
+	public String getZoomName(){
+		return fetchZoomName(chromosome, strand, firstBase, lastBase, binSize);
+	}
+	public String getChromosome() {
+		return chromosome;
+	}
+	public String getStrand() {
+		return strand;
+	}
+	public int getFirstBase() {
+		return firstBase;
+	}
+	public int getLastBase() {
+		return lastBase;
+	}
+	public int getBinSize() {
+		return binSize;
+	}
+	/**Bin starts, null until loaded.*/
+	public int[] getStarts() {
+		return starts;
+	}
+	/**Null until loaded.*/
+	public ZoomSummary[] getSummaries() {
+		return summaries;
+	}
+}
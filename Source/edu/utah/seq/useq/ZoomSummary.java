@@ -0,0 +1,97 @@
+package edu.utah.seq.useq;
+
+/**Summary of the values over a span of bases, the bases covered, min, max, sum and sum of squares, each weighted by the
+ * bases. Used for the zoom levels of USeq and UCSC big files.
+ * @author david.nix@hci.utah.edu*/
+public class ZoomSummary {
+
+	//fields
+	private long count = 0;
+	private float min = Float.POSITIVE_INFINITY;
+	private float max = Float.NEGATIVE_INFINITY;
+	private double sum = 0;
+	private double sumSquares = 0;
+
+	public ZoomSummary(){}
+
+	public ZoomSummary(long count, float min, float max, double sum, double sumSquares){
+		this.count = count;
+		this.min = min;
+		this.max = max;
+		this.sum = sum;
+		this.sumSquares = sumSquares;
+	}
+
+	/**Adds a value covering the bases, ignored if the bases are < 1.*/
+	public void add(float value, int bases){
+		if (bases <= 0) return;
+		count += bases;
+		if (value < min) min = value;
+		if (value > max) max = value;
+		sum += (double)value * bases;
+		sumSquares += (double)value * value * bases;
+	}
+
+	public void add(ZoomSummary other){
+		if (other.count == 0) return;
+		count += other.count;
+		if (other.min < min) min = other.min;
+		if (other.max > max) max = other.max;
+		sum += other.sum;
+		sumSquares += other.sumSquares;
+	}
+
+	/**Adds a fraction of the other's bases, sum and sum of squares, the min and max are taken as is.*/
+	public void add(ZoomSummary other, double fraction){
+		if (other.count == 0 || fraction <= 0) return;
+		if (fraction >= 1) {
+			add(other);
+			return;
+		}
+		count += Math.max(1, Math.round(other.count * fraction));
+		if (other.min < min) min = other.min;
+		if (other.max > max) max = other.max;
+		sum += other.sum * fraction;
+		sumSquares += other.sumSquares * fraction;
+	}
+
+	/**Returns 0 if empty.*/
+	public double getMean(){
+		if (count == 0) return 0;
+		return sum / count;
+	}
+
+	/**Population standard deviation, 0 if empty.*/
+	public double getStandardDeviation(){
+		if (count == 0) return 0;
+		double mean = sum / count;
+		double var = sumSquares / count - mean * mean;
+		if (var <= 0) return 0;
+		return Math.sqrt(var);
+	}
+
+	public String toString(){
+		return count+"\t"+getMin()+"\t"+getMax()+"\t"+sum+"\t"+sumSquares;
+	}
+
+	/**Number of bases covered.*/
+	public long getCount() {
+		return count;
+	}
+	/**Returns 0 if empty.*/
+	public float getMin() {
+		if (count == 0) return 0;
+		return min;
+	}
+	/**Returns 0 if empty.*/
+	public float getMax() {
+		if (count == 0) return 0;
+		return max;
+	}
+	public double getSum() {
+		return sum;
+	}
+	public double getSumSquares() {
+		return sumSquares;
+	}
+}
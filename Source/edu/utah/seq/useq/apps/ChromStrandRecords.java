@@ -0,0 +1,247 @@
+package edu.utah.seq.useq.apps;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/**Holds the parsed records of one chromosome strand for Text2USeq in primitive columns. When asked the records are
+ * sorted and spilled to a temp run file, the runs and whatever is left in memory are then merged back in order. Records
+ * sort by start then length with ties kept in input order, the same as sorting Position and Region objects.
+ * @author david.nix@hci.utah.edu*/
+public class ChromStrandRecords {
+
+	//fields
+	private String chromosome;
+	private String strand;
+	private boolean hasStop;
+	private boolean hasScore;
+	private boolean hasText;
+	private File tempDirectory;
+	private int[] starts = new int[1024];
+	private int[] stops;
+	private float[] scores;
+	private String[] texts;
+	private int size = 0;
+	private ArrayList<File> runs = new ArrayList<File>();
+	private long numberRecords = 0;
+
+	public ChromStrandRecords (String chromosome, String strand, boolean hasStop, boolean hasScore, boolean hasText, File tempDirectory){
+		this.chromosome = chromosome;
+		this.strand = strand;
+		this.hasStop = hasStop;
+		this.hasScore = hasScore;
+		this.hasText = hasText;
+		this.tempDirectory = tempDirectory;
+		if (hasStop) stops = new int[starts.length];
+		if (hasScore) scores = new float[starts.length];
+		if (hasText) texts = new String[starts.length];
+	}
+
+	public void add(int start, int stop, float score, String text){
+		if (size == starts.length) grow();
+		starts[size] = start;
+		if (hasStop) stops[size] = stop;
+		if (hasScore) scores[size] = score;
+		if (hasText) texts[size] = text;
+		size++;
+		numberRecords++;
+	}
+
+	private void grow(){
+		int length = starts.length * 2;
+		starts = Arrays.copyOf(starts, length);
+		if (hasStop) stops = Arrays.copyOf(stops, length);
+		if (hasScore) scores = Arrays.copyOf(scores, length);
+		if (hasText) texts = Arrays.copyOf(texts, length);
+	}
+
+	/**Sorts the records held in memory and writes them to a new run file, freeing the memory.*/
+	public void spill() throws IOException{
+		if (size == 0) return;
+		int[] order = sortOrder();
+		File run = File.createTempFile(chromosome+strand+".", ".run", tempDirectory);
+		runs.add(run);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), 65536));
+		try {
+			out.writeInt(size);
+			for (int i: order){
+				out.writeInt(starts[i]);
+				if (hasStop) out.writeInt(stops[i]);
+				if (hasScore) out.writeFloat(scores[i]);
+				if (hasText) out.writeUTF(texts[i]);
+			}
+		} finally {
+			out.close();
+		}
+		size = 0;
+		starts = new int[1024];
+		if (hasStop) stops = new int[starts.length];
+		if (hasScore) scores = new float[starts.length];
+		if (hasText) texts = new String[starts.length];
+	}
+
+	/**Returns the indexes of the records in memory in sorted order.*/
+	private int[] sortOrder(){
+		//start in the upper bits, input index in the lower so ties keep their order
+		long[] keys = new long[size];
+		for (int i=0; i< size; i++) keys[i] = ((long)starts[i] << 32) | i;
+		Arrays.sort(keys);
+		int[] order = new int[size];
+		for (int i=0; i< size; i++) order[i] = (int)keys[i];
+		if (hasStop == false) return order;
+
+		//same starts by length
+		int i = 0;
+		while (i < size){
+			int j = i+1;
+			int start = starts[order[i]];
+			while (j < size && starts[order[j]] == start) j++;
+			if (j - i > 1){
+				long[] k = new long[j-i];
+				for (int x=i; x< j; x++) k[x-i] = ((long)(stops[order[x]] - start) << 32) | order[x];
+				Arrays.sort(k);
+				for (int x=i; x< j; x++) order[x] = (int)k[x-i];
+			}
+			i = j;
+		}
+		return order;
+	}
+
+	/**Merges the runs and the records in memory, close it when done to release the run files.*/
+	public RecordIterator iterator() throws IOException{
+		return new RecordIterator();
+	}
+
+	public void deleteRuns(){
+		for (File f: runs) f.delete();
+		runs.clear();
+	}
+
+	/**Returns the records in sorted order, call next() before each.*/
+	public class RecordIterator {
+		private PriorityQueue<Cursor> queue = new PriorityQueue<Cursor>();
+		private ArrayList<Cursor> cursors = new ArrayList<Cursor>();
+		private Cursor current = null;
+
+		private RecordIterator() throws IOException{
+			try {
+				for (int i=0; i< runs.size(); i++) cursors.add(new RunCursor(i, runs.get(i)));
+				if (size != 0) cursors.add(new MemoryCursor(runs.size(), sortOrder()));
+				for (Cursor c: cursors) if (c.advance()) queue.add(c);
+			} catch (IOException e){
+				close();
+				throw e;
+			}
+		}
+
+		public boolean next() throws IOException{
+			if (current != null && current.advance()) queue.add(current);
+			current = queue.poll();
+			return current != null;
+		}
+
+		public int getStart(){
+			return current.start;
+		}
+		public int getStop(){
+			return current.stop;
+		}
+		public float getScore(){
+			return current.score;
+		}
+		public String getText(){
+			return current.text;
+		}
+
+		public void close(){
+			for (Cursor c: cursors) c.close();
+		}
+	}
+
+	/**The current record of a run, sorts by start, length then run so ties keep their input order.*/
+	private abstract class Cursor implements Comparable<Cursor>{
+		int run;
+		int start;
+		int stop;
+		float score;
+		String text;
+
+		Cursor(int run){
+			this.run = run;
+		}
+		abstract boolean advance() throws IOException;
+		void close(){}
+
+		public int compareTo(Cursor other){
+			if (start < other.start) return -1;
+			if (start > other.start) return 1;
+			if (hasStop){
+				int len = stop - start;
+				int otherLen = other.stop - other.start;
+				if (len < otherLen) return -1;
+				if (len > otherLen) return 1;
+			}
+			return run - other.run;
+		}
+	}
+
+	private class RunCursor extends Cursor {
+		private DataInputStream in;
+		private int remaining;
+
+		RunCursor(int run, File file) throws IOException{
+			super(run);
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536));
+			remaining = in.readInt();
+		}
+		boolean advance() throws IOException{
+			if (remaining == 0) return false;
+			remaining--;
+			start = in.readInt();
+			if (hasStop) stop = in.readInt();
+			if (hasScore) score = in.readFloat();
+			if (hasText) text = in.readUTF();
+			return true;
+		}
+		void close(){
+			try {
+				in.close();
+			} catch (IOException e){}
+		}
+	}
+
+	private class MemoryCursor extends Cursor {
+		private int[] order;
+		private int index = 0;
+
+		MemoryCursor(int run, int[] order){
+			super(run);
+			this.order = order;
+		}
+		boolean advance(){
+			if (index == order.length) return false;
+			int i = order[index++];
+			start = starts[i];
+			if (hasStop) stop = stops[i];
+			if (hasScore) score = scores[i];
+			if (hasText) text = texts[i];
+			return true;
+		}
+	}
+
+	public String getChromosome() {
+		return chromosome;
+	}
+	public String getStrand() {
+		return strand;
+	}
+	/**Records held in memory.*/
+	public int size() {
+		return size;
+	}
+	/**All records added.*/
+	public long getNumberRecords() {
+		return numberRecords;
+	}
+}
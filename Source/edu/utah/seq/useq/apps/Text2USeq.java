@@ -1,12 +1,18 @@
 package edu.utah.seq.useq.apps;
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import util.gen.IO;
 import util.gen.Misc;
 import util.gen.Num;
+import util.gen.ParallelRunner;
 import edu.utah.seq.useq.*;
 import edu.utah.seq.useq.data.*;
 
@@ -30,14 +36,17 @@ public class Text2USeq {
 	private boolean minus10Log10TransformScore = false;
 	private boolean convertM = false;
 	private boolean subtractOneFromStart = false;
+	private boolean makeZoomSummaries = false;
+	private boolean writeColumnar = false;
+	private int quantizeDecimals = -1;
 
 	//internal fields
 	public static String[] GRAPH_STYLES = {ArchiveInfo.GRAPH_STYLE_VALUE_BAR, ArchiveInfo.GRAPH_STYLE_VALUE_STAIRSTEP, ArchiveInfo.GRAPH_STYLE_VALUE_HEATMAP, ArchiveInfo.GRAPH_STYLE_VALUE_LINE};
-	private File tempSplitTextDirectory = null;
-	private File workingBinarySaveDirectory;
+	private File tempDirectory = null;
 	private File convertedUSeqArchive;
-	private HashMap<String, File> chromStrandFileHash;
-	private ArrayList<File> files2Zip = new ArrayList<File>();
+	private HashMap<String, ChromStrandRecords> chromStrandRecords;
+	private int numberThreads = Runtime.getRuntime().availableProcessors();
+	private long maxRecordsInMemory = 20000000;
 	public static final Pattern PATTERN_TAB = Pattern.compile("\\t");
 	public static final Pattern PATTERN_STRAND = Pattern.compile(".*[+-\\.]$");
 	public static final Pattern PATTERN_COMMA = Pattern.compile(",");
@@ -83,12 +92,9 @@ public class Text2USeq {
 	public File convert(File txtFile) throws IOException{
 		if (verbose) System.out.println("\nProcessing "+txtFile);
 
-		//split text file by chromStrand and write to tempDirectory
-		if (verbose) System.out.println("\tSplitting by chromosome and possibly strand...");
-
-		tempSplitTextDirectory = new File (txtFile.getParentFile(),"TempDir"+ USeqArchive.createRandowWord(7));
-		if (tempSplitTextDirectory.exists() == false) {
-			if (tempSplitTextDirectory.mkdir() == false) throw new IOException ("\nFailed to make temp directory for splitting -> "+txtFile);
+		tempDirectory = new File (txtFile.getParentFile(),"TempDir"+ USeqArchive.createRandowWord(7));
+		if (tempDirectory.exists() == false) {
+			if (tempDirectory.mkdir() == false) throw new IOException ("\nFailed to make temp directory for sorting -> "+txtFile);
 		}
 		
 		if (prependChr == false) {
@@ -97,62 +103,48 @@ public class Text2USeq {
 			}
 		}
 
-		chromStrandFileHash = splitFileByChromosomeAndStrand(txtFile, tempSplitTextDirectory);
-		if (chromStrandFileHash == null || chromStrandFileHash.size() ==0){
-			throw new IOException ("\nFailed to parse genomic data text file, aborting!\n");
-		}
-
-		//check strand
-		if (strandBad()) {
-			USeqUtilities.deleteDirectory(tempSplitTextDirectory);
-			throw new IOException ("\nError: convert your strand information to +, -, or .  Skipping useq conversion.");
-		}
-
-		//Make directory to hold split binary files
-		workingBinarySaveDirectory = new File (Misc.removeExtension(txtFile.getCanonicalPath())+".TempDelMe");
-		if (workingBinarySaveDirectory.exists() == false) {
-			if (workingBinarySaveDirectory.mkdir() == false) throw new IOException ("\nFailed to make save directory for data slices -> "+txtFile);
-		}
-
-
-		//clear files to zip
-		files2Zip.clear();
-
-		//write readme.txt 
-		writeReadMeTxt(txtFile);
+		try {
+			//parse into columns by chromStrand, spilling sorted runs when over the memory budget
+			if (verbose) System.out.println("\tParsing and sorting by chromosome and possibly strand...");
+			chromStrandRecords = parseFileByChromosomeAndStrand(txtFile);
+			if (chromStrandRecords == null || chromStrandRecords.size() ==0){
+				throw new IOException ("\nFailed to parse genomic data text file, aborting!\n");
+			}
 
-		//split slice and write data to binary file
-		if (verbose) System.out.println("\tParsing, slicing, and writing binary data...");
-		if (sliceWriteSplitData() == false){
-			USeqUtilities.deleteDirectory(tempSplitTextDirectory);
-			USeqUtilities.deleteDirectory(workingBinarySaveDirectory);
-			throw new IOException ("\nFailed to convert split data to binary, aborting!\n");
+			//check strand
+			if (strandBad()) throw new IOException ("\nError: convert your strand information to +, -, or .  Skipping useq conversion.");
+
+			//merge, slice and zip
+			if (verbose) System.out.println("\tSlicing and writing binary data...");
+			String zipName = new File(Misc.removeExtension(txtFile.getCanonicalPath())).getName() +USeqUtilities.USEQ_EXTENSION_WITH_PERIOD;
+			convertedUSeqArchive = new File (txtFile.getParentFile(), zipName);
+			File zoomFile = ZoomBuilder.fetchZoomFile(convertedUSeqArchive);
+			zoomFile.delete();
+			if (sliceWriteZipData(txtFile) == false){
+				convertedUSeqArchive.delete();
+				zoomFile.delete();
+				throw new IOException ("\nFailed to convert split data to binary, aborting!\n");
+			}
+		} finally {
+			USeqUtilities.deleteDirectory(tempDirectory);
 		}
 
-		//zip compress directory
-		if (verbose) System.out.println("\tZipping...");
-		String zipName = USeqUtilities.removeExtension( workingBinarySaveDirectory.getName()) +USeqUtilities.USEQ_EXTENSION_WITH_PERIOD;
-		convertedUSeqArchive = new File (txtFile.getParentFile(), zipName);
-		File[] files = new File[files2Zip.size()];
-		files2Zip.toArray(files);
-		USeqUtilities.zip(files, convertedUSeqArchive);
-		USeqUtilities.deleteDirectory(workingBinarySaveDirectory);
-		USeqUtilities.deleteDirectory(tempSplitTextDirectory);
-
 		return convertedUSeqArchive;
 	}
 
-	/**Checks to see if the last character in the first chromStrand file is +, -, or .*/
+	/**Checks to see if the last character in each chromStrand is +, -, or .*/
 	private boolean strandBad(){
 		if (strandColumnIndex == -1) return false;
-		String name = chromStrandFileHash.keySet().iterator().next();
-		if (PATTERN_STRAND.matcher(name).matches() == true) return false;
-		return true;
+		for (String name: chromStrandRecords.keySet()){
+			if (PATTERN_STRAND.matcher(name).matches() == false) return true;
+		}
+		return false;
 	}
 
-	private void writeReadMeTxt(File sourceFile){
+	private File writeReadMeTxt(File sourceFile){
 		try {
 			ArchiveInfo ai = new ArchiveInfo(versionedGenome, null, verbose);
+			if (writeColumnar) ai.setArchiveVersion(ArchiveInfo.ARCHIVE_VERSION_VALUE_TWO);
 			//set data type, graph or region
 			if (endingColumnIndex == -1) {
 				ai.setDataType(ArchiveInfo.DATA_TYPE_VALUE_GRAPH);
@@ -166,484 +158,209 @@ public class Text2USeq {
 			//set description?
 			if (description != null) ai.setDescription(description);
 			//write
-			File readme = ai.writeReadMeFile(workingBinarySaveDirectory);
-			files2Zip.add(readme);
+			return ai.writeReadMeFile(tempDirectory);
 		} catch (IOException e){
 			e.printStackTrace();
+			return null;
 		}
 	}
 
-	/**Calls the appropriate slice writer */
-	private boolean sliceWriteSplitData(){
+	/**Merges and slices the chromStrands in parallel, a few ahead of the writer, which zips the readme then the slices
+	 * one chromStrand after another. Zoom summaries of each chromStrand go to the zoom file once its slices are in.*/
+	private boolean sliceWriteZipData(File txtFile){
+		ArrayList<String> names = new ArrayList<String>(chromStrandRecords.keySet());
+		Collections.sort(names);
+		ExecutorService pool = Executors.newFixedThreadPool(numberThreads);
+		ZipOutputStream out = null;
+		ZipOutputStream zoomOut = null;
 		try {
-			//Region or Position data
-			if (endingColumnIndex == -1){
-				//Position!
-				if (scoreColumnIndex == null){
-					if (textColumnIndexs == null) sliceWritePositionData();
-					else sliceWritePositionTextData();
+			out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(convertedUSeqArchive), 65536));
+			if (makeZoomSummaries) zoomOut = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(ZoomBuilder.fetchZoomFile(convertedUSeqArchive)), 65536));
+			File readme = writeReadMeTxt(txtFile);
+			if (readme == null) return false;
+			zipFile(readme, out);
+
+			ArrayList<SliceWriter> writers = new ArrayList<SliceWriter>();
+			int submitted = 0;
+			for (int i=0; i< names.size(); i++){
+				while (submitted < names.size() && submitted <= i + numberThreads){
+					SliceWriter sw = new SliceWriter(chromStrandRecords.get(names.get(submitted++)));
+					writers.add(sw);
+					pool.execute(sw);
 				}
-				else {
-					if (textColumnIndexs == null) sliceWritePositionScoreData();
-					else sliceWritePositionScoreTextData();
+				SliceWriter sw = writers.get(i);
+				while (true){
+					File slice = sw.slices.take();
+					if (slice == SLICE_END) break;
+					zipFile(slice, out);
 				}
+				writers.set(i, null);
+				if (sw.failed != null) throw sw.failed;
+				if (zoomOut != null) sw.zoom.writeEntries(zoomOut);
 			}
-			else {
-				//Region
-				if (scoreColumnIndex == null){
-					if (textColumnIndexs == null) sliceWriteRegionData();
-					else sliceWriteRegionTextData();
-				}
-				else {
-					if (textColumnIndexs == null) sliceWriteRegionScoreData();
-					else sliceWriteRegionScoreTextData();
-				}
-
+			out.close();
+			if (zoomOut != null){
+				zoomOut.setComment(ZoomBuilder.fetchZoomComment(convertedUSeqArchive));
+				zoomOut.close();
 			}
+			return true;
 		} catch (Exception e){
 			System.err.println("Error slicing and writing data!");
 			e.printStackTrace();
+			USeqUtilities.safeClose(out);
+			USeqUtilities.safeClose(zoomOut);
 			return false;
+		} finally {
+			pool.shutdownNow();
 		}
-		return true;
 	}
 
-	/**Split chroms by the rowChunkSize and writes each to file using an appropriate binary file type.*/
-	private void sliceWriteRegionData () throws Exception{
-		Iterator<String> it = chromStrandFileHash.keySet().iterator();
-		while (it.hasNext()){
-			String chromStrand = it.next();
-			String chromosome = chromStrand.substring(0, chromStrand.length()-1);
-			String strand = chromStrand.substring(chromStrand.length()-1);
-			SliceInfo sliceInfo = new SliceInfo(chromosome, strand,0,0,0,null);
-			int beginningIndex = 0;
-			int endIndex = 0;
-			Region[] reg = makeRegions(chromStrandFileHash.get(chromStrand));
-			if (Region.checkStartStops(reg) == false) throw new Exception ("\nError: one or more of your stop coordinates is less than your start coordinate.  Start must always be less than or equal to Stop.\n");
-			int numberReg = reg.length;
-			while (true){
-				//find beginningIndex and endIndex(excluded) indexes
-				Region[] slice;
-				//don't slice?
-				if (rowChunkSize == -1){
-					beginningIndex =0;
-					endIndex = numberReg;
-					slice = reg;
-				}
-				//slice!
-				else {
-					beginningIndex = endIndex;
-					endIndex = beginningIndex + rowChunkSize;
-					if (endIndex > numberReg) {
-						endIndex = numberReg;
-					}
-					else {
-						//advance until start changes
-						int endBP = reg[endIndex-1].getStart();
-						for (int i=endIndex; i< numberReg; i++){
-							if (reg[i].getStart() != endBP){
-								break;
-							}
-							endIndex++;
-						}
-					}
-					int num = endIndex - beginningIndex;
-					slice = new Region[num];
-					System.arraycopy(reg, beginningIndex, slice, 0, num);
-				}
-				//update slice info
-				RegionData.updateSliceInfo(slice, sliceInfo);
-				RegionData rd = new RegionData (slice, sliceInfo);
-				File savedFile = rd.write(workingBinarySaveDirectory, true);
-				files2Zip.add(savedFile);
-				//at the end of the data?
-				if (endIndex == numberReg) break;
-			}
+	private static void zipFile(File f, ZipOutputStream out) throws IOException{
+		out.putNextEntry(new ZipEntry(f.getName()));
+		InputStream in = new FileInputStream(f);
+		try {
+			byte[] buf = new byte[65536];
+			int len;
+			while ((len = in.read(buf)) != -1) out.write(buf, 0, len);
+		} finally {
+			in.close();
 		}
-	}	
-
-	/**Split chroms by the rowChunkSize and writes each to file using an appropriate binary file type.*/
-	private void sliceWriteRegionScoreData () throws Exception{
-		Iterator<String> it = chromStrandFileHash.keySet().iterator();
-		while (it.hasNext()){
-			String chromStrand = it.next();
-			String chromosome = chromStrand.substring(0, chromStrand.length()-1);
-			String strand = chromStrand.substring(chromStrand.length()-1);		
-			SliceInfo sliceInfo = new SliceInfo(chromosome, strand,0,0,0,null);
-			int beginningIndex = 0;
-			int endIndex = 0;
-			RegionScore[] reg = makeRegionScores(chromStrandFileHash.get(chromStrand));
-			if (Region.checkStartStops(reg) == false) throw new Exception ("\nError: one or more of your stop coordinates is less than your start coordinate.  Start must always be less than or equal to Stop.\n");
-			int numberReg = reg.length;		
-			while (true){
-				//find beginningIndex and endIndex(excluded) indexes
-				RegionScore[] slice;
-				//don't slice?
-				if (rowChunkSize == -1){
-					beginningIndex =0;
-					endIndex = numberReg;
-					slice = reg;
-				}
-				//slice!
-				else {
-					beginningIndex = endIndex;
-					endIndex = beginningIndex + rowChunkSize;
-					if (endIndex > numberReg) {
-						endIndex = numberReg;
-					}
-					else {
-						//advance until start changes
-						int endBP = reg[endIndex-1].getStart();
-						for (int i=endIndex; i< numberReg; i++){
-							if (reg[i].getStart() != endBP){
-								break;
-							}
-							endIndex++;
-						}
-					}
-					int num = endIndex - beginningIndex;
-					slice = new RegionScore[num];
-					System.arraycopy(reg, beginningIndex, slice, 0, num);
-				}
-				//update slice info
-				RegionScoreData.updateSliceInfo(slice, sliceInfo);
-				RegionScoreData rd = new RegionScoreData (slice, sliceInfo);
-				File savedFile = rd.write(workingBinarySaveDirectory, true);
-				files2Zip.add(savedFile);
-				//at the end of the data?
-				if (endIndex == numberReg) break;
+		out.closeEntry();
+		f.delete();
+	}
+
+	private static final File SLICE_END = new File("");
+
+	/**Merges the sorted runs of a chromStrand into slices of the rowChunkSize, extended until the start changes, and
+	 * writes each to a binary file for the zip writer. Builds the zoom levels in the same pass if asked.*/
+	private class SliceWriter implements Runnable {
+		ChromStrandRecords records;
+		ArrayBlockingQueue<File> slices = new ArrayBlockingQueue<File>(64);
+		Exception failed = null;
+		ZoomBuilder zoom = null;
+		private int[] starts = new int[1024];
+		private int[] stops = new int[1024];
+		private float[] scores = new float[1024];
+		private String[] texts = new String[1024];
+		private int size = 0;
+		private SliceInfo sliceInfo;
+
+		SliceWriter(ChromStrandRecords records){
+			this.records = records;
+			sliceInfo = new SliceInfo(records.getChromosome(), records.getStrand(),0,0,0,null);
+			if (makeZoomSummaries) {
+				boolean stairStep = endingColumnIndex == -1 && scoreColumnIndex != null && (GRAPH_STYLES[graphStyle].equals(ArchiveInfo.GRAPH_STYLE_VALUE_STAIRSTEP) || GRAPH_STYLES[graphStyle].equals(ArchiveInfo.GRAPH_STYLE_VALUE_HEATMAP));
+				zoom = new ZoomBuilder(records.getChromosome(), records.getStrand(), stairStep, tempDirectory);
 			}
 		}
-	}
 
-	/**Split chroms by the rowChunkSize and writes each to file using an appropriate binary file type.*/
-	private void sliceWriteRegionScoreTextData () throws Exception{
-		Iterator<String> it = chromStrandFileHash.keySet().iterator();
-		while (it.hasNext()){
-			String chromStrand = it.next();
-			String chromosome = chromStrand.substring(0, chromStrand.length()-1);
-			String strand = chromStrand.substring(chromStrand.length()-1);
-			SliceInfo sliceInfo = new SliceInfo(chromosome, strand,0,0,0,null);
-			int beginningIndex = 0;
-			int endIndex = 0;
-			RegionScoreText[] reg = makeRegionScoreTexts(chromStrandFileHash.get(chromStrand));
-			if (Region.checkStartStops(reg) == false) throw new Exception ("\nError: one or more of your stop coordinates is less than your start coordinate.  Start must always be less than or equal to Stop.\n");
-			int numberReg = reg.length;
-			while (true){
-				//find beginningIndex and endIndex(excluded) indexes
-				RegionScoreText[] slice;
-				//don't slice?
-				if (rowChunkSize == -1){
-					beginningIndex =0;
-					endIndex = numberReg;
-					slice = reg;
-				}
-				//slice!
-				else {
-					beginningIndex = endIndex;
-					endIndex = beginningIndex + rowChunkSize;
-					if (endIndex > numberReg) {
-						endIndex = numberReg;
+		public void run(){
+			ChromStrandRecords.RecordIterator it = null;
+			try {
+				it = records.iterator();
+				while (it.next()){
+					//start a new slice?
+					if (rowChunkSize != -1 && size >= rowChunkSize && it.getStart() != starts[size-1]) writeSlice();
+					if (size == starts.length){
+						int length = size * 2;
+						starts = Arrays.copyOf(starts, length);
+						stops = Arrays.copyOf(stops, length);
+						scores = Arrays.copyOf(scores, length);
+						texts = Arrays.copyOf(texts, length);
 					}
-					else {
-						//advance until start changes
-						int endBP = reg[endIndex-1].getStart();
-						for (int i=endIndex; i< numberReg; i++){
-							if (reg[i].getStart() != endBP){
-								break;
-							}
-							endIndex++;
-						}
+					starts[size] = it.getStart();
+					stops[size] = it.getStop();
+					scores[size] = it.getScore();
+					texts[size++] = it.getText();
+					if (zoom != null) {
+						float score = scoreColumnIndex == null ? 1 : it.getScore();
+						if (endingColumnIndex == -1) zoom.addPosition(it.getStart(), score);
+						else zoom.addRegion(it.getStart(), it.getStop(), score);
 					}
-					int num = endIndex - beginningIndex;
-					slice = new RegionScoreText[num];
-					System.arraycopy(reg, beginningIndex, slice, 0, num);
 				}
-				//update slice info
-				RegionScoreTextData.updateSliceInfo(slice, sliceInfo);
-				RegionScoreTextData rd = new RegionScoreTextData (slice, sliceInfo);
-				File savedFile = rd.write(workingBinarySaveDirectory, true);
-				files2Zip.add(savedFile);
-				//at the end of the data?
-				if (endIndex == numberReg) break;
+				if (size != 0) writeSlice();
+				if (zoom != null) zoom.finish();
+			} catch (Exception e){
+				failed = e;
+			} finally {
+				if (it != null) it.close();
+				records.deleteRuns();
+				try {
+					slices.put(SLICE_END);
+				} catch (InterruptedException e){}
 			}
 		}
-	}
 
-	/**Split chroms by the rowChunkSize and writes each to file using an appropriate binary file type.*/
-	private void sliceWriteRegionTextData () throws Exception{
-		Iterator<String> it = chromStrandFileHash.keySet().iterator();
-		while (it.hasNext()){
-			String chromStrand = it.next();
-			String chromosome = chromStrand.substring(0, chromStrand.length()-1);
-			String strand = chromStrand.substring(chromStrand.length()-1);
-			SliceInfo sliceInfo = new SliceInfo(chromosome, strand,0,0,0,null);
-			int beginningIndex = 0;
-			int endIndex = 0;
-			RegionText[] reg = makeRegionTexts(chromStrandFileHash.get(chromStrand));
-			if (Region.checkStartStops(reg) == false) throw new Exception ("\nError: one or more of your stop coordinates is less than your start coordinate.  Start must always be less than or equal to Stop.\n");
-			int numberReg = reg.length;
-			while (true){
-				//find beginningIndex and endIndex(excluded) indexes
-				RegionText[] slice;
-				//don't slice?
-				if (rowChunkSize == -1){
-					beginningIndex =0;
-					endIndex = numberReg;
-					slice = reg;
-				}
-				//slice!
-				else {
-					beginningIndex = endIndex;
-					endIndex = beginningIndex + rowChunkSize;
-					if (endIndex > numberReg) {
-						endIndex = numberReg;
+		private void writeSlice() throws Exception{
+			USeqData data;
+			//Region or Position data
+			if (endingColumnIndex == -1){
+				if (scoreColumnIndex == null){
+					if (textColumnIndexs == null) {
+						Position[] slice = new Position[size];
+						for (int i=0; i< size; i++) slice[i] = new Position(starts[i]);
+						PositionData.updateSliceInfo(slice, sliceInfo);
+						data = new PositionData (slice, sliceInfo);
 					}
 					else {
-						//advance until start changes
-						int endBP = reg[endIndex-1].getStart();
-						for (int i=endIndex; i< numberReg; i++){
-							if (reg[i].getStart() != endBP){
-								break;
-							}
-							endIndex++;
-						}
+						PositionText[] slice = new PositionText[size];
+						for (int i=0; i< size; i++) slice[i] = new PositionText(starts[i], texts[i]);
+						PositionTextData.updateSliceInfo(slice, sliceInfo);
+						data = new PositionTextData (slice, sliceInfo);
 					}
-					int num = endIndex - beginningIndex;
-					slice = new RegionText[num];
-					System.arraycopy(reg, beginningIndex, slice, 0, num);
 				}
-				//update slice info
-				RegionTextData.updateSliceInfo(slice, sliceInfo);
-				RegionTextData rd = new RegionTextData (slice, sliceInfo);
-				File savedFile = rd.write(workingBinarySaveDirectory, true);
-				files2Zip.add(savedFile);
-				//at the end of the data?
-				if (endIndex == numberReg) break;
-			}
-		}
-	}
-
-	/**Split chroms by the rowChunkSize and writes each to file using an appropriate binary file type.*/
-	private void sliceWritePositionData () throws Exception{
-		Iterator<String> it = chromStrandFileHash.keySet().iterator();
-		while (it.hasNext()){
-			String chromStrand = it.next();
-			String chromosome = chromStrand.substring(0, chromStrand.length()-1);
-			String strand = chromStrand.substring(chromStrand.length()-1);
-			SliceInfo sliceInfo = new SliceInfo(chromosome, strand,0,0,0,null);
-			int beginningIndex = 0;
-			int endIndex = 0;
-
-			Position[] positions = makePositions(chromStrandFileHash.get(chromStrand));
-			int numberPositions = positions.length;
-			while (true){
-				//find beginningIndex and endIndex(excluded) indexes
-				Position[] slice;
-				//don't slice?
-				if (rowChunkSize == -1){
-					beginningIndex =0;
-					endIndex = numberPositions;
-					slice = positions;
-				}
-				//slice!
 				else {
-					beginningIndex = endIndex;
-					endIndex = beginningIndex + rowChunkSize;
-					if (endIndex > numberPositions) {
-						endIndex = numberPositions;
+					if (textColumnIndexs == null) {
+						PositionScore[] slice = new PositionScore[size];
+						for (int i=0; i< size; i++) slice[i] = new PositionScore(starts[i], scores[i]);
+						PositionScoreData.updateSliceInfo(slice, sliceInfo);
+						data = new PositionScoreData (slice, sliceInfo);
 					}
 					else {
-						//advance until position changes
-						int endBP = positions[endIndex-1].getPosition();
-						for (int i=endIndex; i< numberPositions; i++){
-							if (positions[i].getPosition() != endBP){
-								break;
-							}
-							endIndex++;
-						}
+						PositionScoreText[] slice = new PositionScoreText[size];
+						for (int i=0; i< size; i++) slice[i] = new PositionScoreText(starts[i], scores[i], texts[i]);
+						PositionScoreTextData.updateSliceInfo(slice, sliceInfo);
+						data = new PositionScoreTextData (slice, sliceInfo);
 					}
-					int num = endIndex - beginningIndex;
-					slice = new Position[num];
-					System.arraycopy(positions, beginningIndex, slice, 0, num);
 				}
-				//update slice info
-				PositionData.updateSliceInfo(slice, sliceInfo);
-				PositionData pd = new PositionData (slice, sliceInfo);
-				File savedFile = pd.write(workingBinarySaveDirectory, true);
-				files2Zip.add(savedFile);
-				//at the end of the data?
-				if (endIndex == numberPositions) break;
 			}
-		}
-	}	
-
-	/**Split chroms by the rowChunkSize and writes each to file using an appropriate binary file type.*/
-	private void sliceWritePositionTextData () throws Exception{
-		Iterator<String> it = chromStrandFileHash.keySet().iterator();
-		while (it.hasNext()){
-			String chromStrand = it.next();
-			String chromosome = chromStrand.substring(0, chromStrand.length()-1);
-			String strand = chromStrand.substring(chromStrand.length()-1);
-			SliceInfo sliceInfo = new SliceInfo(chromosome, strand,0,0,0,null);
-			int beginningIndex = 0;
-			int endIndex = 0;
-			PositionText[] positions = makePositionTexts(chromStrandFileHash.get(chromStrand));
-			int numberPositions = positions.length;
-			while (true){
-				//find beginningIndex and endIndex(excluded) indexes
-				PositionText[] slice;
-				//don't slice?
-				if (rowChunkSize == -1){
-					beginningIndex =0;
-					endIndex = numberPositions;
-					slice = positions;
-				}
-				//slice!
-				else {
-					beginningIndex = endIndex;
-					endIndex = beginningIndex + rowChunkSize;
-					if (endIndex > numberPositions) {
-						endIndex = numberPositions;
+			else {
+				if (scoreColumnIndex == null){
+					if (textColumnIndexs == null) {
+						Region[] slice = new Region[size];
+						for (int i=0; i< size; i++) slice[i] = new Region(starts[i], stops[i]);
+						RegionData.updateSliceInfo(slice, sliceInfo);
+						data = new RegionData (slice, sliceInfo);
 					}
 					else {
-						//advance until position changes
-						int endBP = positions[endIndex-1].getPosition();
-						for (int i=endIndex; i< numberPositions; i++){
-							if (positions[i].getPosition() != endBP){
-								break;
-							}
-							endIndex++;
-						}
+						RegionText[] slice = new RegionText[size];
+						for (int i=0; i< size; i++) slice[i] = new RegionText(starts[i], stops[i], texts[i]);
+						RegionTextData.updateSliceInfo(slice, sliceInfo);
+						data = new RegionTextData (slice, sliceInfo);
 					}
-					int num = endIndex - beginningIndex;
-					slice = new PositionText[num];
-					System.arraycopy(positions, beginningIndex, slice, 0, num);
 				}
-				//update slice info
-				PositionTextData.updateSliceInfo(slice, sliceInfo);
-				PositionTextData pd = new PositionTextData (slice, sliceInfo);
-				File savedFile = pd.write(workingBinarySaveDirectory, true);
-				files2Zip.add(savedFile);
-				//at the end of the data?
-				if (endIndex == numberPositions) break;
-			}
-		}
-	}
-
-	/**Split chroms by the rowChunkSize and writes each to file using an appropriate binary file type.*/
-	private void sliceWritePositionScoreTextData () throws Exception{
-		Iterator<String> it = chromStrandFileHash.keySet().iterator();
-		while (it.hasNext()){
-			String chromStrand = it.next();
-			String chromosome = chromStrand.substring(0, chromStrand.length()-1);
-			String strand = chromStrand.substring(chromStrand.length()-1);
-			SliceInfo sliceInfo = new SliceInfo(chromosome, strand,0,0,0,null);
-			int beginningIndex = 0;
-			int endIndex = 0;
-			PositionScoreText[] positions = makePositionScoreTexts(chromStrandFileHash.get(chromStrand));
-			int numberPositions = positions.length;
-			while (true){
-				//find beginningIndex and endIndex(excluded) indexes
-				PositionScoreText[] slice;
-				//don't slice?
-				if (rowChunkSize == -1){
-					beginningIndex =0;
-					endIndex = numberPositions;
-					slice = positions;
-				}
-				//slice!
 				else {
-					beginningIndex = endIndex;
-					endIndex = beginningIndex + rowChunkSize;
-					if (endIndex > numberPositions) {
-						endIndex = numberPositions;
+					if (textColumnIndexs == null) {
+						RegionScore[] slice = new RegionScore[size];
+						for (int i=0; i< size; i++) slice[i] = new RegionScore(starts[i], stops[i], scores[i]);
+						RegionScoreData.updateSliceInfo(slice, sliceInfo);
+						data = new RegionScoreData (slice, sliceInfo);
 					}
 					else {
-						//advance until position changes
-						int endBP = positions[endIndex-1].getPosition();
-						for (int i=endIndex; i< numberPositions; i++){
-							if (positions[i].getPosition() != endBP){
-								break;
-							}
-							endIndex++;
-						}
+						RegionScoreText[] slice = new RegionScoreText[size];
+						for (int i=0; i< size; i++) slice[i] = new RegionScoreText(starts[i], stops[i], scores[i], texts[i]);
+						RegionScoreTextData.updateSliceInfo(slice, sliceInfo);
+						data = new RegionScoreTextData (slice, sliceInfo);
 					}
-					int num = endIndex - beginningIndex;
-					slice = new PositionScoreText[num];
-					System.arraycopy(positions, beginningIndex, slice, 0, num);
 				}
-				//update slice info
-				PositionScoreTextData.updateSliceInfo(slice, sliceInfo);
-				PositionScoreTextData pd = new PositionScoreTextData (slice, sliceInfo);
-				File savedFile = pd.write(workingBinarySaveDirectory, true);
-				files2Zip.add(savedFile);
-				//at the end of the data?
-				if (endIndex == numberPositions) break;
-			}
-		}
-	}
-
-	/**Split chroms by the rowChunkSize and writes each to file using an appropriate binary file type.*/
-	private void sliceWritePositionScoreData () throws Exception{
-		Iterator<String> it = chromStrandFileHash.keySet().iterator();
-		while (it.hasNext()){
-			String chromStrand = it.next();
-			String chromosome = chromStrand.substring(0, chromStrand.length()-1);
-			String strand = chromStrand.substring(chromStrand.length()-1);
-			SliceInfo sliceInfo = new SliceInfo(chromosome, strand,0,0,0,null);
-			PositionScore[] positions = makePositionScores(chromStrandFileHash.get(chromStrand));
-			PositionScoreData psd = new PositionScoreData (positions, sliceInfo);
-			psd.sliceWritePositionScoreData(rowChunkSize, workingBinarySaveDirectory, files2Zip);
-		}
-
-	}
-
-	/**Parses a Position[]*/
-	private Position[] makePositions(File file){
-		ArrayList<Position> al = new ArrayList<Position>();
-		String[] tokens = null;
-		String line = null;
-		try {
-			BufferedReader in = new BufferedReader (new FileReader(file));
-			while ((line = in.readLine()) != null){
-				tokens = PATTERN_TAB.split(line);
-				al.add(new Position(Integer.parseInt(tokens[beginningColumnIndex])));
-			}
-			in.close();
-			Position[] d = new Position[al.size()];
-			al.toArray(d);
-			Arrays.sort(d);
-			return d;
-		} catch (Exception e){
-			System.out.println("Could not parse an int value from '"+tokens[endingColumnIndex]+"', malformed line -> "+line);
-			e.printStackTrace();
-			return null;
-		}
-
-	}
-
-	/**Parses a PositionScore[]*/
-	private PositionScore[] makePositionScores(File file){
-		ArrayList<PositionScore> al = new ArrayList<PositionScore>();
-		String[] tokens = null;
-		String line = null;
-		try {
-			BufferedReader in = new BufferedReader (new FileReader(file));
-			while ((line = in.readLine()) != null){
-				tokens = PATTERN_TAB.split(line);
-				float score = parseValue(tokens);
-				al.add(new PositionScore(Integer.parseInt(tokens[beginningColumnIndex]), score));
 			}
-			in.close();
-			PositionScore[] d = new PositionScore[al.size()];
-			al.toArray(d);
-			Arrays.sort(d);
-			return d;
-		} catch (Exception e){
-			System.out.println("Could not parse an int or float value from malformed line -> "+line);
-			e.printStackTrace();
-			return null;
+			File savedFile;
+			if (writeColumnar) savedFile = data.writeColumnar(tempDirectory, quantizeDecimals == -1 ? 0 : (float)Math.pow(10, quantizeDecimals));
+			else savedFile = data.write(tempDirectory, true);
+			if (savedFile == null) throw new IOException("Failed to write a slice for "+sliceInfo.getChromosome()+sliceInfo.getStrand());
+			slices.put(savedFile);
+			size = 0;
+			Arrays.fill(texts, null);
 		}
 	}
 
@@ -661,156 +378,6 @@ public class Text2USeq {
 		return score;
 	}
 
-	/**Parses a PositionText[]*/
-	private PositionText[] makePositionTexts(File file){
-		ArrayList<PositionText> al = new ArrayList<PositionText>();
-		String[] tokens = null;
-		String line = null;
-		try {
-			BufferedReader in = new BufferedReader (new FileReader(file));
-			while ((line = in.readLine()) != null){
-				tokens = PATTERN_TAB.split(line);
-				al.add(new PositionText(Integer.parseInt(tokens[beginningColumnIndex]), concatinateTextColumns(tokens)));
-			}
-			in.close();
-			PositionText[] d = new PositionText[al.size()];
-			al.toArray(d);
-			Arrays.sort(d);
-			return d;
-		} catch (Exception e){
-			System.out.println("Could not parse an int or float value from malformed line -> "+line);
-			e.printStackTrace();
-			return null;
-		}
-	}
-
-	/**Parses a PositionScoreText[]*/
-	private PositionScoreText[] makePositionScoreTexts(File file){
-		ArrayList<PositionScoreText> al = new ArrayList<PositionScoreText>();
-		String[] tokens = null;
-		String line = null;
-		try {
-			BufferedReader in = new BufferedReader (new FileReader(file));
-			while ((line = in.readLine()) != null){
-				tokens = PATTERN_TAB.split(line);
-				float score = parseValue(tokens);
-				al.add(new PositionScoreText(Integer.parseInt(tokens[beginningColumnIndex]), score, concatinateTextColumns(tokens)));
-			}
-			in.close();
-			PositionScoreText[] d = new PositionScoreText[al.size()];
-			al.toArray(d);
-			Arrays.sort(d);
-			return d;
-		} catch (Exception e){
-			System.out.println("Could not parse an int or float value from malformed line -> "+line);
-			e.printStackTrace();
-			return null;
-		}
-	}
-
-
-	/**Parses a Region[]*/
-	private Region[] makeRegions(File file){
-		ArrayList<Region> al = new ArrayList<Region>();
-		String[] tokens = null;
-		String line = null;
-		try {
-			BufferedReader in = new BufferedReader (new FileReader(file));
-			while ((line = in.readLine()) != null){
-				tokens = PATTERN_TAB.split(line);
-				al.add(new Region(Integer.parseInt(tokens[beginningColumnIndex]), Integer.parseInt(tokens[endingColumnIndex])));
-			}
-			in.close();
-			Region[] d = new Region[al.size()];
-			al.toArray(d);
-			Arrays.sort(d);
-			return d;
-		} catch (Exception e){
-			System.out.println("Could not parse an int value from '"+tokens[endingColumnIndex]+"', malformed line -> "+line);
-			e.printStackTrace();
-			return null;
-		}
-
-	}
-
-	/**Parses a RegionScore[]*/
-	private RegionScore[] makeRegionScores(File file){
-		ArrayList<RegionScore> al = new ArrayList<RegionScore>();
-		String[] tokens = null;
-		String line = null;
-		int badLines = 0;
-		try {
-			BufferedReader in = new BufferedReader (new FileReader(file));
-			while ((line = in.readLine()) != null){
-				tokens = PATTERN_TAB.split(line);
-				try {
-					int start = Integer.parseInt(tokens[beginningColumnIndex]);
-					int stop = Integer.parseInt(tokens[endingColumnIndex]);
-					float score = parseValue(tokens);
-					al.add(new RegionScore(start, stop, score));
-				} catch (NumberFormatException e){
-					if (badLines++ > 100) throw new Exception ("\nToo many malformed lines!\n");
-					else System.err.println("\n\t\tSkipping malformed line -> "+line);
-				}
-			}
-			in.close();
-			RegionScore[] d = new RegionScore[al.size()];
-			al.toArray(d);
-			Arrays.sort(d);
-			return d;
-		} catch (Exception e){
-			e.printStackTrace();
-			return null;
-		}
-	}
-
-	/**Parses a RegionText[]*/
-	private RegionText[] makeRegionTexts(File file){
-		ArrayList<RegionText> al = new ArrayList<RegionText>();
-		String[] tokens = null;
-		String line = null;
-		try {
-			BufferedReader in = new BufferedReader (new FileReader(file));
-			while ((line = in.readLine()) != null){
-				tokens = PATTERN_TAB.split(line);
-				al.add(new RegionText(Integer.parseInt(tokens[beginningColumnIndex]), Integer.parseInt(tokens[endingColumnIndex]), concatinateTextColumns(tokens)));
-			}
-			in.close();
-			RegionText[] d = new RegionText[al.size()];
-			al.toArray(d);
-			Arrays.sort(d);
-			return d;
-		} catch (Exception e){
-			System.out.println("Could not parse an int or float value from malformed line -> "+line);
-			e.printStackTrace();
-			return null;
-		}
-	}
-
-	/**Parses a RegionScoreText[]*/
-	private RegionScoreText[] makeRegionScoreTexts(File file){
-		ArrayList<RegionScoreText> al = new ArrayList<RegionScoreText>();
-		String[] tokens = null;
-		String line = null;
-		try {
-			BufferedReader in = new BufferedReader (new FileReader(file));
-			while ((line = in.readLine()) != null){
-				tokens = PATTERN_TAB.split(line);
-				float score = parseValue(tokens);
-				al.add(new RegionScoreText(Integer.parseInt(tokens[beginningColumnIndex]), Integer.parseInt(tokens[endingColumnIndex]), score, concatinateTextColumns(tokens)));
-			}
-			in.close();
-			RegionScoreText[] d = new RegionScoreText[al.size()];
-			al.toArray(d);
-			Arrays.sort(d);
-			return d;
-		} catch (Exception e){
-			System.out.println("Could not parse an int or float value from malformed line -> "+line);
-			e.printStackTrace();
-			return null;
-		}
-	}
-
 	private String concatinateTextColumns(String[] tokens){
 		//just one?
 		if (textColumnIndexs.length == 1) return tokens[textColumnIndexs[0]];
@@ -850,34 +417,29 @@ public class Text2USeq {
 		return chromPresent;
 	}
 
-	/**Splits a text file by chromosome and strand writing the lines to the saveDirectory. Will skip chromosomes that look like splice junctions upon request (ie chr5_234423_234899).
-	 * The files will be named chromosomeStrand (ie chr5+ or chr5F) as designated in the data file.
-	 * Set strandColumnIndex to -1 to ignore strand.*/
-	public HashMap <String, File> splitFileByChromosomeAndStrand(File dataFile, File saveDirectory){
-		Pattern tab = Pattern.compile("\\t");
-		//Pattern spliceJunction = Pattern.compile(".+_\\d+_\\d+");
+	/**Parses a text file into ChromStrandRecords by chromosome and strand, skipping chromosomes named chrAdapter. When the
+	 * records in memory pass the maxRecordsInMemory, the largest chromStrands are sorted and spilled to the tempDirectory
+	 * until half are left. Set strandColumnIndex to -1 to ignore strand. Returns null if too many lines are malformed.*/
+	public HashMap <String, ChromStrandRecords> parseFileByChromosomeAndStrand(File dataFile) throws IOException{
 		Pattern m = Pattern.compile(".*M.*");
-		HashMap <String, PrintWriter> chromOut = new HashMap <String, PrintWriter>();
-		HashMap <String, File> chromFile = new HashMap <String, File>();
+		HashMap <String, ChromStrandRecords> chromRecords = new HashMap <String, ChromStrandRecords>();
+		BufferedReader in = USeqUtilities.fetchBufferedReader(dataFile);
 		try{
-			//get reader
-			BufferedReader in = USeqUtilities.fetchBufferedReader(dataFile);
 			String line;
 			String[] tokens = null;
 			String currentChrom = "";
-			PrintWriter out = null;
+			ChromStrandRecords records = null;
 			String strand = ".";
 			int counter = 0;
-			boolean rebuildLine;
+			long inMemory = 0;
 			while ((line = in.readLine()) !=null){
 				try {
 					line = line.trim();
 					if (line.length()==0) continue;
 					if (line.startsWith("#")) continue;
 					if (line.contains("chrAdapter")) continue;
-					tokens = tab.split(line);
+					tokens = line.split("\t");
 					trim(tokens);
-					rebuildLine = false;
 
 					//parse chromosome
 					String chromosome = tokens[chromosomeColumnIndex];
@@ -891,46 +453,40 @@ public class Text2USeq {
 
 					//parse strand
 					if (strandColumnIndex != -1) strand = tokens[strandColumnIndex];
-					String chromStrand = chromosome+strand;
 
-					//check modify score?
-					if (scoreColumnIndex != null) parseValue(tokens);
-						
-					//check start
+					//parse score, start, end and text
+					float score = 0;
+					if (scoreColumnIndex != null) score = parseValue(tokens);
 					int pos = Integer.parseInt(tokens[beginningColumnIndex]);
 					if (subtractOneFromStart){
 						pos--;
 						if (pos < 0) pos = 0;
-						tokens[beginningColumnIndex] = new Integer(pos).toString();
-						rebuildLine = true;
 					}
+					int end = 0;
+					if (endingColumnIndex != -1) {
+						end = Integer.parseInt(tokens[endingColumnIndex]);
+						if (end < pos) throw new IOException ("\nError: one or more of your stop coordinates is less than your start coordinate.  Start must always be less than or equal to Stop.\n"+line);
+					}
+					String text = null;
+					if (textColumnIndexs != null) text = concatinateTextColumns(tokens);
 
-					//check end?
-					if (endingColumnIndex != -1) Integer.parseInt(tokens[endingColumnIndex]);
-
-					//get PrintWriter
+					//get records
+					String chromStrand = chromosome+strand;
 					if (currentChrom.equals(chromStrand) == false){
 						currentChrom = chromStrand;
-						if (chromOut.containsKey(chromStrand)) out = chromOut.get(chromStrand);
-						else {
-							File f = new File(saveDirectory, chromStrand);
-							out = new PrintWriter (new FileWriter(f));
-							chromOut.put(chromStrand, out);
-							chromFile.put(chromStrand, f);
+						records = chromRecords.get(chromStrand);
+						if (records == null) {
+							records = new ChromStrandRecords(chromosome, strand, endingColumnIndex != -1, scoreColumnIndex != null, textColumnIndexs != null, tempDirectory);
+							chromRecords.put(chromStrand, records);
 						}
 					}
-					//rebuild line?
-					if (rebuildLine){
-						//rebuild line
-						StringBuilder sb = new StringBuilder(tokens[0]);
-						for (int i=1; i< tokens.length; i++) {
-							sb.append("\t");
-							sb.append(tokens[i]);
-						}
-						line = sb.toString();
-					}
-					//save data
-					out.println(line);
+					records.add(pos, end, score, text);
+
+					//over budget?
+					if (++inMemory >= maxRecordsInMemory) inMemory = spill(chromRecords, inMemory);
+
+				} catch (IOException e){
+					throw e;
 				} catch (Exception e){
 					System.out.println("\t\tSkipping malformed line -> "+line);
 					if (counter++ == 100) {
@@ -940,16 +496,38 @@ public class Text2USeq {
 					}
 				}
 			}
+			return chromRecords;
+		} finally {
 			in.close();
-			//close the print writers
-			Iterator<PrintWriter> it = chromOut.values().iterator();
-			while (it.hasNext()) it.next().close();
+		}
+	}
 
-			return chromFile;
-		} catch (Exception e){
-			e.printStackTrace();
-			return chromFile;
+	/**Spills the largest chromStrands in parallel until half the records are left in memory, returns the number left.*/
+	private long spill(HashMap <String, ChromStrandRecords> chromRecords, long inMemory) throws IOException{
+		ArrayList<ChromStrandRecords> bySize = new ArrayList<ChromStrandRecords>(chromRecords.values());
+		Collections.sort(bySize, new Comparator<ChromStrandRecords>(){
+			public int compare(ChromStrandRecords a, ChromStrandRecords b){
+				return b.size() - a.size();
+			}
+		});
+		ArrayList<Runnable> spillers = new ArrayList<Runnable>();
+		final IOException[] failed = new IOException[1];
+		for (final ChromStrandRecords r: bySize){
+			if (inMemory <= maxRecordsInMemory / 2 || r.size() == 0) break;
+			inMemory -= r.size();
+			spillers.add(new Runnable(){
+				public void run(){
+					try {
+						r.spill();
+					} catch (IOException e){
+						failed[0] = e;
+					}
+				}
+			});
 		}
+		ParallelRunner.runAll(spillers, numberThreads);
+		if (failed[0] != null) throw failed[0];
+		return inMemory;
 	}
 
 	public static void main(String[] args) {
@@ -987,6 +565,11 @@ public class Text2USeq {
 					case 'o': subtractOneFromStart = true; break;
 					case 'l': minus10Log10TransformScore = true; break;
 					case 'r': graphStyle = Integer.parseInt(args[++i]); break;
+					case 'n': numberThreads = Integer.parseInt(args[++i]); break;
+					case 'x': maxRecordsInMemory = Long.parseLong(args[++i]); break;
+					case 'z': makeZoomSummaries = true; break;
+					case 'k': writeColumnar = true; break;
+					case 'q': quantizeDecimals = Integer.parseInt(args[++i]); break;
 					default: USeqUtilities.printExit("\nProblem, unknown option! " + mat.group());
 					}
 				}
@@ -999,7 +582,9 @@ public class Text2USeq {
 		if (inputFiles == null || inputFiles.length ==0) USeqUtilities.printErrAndExit("\nCannot find your input files?\n");
 		if (chromosomeColumnIndex == -1 || beginningColumnIndex == -1) USeqUtilities.printErrAndExit("\nPlease enter a chromosome and or position column indexes\n");
 		if (versionedGenome == null) USeqUtilities.printErrAndExit("\nPlease enter a genome version following DAS/2 notation (e.g. H_sapiens_Mar_2006, M_musculus_Jul_2007, C_elegans_May_2008).\n");
+		if (numberThreads < 1 || maxRecordsInMemory < 2) USeqUtilities.printErrAndExit("\nThe number of threads and max records in memory must be > 0 and > 1.\n");
 		if (minus10Log10TransformScore && scoreColumnIndex == null) USeqUtilities.printErrAndExit("\nPlease indicate what column your values/ scores fall into if you want to transform them.\n");
+		if (quantizeDecimals != -1 && (writeColumnar == false || quantizeDecimals < 0 || quantizeDecimals > 6)) USeqUtilities.printErrAndExit("\nScores can only be rounded to 0-6 decimals in compact columnar archives, set -k too.\n");
 
 		//check color
 		if (color !=null){
@@ -1022,7 +607,7 @@ public class Text2USeq {
 		}
 		System.out.println("\n" +
 				"**************************************************************************************\n" +
-				"**                                 Text 2 USeq: Nov 2018                            **\n" +
+				"**                                 Text 2 USeq: Oct 2026                            **\n" +
 				"**************************************************************************************\n" +
 				"Converts text genomic data files (e.g. xxx.bed, xxx.gff, xxx.sgr, etc.) to\n" +
 				"binary USeq archives (xxx.useq).  Assumes interbase coordinates. Only select\n" +
@@ -1053,6 +638,15 @@ public class Text2USeq {
 				"-l Minus 10 Log10 transform values. Requires setting -v .\n"+
 				"-m Convert chromosome names containing M to chrM .\n"+
 				"-o Subtract one from beginning position.\n"+
+				"-n Number of threads for merging and slicing chromosomes, defaults to all cores.\n"+
+				"-x Max records held in memory before sorted runs are spilled to disk, defaults to\n"+
+				"      20000000.\n"+
+				"-z Save zoom summaries of the data in xxx.useq.zoom beside the archive for fast\n"+
+				"      whole chromosome views, older readers of the archive are not affected.\n"+
+				"-k Write compact columnar slices, often 5-20% smaller. Flags the archive as\n"+
+				"      useqArchiveVersion 2.0, older readers of USeq archives cannot open these.\n"+
+				"-q Round scores to this many decimals in compact columnar slices, e.g. 2, about\n"+
+				"      halves noisy graphs. Defaults to keeping the exact scores.\n"+
 
 				"\nExample: java -Xmx4G -jar pathTo/USeq/Apps/Text2USeq -f\n" +
 				"      /AnalysisResults/BedFiles/ -c 0 -b 1 -e 2 -i 5000 -h '#6633FF'\n" +
@@ -1162,4 +756,17 @@ public class Text2USeq {
 	public void setPrependChr(boolean prependChr) {
 		this.prependChr = prependChr;
 	}
+
+	public void setMakeZoomSummaries(boolean makeZoomSummaries) {
+		this.makeZoomSummaries = makeZoomSummaries;
+	}
+
+	public void setWriteColumnar(boolean writeColumnar) {
+		this.writeColumnar = writeColumnar;
+	}
+
+	/**-1 to keep the exact scores.*/
+	public void setQuantizeDecimals(int quantizeDecimals) {
+		this.quantizeDecimals = quantizeDecimals;
+	}
 }
@@ -5,6 +5,7 @@ import java.util.zip.*;
 import java.util.*;
 
 import util.gen.IO;
+import util.gen.ParallelRunner;
 
 import edu.utah.seq.useq.*;
 import edu.utah.seq.useq.data.*;
@@ -19,46 +20,56 @@ public class USeq2Text {
 	private boolean printWigFormat = false;
 	private boolean skipZeroBlockBedGraphs = true;
 	private boolean convertScoresToBedFormat = false;
+	private int numberThreads = Runtime.getRuntime().availableProcessors();
 
 	public USeq2Text(String[] args){
 		processArgs(args);
 
 		try {
-			
-		System.out.println("Processing:");
-		//for each zip archive
-		for (int i=0; i< useqArchives.length; i++){
-
-			System.out.println("\t"+useqArchives[i].getName());
+			System.out.println("Processing:");
+			//each archive is independent, convert several at once
+			Runnable[] converters = new Runnable[useqArchives.length];
+			for (int i=0; i< useqArchives.length; i++){
+				final File useq = useqArchives[i];
+				converters[i] = new Runnable(){
+					public void run(){
+						convert(useq);
+					}
+				};
+			}
+			ParallelRunner.runAll(converters, numberThreads);
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		System.out.println("\nDone!");
+	}
 
+	private void convert(File useq){
+		try {
+			System.out.println("\t"+useq.getName());
 			if (printWigFormat){
 				//is it stranded
-				USeqArchive ua = new USeqArchive(useqArchives[i]);
+				USeqArchive ua = new USeqArchive(useq);
 				if (ua.isStranded()){
-					
-					File wigFile = new File (useqArchives[i].getParentFile(), USeqUtilities.removeExtension(useqArchives[i].getName())+"Plus.wig");
-					print2WigFile(useqArchives[i], wigFile, "+");
-					wigFile = new File (useqArchives[i].getParentFile(), USeqUtilities.removeExtension(useqArchives[i].getName())+"Minus.wig");
-					print2WigFile(useqArchives[i], wigFile, "-");
+					File wigFile = new File (useq.getParentFile(), USeqUtilities.removeExtension(useq.getName())+"Plus.wig");
+					print2WigFile(useq, wigFile, "+");
+					wigFile = new File (useq.getParentFile(), USeqUtilities.removeExtension(useq.getName())+"Minus.wig");
+					print2WigFile(useq, wigFile, "-");
 				}
 				else {
-					File wigFile = new File (useqArchives[i].getParentFile(), USeqUtilities.removeExtension(useqArchives[i].getName())+".wig");
-					print2WigFile(useqArchives[i], wigFile, null);
+					File wigFile = new File (useq.getParentFile(), USeqUtilities.removeExtension(useq.getName())+".wig");
+					print2WigFile(useq, wigFile, null);
 				}
 			}
-
 			else {
 				String extension = ".txt";
 				if (printBedFormat) extension = ".bed";
-				File txtFile = new File (useqArchives[i].getParentFile(), USeqUtilities.removeExtension(useqArchives[i].getName())+extension);
-				print2TextFile(useqArchives[i], txtFile, printBedFormat, convertScoresToBedFormat);
+				File txtFile = new File (useq.getParentFile(), USeqUtilities.removeExtension(useq.getName())+extension);
+				print2TextFile(useq, txtFile, printBedFormat, convertScoresToBedFormat);
 			}
-		}
 		} catch (Exception e) {
-			// TODO Auto-generated catch block
 			e.printStackTrace();
 		}
-		System.out.println("\nDone!");
 	}
 	
 	public USeq2Text(){};
@@ -272,7 +283,6 @@ public class USeq2Text {
 	public void writeBedGraph(ZipFile zf, Enumeration<ZipEntry> e, PrintWriter out, String strand) throws IOException {
 		
 		ZipEntry ze;
-		String tab = "\t";
 		String chromosome = null;
 		ArrayList<PositionScoreData> psAL = new ArrayList<PositionScoreData>();
 		while(e.hasMoreElements()) {
@@ -292,59 +302,7 @@ public class USeq2Text {
 			}
 			
 			else if (si.getChromosome().equals(chromosome) == false) {
-				//merge
-				PositionScoreData merged = PositionScoreData.merge(psAL);
-				int[] positions = merged.getBasePositions();
-				float[] scores = merged.getBaseScores();
-				
-				//write paired blocks that have the same score
-				int lastPosition = -1;
-				for (int i=0; i< scores.length; i++){
-					int next = i+1;
-					if (next == scores.length) break;
-					//same score?
-					if (scores[i] == scores[next]){
-						//zero?
-						if (skipZeroBlockBedGraphs && scores[i] == 0) continue;
-						out.print(chromosome); out.print(tab);
-						
-						//check position
-						int pos = positions[i];
-						if (pos < lastPosition) pos = lastPosition;
-						else lastPosition = pos;
-						out.print(pos); out.print(tab); 
-						
-						pos = positions[next]+1;
-						if (pos < lastPosition) pos = lastPosition;
-						else lastPosition = pos;
-						
-						out.print(pos); out.print(tab); 
-						out.println(scores[i]);
-						i++;
-					}
-					//different scores
-					else {
-						//look to see if next position is one off
-						if ((positions[next]-1) == positions[i]){
-							//zero?
-							if (skipZeroBlockBedGraphs && scores[i] == 0) continue;
-							out.print(chromosome); out.print(tab); 
-							
-							//check position
-							int pos = positions[i];
-							if (pos < lastPosition) pos = lastPosition;
-							else lastPosition = pos;
-							out.print(pos); out.print(tab); 
-							
-							pos = positions[next]+1;
-							if (pos < lastPosition) pos = lastPosition;
-							else lastPosition = pos;
-							
-							out.print(pos); out.print(tab); 
-							out.println(scores[i]);
-						}
-					}
-				}
+				writeBedGraph(chromosome, PositionScoreData.merge(psAL), out);
 				//clear
 				psAL.clear();
 				chromosome = si.getChromosome();
@@ -357,7 +315,6 @@ public class USeq2Text {
 			}
 			//PositionScoreText
 			else if (USeqUtilities.POSITION_SCORE_TEXT.matcher(extension).matches()) {
-				//new PositionScoreTextData (dis, si).writePositionScore(out);
 				PositionScoreTextData p = new PositionScoreTextData (dis, si);
 				psAL.add(new PositionScoreData (p.getBasePositions(), p.getBaseScores(), si));
 			}
@@ -368,55 +325,50 @@ public class USeq2Text {
 		}
 		
 		//write last chromosome, might be the first if only one slice!
-		//merge
-		PositionScoreData merged = PositionScoreData.merge(psAL);
-		int[] positions = merged.getBasePositions();
-		float[] scores = merged.getBaseScores();
+		if (psAL.size() != 0) writeBedGraph(chromosome, PositionScoreData.merge(psAL), out);
+	}
+
+	private void writeBedGraph(final String chromosome, PositionScoreData merged, final PrintWriter out) throws IOException {
+		final String tab = "\t";
+		fetchBedGraphBlocks(merged.getBasePositions(), merged.getBaseScores(), skipZeroBlockBedGraphs, new BedGraphBlockWriter(){
+			public void write(int start, int stop, float score){
+				out.print(chromosome); out.print(tab);
+				out.print(start); out.print(tab);
+				out.print(stop); out.print(tab);
+				out.println(score);
+			}
+		});
+	}
 
-		//write paired blocks that have the same score
+	/**Receives the blocks of a bed graph.*/
+	public interface BedGraphBlockWriter {
+		public void write(int start, int stop, float score) throws IOException;
+	}
+
+	/**Pairs up the sorted positions of a chromosome into bed graph blocks. Neighbors with the same score make one block,
+	 * as do adjacent positions with different scores, starts are kept from running back over the prior block.*/
+	public static void fetchBedGraphBlocks(int[] positions, float[] scores, boolean skipZeroBlocks, BedGraphBlockWriter writer) throws IOException {
 		int lastPosition = -1;
 		for (int i=0; i< scores.length; i++){
 			int next = i+1;
 			if (next == scores.length) break;
-			//same score?
-			if (scores[i] == scores[next]){
-				//zero?
-				if (skipZeroBlockBedGraphs && scores[i] == 0) continue;
-				out.print(chromosome); out.print(tab); 
-				//check position
-				int pos = positions[i];
-				if (pos < lastPosition) pos = lastPosition;
-				else lastPosition = pos;
-				out.print(pos); out.print(tab); 
-				
-				
-				pos = positions[next]+1;
-				if (pos < lastPosition) pos = lastPosition;
-				else lastPosition = pos;
-				
-				out.print(pos); out.print(tab); 
-				out.println(scores[i]);
-			} else {
-				//look to see if next position is one off
-				if ((positions[next]-1) == positions[i]){
-					//zero?
-					if (skipZeroBlockBedGraphs && scores[i] == 0) continue;
-					out.print(chromosome); out.print(tab); 
-					
-					//check position
-					int pos = positions[i];
-					if (pos < lastPosition) pos = lastPosition;
-					else lastPosition = pos;
-					out.print(pos); out.print(tab); 
-					
-					pos = positions[next]+1;
-					if (pos < lastPosition) pos = lastPosition;
-					else lastPosition = pos;
-					
-					out.print(pos); out.print(tab); 
-					out.println(scores[i]);
-				}
-			}
+			boolean sameScore = scores[i] == scores[next];
+			//different scores need the next position to be one off
+			if (sameScore == false && (positions[next]-1) != positions[i]) continue;
+			//zero?
+			if (skipZeroBlocks && scores[i] == 0) continue;
+
+			//check position
+			int start = positions[i];
+			if (start < lastPosition) start = lastPosition;
+			else lastPosition = start;
+
+			int stop = positions[next]+1;
+			if (stop < lastPosition) stop = lastPosition;
+			else lastPosition = stop;
+
+			writer.write(start, stop, scores[i]);
+			if (sameScore) i++;
 		}
 	}
 
@@ -443,6 +395,7 @@ public class USeq2Text {
 					case 'b': printBedFormat = true; break;
 					case 'c': convertScoresToBedFormat = true; break;
 					case 'w': printWigFormat = true; printBedFormat = false; break;
+					case 't': numberThreads = Integer.parseInt(args[++i]); break;
 					case 'h': printDocs(); System.exit(0); break;
 					default: USeqUtilities.printExit("\nProblem, unknown option! " + mat.group());
 					}
@@ -461,7 +414,7 @@ public class USeq2Text {
 	public static void printDocs(){
 		System.out.println("\n" +
 				"**************************************************************************************\n" +
-				"**                                USeq 2 Text: Oct 2012                             **\n" +
+				"**                                USeq 2 Text: Oct 2026                             **\n" +
 				"**************************************************************************************\n" +
 				"Converts USeq archives to text either as minimal native, bed, or wig graph format. \n" +
 				"\n" +
@@ -470,7 +423,8 @@ public class USeq2Text {
 				"-f Full path file/directory containing xxx."+USeqUtilities.USEQ_EXTENSION_NO_PERIOD+" files.\n" +
 				"-b Print bed format, defaults to native text format.\n"+
 				"-c Convert scores to bed format 0-1000.\n"+
-				"-w Print wig graph format (var step or bed graph), defaults to native format.\n\n"+
+				"-w Print wig graph format (var step or bed graph), defaults to native format.\n"+
+				"-t Number of archives to convert at once, defaults to all cores.\n\n"+
 
 				"\nExample: java -Xmx4G -jar pathTo/USeq/Apps/USeq2Text -f\n" +
 				"      /AnalysisResults/USeqDataArchives/ \n\n" +
@@ -2,35 +2,34 @@ package edu.utah.seq.useq.apps;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
 
 import util.gen.IO;
 import util.gen.Misc;
+import edu.utah.seq.useq.ArchiveInfo;
+import edu.utah.seq.useq.BbiWriter;
 import edu.utah.seq.useq.USeqArchive;
 import edu.utah.seq.useq.USeqUtilities;
+import edu.utah.seq.useq.data.*;
 
-/**Class to convert xxx.useq archives to UCSC xxx.bb or xxx.bw archives.*/
+/**Class to convert xxx.useq archives to UCSC xxx.bb or xxx.bw archives. The slices of each chromosome are streamed
+ * straight into a BbiWriter, chromosomes in parallel, no temp text files or UCSC apps needed.*/
 public class USeq2UCSCBig extends Thread{
 
 	private File[] useqArchives;
 	private File workingUSeqArchiveFile;
 	private USeqArchive workingUSeqArchive;
-	private File ucscWig2BigWig;
-	private File ucscBed2BigBed;
 	private boolean verbose = true;
 	private int lengthExtender = 10000;
-	private File chromLengths;
+	private String[] chromosomes;
+	private int[] chromosomeLengths;
 	private File convertedFile;
-	private File tempFile;
-	private File tempFileSorted;
-	private boolean deleteTempFiles = true;
 	private boolean forceConversion = false;
-	//optional timeout params
-	private File timeoutApp;
-	private String timeoutSeconds = "3600"; //1hr
-	private String timeoutMKB = "40000000"; //4G
+	private int numberThreads = Runtime.getRuntime().availableProcessors();
 
 	//constructors
 	//stand alone
@@ -64,9 +63,8 @@ public class USeq2UCSCBig extends Thread{
 	}
 
 	//for GenoPub/ GNomEx integration using threads, create the Object, call the fetchConvertedFileNames(), then start the thread
+	//the UCSC apps are no longer used and may be null
 	public USeq2UCSCBig (File ucscWig2BigWig, File ucscBed2BigBed, File useq){
-		this.ucscWig2BigWig = ucscWig2BigWig;
-		this.ucscBed2BigBed = ucscBed2BigBed;
 		workingUSeqArchiveFile = useq;
 		verbose = false;
 	}
@@ -78,8 +76,8 @@ public class USeq2UCSCBig extends Thread{
 			//create archive
 			workingUSeqArchive = new USeqArchive(workingUSeqArchiveFile);
 
-			//write out chrom name: max lengths
-			writeChromLengths();
+			//chrom name: max lengths
+			loadChromLengths();
 			//convert graph data
 			if (workingUSeqArchive.getArchiveInfo().isGraphData()) {
 				return convertGraphData();
@@ -91,6 +89,7 @@ public class USeq2UCSCBig extends Thread{
 			}
 
 		} catch (Exception e){
+			deleteAllFiles();
 			e.printStackTrace();
 			Misc.printErrAndExit("\nERROR: converting "+workingUSeqArchiveFile);
 		}
@@ -143,54 +142,79 @@ public class USeq2UCSCBig extends Thread{
 
 	private ArrayList<File> convertRegionData() throws Exception{
 		String name = workingUSeqArchiveFile.getName().replace(USeqUtilities.USEQ_EXTENSION_WITH_PERIOD, "");
-		tempFile = new File (workingUSeqArchiveFile.getCanonicalPath() + ".bed");
+		convertedFile = new File (workingUSeqArchiveFile.getParentFile(), name + ".bb");
+		BbiWriter writer = new BbiWriter(convertedFile, true, chromosomes, chromosomeLengths, numberThreads);
+		writer.write(new BbiWriter.DataFeeder(){
+			public void feed(String chromosome, BbiWriter.ChromosomeBuilder builder) throws IOException{
+				feedBed(chromosome, builder);
+			}
+		});
 
-		USeq2Text.print2TextFile(workingUSeqArchiveFile, tempFile, true, true);
-		
-		//any data written to tempFile?  this is a catch for bad bed12 files
-		if (dataPresent(tempFile) == false){
+		//any data written?  this is a catch for bad bed12 files
+		if (writer.getNumberItems() == 0){
 			deleteAllFiles();
 			if (verbose) System.err.println("\t\tNo data written to bed file, skipping!");
 			return null;
 		}
-
-		//sort it using unix command
-		tempFileSorted = new File (workingUSeqArchiveFile.getCanonicalPath() + ".sorted.bed");
-		//String shell = "sort -k1,1 -k2,2n "+tempFile.getCanonicalPath()+" > "+tempFileSorted.getCanonicalPath();
-		//String[] output = USeqUtilities.executeShellScript(shell, workingUSeqArchiveFile.getParentFile());
-		String[] cmd = {"sort", "-k1,1", "-k2,2n", "-o", tempFileSorted.getCanonicalPath(), tempFile.getCanonicalPath(), };
-		String[] output = IO.executeCommandLineReturnAll(cmd);
-		if (output == null || output.length !=0 || tempFileSorted.exists() == false){
-			throw new IOException("Error sorting bed file: "+tempFileSorted+"\nError: "+Misc.stringArrayToString(output, "\n"));
-		}
-		
-		//convert to binary
-		convertedFile = new File (workingUSeqArchiveFile.getParentFile(), name + ".bb");
-		
-		ArrayList<String> cmdAL = new ArrayList<String>();
-		if (timeoutApp != null){
-			cmdAL.add(timeoutApp.getCanonicalPath());
-			cmdAL.add("-t");
-			cmdAL.add(timeoutSeconds);
-			cmdAL.add("-m");
-			cmdAL.add(timeoutMKB);
-			cmdAL.add("--no-info-on-success");
-		}
-		cmdAL.add(ucscBed2BigBed.getCanonicalPath());
-		cmdAL.add(tempFileSorted.getCanonicalPath());
-		cmdAL.add(chromLengths.getCanonicalPath());
-		cmdAL.add(convertedFile.getCanonicalPath());
-		String[] command = Misc.stringArrayListToStringArray(cmdAL);
-		
-		executeUCSCCommand(command);
-		
-		deleteTempFiles();
-		//return
 		ArrayList<File> al = new ArrayList<File>();
 		al.add(convertedFile);
 		return al;
 	}
 
+	/**Adds the bed lines of every slice on the chromosome, both strands, sorted by start.*/
+	private void feedBed(String chromosome, BbiWriter.ChromosomeBuilder builder) throws IOException{
+		ArrayList<ZipEntry> entries = workingUSeqArchive.fetchChromosomeSlices(chromosome, null);
+		if (entries == null) return;
+		ArrayList<BedLine> lines = new ArrayList<BedLine>();
+		for (ZipEntry ze: entries){
+			StringWriter sw = new StringWriter();
+			PrintWriter out = new PrintWriter(sw);
+			USeqData d = workingUSeqArchive.loadSlice(ze);
+			//bigBed scores must be 0-1000
+			if (d instanceof PositionData) ((PositionData)d).writeBed(out);
+			else if (d instanceof PositionScoreData) ((PositionScoreData)d).writeBed(out, true);
+			else if (d instanceof PositionTextData) ((PositionTextData)d).writeBed(out);
+			else if (d instanceof PositionScoreTextData) ((PositionScoreTextData)d).writeBed(out, true);
+			else if (d instanceof RegionData) ((RegionData)d).writeBed(out);
+			else if (d instanceof RegionScoreData) ((RegionScoreData)d).writeBed(out, true);
+			else if (d instanceof RegionTextData) ((RegionTextData)d).writeBed(out);
+			else if (d instanceof RegionScoreTextData) ((RegionScoreTextData)d).writeBed(out, true);
+			out.close();
+			for (String line: sw.toString().split("\n")){
+				if (line.length() == 0 || line.startsWith("#")) continue;
+				lines.add(new BedLine(line));
+			}
+		}
+		Collections.sort(lines);
+		for (BedLine l: lines) builder.addBed(l.start, l.stop, l.rest);
+	}
+
+	/**A bed line split into the start, stop and the fields that follow, sorts by start.*/
+	private static class BedLine implements Comparable<BedLine>{
+		int start;
+		int stop;
+		String rest;
+		BedLine(String line){
+			int first = line.indexOf('\t');
+			int second = line.indexOf('\t', first+1);
+			int third = line.indexOf('\t', second+1);
+			start = Integer.parseInt(line.substring(first+1, second));
+			if (third == -1) {
+				stop = Integer.parseInt(line.substring(second+1));
+				rest = "";
+			}
+			else {
+				stop = Integer.parseInt(line.substring(second+1, third));
+				rest = line.substring(third+1);
+			}
+		}
+		public int compareTo(BedLine other){
+			if (start < other.start) return -1;
+			if (start > other.start) return 1;
+			return 0;
+		}
+	}
+
 	private ArrayList<File> fetchConvertedGraphNames(){
 		String name = workingUSeqArchiveFile.getName().replace(USeqUtilities.USEQ_EXTENSION_WITH_PERIOD, "");
 		ArrayList<File> convertedFiles = new ArrayList<File>();
@@ -209,129 +233,158 @@ public class USeq2UCSCBig extends Thread{
 		return convertedFiles;
 	}
 
-	private String[] buildGraphCommand() throws IOException{
-		ArrayList<String> cmdAL = new ArrayList<String>();
-		if (timeoutApp != null){
-			cmdAL.add(timeoutApp.getCanonicalPath());
-			cmdAL.add("-t");
-			cmdAL.add(timeoutSeconds);
-			cmdAL.add("-m");
-			cmdAL.add(timeoutMKB);
-			cmdAL.add("--no-info-on-success");
-		}
-		cmdAL.add(ucscWig2BigWig.getCanonicalPath());
-		cmdAL.add(tempFile.getCanonicalPath());
-		cmdAL.add(chromLengths.getCanonicalPath());
-		cmdAL.add(convertedFile.getCanonicalPath());
-		return Misc.stringArrayListToStringArray(cmdAL);
-	}
-
 	private ArrayList<File> convertGraphData() throws Exception{	
-		
-		USeq2Text useq2Text = new USeq2Text();
-		useq2Text.setPrintWigFormat(true);
 		String name = workingUSeqArchiveFile.getName().replace(USeqUtilities.USEQ_EXTENSION_WITH_PERIOD, "");
 		ArrayList<File> convertedFiles = new ArrayList<File>();
-		tempFile = new File (workingUSeqArchiveFile.getCanonicalPath() + ".wig");		
-		
+
+		//stairstep and heatmap graphs are bed graphs, the rest var step
+		String graphType = workingUSeqArchive.getArchiveInfo().getValue(ArchiveInfo.GRAPH_STYLE_KEY);
+		boolean bedGraphFormat = graphType != null && (graphType.equals(ArchiveInfo.GRAPH_STYLE_VALUE_STAIRSTEP) || graphType.equals(ArchiveInfo.GRAPH_STYLE_VALUE_HEATMAP));
+
 		//is it stranded
 		boolean stranded = workingUSeqArchive.isStranded();
 		if (stranded){
-			//convert for plus?
-			if (workingUSeqArchive.isPlusStrandedPresent()){				
-				useq2Text.print2WigFile(workingUSeqArchiveFile, tempFile, "+");
-
-				//convert text to binary, wigToBigWig in.wig chrom.sizes out.bw
+			if (workingUSeqArchive.isPlusStrandedPresent()){
 				convertedFile = new File (workingUSeqArchiveFile.getParentFile(), name + "_Plus.bw");
-				//create cmd
-				String[] command = buildGraphCommand();				
-				//execute it
-				if (executeUCSCCommand(command)) convertedFiles.add(convertedFile);
-				else return null;
+				writeBigWig("+", bedGraphFormat);
+				convertedFiles.add(convertedFile);
 			}
-
-			//convert minus?
 			if (workingUSeqArchive.isMinusStrandedPresent()){
-				useq2Text.print2WigFile(workingUSeqArchiveFile, tempFile, "-");
-
-				//convert text to binary, wigToBigWig in.wig chrom.sizes out.bw
 				convertedFile = new File (workingUSeqArchiveFile.getParentFile(), name + "_Minus.bw");
-				//create cmd
-				String[] command = buildGraphCommand();				
-				//execute it
-				if (executeUCSCCommand(command)) convertedFiles.add(convertedFile);
-				else return null;
+				writeBigWig("-", bedGraphFormat);
+				convertedFiles.add(convertedFile);
 			}
-
 		}
 		else {
-			//convert all		
-			useq2Text.print2WigFile(workingUSeqArchiveFile, tempFile, null);
-			//convert text to binary, wigToBigWig in.wig chrom.sizes out.bw
 			convertedFile = new File (workingUSeqArchiveFile.getParentFile(), name + ".bw");
-			//create cmd
-			String[] command = buildGraphCommand();				
-			//execute it
-			if (executeUCSCCommand(command)) convertedFiles.add(convertedFile);
-			else return null;
+			writeBigWig(null, bedGraphFormat);
+			convertedFiles.add(convertedFile);
 		}
-		//cleanup
-		deleteTempFiles();
-
 		return convertedFiles;
 	}
 
-	private boolean executeUCSCCommand(String[] command) throws Exception{
-		//execute ucsc converter, nothing should come back for wigToBigWig and sort
-		String[] results = USeqUtilities.executeCommandLineReturnAll(command);
-		if (results.length !=0){
-			//scan to see if just bedToBigBed normal output, also watch for potential timeout.pl errors
-			boolean ok = true;
-			StringBuilder sb = new StringBuilder("Error message:");
-			for (String c : results) {
-				sb.append("\n");
-				sb.append(c);
-				if (c.contains("millis") == false) ok = false;
-				//any timeout errors?
-				if (c.startsWith("TIMEOUT CPU") || c.contains("MEM CPU")) {
-					System.err.println("\nWARNING: conversion failed timeout.pl, skipping -> "+workingUSeqArchiveFile);
-					deleteAllFiles();
-					return false;
-				}
+	private void writeBigWig(final String strand, final boolean bedGraphFormat) throws IOException{
+		BbiWriter writer = new BbiWriter(convertedFile, false, chromosomes, chromosomeLengths, numberThreads);
+		writer.write(new BbiWriter.DataFeeder(){
+			public void feed(String chromosome, BbiWriter.ChromosomeBuilder builder) throws IOException{
+				if (bedGraphFormat) feedBedGraph(chromosome, strand, builder);
+				else feedVarStep(chromosome, strand, builder);
+			}
+		});
+	}
+
+	/**Merges the slices of the chromosome into bed graph blocks, same as the USeq2Text wig.*/
+	private void feedBedGraph(String chromosome, String strand, final BbiWriter.ChromosomeBuilder builder) throws IOException{
+		ArrayList<ZipEntry> entries = workingUSeqArchive.fetchChromosomeSlices(chromosome, strand);
+		if (entries == null || entries.size() == 0) return;
+		ArrayList<PositionScoreData> psAL = new ArrayList<PositionScoreData>();
+		for (ZipEntry ze: entries){
+			USeqData d = workingUSeqArchive.loadSlice(ze);
+			if (d instanceof PositionScoreData) psAL.add((PositionScoreData)d);
+			else if (d instanceof PositionScoreTextData) {
+				PositionScoreTextData p = (PositionScoreTextData)d;
+				psAL.add(new PositionScoreData (p.getBasePositions(), p.getBaseScores(), p.getSliceInfo()));
+			}
+			else throw new IOException("\nThis USeq archive lacks score information thus it cannot be made into a bed graph!\n");
+		}
+		PositionScoreData merged = PositionScoreData.merge(psAL);
+		USeq2Text.fetchBedGraphBlocks(merged.getBasePositions(), merged.getBaseScores(), true, new USeq2Text.BedGraphBlockWriter(){
+			public void write(int start, int stop, float score) throws IOException{
+				if (stop > start) builder.addBedGraph(start, stop, score);
+			}
+		});
+	}
+
+	/**Streams the slices of the chromosome as 1bp values, slices are written as they are loaded unless they overlap
+	 * the prior ones, then those are merged. Positions without scores get 0, repeats keep the first.*/
+	private void feedVarStep(String chromosome, String strand, BbiWriter.ChromosomeBuilder builder) throws IOException{
+		ArrayList<ZipEntry> entries = workingUSeqArchive.fetchChromosomeSlices(chromosome, strand);
+		if (entries == null) return;
+		ArrayList<Object[]> group = new ArrayList<Object[]>();
+		int groupEnd = -1;
+		int[] prior = {-1};
+		for (ZipEntry ze: entries){
+			Object[] ps = fetchPositionScores(workingUSeqArchive.loadSlice(ze));
+			int[] positions = (int[])ps[0];
+			if (positions.length == 0) continue;
+			if (group.size() != 0 && positions[0] > groupEnd){
+				writeVarStep(group, builder, prior);
+				group.clear();
 			}
-			if (ok != true) {
-				deleteAllFiles();
-				throw new Exception (sb.toString());
+			group.add(ps);
+			groupEnd = Math.max(groupEnd, positions[positions.length-1]);
+		}
+		if (group.size() != 0) writeVarStep(group, builder, prior);
+	}
+
+	private static void writeVarStep(ArrayList<Object[]> group, BbiWriter.ChromosomeBuilder builder, int[] prior) throws IOException{
+		if (group.size() == 1){
+			int[] positions = (int[])group.get(0)[0];
+			float[] scores = (float[])group.get(0)[1];
+			for (int i=0; i< positions.length; i++){
+				if (positions[i] == prior[0]) continue;
+				builder.addVarStep(positions[i], scores[i]);
+				prior[0] = positions[i];
+			}
+			return;
+		}
+		//sort the positions keeping slice order for ties, the position in the upper bits, the index in the lower
+		int num = 0;
+		for (Object[] ps: group) num += ((int[])ps[0]).length;
+		long[] keys = new long[num];
+		float[] scores = new float[num];
+		int index = 0;
+		for (Object[] ps: group){
+			int[] p = (int[])ps[0];
+			float[] s = (float[])ps[1];
+			for (int i=0; i< p.length; i++){
+				keys[index] = ((long)p[i] << 32) | index;
+				scores[index++] = s[i];
 			}
 		}
-		return true;
+		java.util.Arrays.sort(keys);
+		for (long key: keys){
+			int position = (int)(key >>> 32);
+			if (position == prior[0]) continue;
+			builder.addVarStep(position, scores[(int)key]);
+			prior[0] = position;
+		}
 	}
 
-	private void writeChromLengths() throws IOException{
+	/**Returns {int[] positions, float[] scores} for position data, scores are 0 for those without them.*/
+	private static Object[] fetchPositionScores(USeqData d) throws IOException{
+		if (d instanceof PositionScoreData) return new Object[]{((PositionScoreData)d).getBasePositions(), ((PositionScoreData)d).getBaseScores()};
+		if (d instanceof PositionScoreTextData) return new Object[]{((PositionScoreTextData)d).getBasePositions(), ((PositionScoreTextData)d).getBaseScores()};
+		int[] positions;
+		if (d instanceof PositionData) {
+			Position[] p = ((PositionData)d).getPositions();
+			positions = new int[p.length];
+			for (int i=0; i< p.length; i++) positions[i] = p[i].getPosition();
+		}
+		else if (d instanceof PositionTextData) {
+			PositionText[] p = ((PositionTextData)d).getPositionTexts();
+			positions = new int[p.length];
+			for (int i=0; i< p.length; i++) positions[i] = p[i].getPosition();
+		}
+		else throw new IOException("\nThis USeq archive looks like it contains region data, not graph data.\n");
+		return new Object[]{positions, new float[positions.length]};
+	}
 
+	/**Chromosomes and their last base plus the lengthExtender.*/
+	private void loadChromLengths() throws IOException{
 		HashMap<String,Integer> nameBase = workingUSeqArchive.fetchChromosomesAndLastBase();
-		chromLengths = new File (workingUSeqArchive.getZipFile()+".chromLengths");		
-		PrintWriter out = new PrintWriter( new FileWriter (chromLengths));
+		chromosomes = new String[nameBase.size()];
+		chromosomeLengths = new int[nameBase.size()];
+		int index = 0;
 		for (String name: nameBase.keySet()){
-			int length = nameBase.get(name)+ lengthExtender;
-			out.print(name);
-			out.print("\t");
-			out.println(length);
+			chromosomes[index] = name;
+			chromosomeLengths[index++] = nameBase.get(name)+ lengthExtender;
 		}
-		out.close();
 	}
 
 	public void deleteAllFiles(){
-		deleteTempFiles();
 		if (convertedFile != null) convertedFile.delete();
 	}
-	public void deleteTempFiles(){	
-		if (deleteTempFiles){
-			if (tempFile!= null) tempFile.delete();
-			if (chromLengths!= null) chromLengths.delete();
-			if (tempFileSorted!= null) tempFileSorted.delete();
-		}
-	}
 
 	public static void main(String[] args) {
 		if (args.length ==0){
@@ -344,7 +397,6 @@ public class USeq2UCSCBig extends Thread{
 	/**This method will process each argument and assign new variables*/
 	public void processArgs(String[] args){
 		Pattern pat = Pattern.compile("-[a-z]");
-		File ucscDir = null;
 		for (int i = 0; i<args.length; i++){
 			String lcArg = args[i].toLowerCase();
 			Matcher mat = pat.matcher(lcArg);
@@ -353,13 +405,12 @@ public class USeq2UCSCBig extends Thread{
 				try{
 					switch (test){
 					case 'u': useqArchives = USeqUtilities.fetchFilesRecursively(new File(args[++i]), USeqUtilities.USEQ_EXTENSION_WITH_PERIOD); break;
-					case 'd': ucscDir = new File (args[++i]); break;
-					case 'b': ucscBed2BigBed = new File (args[++i]); break;
-					case 'w': ucscWig2BigWig = new File (args[++i]); break;
+					//UCSC app options kept so old scripts still run
+					case 'd': case 'b': case 'w': case 't': i++; break;
+					case 'm': break;
 					case 'f': forceConversion = true; break;
 					case 'e': verbose = false; break;
-					case 'm': deleteTempFiles = false; break;
-					case 't': timeoutApp = new File (args[++i]); break;
+					case 'p': numberThreads = Integer.parseInt(args[++i]); break;
 					case 'h': printDocs(); System.exit(0); break;
 					default: USeqUtilities.printExit("\nProblem, unknown option! " + mat.group());
 					}
@@ -370,20 +421,10 @@ public class USeq2UCSCBig extends Thread{
 			}
 		}
 		if (verbose) System.out.println("\n"+IO.fetchUSeqVersion()+" Arguments: "+USeqUtilities.stringArrayToString(args, " ")+"\n");
-		
-		//make files
-		if (ucscDir != null && ucscDir.isDirectory()){
-			ucscWig2BigWig = new File( ucscDir, "wigToBigWig");
-			ucscBed2BigBed = new File( ucscDir, "bedToBigBed");
-		}
-		if (ucscWig2BigWig == null || ucscWig2BigWig.canExecute() == false) USeqUtilities.printExit("\nCannot find or execute ucscWig2BigWig -> "+ucscWig2BigWig+"\n");
-		if (ucscBed2BigBed == null || ucscBed2BigBed.canExecute() == false) USeqUtilities.printExit("\nCannot find or execute ucscBed2BigBed -> "+ucscBed2BigBed+"\n");
 
 		//check files
 		if (useqArchives == null || useqArchives.length == 0) USeqUtilities.printExit("\nCannot find any xxx."+USeqUtilities.USEQ_EXTENSION_NO_PERIOD+" USeq archives?\n");
-		if (timeoutApp != null && timeoutApp.canExecute() == false) USeqUtilities.printExit("\nCannot execute -> "+timeoutApp+"\n");
-		
-
+		if (numberThreads < 1) USeqUtilities.printExit("\nThe number of threads must be > 0\n");
 	}	
 
 	public static File[] removeExistingConvertedUSeqArchives (File[] useqFiles){
@@ -424,29 +465,24 @@ public class USeq2UCSCBig extends Thread{
 	public static void printDocs(){
 		System.out.println("\n" +
 				"**************************************************************************************\n" +
-				"**                               USeq 2 UCSC Big: May 2016                          **\n" +
+				"**                               USeq 2 UCSC Big: Oct 2026                          **\n" +
 				"**************************************************************************************\n" +
 				"Converts USeq archives to UCSC bigWig (xxx.bw) or bigBed (xxx.bb) archives based on\n" +
 				"the data type. WARNING: bigBed format conversion will clip any associated scores to\n" +
-				"between 0-1000. \n" +
+				"between 0-1000. The big files are written directly, chromosomes in parallel, the UCSC\n" +
+				"wigToBigWig and bedToBigBed apps are no longer needed.\n" +
 
 				"\nOptions:\n"+
 				"-u Full path file/directory containing xxx.useq files. Recurses through sub \n" +
 				"       if a directory is given.\n" +
-				"-d Full path directory containing the UCSC wigToBigWig and bedToBigBed apps, download\n" +
-				"       from http://hgdownload.cse.ucsc.edu/admin/exe/ and make executable with chmod.\n"+
-				"-b Alternative to -d, specify path to the bedToBigBed app.\n"+
-				"-w Ditto, path to wigToBigWig app.\n"+
 				"-f Force conversion of xxx.useq to xxx.bw or xxx.bb overwriting any UCSC big files.\n"+
 				"       Defaults to skipping those already converted.\n"+
+				"-p Number of threads, defaults to all cores.\n"+
 				"-e Only print error messages.\n"+
-				"-t Sandbox the UCSC apps by providing a full path file name to the timeout.pl app.\n"+
-				"       Download from https://github.com/pshved/timeout . Max time and mem per file \n"+
-				"       conversion 1hr and 4G.\n"+
-				"-m Don't delete temp files.\n"+
+				"-d -b -w -t -m UCSC app and timeout options, no longer used, ignored.\n"+
 
 				"\nExample: java -Xmx4G -jar pathTo/USeq/Apps/USeq2UCSCBig -u\n" +
-				"      /AnalysisResults/USeqDataArchives/ -d /Apps/UCSC/\n\n" +
+				"      /AnalysisResults/USeqDataArchives/ -p 8\n\n" +
 
 		"**************************************************************************************\n");
 
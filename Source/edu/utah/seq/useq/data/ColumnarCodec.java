@@ -0,0 +1,334 @@
+package edu.utah.seq.useq.data;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.zip.Deflater;
+
+import edu.utah.seq.useq.*;
+
+/**Compact columnar layout for USeq slices, binary types start with a 'c' (e.g. chr5+8394834-8394854-10000.cift) and
+ * are only found in useqArchiveVersion 2.0 archives. After the header each column of the slice follows the last:
+ * starts as zig zag varint deltas, region lengths as zig zag varints, scores exact in a plain, XOR or byte split layout
+ * or rounded to ints of a given scale and delta coded, then text, dictionary coded if values repeat. The zip deflate
+ * then sees short regular columns rather than rows of int or short offsets, whole floats and writeUTFs.
+ * The number of records comes from the SliceInfo as with the other binary types.
+ * @author david.nix@hci.utah.edu*/
+public class ColumnarCodec {
+
+	//fields
+	private String header = "";
+	private int[] starts;
+	private int[] stops = null;
+	private float[] scores = null;
+	private String[] texts = null;
+
+	public static final byte SCORES_PLAIN = 0;
+	public static final byte SCORES_XOR = 1;
+	public static final byte SCORES_SPLIT = 2;
+	public static final byte SCORES_QUANTIZED = 3;
+	public static final byte TEXT_PLAIN = 0;
+	public static final byte TEXT_DICTIONARY = 1;
+	/**Quantized scores must round within this of zero, otherwise the slice keeps exact scores.*/
+	public static final double MAX_QUANTIZED = 1 << 30;
+	/**Number of scores tried in each layout to pick one for the slice.*/
+	public static final int SAMPLE_SCORES = 4096;
+	private static final int ZERO_XOR = 15;
+
+	//constructors
+	/**Stops, scores and texts are null if the data type lacks them.*/
+	public ColumnarCodec(int[] starts, int[] stops, float[] scores, String[] texts){
+		this.starts = starts;
+		this.stops = stops;
+		this.scores = scores;
+		this.texts = texts;
+	}
+
+	/**Reads the columns the SliceInfo binary type calls for.*/
+	public ColumnarCodec(DataInputStream dis, SliceInfo sliceInfo) throws IOException{
+		String type = sliceInfo.getBinaryType();
+		int num = sliceInfo.getNumberRecords();
+		header = dis.readUTF();
+		starts = new int[num];
+		int prior = 0;
+		for (int i=0; i< num; i++) {
+			prior += decodeZigZag(readVarInt(dis));
+			starts[i] = prior;
+		}
+		if (type.startsWith(USeqUtilities.COLUMNAR + USeqUtilities.INT + USeqUtilities.INT)){
+			stops = new int[num];
+			for (int i=0; i< num; i++) stops[i] = starts[i] + decodeZigZag(readVarInt(dis));
+		}
+		if (type.indexOf(USeqUtilities.FLOAT) != -1) readScores(dis, num);
+		if (type.indexOf(USeqUtilities.TEXT) != -1) readTexts(dis, num);
+	}
+
+	//methods
+	public static boolean isColumnar(String binaryType){
+		return binaryType.startsWith(USeqUtilities.COLUMNAR);
+	}
+
+	/**Returns the binary type for these columns, e.g. ciift for RegionScoreText data.*/
+	public String fetchBinaryType(){
+		StringBuilder sb = new StringBuilder(USeqUtilities.COLUMNAR);
+		sb.append(USeqUtilities.INT);
+		if (stops != null) sb.append(USeqUtilities.INT);
+		if (scores != null) sb.append(USeqUtilities.FLOAT);
+		if (texts != null) sb.append(USeqUtilities.TEXT);
+		return sb.toString();
+	}
+
+	/**Writes the header and columns.
+	 * @param quantizeScale scores are rounded to the nearest 1/quantizeScale (e.g. 100 for two decimals), 0 keeps them
+	 * exact. Scores too big to quantize or not finite are kept exact.*/
+	public void write(DataOutputStream dos, String header, float quantizeScale) throws IOException{
+		dos.writeUTF(header);
+		int prior = 0;
+		for (int i=0; i< starts.length; i++){
+			writeVarInt(dos, encodeZigZag(starts[i] - prior));
+			prior = starts[i];
+		}
+		if (stops != null) {
+			for (int i=0; i< starts.length; i++) writeVarInt(dos, encodeZigZag(stops[i] - starts[i]));
+		}
+		if (scores != null) {
+			if (quantizeScale > 0 && quantizable(quantizeScale)) writeQuantizedScores(dos, quantizeScale);
+			else writeExactScores(dos);
+		}
+		if (texts != null) writeTexts(dos);
+	}
+
+	private boolean quantizable(float quantizeScale){
+		for (float s: scores){
+			double q = (double)s * quantizeScale;
+			if (Double.isNaN(q) || Math.abs(q) > MAX_QUANTIZED) return false;
+		}
+		return true;
+	}
+
+	private void writeQuantizedScores(DataOutputStream dos, float quantizeScale) throws IOException{
+		dos.writeByte(SCORES_QUANTIZED);
+		dos.writeFloat(quantizeScale);
+		int prior = 0;
+		for (float s: scores){
+			int q = (int)Math.round((double)s * quantizeScale);
+			writeVarInt(dos, encodeZigZag(q - prior));
+			prior = q;
+		}
+	}
+
+	/**Writes the scores in whichever of the plain, XOR or split layouts deflates smallest over the first SAMPLE_SCORES,
+	 * each wins on some data, XOR on runs of like scores, split on small counts and plain on noisy decimals.*/
+	private void writeExactScores(DataOutputStream dos) throws IOException{
+		int sample = Math.min(scores.length, SAMPLE_SCORES);
+		byte bestMode = SCORES_PLAIN;
+		long bestSize = Long.MAX_VALUE;
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(sample * 4 + 1);
+		DataOutputStream out = new DataOutputStream(bytes);
+		Deflater deflater = new Deflater();
+		byte[] buffer = new byte[8192];
+		try {
+			for (byte mode = SCORES_PLAIN; mode <= SCORES_SPLIT; mode++){
+				bytes.reset();
+				writeExactScores(out, mode, sample);
+				out.flush();
+				deflater.reset();
+				deflater.setInput(bytes.toByteArray());
+				deflater.finish();
+				long size = 0;
+				while (deflater.finished() == false) size += deflater.deflate(buffer);
+				if (size < bestSize){
+					bestMode = mode;
+					bestSize = size;
+				}
+			}
+		} finally {
+			deflater.end();
+		}
+		writeExactScores(dos, bestMode, scores.length);
+	}
+
+	/**Writes the mode and the first num scores.*/
+	private void writeExactScores(DataOutputStream dos, byte mode, int num) throws IOException{
+		dos.writeByte(mode);
+		if (mode == SCORES_PLAIN) {
+			for (int i=0; i< num; i++) dos.writeFloat(scores[i]);
+		}
+		else if (mode == SCORES_XOR) writeXorScores(dos, num);
+		else writeSplitScores(dos, num);
+	}
+
+	/**Each score's bits are XORed with the prior's, a nibble per score gives the leading and trailing zero bytes
+	 * dropped, or 15 if the score repeats, two nibbles to a byte ahead of the pair's remaining bytes.*/
+	private void writeXorScores(DataOutputStream dos, int num) throws IOException{
+		int prior = 0;
+		for (int i=0; i< num; i+=2){
+			int bits = Float.floatToRawIntBits(scores[i]);
+			int a = bits ^ prior;
+			prior = bits;
+			int b = 0;
+			if (i+1 < num){
+				bits = Float.floatToRawIntBits(scores[i+1]);
+				b = bits ^ prior;
+				prior = bits;
+			}
+			dos.writeByte((xorCode(a) << 4) | xorCode(b));
+			writeXorBytes(dos, a);
+			writeXorBytes(dos, b);
+		}
+	}
+
+	/**Writes the first byte of every score, then the second, and so on, so the zip sees runs of like bytes, the
+	 * signs and exponents together and the noisier low mantissa bytes last.*/
+	private void writeSplitScores(DataOutputStream dos, int num) throws IOException{
+		for (int shift = 24; shift >= 0; shift -= 8){
+			for (int i=0; i< num; i++) dos.writeByte(Float.floatToRawIntBits(scores[i]) >>> shift);
+		}
+	}
+
+	private static int xorCode(int xor){
+		if (xor == 0) return ZERO_XOR;
+		return ((Integer.numberOfLeadingZeros(xor) >>> 3) << 2) | (Integer.numberOfTrailingZeros(xor) >>> 3);
+	}
+
+	private static void writeXorBytes(DataOutputStream dos, int xor) throws IOException{
+		if (xor == 0) return;
+		int lead = Integer.numberOfLeadingZeros(xor) >>> 3;
+		int trail = Integer.numberOfTrailingZeros(xor) >>> 3;
+		for (int k = 3 - lead; k >= trail; k--) dos.writeByte(xor >>> (k * 8));
+	}
+
+	private void readScores(DataInputStream dis, int num) throws IOException{
+		scores = new float[num];
+		byte mode = dis.readByte();
+		if (mode == SCORES_PLAIN){
+			for (int i=0; i< num; i++) scores[i] = dis.readFloat();
+		}
+		else if (mode == SCORES_QUANTIZED){
+			double scale = dis.readFloat();
+			int prior = 0;
+			for (int i=0; i< num; i++){
+				prior += decodeZigZag(readVarInt(dis));
+				scores[i] = (float)(prior / scale);
+			}
+		}
+		else if (mode == SCORES_XOR){
+			int prior = 0;
+			for (int i=0; i< num; i+=2){
+				int codes = dis.readUnsignedByte();
+				prior ^= readXorBytes(dis, codes >>> 4);
+				scores[i] = Float.intBitsToFloat(prior);
+				int b = readXorBytes(dis, codes & 15);
+				if (i+1 < num) {
+					prior ^= b;
+					scores[i+1] = Float.intBitsToFloat(prior);
+				}
+			}
+		}
+		else if (mode == SCORES_SPLIT){
+			int[] bits = new int[num];
+			for (int shift = 24; shift >= 0; shift -= 8){
+				for (int i=0; i< num; i++) bits[i] |= dis.readUnsignedByte() << shift;
+			}
+			for (int i=0; i< num; i++) scores[i] = Float.intBitsToFloat(bits[i]);
+		}
+		else throw new IOException("Unknown columnar score encoding "+mode);
+	}
+
+	private static int readXorBytes(DataInputStream dis, int code) throws IOException{
+		if (code == ZERO_XOR) return 0;
+		int lead = code >>> 2;
+		int trail = code & 3;
+		int xor = 0;
+		for (int k = 3 - lead; k >= trail; k--) xor |= dis.readUnsignedByte() << (k * 8);
+		return xor;
+	}
+
+	/**Dictionary codes the text if fewer than half the records have a new value, otherwise writes each as is.*/
+	private void writeTexts(DataOutputStream dos) throws IOException{
+		HashMap<String,Integer> indexes = new HashMap<String,Integer>();
+		ArrayList<String> dictionary = new ArrayList<String>();
+		int[] codes = new int[texts.length];
+		for (int i=0; i< texts.length; i++){
+			Integer index = indexes.get(texts[i]);
+			if (index == null){
+				index = dictionary.size();
+				indexes.put(texts[i], index);
+				dictionary.add(texts[i]);
+				if (dictionary.size() * 2 > texts.length) break;
+			}
+			codes[i] = index;
+		}
+		if (dictionary.size() * 2 > texts.length){
+			dos.writeByte(TEXT_PLAIN);
+			for (String t: texts) dos.writeUTF(t);
+		}
+		else {
+			dos.writeByte(TEXT_DICTIONARY);
+			writeVarInt(dos, dictionary.size());
+			for (String t: dictionary) dos.writeUTF(t);
+			for (int c: codes) writeVarInt(dos, c);
+		}
+	}
+
+	private void readTexts(DataInputStream dis, int num) throws IOException{
+		texts = new String[num];
+		byte mode = dis.readByte();
+		if (mode == TEXT_PLAIN){
+			for (int i=0; i< num; i++) texts[i] = dis.readUTF();
+		}
+		else if (mode == TEXT_DICTIONARY){
+			String[] dictionary = new String[readVarInt(dis)];
+			for (int i=0; i< dictionary.length; i++) dictionary[i] = dis.readUTF();
+			for (int i=0; i< num; i++) texts[i] = dictionary[readVarInt(dis)];
+		}
+		else throw new IOException("Unknown columnar text encoding "+mode);
+	}
+
+	/**Seven bits per byte, low bits first, the high bit set on all but the last byte.*/
+	public static void writeVarInt(DataOutputStream dos, int value) throws IOException{
+		while ((value & ~0x7F) != 0){
+			dos.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		dos.writeByte(value);
+	}
+
+	public static int readVarInt(DataInputStream dis) throws IOException{
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7){
+			int b = dis.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) return value;
+		}
+		throw new IOException("Malformed varint in columnar slice");
+	}
+
+	/**Maps small negative and positive ints to small unsigned ints, 0, -1, 1, -2 ... to 0, 1, 2, 3 ...*/
+	public static int encodeZigZag(int n){
+		return (n << 1) ^ (n >> 31);
+	}
+
+	public static int decodeZigZag(int n){
+		return (n >>> 1) ^ -(n & 1);
+	}
+
+	public String getHeader() {
+		return header;
+	}
+	public int[] getStarts() {
+		return starts;
+	}
+	/**Null if not region data.*/
+	public int[] getStops() {
+		return stops;
+	}
+	/**Null if there are no scores.*/
+	public float[] getScores() {
+		return scores;
+	}
+	/**Null if there is no text.*/
+	public String[] getTexts() {
+		return texts;
+	}
+}
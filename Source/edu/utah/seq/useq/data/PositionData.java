@@ -259,9 +259,25 @@ public class PositionData extends USeqData implements Comparable <PositionData>{
 		} 
 	}
 
+	/**Returns the columns for writeColumnar().*/
+	protected ColumnarCodec fetchColumns(){
+		int[] starts = new int[sortedPositions.length];
+		for (int i=0; i< sortedPositions.length; i++) starts[i] = sortedPositions[i].position;
+		return new ColumnarCodec(starts, null, null, null);
+	}
+
 	/**Reads a useries xxx.i or xxx.s DataInputStream into this PositionData.*/
 	public void read (DataInputStream dis) {
 		try {
+			//compact columns?
+			if (ColumnarCodec.isColumnar(sliceInfo.getBinaryType())){
+				ColumnarCodec c = new ColumnarCodec(dis, sliceInfo);
+				header = c.getHeader();
+				int[] starts = c.getStarts();
+				sortedPositions = new Position[starts.length];
+				for (int i=0; i< starts.length; i++) sortedPositions[i] = new Position(starts[i]);
+				return;
+			}
 			//read text header, currently not used
 			header = dis.readUTF();
 
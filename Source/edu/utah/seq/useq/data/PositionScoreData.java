@@ -345,9 +345,30 @@ public class PositionScoreData extends USeqData implements Comparable <PositionS
 	}
 
 
+	/**Returns the columns for writeColumnar().*/
+	protected ColumnarCodec fetchColumns(){
+		int[] starts = new int[sortedPositionScores.length];
+		float[] scores = new float[sortedPositionScores.length];
+		for (int i=0; i< sortedPositionScores.length; i++){
+			starts[i] = sortedPositionScores[i].position;
+			scores[i] = sortedPositionScores[i].score;
+		}
+		return new ColumnarCodec(starts, null, scores, null);
+	}
+
 	/**Reads a DataInputStream into this PositionScoreData.*/
 	public void read (DataInputStream dis) {
 		try {
+			//compact columns?
+			if (ColumnarCodec.isColumnar(sliceInfo.getBinaryType())){
+				ColumnarCodec c = new ColumnarCodec(dis, sliceInfo);
+				header = c.getHeader();
+				int[] starts = c.getStarts();
+				float[] scores = c.getScores();
+				sortedPositionScores = new PositionScore[starts.length];
+				for (int i=0; i< starts.length; i++) sortedPositionScores[i] = new PositionScore(starts[i], scores[i]);
+				return;
+			}
 			//read text header, currently not used
 			header = dis.readUTF();
 
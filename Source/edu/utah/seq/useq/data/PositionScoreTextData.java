@@ -283,9 +283,33 @@ public class PositionScoreTextData extends USeqData{
 		return merge (a);
 	}
 
+	/**Returns the columns for writeColumnar().*/
+	protected ColumnarCodec fetchColumns(){
+		int[] starts = new int[sortedPositionScoreTexts.length];
+		float[] scores = new float[sortedPositionScoreTexts.length];
+		String[] texts = new String[sortedPositionScoreTexts.length];
+		for (int i=0; i< sortedPositionScoreTexts.length; i++){
+			starts[i] = sortedPositionScoreTexts[i].position;
+			scores[i] = sortedPositionScoreTexts[i].score;
+			texts[i] = sortedPositionScoreTexts[i].text;
+		}
+		return new ColumnarCodec(starts, null, scores, texts);
+	}
+
 	/**Reads a DataInputStream into this PositionScoreData.*/
 	public void read (DataInputStream dis) {
 		try {
+			//compact columns?
+			if (ColumnarCodec.isColumnar(sliceInfo.getBinaryType())){
+				ColumnarCodec c = new ColumnarCodec(dis, sliceInfo);
+				header = c.getHeader();
+				int[] starts = c.getStarts();
+				float[] scores = c.getScores();
+				String[] texts = c.getTexts();
+				sortedPositionScoreTexts = new PositionScoreText[starts.length];
+				for (int i=0; i< starts.length; i++) sortedPositionScoreTexts[i] = new PositionScoreText(starts[i], scores[i], texts[i]);
+				return;
+			}
 			//read text header, currently not used
 			header = dis.readUTF();	
 
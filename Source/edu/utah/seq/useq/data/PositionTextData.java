@@ -265,9 +265,30 @@ public class PositionTextData extends USeqData{
 		} 
 	}
 
+	/**Returns the columns for writeColumnar().*/
+	protected ColumnarCodec fetchColumns(){
+		int[] starts = new int[sortedPositionTexts.length];
+		String[] texts = new String[sortedPositionTexts.length];
+		for (int i=0; i< sortedPositionTexts.length; i++){
+			starts[i] = sortedPositionTexts[i].position;
+			texts[i] = sortedPositionTexts[i].text;
+		}
+		return new ColumnarCodec(starts, null, null, texts);
+	}
+
 	/**Reads a DataInputStream into this PositionTextData.*/
 	public void read (DataInputStream dis) {
 		try {
+			//compact columns?
+			if (ColumnarCodec.isColumnar(sliceInfo.getBinaryType())){
+				ColumnarCodec c = new ColumnarCodec(dis, sliceInfo);
+				header = c.getHeader();
+				int[] starts = c.getStarts();
+				String[] texts = c.getTexts();
+				sortedPositionTexts = new PositionText[starts.length];
+				for (int i=0; i< starts.length; i++) sortedPositionTexts[i] = new PositionText(starts[i], texts[i]);
+				return;
+			}
 			//read text header, currently not used
 			header = dis.readUTF();
 
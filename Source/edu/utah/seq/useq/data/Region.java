@@ -176,6 +176,68 @@ public class Region implements Comparable<Region>, Serializable {
 		return lastBase;
 	}
 
+	/**Returns the sorted start stop blocks covered by the regions, overlapping and abutting regions are joined.
+	 * Gives the same blocks as flagging each covered base in a boolean[] without allocating one per chromosome.*/
+	public static int[][] mergeBlocks(Region[] r){
+		int[][] ss = new int[r.length][];
+		for (int i=0; i< r.length; i++) ss[i] = new int[]{r[i].start, r[i].stop};
+		for (int i=1; i< ss.length; i++){
+			if (ss[i][0] < ss[i-1][0]) {
+				Arrays.sort(ss, new Comparator<int[]>(){
+					public int compare(int[] a, int[] b){
+						return Integer.compare(a[0], b[0]);
+					}
+				});
+				break;
+			}
+		}
+		ArrayList<int[]> al = new ArrayList<int[]>();
+		int[] current = null;
+		for (int[] s: ss){
+			if (s[1] <= s[0]) continue;
+			if (current != null && s[0] <= current[1]) {
+				if (s[1] > current[1]) current[1] = s[1];
+			}
+			else {
+				current = s;
+				al.add(current);
+			}
+		}
+		int[][] blocks = new int[al.size()][];
+		al.toArray(blocks);
+		return blocks;
+	}
+
+	/**Returns the bases in common between two sets of blocks from mergeBlocks() with one sorted sweep.*/
+	public static int[][] intersectBlocks(int[][] a, int[][] b){
+		ArrayList<int[]> al = new ArrayList<int[]>();
+		int i = 0;
+		int j = 0;
+		while (i < a.length && j < b.length){
+			int start = Math.max(a[i][0], b[j][0]);
+			int stop = Math.min(a[i][1], b[j][1]);
+			if (start < stop) al.add(new int[]{start, stop});
+			if (a[i][1] < b[j][1]) i++;
+			else j++;
+		}
+		int[][] blocks = new int[al.size()][];
+		al.toArray(blocks);
+		return blocks;
+	}
+
+	/**Returns true if any base from start (included) to stop (not included) falls in the blocks from mergeBlocks().*/
+	public static boolean intersectsBlocks(int[][] blocks, int start, int stop){
+		//find the first block that ends after the start
+		int lo = 0;
+		int hi = blocks.length;
+		while (lo < hi){
+			int mid = (lo + hi) >>> 1;
+			if (blocks[mid][1] <= start) lo = mid+1;
+			else hi = mid;
+		}
+		return lo < blocks.length && blocks[lo][0] < stop;
+	}
+
 	public void setStart(int start) {
 		this.start = start;
 	}
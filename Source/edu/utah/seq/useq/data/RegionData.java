@@ -342,9 +342,30 @@ public class RegionData extends USeqData{
 	}
 
 
+	/**Returns the columns for writeColumnar().*/
+	protected ColumnarCodec fetchColumns(){
+		int[] starts = new int[sortedRegions.length];
+		int[] stops = new int[sortedRegions.length];
+		for (int i=0; i< sortedRegions.length; i++){
+			starts[i] = sortedRegions[i].start;
+			stops[i] = sortedRegions[i].stop;
+		}
+		return new ColumnarCodec(starts, stops, null, null);
+	}
+
 	/**Reads a DataInputStream into this RegionData.*/
 	public void read (DataInputStream dis) {
 		try {
+			//compact columns?
+			if (ColumnarCodec.isColumnar(sliceInfo.getBinaryType())){
+				ColumnarCodec c = new ColumnarCodec(dis, sliceInfo);
+				header = c.getHeader();
+				int[] starts = c.getStarts();
+				int[] stops = c.getStops();
+				sortedRegions = new Region[starts.length];
+				for (int i=0; i< starts.length; i++) sortedRegions[i] = new Region(starts[i], stops[i]);
+				return;
+			}
 			//read text header, currently not used
 			header = dis.readUTF();
 
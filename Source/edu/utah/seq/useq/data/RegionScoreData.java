@@ -368,9 +368,33 @@ public class RegionScoreData extends USeqData{
 		} 
 	}
 
+	/**Returns the columns for writeColumnar().*/
+	protected ColumnarCodec fetchColumns(){
+		int[] starts = new int[sortedRegionScores.length];
+		int[] stops = new int[sortedRegionScores.length];
+		float[] scores = new float[sortedRegionScores.length];
+		for (int i=0; i< sortedRegionScores.length; i++){
+			starts[i] = sortedRegionScores[i].start;
+			stops[i] = sortedRegionScores[i].stop;
+			scores[i] = sortedRegionScores[i].score;
+		}
+		return new ColumnarCodec(starts, stops, scores, null);
+	}
+
 	/**Reads a DataInputStream into this RegionScoreData.*/
 	public void read (DataInputStream dis) {
 		try {
+			//compact columns?
+			if (ColumnarCodec.isColumnar(sliceInfo.getBinaryType())){
+				ColumnarCodec c = new ColumnarCodec(dis, sliceInfo);
+				header = c.getHeader();
+				int[] starts = c.getStarts();
+				int[] stops = c.getStops();
+				float[] scores = c.getScores();
+				sortedRegionScores = new RegionScore[starts.length];
+				for (int i=0; i< starts.length; i++) sortedRegionScores[i] = new RegionScore(starts[i], stops[i], scores[i]);
+				return;
+			}
 			//read text header, currently not used
 			header = dis.readUTF();
 
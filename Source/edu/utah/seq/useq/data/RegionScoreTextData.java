@@ -422,9 +422,36 @@ public class RegionScoreTextData extends USeqData{
 		} 
 	}
 
+	/**Returns the columns for writeColumnar().*/
+	protected ColumnarCodec fetchColumns(){
+		int[] starts = new int[sortedRegionScoreTexts.length];
+		int[] stops = new int[sortedRegionScoreTexts.length];
+		float[] scores = new float[sortedRegionScoreTexts.length];
+		String[] texts = new String[sortedRegionScoreTexts.length];
+		for (int i=0; i< sortedRegionScoreTexts.length; i++){
+			starts[i] = sortedRegionScoreTexts[i].start;
+			stops[i] = sortedRegionScoreTexts[i].stop;
+			scores[i] = sortedRegionScoreTexts[i].score;
+			texts[i] = sortedRegionScoreTexts[i].text;
+		}
+		return new ColumnarCodec(starts, stops, scores, texts);
+	}
+
 	/**Reads a DataInputStream into this RegionScoreTextData.*/
 	public void read (DataInputStream dis) {
 		try {
+			//compact columns?
+			if (ColumnarCodec.isColumnar(sliceInfo.getBinaryType())){
+				ColumnarCodec c = new ColumnarCodec(dis, sliceInfo);
+				header = c.getHeader();
+				int[] starts = c.getStarts();
+				int[] stops = c.getStops();
+				float[] scores = c.getScores();
+				String[] texts = c.getTexts();
+				sortedRegionScoreTexts = new RegionScoreText[starts.length];
+				for (int i=0; i< starts.length; i++) sortedRegionScoreTexts[i] = new RegionScoreText(starts[i], stops[i], scores[i], texts[i]);
+				return;
+			}
 			//read text header, currently not used
 			header = dis.readUTF();	
 
@@ -362,9 +362,33 @@ public class RegionTextData extends USeqData{
 		} 
 	}
 
+	/**Returns the columns for writeColumnar().*/
+	protected ColumnarCodec fetchColumns(){
+		int[] starts = new int[sortedRegionTexts.length];
+		int[] stops = new int[sortedRegionTexts.length];
+		String[] texts = new String[sortedRegionTexts.length];
+		for (int i=0; i< sortedRegionTexts.length; i++){
+			starts[i] = sortedRegionTexts[i].start;
+			stops[i] = sortedRegionTexts[i].stop;
+			texts[i] = sortedRegionTexts[i].text;
+		}
+		return new ColumnarCodec(starts, stops, null, texts);
+	}
+
 	/**Reads a DataInputStream into this RegionScoreData.*/
 	public void read (DataInputStream dis) {
 		try {
+			//compact columns?
+			if (ColumnarCodec.isColumnar(sliceInfo.getBinaryType())){
+				ColumnarCodec c = new ColumnarCodec(dis, sliceInfo);
+				header = c.getHeader();
+				int[] starts = c.getStarts();
+				int[] stops = c.getStops();
+				String[] texts = c.getTexts();
+				sortedRegionTexts = new RegionText[starts.length];
+				for (int i=0; i< starts.length; i++) sortedRegionTexts[i] = new RegionText(starts[i], stops[i], texts[i]);
+				return;
+			}
 			//read text header, currently not used
 			header = dis.readUTF();
 
@@ -53,4 +53,37 @@ public class USeqData {
 
 	/**Reads a DataInputStream into this XXXData object, to be overridden.*/
 	public void read (DataInputStream dis) {}
+
+	/**Writes this XXXData object to a binary file in the saveDirectory, to be overridden.*/
+	public File write (File saveDirectory, boolean attemptToSaveAsShort) {
+		return null;
+	}
+
+	/**Returns the columns of this XXXData object for writeColumnar(), to be overridden.*/
+	protected ColumnarCodec fetchColumns(){
+		return null;
+	}
+
+	/**Writes the data to a binary file using the compact columnar types, see ColumnarCodec. Only for archives flagged
+	 * ArchiveInfo.ARCHIVE_VERSION_VALUE_TWO.
+	 * @param quantizeScale scores are rounded to the nearest 1/quantizeScale, 0 keeps them exact
+	 * @return the binaryFile written to the saveDirectory or null if it failed*/
+	public File writeColumnar (File saveDirectory, float quantizeScale) {
+		ColumnarCodec columns = fetchColumns();
+		sliceInfo.setBinaryType(columns.fetchBinaryType());
+		binaryFile = new File(saveDirectory, sliceInfo.getSliceName());
+		DataOutputStream workingDOS = null;
+		try {
+			workingDOS = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(binaryFile)));
+			columns.write(workingDOS, header, quantizeScale);
+			workingDOS.close();
+			workingDOS = null;
+			return binaryFile;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		} finally {
+			USeqUtilities.safeClose(workingDOS);
+		}
+	}
 }
@@ -7,8 +7,6 @@ import edu.utah.seq.parsers.MergeSams;
 import util.bio.annotation.Bed;
 import util.gen.*;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 /**
  * @author david.nix@hci.utah.edu 
@@ -60,15 +58,9 @@ public class GatkRunner {
 		//create runners and start
 		System.out.println("Launching...\n");
 		runners = new GatkRunnerChunk[splitBed.size()];
-		ExecutorService executor = Executors.newFixedThreadPool(runners.length);
-		for (int i=0; i< runners.length; i++) {
-			runners[i] = new GatkRunnerChunk(splitBed.get(i), this, ""+i);
-			executor.execute(runners[i]);
-		}
-		executor.shutdown();
-		//spins here until the executer is terminated, e.g. all threads complete
-        while (!executor.isTerminated()) {
-        }
+		for (int i=0; i< runners.length; i++) runners[i] = new GatkRunnerChunk(splitBed.get(i), this, ""+i);
+		//blocks here until all threads complete
+		ParallelRunner.runAll(runners, runners.length);
 		
 		//check runners and delete temp files
         for (GatkRunnerChunk c: runners) {
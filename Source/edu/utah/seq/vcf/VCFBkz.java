@@ -6,16 +6,17 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import edu.utah.seq.parsers.jpileup.BamPileupTabixLoader;
+import edu.utah.seq.parsers.jpileup.BpileupColumnarReader;
+import edu.utah.seq.query.TabixSweepReader;
 import util.gen.Gzipper;
 import util.gen.IO;
 import util.gen.Misc;
 import util.gen.Num;
+import util.gen.ParallelRunner;
 
 /**Given a vcf file compares each record against a set of normal samples from a tabix indexed BamPileup 
  * USeq app file and marks those with evidence of the variant in the normals.
@@ -40,6 +41,7 @@ public class VCFBkz {
 	private boolean calcAllBkgAfs = false;
 	private int bpIndelPad = 0;
 	private boolean includeIndelCountsForSnvs = false;
+	private boolean mergeJoin = false;
 	
 	//internal
 	private static final int numVcfToProc = 100;
@@ -58,6 +60,7 @@ public class VCFBkz {
 	private ArrayList<String> tooFewSamples = new ArrayList<String>();
 	private ArrayList<String> vcfHeader = new ArrayList<String>();
 	private ArrayList<String> vcfRecords = new ArrayList<String>();
+	private ArrayList<ArrayList<String>> chromosomeRecords = null;
 	
 	//constructor
 	public VCFBkz(String[] args){
@@ -82,6 +85,7 @@ public class VCFBkz {
 				numSaved = 0;
 				tooFewSamples.clear();
 				vcfRecords.clear();
+				chromosomeRecords = null;
 				
 				IO.p(vcfFile.getName());
 				String name = Misc.removeExtension(vcfFile.getName());
@@ -89,10 +93,7 @@ public class VCFBkz {
 
 				
 				//load bpileup data
-				ExecutorService executor = Executors.newFixedThreadPool(numberThreads);
-				for (BamPileupTabixLoader l: loaders) executor.execute(l);
-				executor.shutdown();
-				while (!executor.isTerminated()) {}
+				ParallelRunner.runAll(loaders, numberThreads);
 
 				//check loaders 
 				for (BamPileupTabixLoader l: loaders) {
@@ -112,7 +113,7 @@ public class VCFBkz {
 			e.printStackTrace();
 		} finally {
 			//shut down loaders
-			for (BamPileupTabixLoader m : loaders) m.getTabixReader().close();
+			for (BamPileupTabixLoader m : loaders) m.close();
 			
 			//finish and calc run time
 			double diffTime = ((double)(System.currentTimeMillis() -startTime))/60000;
@@ -172,6 +173,7 @@ public class VCFBkz {
 
 	/**Loads the AL with vcf lines up to the numVcfToProc, if none could be read, returns false, otherwise true.*/
 	public synchronized boolean loadVcfRecords(ArrayList<String> chunk) throws IOException{
+		if (mergeJoin) return loadChromosomeRecords(chunk);
 		String record;
 		int count = 0;
 		while ((record = vcfIn.readLine()) != null){
@@ -186,6 +188,17 @@ public class VCFBkz {
 		return true;
 	}
 	
+	/**Loads the AL with all of the records from the largest remaining chromosome, sorted by position, if none remain, returns false.*/
+	private boolean loadChromosomeRecords(ArrayList<String> chunk) throws IOException{
+		if (chromosomeRecords == null) chromosomeRecords = TabixSweepReader.groupByChromosome(vcfIn);
+		if (chromosomeRecords.size() == 0) return false;
+		int largest = 0;
+		for (int i=1; i< chromosomeRecords.size(); i++) if (chromosomeRecords.get(i).size() > chromosomeRecords.get(largest).size()) largest = i;
+		chunk.addAll(chromosomeRecords.remove(largest));
+		numRecords += chunk.size();
+		return true;
+	}
+	
 	public synchronized void update(int numNotScored, int numFailingZscore, ArrayList<String> tooFewSamples, int numWithBKAF) {
 		this.numNotScored += numNotScored;
 		this.numFailingZscore+= numFailingZscore;
@@ -259,6 +272,7 @@ public class VCFBkz {
 					case 'i': sampleIndexes = args[++i]; break;
 					case 'u': replaceQualScore = true; break;
 					case 'y': includeIndelCountsForSnvs = true; break;
+					case 'j': mergeJoin = true; break;
 					case 'a': calcAllBkgAfs = true; break;
 					case 'p': numberThreads = Integer.parseInt(args[++i]); break;
 					case 't': afInfoName = args[++i]; break;
@@ -289,7 +303,7 @@ public class VCFBkz {
 		//tabix indexed bpileup?
 		if (bpileup == null || bpileup.canRead() == false) Misc.printExit("\nError: please provide a path to a bgzipped tabix indexed bpileup file.\n");
 		File index = new File (bpileup.toString()+".tbi");
-		if (index.exists() == false) Misc.printExit("\nError: cannot find the '"+index.getName()+"' index file corresponding to this indexed bpileup file "+bpileup.getName());	
+		if (BpileupColumnarReader.isColumnar(bpileup) == false && index.exists() == false) Misc.printExit("\nError: cannot find the '"+index.getName()+"' index file corresponding to this indexed bpileup file "+bpileup.getName());	
 		
 		//threads
 		int numProc = Runtime.getRuntime().availableProcessors() - 1;
@@ -326,6 +340,7 @@ public class VCFBkz {
 		IO.pl(" -u "+ replaceQualScore+"\tReplace QUAL score with z-score and set non scored records to 0");
 		IO.pl(" -x "+ bpIndelPad+"\tBP padding for scanning INDEL backgrounds");
 		IO.pl(" -y "+ includeIndelCountsForSnvs+"\tInclude INDEL counts when scoring SNV bkgs");
+		IO.pl(" -j "+ mergeJoin+"\tMerge join sorted records with the bpileup");
 	}
 
 	
@@ -337,7 +352,7 @@ public class VCFBkz {
 	public static void printDocs(){
 		IO.pl("\n" +
 				"**************************************************************************************\n" +
-				"**                                VCF Bkz : May 2021                                **\n" +
+				"**                                VCF Bkz : Oct 2026                                **\n" +
 				"**************************************************************************************\n" +
 				"VCFBkz uses a panel of normals to calculate non-germline allele frequencies (AF) from \n"+
 				"each sample that intersect a vcf record. It then calculates a z-score based on the vcf\n"+
@@ -350,8 +365,8 @@ public class VCFBkz {
 
 				"\nRequired:\n"+
 				"-v Path to a vt normalized xxx.vcf(.gz/.zip OK) file or directory containing such.\n" +
-				"-b Path to a bgzip compressed and tabix indexed multi normal sample bpileup file. See\n"+
-				"      the USeq BamPileup app.\n"+
+				"-b Path to a bgzip compressed and tabix indexed multi normal sample bpileup file or a\n"+
+				"      binary xxx.bpc bpileup. See the USeq BamPileup app.\n"+
 						
 				"\nOptional:\n" +
 				"-s Path to a directory to save the modified vcf file(s), defaults to vcf parent dir.\n"+
@@ -370,6 +385,8 @@ public class VCFBkz {
 				"-x Bp padding for scanning INDEL bkg, defaults to 0\n"+
 				"-y Include INDEL counts when scoring SNVs to down weight SNV calls that overlap.\n"+
 				"-p Number of processors to use, defaults to all\n"+
+				"-j Merge join, walk each chromosome's position sorted records against one stream of\n"+
+				"      bpileup lines instead of making a tabix query per record. Faster for large vcfs.\n"+
 				"\n"+
 
 				"Example: java -Xmx4G -jar pathTo/USeq/Apps/VCFBkz -v SomaticVcfs/ -z 3 -u -l -e -n 8\n"+
@@ -418,4 +435,8 @@ public class VCFBkz {
 	public boolean isIncludeIndelCountsForSnvs() {
 		return includeIndelCountsForSnvs;
 	}
+
+	public boolean isMergeJoin() {
+		return mergeJoin;
+	}
 }
@@ -8,8 +8,6 @@ import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import edu.utah.seq.parsers.mpileup.MpileupTabixLoader;
@@ -17,6 +15,7 @@ import util.gen.Gzipper;
 import util.gen.IO;
 import util.gen.Misc;
 import util.gen.Num;
+import util.gen.ParallelRunner;
 
 /**
  * Depreciated, moved and updated this app using internal BamPileup.  Mpileup was causing issues.
@@ -100,10 +99,7 @@ public class VCFBkzDepreciated {
 
 				
 				//load mpileup data
-				ExecutorService executor = Executors.newFixedThreadPool(numberThreads);
-				for (MpileupTabixLoader l: loaders) executor.execute(l);
-				executor.shutdown();
-				while (!executor.isTerminated()) {}
+				ParallelRunner.runAll(loaders, numberThreads);
 
 				//check loaders 
 				for (MpileupTabixLoader l: loaders) {
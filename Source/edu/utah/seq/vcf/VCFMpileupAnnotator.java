@@ -5,15 +5,15 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import edu.utah.seq.parsers.mpileup.MpileupTabixLoaderAFDP;
+import edu.utah.seq.query.TabixSweepReader;
 import util.gen.Gzipper;
 import util.gen.IO;
 import util.gen.Misc;
 import util.gen.Num;
+import util.gen.ParallelRunner;
 
 /**Given a vcf file compares each record against a tabix indexed mpileup file and adds/ overwrites AF and DP info.
  * @author Nix*/
@@ -27,6 +27,7 @@ public class VCFMpileupAnnotator {
 	private boolean verbose = false;
 	private int numberThreads = 0;
 	private int numDecimals = 4;
+	private boolean mergeJoin = false;
 	
 	//internal
 	private static final int numVcfToProc = 100;
@@ -37,6 +38,7 @@ public class VCFMpileupAnnotator {
 	private int numRecords = 0;
 	private ArrayList<String> vcfHeader = new ArrayList<String>();
 	private ArrayList<String> vcfRecords = new ArrayList<String>();
+	private ArrayList<ArrayList<String>> chromosomeRecords = null;
 	
 	//constructor
 	public VCFMpileupAnnotator(String[] args){
@@ -53,10 +55,7 @@ public class VCFMpileupAnnotator {
 			createReaderSaveHeader();
 
 			//load mpileup data
-			ExecutorService executor = Executors.newFixedThreadPool(numberThreads);
-			for (MpileupTabixLoaderAFDP l: loaders) executor.execute(l);
-			executor.shutdown();
-			while (!executor.isTerminated()) {}
+			ParallelRunner.runAll(loaders, numberThreads);
 
 			//check loaders 
 			for (MpileupTabixLoaderAFDP l: loaders) {
@@ -132,6 +131,7 @@ public class VCFMpileupAnnotator {
 
 	/**Loads the AL with vcf lines up to the numVcfToProc, if none could be read, returns false, otherwise true.*/
 	public synchronized boolean loadVcfRecords(ArrayList<String> chunk) throws IOException{
+		if (mergeJoin) return loadChromosomeRecords(chunk);
 		String record;
 		int count = 0;
 		while ((record = vcfIn.readLine()) != null){
@@ -146,6 +146,17 @@ public class VCFMpileupAnnotator {
 		return true;
 	}
 	
+	/**Loads the AL with all of the records from the largest remaining chromosome, sorted by position, if none remain, returns false.*/
+	private boolean loadChromosomeRecords(ArrayList<String> chunk) throws IOException{
+		if (chromosomeRecords == null) chromosomeRecords = TabixSweepReader.groupByChromosome(vcfIn);
+		if (chromosomeRecords.size() == 0) return false;
+		int largest = 0;
+		for (int i=1; i< chromosomeRecords.size(); i++) if (chromosomeRecords.get(i).size() > chromosomeRecords.get(largest).size()) largest = i;
+		chunk.addAll(chromosomeRecords.remove(largest));
+		numRecords += chunk.size();
+		return true;
+	}
+	
 	private void createReaderSaveHeader() throws Exception {
 		vcfIn = IO.fetchBufferedReader(vcfFile);
 		vcfHeader.clear();
@@ -208,6 +219,7 @@ public class VCFMpileupAnnotator {
 					case 'e': numDecimals = Integer.parseInt(args[++i]); break;
 					case 'd': verbose = true; break;
 					case 't': numberThreads = Integer.parseInt(args[++i]); break;
+					case 'j': mergeJoin = true; break;
 					case 'h': printDocs(); System.exit(0);
 					default: Misc.printExit("\nProblem, unknown option! " + mat.group());
 					}
@@ -246,7 +258,7 @@ public class VCFMpileupAnnotator {
 	public static void printDocs(){
 		System.out.println("\n" +
 				"**************************************************************************************\n" +
-				"**                          VCF Mpileup Annotator : April 2019                      **\n" +
+				"**                          VCF Mpileup Annotator : Oct 2026                        **\n" +
 				"**************************************************************************************\n" +
 				"VMA estimates the AF and DP of a vcf record from a single sample mpileup file.  It \n"+
 				"replaces the AF or DP INFO values in the vcf records if present. For INDELs, the\n"+
@@ -267,6 +279,8 @@ public class VCFMpileupAnnotator {
 				"-e Number of decimals in the AF, defaults to 4\n"+
 				"-d Print verbose debugging output.\n" +
 				"-t Number of threads to use, defaults to all/ 5GB.\n"+
+				"-j Merge join, walk each chromosome's position sorted records against one stream of\n"+
+				"      mpileup lines instead of making a tabix query per record. Faster for large vcfs.\n"+
 				
 
 				"\n"+
@@ -290,4 +304,8 @@ public class VCFMpileupAnnotator {
 	public int getNumDecimals() {
 		return numDecimals;
 	}
+
+	public boolean isMergeJoin() {
+		return mergeJoin;
+	}
 }
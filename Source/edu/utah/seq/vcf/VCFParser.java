@@ -536,21 +536,15 @@ public class VCFParser {
 		for (String chr: goodRegions.keySet()){		
 			VCFLookUp vcf = chromosomeVCFRecords.get(chr);
 			if (vcf == null) continue;
-			//make boolean array representing covered bases
+			//merge into sorted covered blocks
 			RegionScoreText[] r = goodRegions.get(chr);
 			if (r == null || r.length == 0) continue;
-			int lastBase = RegionScoreText.findLastBase(r);
-			boolean[] coveredBases = new boolean[lastBase];
-			for (int i=0; i< r.length; i++){
-				int stop = r[i].getStop();
-				for (int j=r[i].getStart(); j< stop; j++){
-					coveredBases[j] = true;
-				}
-			}
+			int[][] coveredBlocks = RegionScoreText.mergeBlocks(r);
 			VCFRecord[] vcfRecords = vcf.getVcfRecord();
 			//for each vcf position, is it covered?
 			for (int i=0; i< vcfRecords.length; i++){
-				if (vcfRecords[i].getPosition() < lastBase && coveredBases[vcfRecords[i].getPosition()] == true) {
+				int pos = vcfRecords[i].getPosition();
+				if (RegionScoreText.intersectsBlocks(coveredBlocks, pos, pos+1)) {
 					vcfRecords[i].setFilter(VCFRecord.PASS);
 				}
 				else {
@@ -4,8 +4,7 @@ import java.io.*;
 import java.util.*;
 import java.util.regex.*;
 
-import edu.utah.seq.its.Interval;
-import edu.utah.seq.its.IntervalTree;
+import edu.utah.seq.its.ArrayIntervalTree;
 import edu.utah.seq.useq.data.RegionScoreText;
 import edu.utah.seq.useq.data.RegionScoreTextData;
 import util.bio.annotation.Bed;
@@ -25,7 +24,7 @@ public class VCFRegionFilter {
 	private File saveDirectory = null;
 	
 	//internal fields
-	private HashMap<String,IntervalTree<Coordinate>> chrRegionIntervalTrees = null;
+	private HashMap<String,ArrayIntervalTree<Coordinate>> chrRegionIntervalTrees = null;
 	private int numIntRecords = 0;
 	private int numNonIntRecords = 0;
 	
@@ -62,7 +61,7 @@ public class VCFRegionFilter {
 			BufferedReader in = IO.fetchBufferedReader(vcf);
 			String line;
 			String currChrom = "";
-			IntervalTree<Coordinate> regions = null;
+			ArrayIntervalTree<Coordinate> regions = null;
 			//for each line in the file
 			while ((line = in.readLine()) != null){
 				line = line.trim();
@@ -84,9 +83,8 @@ public class VCFRegionFilter {
 					}
 					//any regions to intersect? Does it intersect?
 					if (regions != null) {
-						ArrayList<Coordinate> hits = fetchRecords(tokens, regions);
 						//no hits so just print out unmodified
-						if (hits.size() == 0) {
+						if (intersects(tokens, regions) == false) {
 							nonIntVcf.println(Misc.stringArrayToString(tokens, "\t"));
 							numNonIntRecords++;
 						}
@@ -111,13 +109,13 @@ public class VCFRegionFilter {
 		} 
 	}
 	
-	private ArrayList<Coordinate> fetchRecords(String[] vcfTokens, IntervalTree<Coordinate> regions) {
+	private boolean intersects(String[] vcfTokens, ArrayIntervalTree<Coordinate> regions) {
 		//calc start stop to fetch, interbase coordinates
 		int size = vcfTokens[4].length();
 		int sizeRef = vcfTokens[3].length();
 		if (size < sizeRef) size = sizeRef;
 		int position = Integer.parseInt(vcfTokens[1]) -1;
-		return regions.search(position, position+size+2);
+		return regions.intersects(position, position+size+2);
 	}
 	
 	private void createIntervalTrees() {
@@ -126,18 +124,20 @@ public class VCFRegionFilter {
 		Arrays.sort(allRegions);
 		HashMap<String,Coordinate[]> chrRegions = Coordinate.splitByChromosome(allRegions);
 		//make HashMap of trees
-		chrRegionIntervalTrees = new HashMap<String,IntervalTree<Coordinate>>();
+		chrRegionIntervalTrees = new HashMap<String,ArrayIntervalTree<Coordinate>>();
 		long numRegions = 0;
 		for (String chr : chrRegions.keySet()){
 			Coordinate[] regions = chrRegions.get(chr);
 			numRegions+= regions.length;
-			ArrayList<Interval<Coordinate>> ints = new ArrayList<Interval<Coordinate>>();
+			int[] starts = new int[regions.length];
+			int[] stops = new int[regions.length];
 			for (int i =0; i< regions.length; i++) {		
 				int start = regions[i].getStart() - bpPad;
 				if (start < 0) start = 0;
-				ints.add(new Interval<Coordinate>(start, regions[i].getStop()+bpPad, regions[i]));
+				starts[i] = start;
+				stops[i] = regions[i].getStop()+bpPad;
 			}
-			IntervalTree<Coordinate> tree = new IntervalTree<Coordinate>(ints, false);
+			ArrayIntervalTree<Coordinate> tree = new ArrayIntervalTree<Coordinate>(starts, stops, regions);
 			chrRegionIntervalTrees.put(chr, tree);
 		}
 		System.out.println("Loaded "+numRegions+" regions\n");
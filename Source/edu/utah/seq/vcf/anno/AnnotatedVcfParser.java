@@ -1,9 +1,13 @@
 package edu.utah.seq.vcf.anno; 
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -17,8 +21,10 @@ import util.gen.Histogram;
 import util.gen.IO;
 import util.gen.Misc;
 import util.gen.Num;
+import util.gen.ParallelRunner;
 
-/**Parser of vcf files annotated with SnpEff (dbNSFP,ClinVar), VCFBackgroundChecker, and VCFSpliceScanner.  */
+/**Parser of vcf files annotated with SnpEff (dbNSFP,ClinVar), VCFBackgroundChecker, and VCFSpliceScanner. 
+ * Records are filtered in parallel chunks, each with its own copy of the settings and counters, and written out in file order.*/
 public class AnnotatedVcfParser {
 
 	//user input and default settings, don't modify defaults here
@@ -50,6 +56,8 @@ public class AnnotatedVcfParser {
 	private Gzipper sumarySpreadSheet = null;
 	private static final Pattern COMMA_SLASH = Pattern.compile(",|/");
 	private String appSettings = null;
+	private int numberThreads = Runtime.getRuntime().availableProcessors();
+	private static final int recordsPerChunk = 1000;
 	
 	//trackers
 	private Histogram afs = new Histogram(0, 1.01, 101);
@@ -91,6 +99,11 @@ public class AnnotatedVcfParser {
 	private AnnotatedVcfParserDataLine dataLine = null;
 	private String trimmedFileName = null;
 	private HashMap<String,String> infoKeyValue = new HashMap<String,String>();
+	private String[] infoKeys = null;
+	private String[] rawAnns = null;
+	private String[][] splitAnns = null;
+	private int numPassingVcf = 0;
+	private int numFailingVcf = 0;
 		
 	public AnnotatedVcfParser (String[] args) {
 		long startTime = System.currentTimeMillis();
@@ -99,6 +112,7 @@ public class AnnotatedVcfParser {
 		processArgs(args);
 		
 		if (somaticProcessing) modifySettingsForFoundation();
+		compileInfoKeys();
 		
 		openSpreadSheet();
 		
@@ -146,70 +160,55 @@ public class AnnotatedVcfParser {
 
 
 	public void parse() throws Exception{
-		Gzipper passVcf = null;
-		Gzipper failVcf = null;
+		OutputStream passVcf = null;
+		OutputStream failVcf = null;
 
-			//IO
+			//IO, each is written as a series of gzip members so the chunks can be compressed in parallel
 			trimmedFileName = Misc.removeExtension(workingVcf.getName());			
-			passVcf = new Gzipper( new File (saveDirectory, trimmedFileName + "_Pass.vcf.gz"));
-			failVcf = new Gzipper( new File (saveDirectory, trimmedFileName + "_Fail.vcf.gz"));
+			passVcf = new BufferedOutputStream(new FileOutputStream(new File (saveDirectory, trimmedFileName + "_Pass.vcf.gz")));
+			failVcf = new BufferedOutputStream(new FileOutputStream(new File (saveDirectory, trimmedFileName + "_Fail.vcf.gz")));
 			BufferedReader in = IO.fetchBufferedReader(workingVcf);
-			int numPassingVcf = 0;
-			int numFailingVcf = 0;
+			numPassingVcf = 0;
+			numFailingVcf = 0;
+			ArrayList<FilterChunk> batch = new ArrayList<FilterChunk>();
+			ArrayList<String> chunk = new ArrayList<String>(recordsPerChunk);
+			int chunksPerBatch = numberThreads * ParallelRunner.CHUNKS_PER_THREAD;
+			ArrayList<String> header = new ArrayList<String>();
 			//for each line in the file
 			while ((vcfLine = in.readLine()) != null){
 				vcfLine = vcfLine.trim();
 				if(vcfLine.length() == 0) continue;
-				//header? just print out
+				//header? just print out, after any records before it
 				if (vcfLine.startsWith("#")) {
-					passVcf.println(vcfLine);
-					failVcf.println(vcfLine);
+					if (chunk.size() != 0) {
+						batch.add(new FilterChunk(chunk));
+						chunk = new ArrayList<String>(recordsPerChunk);
+					}
+					if (batch.size() != 0) filterBatch(batch, passVcf, failVcf);
+					header.add(vcfLine);
 					//ANN?
 					if (vcfLine.startsWith("##INFO=<ID=ANN,") && vcfLine.equals(annInfo) == false) throw new Exception("Your ##INFO=<ID=ANN line  doesn't match\n"+vcfLine+"\n"+annInfo);
 					continue;
 				}
-				numRecords++;
-				if (verbose) IO.pl("\n"+vcfLine);
-
-				//#CHROM POS ID REF ALT QUAL FILTER INFO ......
-				//   0    1   2  3   4   5     6      7
-				String[] cells = Misc.TAB.split(vcfLine);
-				loadInfoHash(cells[7]);
-				dataLine = new AnnotatedVcfParserDataLine(trimmedFileName, cells);
-				
-				boolean passDP=true, passAF=true, passImpact=true, passSplice=true, passID = true, passGermlineGenes = false;
-				boolean[] passCF= null;
-				boolean[] passBKAF= null; 
-				boolean[] passPop= null;
-				boolean[] passClinSig= null;
-				
-				
-				if (passingGermlineGenes != null) passGermlineGenes = checkGermlineGenes();
-				if (minimumDP != 0) 			passDP = checkDP();
-				if (maximumCF != 1) 			passCF = checkCF();
-				if (minimumAF != 0 || maximumAF != 1 || maxFracBKAFs != 0) passAF = checkAF(passGermlineGenes);
-				if (maximumPopAF != 0) 			passPop = checkPopFreq();
-				if (passingAnnImpact != null) 	passImpact = checkImpact();
-				if (passingClinSig != null || excludeClinSig != null) 	passClinSig = checkClinSig();
-				if (maxFracBKAFs != 0 || minimumBKZ !=0) passBKAF = checkBKAFs();
-				if (passingVCFSS != null) 		passSplice = checkSplice();
-				if (passingIDKeys != null) 		passID = checkIDs(cells[2]);
-				
-				boolean pass;
-				if (somaticProcessing) pass =  passFoundationFiltering(passID, passDP, passAF, passImpact,passSplice, passPop, passBKAF,passClinSig, passCF); 
-				else if (orAnnos) pass = passWithOrAnnos(passID, passDP, passAF, passImpact, passSplice, passPop, passBKAF,passClinSig, passCF);
-				else pass = allPass(passID, passDP, passAF, passImpact, passSplice, passPop, passBKAF, passClinSig, passCF);
-				
-				if (pass){
-					numPassingVcf++;
-					passVcf.println(vcfLine);
-					dataLine.println(sumarySpreadSheet);
+				if (header.size() != 0) {
+					byte[] gz = gzip(header);
+					passVcf.write(gz);
+					failVcf.write(gz);
+					header.clear();
 				}
-				else {
-					failVcf.println(vcfLine);
-					numFailingVcf++;
+				chunk.add(vcfLine);
+				if (chunk.size() == recordsPerChunk) {
+					batch.add(new FilterChunk(chunk));
+					chunk = new ArrayList<String>(recordsPerChunk);
+					if (batch.size() == chunksPerBatch) filterBatch(batch, passVcf, failVcf);
 				}
-				if (verbose) IO.pl("\tPass all filters\t"+pass);	
+			}
+			if (chunk.size() != 0) batch.add(new FilterChunk(chunk));
+			filterBatch(batch, passVcf, failVcf);
+			if (header.size() != 0) {
+				byte[] gz = gzip(header);
+				passVcf.write(gz);
+				failVcf.write(gz);
 			}
 			numPass+=numPassingVcf;
 			
@@ -222,13 +221,240 @@ public class AnnotatedVcfParser {
 			
 	}
 	
+	/**Runs the enabled filters on one vcf record, returns whether it passes. Sets the dataLine for the spreadsheet.*/
+	private boolean filter(String record) throws Exception {
+		vcfLine = record;
+		numRecords++;
+		if (verbose) IO.pl("\n"+vcfLine);
+
+		//#CHROM POS ID REF ALT QUAL FILTER INFO ......
+		//   0    1   2  3   4   5     6      7
+		//no need to split the sample columns
+		String[] cells = Misc.TAB.split(vcfLine, 9);
+		loadInfoHash(cells[7]);
+		rawAnns = null;
+		splitAnns = null;
+		dataLine = new AnnotatedVcfParserDataLine(trimmedFileName, cells);
+		
+		boolean passDP=true, passAF=true, passImpact=true, passSplice=true, passID = true, passGermlineGenes = false;
+		boolean[] passCF= null;
+		boolean[] passBKAF= null; 
+		boolean[] passPop= null;
+		boolean[] passClinSig= null;
+		
+		
+		if (passingGermlineGenes != null) passGermlineGenes = checkGermlineGenes();
+		if (minimumDP != 0) 			passDP = checkDP();
+		if (maximumCF != 1) 			passCF = checkCF();
+		if (minimumAF != 0 || maximumAF != 1 || maxFracBKAFs != 0) passAF = checkAF(passGermlineGenes);
+		if (maximumPopAF != 0) 			passPop = checkPopFreq();
+		if (passingAnnImpact != null) 	passImpact = checkImpact();
+		if (passingClinSig != null || excludeClinSig != null) 	passClinSig = checkClinSig();
+		if (maxFracBKAFs != 0 || minimumBKZ !=0) passBKAF = checkBKAFs();
+		if (passingVCFSS != null) 		passSplice = checkSplice();
+		if (passingIDKeys != null) 		passID = checkIDs(cells[2]);
+		
+		boolean pass;
+		if (somaticProcessing) pass =  passFoundationFiltering(passID, passDP, passAF, passImpact,passSplice, passPop, passBKAF,passClinSig, passCF); 
+		else if (orAnnos) pass = passWithOrAnnos(passID, passDP, passAF, passImpact, passSplice, passPop, passBKAF,passClinSig, passCF);
+		else pass = allPass(passID, passDP, passAF, passImpact, passSplice, passPop, passBKAF, passClinSig, passCF);
+		
+		if (verbose) IO.pl("\tPass all filters\t"+pass);
+		return pass;
+	}
+
+	/**Filters the chunks in parallel then writes them out in order and adds their counts. Clears the batch.*/
+	private void filterBatch(ArrayList<FilterChunk> batch, OutputStream passVcf, OutputStream failVcf) throws Exception {
+		ParallelRunner.runAll(batch, numberThreads);
+		for (FilterChunk fc: batch) {
+			if (fc.failed) throw new IOException("ERROR: failed to filter a chunk of records.");
+			if (fc.passingGz != null) passVcf.write(fc.passingGz);
+			if (fc.failingGz != null) failVcf.write(fc.failingGz);
+			sumarySpreadSheet.print(fc.spreadSheet.toString());
+			numPassingVcf += fc.numberPassing;
+			numFailingVcf += fc.numberFailing;
+			addCounts(fc.parser);
+		}
+		batch.clear();
+	}
+
+	/**Filters a chunk of records with its own copy of the settings so the counters and working fields aren't shared.*/
+	private class FilterChunk implements Runnable {
+		private ArrayList<String> records;
+		private AnnotatedVcfParser parser;
+		private StringBuilder spreadSheet = new StringBuilder();
+		private byte[] passingGz = null;
+		private byte[] failingGz = null;
+		private int numberPassing = 0;
+		private int numberFailing = 0;
+		private boolean failed = false;
+
+		FilterChunk(ArrayList<String> records){
+			this.records = records;
+			parser = new AnnotatedVcfParser(AnnotatedVcfParser.this);
+		}
+
+		public void run() {
+			try {
+				ArrayList<String> passing = new ArrayList<String>();
+				ArrayList<String> failing = new ArrayList<String>();
+				for (String record: records) {
+					if (parser.filter(record)) {
+						passing.add(record);
+						parser.dataLine.println(spreadSheet);
+					}
+					else failing.add(record);
+				}
+				numberPassing = passing.size();
+				numberFailing = failing.size();
+				//just hold the compressed records until written
+				records = null;
+				if (numberPassing != 0) passingGz = gzip(passing);
+				if (numberFailing != 0) failingGz = gzip(failing);
+			} catch (Exception e) {
+				failed = true;
+				System.err.println("\nERROR: parsing vcf file: "+workingVcf.getName()+"\nLine: "+parser.vcfLine+"\n");
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**Returns the lines as a complete gzip member, these can be concatenated into one valid xxx.gz file.*/
+	private static byte[] gzip(ArrayList<String> lines) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		Gzipper out = new Gzipper(bytes);
+		out.println(lines);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	/**Copies the settings from a configured parser for filtering a chunk of records, counters start at zero.*/
+	private AnnotatedVcfParser(AnnotatedVcfParser p) {
+		minimumDP = p.minimumDP;
+		minimumAF = p.minimumAF;
+		maximumAF = p.maximumAF;
+		maximumCF = p.maximumCF;
+		maximumPopAF = p.maximumPopAF;
+		maxFracBKAFs = p.maxFracBKAFs;
+		minimumBKZ = p.minimumBKZ;
+		minFractionPathogenic = p.minFractionPathogenic;
+		passingIDKeys = p.passingIDKeys;
+		passingAnnImpact = p.passingAnnImpact;
+		passingClinSig = p.passingClinSig;
+		excludeClinSig = p.excludeClinSig;
+		passingGermlineGenes = p.passingGermlineGenes;
+		drugResClinSigGenes = p.drugResClinSigGenes;
+		passingVCFSS = p.passingVCFSS;
+		minimumVCFSSDiff = p.minimumVCFSSDiff;
+		verbose = p.verbose;
+		somaticProcessing = p.somaticProcessing;
+		orAnnos = p.orAnnos;
+		skipWarningTrans = p.skipWarningTrans;
+		onlyProteinCoding = p.onlyProteinCoding;
+		justFrameShiftStartStop = p.justFrameShiftStartStop;
+		workingVcf = p.workingVcf;
+		trimmedFileName = p.trimmedFileName;
+		infoKeys = p.infoKeys;
+	}
+
+	/**Adds the counters and distributions from a chunk parser.*/
+	private void addCounts(AnnotatedVcfParser p) throws Exception {
+		numRecords += p.numRecords;
+		numPassingDP += p.numPassingDP;
+		numPassingMaxAF += p.numPassingMaxAF;
+		numPassingMinAF += p.numPassingMinAF;
+		numWithPopAF += p.numWithPopAF;
+		numPassingPopAF += p.numPassingPopAF;
+		numWithAnn += p.numWithAnn;
+		numPassingAnnImpact += p.numPassingAnnImpact;
+		numWithBKAFs += p.numWithBKAFs;
+		numPassingBKAFs += p.numPassingBKAFs;
+		numWithClin += p.numWithClin;
+		numPassingClinSing += p.numPassingClinSing;
+		numWithCF += p.numWithCF;
+		numPassingCF += p.numPassingCF;
+		numPassingExcludeClinSing += p.numPassingExcludeClinSing;
+		numWithSplice += p.numWithSplice;
+		numPassingSplice += p.numPassingSplice;
+		numPassIDs += p.numPassIDs;
+		afs.addCounts(p.afs);
+		for (int i=0; i< dps.length; i++) dps[i] += p.dps[i];
+		addCounts(clinsig, p.clinsig);
+		addCounts(impacts, p.impacts);
+		addCounts(effects, p.effects);
+		addCounts(observedGermlineGenes, p.observedGermlineGenes);
+	}
+
+	private static void addCounts(TreeMap<String, Integer> total, TreeMap<String, Integer> toAdd) {
+		for (String key: toAdd.keySet()) {
+			Integer count = total.get(key);
+			if (count == null) total.put(key, toAdd.get(key));
+			else total.put(key, count + toAdd.get(key));
+		}
+	}
+
+	/**Collects the INFO keys read by the enabled filters so loadInfoHash() can skip the rest.*/
+	private void compileInfoKeys() {
+		TreeSet<String> keys = new TreeSet<String>();
+		if (passingGermlineGenes != null || passingAnnImpact != null) keys.add("ANN");
+		if (minimumDP != 0) {
+			keys.add("T_DP");
+			keys.add("DP");
+		}
+		if (maximumCF != 1) keys.add("CF");
+		if (minimumAF != 0 || maximumAF != 1 || maxFracBKAFs != 0) {
+			keys.add("T_AF");
+			keys.add("AF");
+		}
+		if (maximumPopAF != 0) {
+			keys.add("dbNSFP_ExAC_AF");
+			keys.add("ExAC_AF");
+			keys.add("dbNSFP_1000Gp3_AF");
+		}
+		if (passingClinSig != null || excludeClinSig != null) {
+			keys.add("CLNSIG");
+			keys.add("CLNHGVS");
+			keys.add("CLNSIGCONF");
+			keys.add("ALLELEID");
+		}
+		if (maxFracBKAFs != 0 || minimumBKZ !=0) {
+			keys.add("BKAF");
+			keys.add("BKZ");
+		}
+		if (passingVCFSS != null) keys.add("VCFSS");
+		infoKeys = keys.toArray(new String[keys.size()]);
+	}
+	
+	/**Loads just the INFO key values the enabled filters use, walking the field without splitting it.*/
 	private void loadInfoHash(String info) {
 		infoKeyValue.clear();
-		String[] kvs = Misc.SEMI_COLON.split(info);
-		for (String kv: kvs) {
-			int first = kv.indexOf('=');
-			if (first !=-1) infoKeyValue.put(kv.substring(0, first), kv.substring(first+1));
+		int len = info.length();
+		int start = 0;
+		while (start < len) {
+			int end = info.indexOf(';', start);
+			if (end == -1) end = len;
+			int equals = info.indexOf('=', start);
+			if (equals != -1 && equals < end) {
+				int keyLength = equals - start;
+				for (String key: infoKeys) {
+					if (key.length() == keyLength && info.startsWith(key, start)) {
+						infoKeyValue.put(key, info.substring(equals+1, end));
+						break;
+					}
+				}
+			}
+			start = end+1;
+		}
+	}
+
+	/**Splits the ANN value by comma and then by pipe once per record for the impact and germline gene checks.*/
+	private String[][] fetchSplitAnns(String annValue) {
+		if (splitAnns == null) {
+			rawAnns = Misc.COMMA.split(annValue);
+			splitAnns = new String[rawAnns.length][];
+			for (int i=0; i< rawAnns.length; i++) splitAnns[i] = Misc.PIPE.split(rawAnns[i]);
 		}
+		return splitAnns;
 	}
 
 
@@ -540,13 +766,12 @@ public class AnnotatedVcfParser {
 		}
 		numWithAnn++;
 
-		//split ANN by comma
-		String[] splitAnns = Misc.COMMA.split(annValue);
+		//split ANN by comma then pipe
+		String[][] annFields = fetchSplitAnns(annValue);
 		
 		//for each annotation
-		for (String ann: splitAnns){
-			//split ANN and save impact
-			String[] splitAnn = Misc.PIPE.split(ann);
+		for (String[] splitAnn: annFields){
+			//save impact
 			String impact = splitAnn[2];
 			if (impacts.containsKey(impact)) impacts.put(impact, new Integer( impacts.get(impact)+1 ));
 			else impacts.put(impact, new Integer(1));
@@ -557,13 +782,14 @@ public class AnnotatedVcfParser {
 		if (passingAnnImpact!=null){
 			//for each annotation
 			
-			for (String ann: splitAnns){
+			for (int i=0; i< annFields.length; i++){
+				String ann = rawAnns[i];
 				//skip problematic transcripts?
 				if (skipWarningTrans == true && ann.contains("WARNING_TRANSCRIPT")== true) continue;
 				//protein transcript?
 				if (onlyProteinCoding == true && ann.contains("protein_coding") == false) continue;
 				
-				String[] splitAnn = Misc.PIPE.split(ann);
+				String[] splitAnn = annFields[i];
 				String impact = splitAnn[2];
 				boolean passImpact = passingAnnImpact.contains(impact.toLowerCase());
 				
@@ -613,16 +839,12 @@ public class AnnotatedVcfParser {
 			return false;
 		}
 
-		//split ANN by comma
-		String[] splitAnns = Misc.COMMA.split(annValue);
+		//split ANN by comma then pipe
+		String[][] annFields = fetchSplitAnns(annValue);
 
 		//Save observed genes, but don't double count!
 		HashSet<String> genes = new HashSet<String>();
-		for (String ann: splitAnns){
-			//split ANN and save gene name
-			String[] splitAnn = Misc.PIPE.split(ann);
-			genes.add(splitAnn[3]);
-		}
+		for (String[] splitAnn: annFields) genes.add(splitAnn[3]);
 		Iterator<String> it = genes.iterator();
 		String foundGermlineGene = null;
 		while (it.hasNext()){
@@ -1072,6 +1294,8 @@ public class AnnotatedVcfParser {
 			drugResClinSigGenes = new TreeSet<String>();
 			for (String s: Misc.COMMA.split(drugResString)) drugResClinSigGenes.add(s);
 		}
+		//keep the per record output in order
+		if (verbose) numberThreads = 1;
 		if (minimumVCFSSDiff !=0 && passingVCFSS == null) Misc.printErrAndExit("\nError: please provide a comma delimited list of splice junction types (e.g. D5S,D3S,G5S,G3S) to examine.\n");
 		
 	}
@@ -1080,14 +1304,14 @@ public class AnnotatedVcfParser {
 	public static void printDocs(){
 		IO.pl("\n" +
 				"**************************************************************************************\n" +
-				"**                            Annotated Vcf Parser  May 2021                        **\n" +
+				"**                            Annotated Vcf Parser  Oct 2026                        **\n" +
 				"**************************************************************************************\n" +
 				"Splits VCF files that have been annotated with SnpEff, ExAC, and clinvar, plus the \n"+
 				"VCFBkz, VCFCallFrequency, and VCFSpliceScanner USeq apps into passing and failing\n"+
 				"records. Use the -r option to inspect the effect of the various filters on each\n"+
 				"record. Use the VCFRegionFilter app to restrict variants to particular regions.\n"+
 				"A summary spreadsheet is exported with select information and excel hyperlinks for\n"+
-				"rapid inspection.\n"+
+				"rapid inspection. Records are filtered in parallel using all of the available cores.\n"+
 
 				"\nOptions:\n"+
 				"-v File path or directory containing xxx.vcf(.gz/.zip OK) file(s) to filter.\n" +
@@ -1,9 +1,7 @@
 package edu.utah.seq.vcf.anno;
 
-import java.io.IOException;
 import java.util.ArrayList;
 
-import util.gen.Gzipper;
 import util.gen.Misc;
 import util.gen.Num;
 
@@ -65,7 +63,8 @@ public class AnnotatedVcfParserDataLine {
 			+ "UniOb\tReadDepth\tPriorCallFreq\tBKZ\tBKAF\tPopFreq\tPassClinvar\tClinLink\tClinHGVS\tClinSig\t"
 			+ "ClinSigConf\tPassSpliceScan\tSpliceGene\tSpliceDiff";
 	
-	public void println(Gzipper sumarySpreadSheet) throws IOException {
+	/**Appends the spreadsheet line(s) for this record, one per ANN gene, and a blank line.*/
+	public void println(StringBuilder sumarySpreadSheet) {
 		//calc varUniOb
 		varUniOb = (int)Math.round(varAlleleFreq*(double)totalUniObDepth);
 		ArrayList<String> al = new ArrayList<String>();
@@ -134,11 +133,16 @@ public class AnnotatedVcfParserDataLine {
 		}
 		
 		//any pass?
-		if (pass.size() !=0) for (AnnotatedGene ag: pass) sumarySpreadSheet.println(main + ag.toString());
+		if (pass.size() !=0) for (AnnotatedGene ag: pass) appendLine(sumarySpreadSheet, main + ag.toString());
 		//only print fail if no pass
-		else if (fail.size() !=0) for (AnnotatedGene ag: fail) sumarySpreadSheet.println(main + ag.toString());
-		else sumarySpreadSheet.println(main);
-		sumarySpreadSheet.println();
+		else if (fail.size() !=0) for (AnnotatedGene ag: fail) appendLine(sumarySpreadSheet, main + ag.toString());
+		else appendLine(sumarySpreadSheet, main);
+		sumarySpreadSheet.append("\n");
+	}
+	
+	private static void appendLine(StringBuilder sb, String line) {
+		sb.append(line);
+		sb.append("\n");
 	}
 	
 	public String getIGVLink() {
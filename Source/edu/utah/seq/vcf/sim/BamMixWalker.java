@@ -0,0 +1,174 @@
+package edu.utah.seq.vcf.sim;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMFileWriter;
+import htsjdk.samtools.SAMFileWriterFactory;
+import htsjdk.samtools.SAMReadGroupRecord;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordCoordinateComparator;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SAMTag;
+import htsjdk.samtools.SamReader;
+import util.gen.IO;
+import util.gen.Misc;
+
+/**Writes one mix by walking the coordinate sorted filtered, unmodified and modified bams in lockstep, merging them
+ * straight into a sorted and indexed bam. Selected read pairs have their realigned mates swapped in for the
+ * unmodified ones, no name sorting or intermediate sams needed.*/
+public class BamMixWalker implements Runnable {
+
+	//fields
+	private boolean failed = false;
+	private ExactBamMixer ebm;
+	private int fractionIndex;
+	private int fractionBit;
+	private File finalBam;
+	private String readGroupName;
+	private String readGroupTag = SAMTag.RG.toString();
+	/**Name hash to the bits of the fractions that use its modified alignments.*/
+	private HashMap<Long, Integer> selected;
+	private HashMap<Long, Integer> mateBits;
+	private HashMap<Long, int[]> unpairedPositions;
+	/**Single end realigned reads whose matching unmodified alignment has already been dropped.*/
+	private HashSet<Long> unpairedReplaced = new HashSet<Long>();
+	private SAMRecordCoordinateComparator comparator = new SAMRecordCoordinateComparator();
+	private SAMFileWriter writer = null;
+	private long numModifiedSaved = 0;
+	private long numUnModifiedSaved = 0;
+
+	public BamMixWalker (ExactBamMixer ebm, int fractionIndex, HashMap<Long, Integer> selected, HashMap<Long, Integer> mateBits, HashMap<Long, int[]> unpairedPositions, File finalBam, String readGroupName) {
+		this.ebm = ebm;
+		this.fractionIndex = fractionIndex;
+		this.selected = selected;
+		this.mateBits = mateBits;
+		this.unpairedPositions = unpairedPositions;
+		this.finalBam = finalBam;
+		this.readGroupName = readGroupName;
+		fractionBit = 1 << fractionIndex;
+	}
+
+	public void run() {
+		SamReader filteredReader = null;
+		SamReader unModifiedReader = null;
+		SamReader modifiedReader = null;
+		try {
+			IO.pl(fractionIndex+"\tWalking bams for "+finalBam.getName());
+			filteredReader = ebm.getReaderFactory().open(ebm.getUnModifiedNoMatchBamFile());
+			unModifiedReader = ebm.getReaderFactory().open(ebm.getUnModifiedMatchingBamFile());
+			modifiedReader = ebm.getReaderFactory().open(ebm.getInjectedBamFile());
+
+			//replace the readgroups, the merge keeps coordinate order
+			SAMFileHeader header = unModifiedReader.getFileHeader().clone();
+			List<SAMReadGroupRecord> rgList = new ArrayList<SAMReadGroupRecord>();
+			rgList.add( new SAMReadGroupRecord(readGroupName));
+			header.setReadGroups(rgList);
+			header.setSortOrder(SAMFileHeader.SortOrder.coordinate);
+			writer = new SAMFileWriterFactory().setCreateIndex(true).setTempDirectory(finalBam.getParentFile()).makeBAMWriter(header, true, finalBam);
+
+			SAMRecordIterator filteredIt = filteredReader.iterator();
+			SAMRecordIterator unModifiedIt = unModifiedReader.iterator();
+			SAMRecordIterator modifiedIt = modifiedReader.iterator();
+			SAMRecord filtered = nextFiltered(filteredIt);
+			SAMRecord unModified = nextUnModified(unModifiedIt);
+			SAMRecord modified = nextModified(modifiedIt);
+
+			while (filtered != null || unModified != null || modified != null){
+				//write the lowest
+				SAMRecord low = filtered;
+				if (low == null || (unModified != null && comparator.fileOrderCompare(unModified, low) < 0)) low = unModified;
+				if (low == null || (modified != null && comparator.fileOrderCompare(modified, low) < 0)) low = modified;
+				low.setAttribute(readGroupTag, readGroupName);
+				writer.addAlignment(low);
+				if (low == filtered) {
+					numUnModifiedSaved++;
+					filtered = nextFiltered(filteredIt);
+				}
+				else if (low == unModified) {
+					numUnModifiedSaved++;
+					unModified = nextUnModified(unModifiedIt);
+				}
+				else {
+					numModifiedSaved++;
+					modified = nextModified(modifiedIt);
+				}
+			}
+			filteredIt.close();
+			unModifiedIt.close();
+			modifiedIt.close();
+			writer.close();
+			writer = null;
+
+			IO.pl(fractionIndex+ "\tSaved from ModMix: "+ numModifiedSaved+"  UnMod: "+ numUnModifiedSaved);
+
+		} catch (Exception e) {
+			failed = true;
+			e.printStackTrace();
+			Misc.printErrAndExit(fractionIndex+"\tProblem writing "+finalBam);
+		} finally {
+			try {
+				if (writer != null) writer.close();
+				if (filteredReader != null) filteredReader.close();
+				if (unModifiedReader != null) unModifiedReader.close();
+				if (modifiedReader != null) modifiedReader.close();
+			} catch (Exception e){
+				failed = true;
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private SAMRecord nextFiltered(SAMRecordIterator it){
+		if (it.hasNext()) return it.next();
+		return null;
+	}
+
+	/**Skips alignments whose mate has been replaced by a modified one. For single end realignments only the one unmodified
+	 * alignment on the same chromosome, strand, and unclipped start as the modified read is skipped, its mate is kept.*/
+	private SAMRecord nextUnModified(SAMRecordIterator it){
+		while (it.hasNext()){
+			SAMRecord sam = it.next();
+			if (selected.isEmpty()) return sam;
+			long hash = BamMixerLoader.hashName(sam.getReadName());
+			Integer fractions = selected.get(hash);
+			if (fractions == null || (fractions & fractionBit) == 0) return sam;
+			int bits = mateBits.get(hash);
+			if ((bits & BamMixerLoader.MATE_PAIRED) != 0) {
+				if ((bits & BamMixerLoader.fetchMateBit(sam)) == 0) return sam;
+			}
+			else if (matchesPosition(sam, unpairedPositions.get(hash)) == false || unpairedReplaced.add(hash) == false) return sam;
+		}
+		return null;
+	}
+
+	private static boolean matchesPosition(SAMRecord sam, int[] position){
+		int[] p = BamMixerLoader.fetchPosition(sam);
+		return p[0] == position[0] && p[1] == position[1] && p[2] == position[2];
+	}
+
+	/**Returns the next primary modified alignment selected for this mix, preferring paired alignments when a read was
+	 * realigned both paired and single.*/
+	private SAMRecord nextModified(SAMRecordIterator it){
+		while (it.hasNext()){
+			SAMRecord sam = it.next();
+			if (sam.getReadUnmappedFlag() || sam.isSecondaryOrSupplementary()) continue;
+			long hash = BamMixerLoader.hashName(BamMixerLoader.stripName(sam.getReadName()));
+			Integer fractions = selected.get(hash);
+			if (fractions == null || (fractions & fractionBit) == 0) continue;
+			int bits = mateBits.get(hash);
+			if (sam.getReadPairedFlag() == false && (bits & BamMixerLoader.MATE_PAIRED) != 0) continue;
+			BamMixerLoader.stripNameNumber(sam);
+			return sam;
+		}
+		return null;
+	}
+
+	public boolean isFailed() {
+		return failed;
+	}
+}
@@ -78,21 +78,21 @@ public class BamMixer {
 		//calc actual # of alignments needed
 		calculateAlignmentNumbersForFractions(numGoodAlign);
 		
-		//subsample
-		File[] subVar = subsampleBam(countForVar, mergedVariantBam);
-		File[] subNorm = subsampleBam(countForUnMod, unModifiedMatchingBamFile);
+		//subsample, the unmodified reads are picked from the other end of the name hashes so they don't share reads with the variant picks
+		File[] subVar = subsampleBam(countForVar, mergedVariantBam, false);
+		File[] subNorm = subsampleBam(countForUnMod, unModifiedMatchingBamFile, true);
 		
 		//merge
 		System.out.println("\nMerging and sorting subsampled bams with filtered bam...");
 		mergeFinals(subVar, subNorm);
 	}
 
-	private File[] subsampleBam(int[] alignmentCounts, File bam) {
-		SamSubsampler ss = new SamSubsampler(bam, verbose);
+	private File[] subsampleBam(int[] alignmentCounts, File bam, boolean fromTop) {
+		SamSubsampler ss = new SamSubsampler(bam, verbose, fromTop);
 		File[] sub = new File[alignmentCounts.length];
 		String name = Misc.removeExtension(bam.getName());
 		for (int i=0; i< alignmentCounts.length; i++){
-			sub[i] = new File(saveDirectory, alignmentCounts[i]+"_"+name+".temp.sam.gz");
+			sub[i] = new File(saveDirectory, alignmentCounts[i]+"_"+name+".temp.bam");
 			sub[i].deleteOnExit();
 			ss.printRandomAlignments(alignmentCounts[i], sub[i]);
 		}
@@ -1,24 +1,30 @@
 package edu.utah.seq.vcf.sim;
 
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.SamReader;
 import htsjdk.samtools.SamReaderFactory;
 import htsjdk.samtools.ValidationStringency;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.HashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import edu.utah.seq.data.sam.PicardSortSam;
 import edu.utah.seq.parsers.SamAlignmentExtractor;
+import edu.utah.seq.query.QueryIndexFileLoader;
 import edu.utah.seq.vcf.xml.foundation.SimpleVcf;
+import util.gen.Gzipper;
 import util.gen.IO;
 import util.gen.Misc;
 import util.gen.Num;
+import util.gen.ParallelRunner;
 
-/**Generates mixes of alignments for tumor normal simulations with BamBlaster
+/**Generates mixes of alignments for tumor normal simulations with BamBlaster. The bams are streamed in coordinate
+ * order, once per chromosome to count the read pairs over each variant and once per mix to write it, read pairs are
+ * picked by a hash of their name so no name sorting is needed and reruns give the same bams.
  * @author Nix
  * */
 public class ExactBamMixer {
@@ -35,13 +41,17 @@ public class ExactBamMixer {
 
 	//internal fields
 	private SamReaderFactory readerFactory = SamReaderFactory.makeDefault().validationStringency(ValidationStringency.SILENT);
-	private BufferedReader vcfIn;
 	private int numberThreads = 0;
-	private static final int numVcfToProc = 100;
-	private BamMixerLoader[] loaders = null;
 	private String vcfHeader = null;
-	private File unModMatchingNameSortedBam = null;
-	private File[] modNameSortedBams = null;
+	private ArrayList<MixVariant> variants = new ArrayList<MixVariant>();
+	private HashMap<String, ArrayList<MixVariant>> chromVariants = new HashMap<String, ArrayList<MixVariant>>();
+	private BamMixerLoader[] loaders = null;
+	/**Name hash of each modified read to its mate bits, see BamMixerLoader.*/
+	private HashMap<Long, Integer> mateBits = new HashMap<Long, Integer>();
+	/**Name hash of each single end realigned read to the position of its modified alignment, see BamMixerLoader.*/
+	private HashMap<Long, int[]> unpairedPositions = new HashMap<Long, int[]>();
+	/**Name hash of each modified read used in a mix to the bits of the fractions using it.*/
+	private HashMap<Long, Integer> selected = new HashMap<Long, Integer>();
 
 
 	public ExactBamMixer (String[] args){
@@ -59,22 +69,14 @@ public class ExactBamMixer {
 	public void doWork(){
 
 		try {
-			createVcfReader();
+			loadVcf();
 
 			parseAlignments();
 
-			concatinateTxtResults();
-			
-			concatinateVcfs();
+			mixVariants();
 
-			concatinateNameSortSams();
-			
-			nameSortUnModified();
-			
 			walkWriteFinalBams();
 
-			vcfIn.close();
-			
 		} catch (Exception e) {
 			e.printStackTrace();
 			System.exit(1);
@@ -83,138 +85,154 @@ public class ExactBamMixer {
 
 	private void walkWriteFinalBams() throws IOException {
 
-		WalkSortSam[] wss = new WalkSortSam[fractions.length];
+		BamMixWalker[] walkers = new BamMixWalker[fractions.length];
 
 		//for each fraction, make a walker
 		for (int i=0; i< fractions.length; i++){
 			File finalBam = new File (saveDirectory, fractions[i]+".bam");
-			wss[i] = new WalkSortSam(modNameSortedBams[i], unModMatchingNameSortedBam, finalBam, unModifiedNoMatchBamFile, i, readGroupName+"_"+fractions[i]);
+			walkers[i] = new BamMixWalker(this, i, selected, mateBits, unpairedPositions, finalBam, readGroupName+"_"+fractions[i]);
 		}
 
 		//run threads
 		int num = fractions.length;
 		if (numberThreads < num) num = numberThreads;
-		IO.pl("Walking unmodified adding alignments for each mix with "+num+" threads...");
-		ExecutorService executor = Executors.newFixedThreadPool(num);
-		for (WalkSortSam l: wss) executor.execute(l);
-		executor.shutdown();
-		while (!executor.isTerminated()) {}
-		for (WalkSortSam l: wss) {
-			if (l.isFailed()) throw new IOException("ERROR: Walk Sort Sam issue! \n");
+		IO.pl("Walking bams writing each mix with "+num+" threads...");
+		ParallelRunner.runAll(walkers, num);
+		for (BamMixWalker w: walkers) {
+			if (w.isFailed()) throw new IOException("ERROR: Bam Mix Walker issue! \n");
 		}
-		
 	}
 
-	private void nameSortUnModified() {
-		IO.pl("Name sorting unmodified matching bam...");
-		unModMatchingNameSortedBam = new File (saveDirectory, Misc.removeExtension(unModifiedMatchingBamFile.getName())+".nameSorted.unmod.bam");
-		unModMatchingNameSortedBam.deleteOnExit();
-		new PicardSortSam (unModifiedMatchingBamFile, unModMatchingNameSortedBam, false);
-	}
-
-	private void concatinateTxtResults() throws IOException {
-		IO.pl("Saving VCF AF stats...");
-		ArrayList<File> toMerge = new ArrayList<File>();
-		//for each loader pull appropriate gzipped file
-		for (int j=0; j< loaders.length; j++) toMerge.add(loaders[j].getTargetVarResults().getGzipFile());
-		File f = new File (saveDirectory, Misc.removeExtension(vcfFile.getName())+".txt.gz");
-		IO.concatinateFiles(toMerge, f);
-	}
-	private void concatinateVcfs() throws IOException {
-		IO.pl("Saving VCFs...");
-		for (int i=0; i< fractions.length; i++){
-			ArrayList<File> toMerge = new ArrayList<File>();
-			//for each loader pull appropriate gzipped file
-			for (int j=0; j< loaders.length; j++) toMerge.add(loaders[j].getVcfWriters()[i].getGzipFile());
+	/**Picks the modified read pairs for each variant and fraction, lowest name hashes first, and saves the VCF AF stats
+	 * and the vcf of the variants in each mix.*/
+	private void mixVariants() throws IOException {
+		IO.pl("Mixing and saving VCF AF stats and VCFs...");
+		Gzipper targetVarResults = new Gzipper(new File (saveDirectory, Misc.removeExtension(vcfFile.getName())+".txt.gz"));
+		Gzipper[] vcfWriters = new Gzipper[fractions.length];
+		for (int i=0; i< fractions.length; i++) {
 			File unsortedVcf = new File (saveDirectory, "unsorted_"+fractions[i]+".vcf.gz");
 			unsortedVcf.deleteOnExit();
-			IO.concatinateFiles(toMerge, unsortedVcf);
-			
-			//sort it
-			File vcf = new File (saveDirectory, fractions[i]+".vcf.gz");
-			SimpleVcf.sortVcf(unsortedVcf, vcf);
+			vcfWriters[i] = new Gzipper(unsortedVcf);
+			vcfWriters[i].println(vcfHeader);
+			targetVarResults.print("TargetAF\tActualAF\t(Mod/UnModAlignPairs)\t");
+		}
+		targetVarResults.println("VcfRecord");
+
+		for (MixVariant v: variants){
+			long[] modNames = v.fetchSortedModifiedNames();
+			double numUnmodified = v.getUnModifiedNames().size();
+			for (int i=0; i< fractions.length; i++) {
+				//calculate number of modified pairs to add
+				int numMod = (int)Math.round(fractions[i] * numUnmodified);
+				if (numMod < minNumAltReads) {
+					targetVarResults.print(fractions[i]+"\t0\tSkippedTooFewMod(" +numMod+ "/"+ (int)numUnmodified+")\t");
+				}
+				else if (numMod > modNames.length) {
+					targetVarResults.print(fractions[i]+"\t0\tSkippedNotEnoughMod(" +modNames.length+ "/"+ (int)numUnmodified+")\t");
+				}
+				else {
+					double actAF = (double)numMod / (numUnmodified);
+					targetVarResults.print(fractions[i]+"\t"+ Num.formatNumber(actAF, 4)+ "\t(" +numMod+ "/"+ (int)numUnmodified+")\t");
+					vcfWriters[i].println(v.getRecord());
+					for (int m=0; m< numMod; m++) {
+						Integer bits = selected.get(modNames[m]);
+						selected.put(modNames[m], (bits == null ? 0 : bits) | (1 << i));
+					}
+				}
+			}
+			targetVarResults.println(v.getRecord());
+		}
+		targetVarResults.close();
+
+		//sort the vcfs
+		for (int i=0; i< fractions.length; i++){
+			vcfWriters[i].close();
+			SimpleVcf.sortVcf(vcfWriters[i].getGzipFile(), new File (saveDirectory, fractions[i]+".vcf.gz"));
 		}
 	}
 
 	private void parseAlignments() throws IOException {
-		IO.pl("Loading and mixing alignments with "+numberThreads+" threads...");
-
-		//make Loaders
-		loaders = new BamMixerLoader[numberThreads];
-		for (int i=0; i< loaders.length; i++) loaders[i] = new BamMixerLoader(injectedBamFile, unModifiedMatchingBamFile, this, i);
+		IO.pl("Loading alignments with "+numberThreads+" threads...");
+
+		//one loader per chromosome, all are scanned for modified mates
+		SamReader reader = readerFactory.open(injectedBamFile);
+		SAMSequenceDictionary dict = reader.getFileHeader().getSequenceDictionary();
+		reader.close();
+		checkDictionary(dict, unModifiedMatchingBamFile);
+		checkDictionary(dict, unModifiedNoMatchBamFile);
+		ArrayList<MixVariant> none = new ArrayList<MixVariant>();
+		loaders = new BamMixerLoader[dict.size()];
+		for (int i=0; i< loaders.length; i++) {
+			String chr = dict.getSequence(i).getSequenceName();
+			ArrayList<MixVariant> al = chromVariants.get(chr);
+			loaders[i] = new BamMixerLoader(chr, al == null ? none : al, this);
+		}
 
 		//parse alignments
-		ExecutorService executor = Executors.newFixedThreadPool(numberThreads);
-		for (BamMixerLoader l: loaders) executor.execute(l);
-		executor.shutdown();
-		while (!executor.isTerminated()) {}
+		ParallelRunner.runAll(loaders, numberThreads);
 		for (BamMixerLoader l: loaders) {
 			if (l.isFailed()) throw new IOException("ERROR: File Loader issue! \n");
-		}
-	}
-
-	private void concatinateNameSortSams() throws IOException {
-
-		CatSortSam[] css = new CatSortSam[fractions.length];
-		modNameSortedBams = new File[fractions.length];
-
-		//for each fraction
-		for (int i=0; i< fractions.length; i++){
-			ArrayList<File> toMerge = new ArrayList<File>();
-			//for each loader pull appropriate gzipped file
-			for (int j=0; j< loaders.length; j++) toMerge.add(loaders[j].getSamWriters()[i].getGzipFile());
-			modNameSortedBams[i] = new File (saveDirectory, fractions[i]+".nameSorted.mod.bam");
-			modNameSortedBams[i].deleteOnExit();
-			css[i] = new CatSortSam(toMerge, modNameSortedBams[i], i);
+			for (Long hash: l.getMateBits().keySet()){
+				Integer bits = mateBits.get(hash);
+				mateBits.put(hash, (bits == null ? 0 : bits) | l.getMateBits().get(hash));
+			}
+			for (Long hash: l.getUnpairedPositions().keySet()){
+				if (unpairedPositions.containsKey(hash) == false) unpairedPositions.put(hash, l.getUnpairedPositions().get(hash));
+			}
 		}
 
-		//run threads
-		int num = fractions.length;
-		if (numberThreads < num) num = numberThreads;
-		IO.pl("Combining and sorting sams with "+num+" threads...");
-		ExecutorService executor = Executors.newFixedThreadPool(num);
-		for (CatSortSam l: css) executor.execute(l);
-		executor.shutdown();
-		while (!executor.isTerminated()) {}
-		for (CatSortSam l: css) {
-			if (l.isFailed()) throw new IOException("ERROR: Cat Sort Sam issue! \n");
+		//variants on chromosomes without alignments
+		for (String chr: chromVariants.keySet()){
+			if (dict.getSequence(chr) == null) IO.el("WARNING: no alignments for "+chr+", its variants will be skipped.");
 		}
 	}
 
-	/**Loads the AL with vcf lines up to the numVcfToProc, if none could be read, returns false, otherwise true.*/
-	public synchronized boolean loadVcfRecords(ArrayList<String> chunk) throws IOException{
-		String record;
-		int count = 0;
-		while ((record = vcfIn.readLine()) != null){
-			record = record.trim();
-			if (record.length() == 0) continue;
-			chunk.add(record);
-			if (count++ > numVcfToProc) break;
+	/**The mixes are merged by coordinate so the bams must share the same sequences in the same order.*/
+	private void checkDictionary(SAMSequenceDictionary dict, File bam) throws IOException{
+		SamReader reader = readerFactory.open(bam);
+		SAMSequenceDictionary other = reader.getFileHeader().getSequenceDictionary();
+		reader.close();
+		boolean same = dict.size() == other.size();
+		for (int i=0; same && i< dict.size(); i++){
+			SAMSequenceRecord a = dict.getSequence(i);
+			SAMSequenceRecord b = other.getSequence(i);
+			if (a.getSequenceName().equals(b.getSequenceName()) == false || a.getSequenceLength() != b.getSequenceLength()) same = false;
 		}
-
-		if (chunk.size() == 0) return false;
-		return true;
+		if (same == false) throw new IOException("ERROR: the sequence dictionaries in "+injectedBamFile.getName()+" and "+bam.getName()+" differ, all must be aligned to the same reference.");
 	}
 
-	private void createVcfReader() throws Exception {
-		vcfIn = IO.fetchBufferedReader(vcfFile);
+	private void loadVcf() throws Exception {
+		BufferedReader vcfIn = IO.fetchBufferedReader(vcfFile);
 		ArrayList<String> vcfHeaderAl = new ArrayList<String>();
 		String record;
 		boolean endFound = false;
-		//advance to just before the first vcf record
 		while ((record = vcfIn.readLine()) != null){
 			record = record.trim();
 			if (record.length() == 0) continue;
 			if (record.startsWith("#")){
+				if (endFound) continue;
 				vcfHeaderAl.add(record);
-				if (record.startsWith("#CHROM")){
-					endFound = true;
-					break;
-				}
+				if (record.startsWith("#CHROM")) endFound = true;
+				continue;
+			}
+			if (endFound == false) break;
+			//#CHROM	POS	ID	REF	ALT	QUAL	FILTER	INFO	FORMAT	NORMAL	TUMOR
+			String[] vcfFields = Misc.TAB.split(record);
+			int[] interbaseStartStop = QueryIndexFileLoader.fetchEffectedBps(vcfFields, false);
+			if (interbaseStartStop == null) throw new IOException("WARNING: Failed to parse the effected bps for : "+record);
+			MixVariant v = new MixVariant(record, vcfFields[0], interbaseStartStop[0], interbaseStartStop[1]);
+			variants.add(v);
+			ArrayList<MixVariant> al = chromVariants.get(vcfFields[0]);
+			if (al == null) {
+				al = new ArrayList<MixVariant>();
+				chromVariants.put(vcfFields[0], al);
 			}
+			al.add(v);
 		}
+		vcfIn.close();
 		if (endFound == false) Misc.printErrAndExit("\nERROR: failed to find the #CHROM line in the vcf file, aborting\n");
 		vcfHeader = Misc.stringArrayListToString(vcfHeaderAl, "\n");
+		IO.pl("Loaded "+variants.size()+" variants");
 	}
 
 	public static void main(String[] args) {
@@ -257,6 +275,7 @@ public class ExactBamMixer {
 		}
 		//diff fractions than defaults?
 		if (frac != null) fractions = Num.parseDoubles(Misc.COMMA.split(frac));
+		if (fractions.length > 31) Misc.printErrAndExit("Error: please provide 31 or fewer fractions to mix.\n");
 
 		//check bams
 		if (injectedBamFile == null || injectedBamFile.canRead() == false) Misc.printErrAndExit("Error: please proved a sorted bam alignment file containing the merged paired and single end alignments from aligning the fastq.gz files from your BamBlaster run.\n");
@@ -279,13 +298,14 @@ public class ExactBamMixer {
 	public static void printDocs(){
 		System.out.println("\n" +
 				"**************************************************************************************\n" +
-				"**                              Exact Bam Mixer : May 2020                          **\n" +
+				"**                              Exact Bam Mixer : Oct 2026                          **\n" +
 				"**************************************************************************************\n" +
 				"Combines bam alignment files in different fractions to simulate multiple variant\n"+
-				"frequencies. Run BamBlaster first. Threaded, so provide almost all the memory available\n"+
-				"to java. The ExactBamMixer attempts to create bam files containing variants will very\n"+
-				"similar AFs.  The BamMixer produces more of a spread of AFs. Ignore Picard and log4j\n"+
-				"NOTE and ERROR output. These are just warnings from Picard that can't be silenced.\n\n"+
+				"frequencies. Run BamBlaster first. The ExactBamMixer attempts to create bam files\n"+
+				"containing variants with very similar AFs.  The BamMixer produces more of a spread of\n"+
+				"AFs. Alignments are streamed in coordinate order, chromosomes and mixes in parallel,\n"+
+				"read pairs are picked by a hash of their name so reruns give the same bams, and each\n"+
+				"mix is written sorted and indexed without name sorting or temp sam files.\n\n"+
 
 				"Required:\n"+
 				"-r Path to a directory to save the results\n" +
@@ -303,7 +323,7 @@ public class ExactBamMixer {
 				"     bam, defaults to 2\n"+
 				"-n Name to prepend onto the read group, defaults to EBM\n"+
 
-				"\nExample: java -Xmx100G -jar pathTo/USeq/Apps/ExactBamMixer -r ~/TumorSim/ -v snv.vcf\n"+
+				"\nExample: java -Xmx10G -jar pathTo/USeq/Apps/ExactBamMixer -r ~/TumorSim/ -v snv.vcf\n"+
 				"    -u bb_unmodified.bam -f bb_filtered.bam -i bb_mergedReAlign.bam -n Snv\n\n" +
 
 				"**************************************************************************************\n");
@@ -321,6 +341,14 @@ public class ExactBamMixer {
 		return saveDirectory;
 	}
 
+	public File getInjectedBamFile() {
+		return injectedBamFile;
+	}
+
+	public File getUnModifiedMatchingBamFile() {
+		return unModifiedMatchingBamFile;
+	}
+
 	public File getUnModifiedNoMatchBamFile() {
 		return unModifiedNoMatchBamFile;
 	}
@@ -0,0 +1,64 @@
+package edu.utah.seq.vcf.sim;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**A vcf record used by the ExactBamMixer with the hashed names of the modified and unmodified read pairs whose
+ * alignment blocks overlap it.*/
+public class MixVariant implements Comparable<MixVariant>{
+
+	//fields
+	private String record;
+	private String chromosome;
+	private int start;
+	private int stop;
+	private HashSet<Long> modifiedNames = new HashSet<Long>();
+	private HashSet<Long> unModifiedNames = new HashSet<Long>();
+
+	/**@param start interbase start of the effected bps
+	 * @param stop interbase stop*/
+	public MixVariant (String record, String chromosome, int start, int stop){
+		this.record = record;
+		this.chromosome = chromosome;
+		this.start = start;
+		this.stop = stop;
+	}
+
+	/**Returns the modified name hashes in ascending order, mixes take the first n, so lower fractions are nested in
+	 * higher ones and reruns pick the same reads.*/
+	public long[] fetchSortedModifiedNames(){
+		long[] names = new long[modifiedNames.size()];
+		int index = 0;
+		for (Long l: modifiedNames) names[index++] = l;
+		Arrays.sort(names);
+		return names;
+	}
+
+	/**Sorts by start then stop.*/
+	public int compareTo(MixVariant other) {
+		if (start < other.start) return -1;
+		if (start > other.start) return 1;
+		if (stop < other.stop) return -1;
+		if (stop > other.stop) return 1;
+		return 0;
+	}
+
+	public String getRecord() {
+		return record;
+	}
+	public String getChromosome() {
+		return chromosome;
+	}
+	public int getStart() {
+		return start;
+	}
+	public int getStop() {
+		return stop;
+	}
+	public HashSet<Long> getModifiedNames() {
+		return modifiedNames;
+	}
+	public HashSet<Long> getUnModifiedNames() {
+		return unModifiedNames;
+	}
+}
@@ -2,8 +2,6 @@ package edu.utah.seq.vcf.splice;
 
 import java.io.*;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.regex.*;
 import htsjdk.samtools.AlignmentBlock;
 import htsjdk.samtools.QueryInterval;
@@ -99,10 +97,7 @@ public class KnownSpliceJunctionScanner {
 
 		try {
 			//launch em!
-			ExecutorService executor = Executors.newFixedThreadPool(numberThreads);
-			for (KnownSpliceLoader l: loaders) executor.execute(l);
-			executor.shutdown();
-			while (!executor.isTerminated()) {}  //wait here until complete
+			ParallelRunner.runAll(loaders, numberThreads);
 
 			//check loaders 
 			for (KnownSpliceLoader l: loaders) {
@@ -2,8 +2,6 @@ package edu.utah.seq.vcf.splice;
 
 import java.io.*;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.regex.*;
 import htsjdk.samtools.AlignmentBlock;
 import htsjdk.samtools.QueryInterval;
@@ -232,10 +230,7 @@ public class VCFSpliceScanner {
 				}
 				
 				//launch em!
-				ExecutorService executor = Executors.newFixedThreadPool(numLoadersToCreate);
-				for (SpliceAnnotationLoader l: loaders) executor.execute(l);
-				executor.shutdown();
-				while (!executor.isTerminated()) {}  //wait here until complete
+				ParallelRunner.runAll(loaders, numLoadersToCreate);
 
 				//check loaders 
 				for (SpliceAnnotationLoader l: loaders) {
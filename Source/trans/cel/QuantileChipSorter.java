@@ -0,0 +1,90 @@
+package trans.cel;
+
+/**Index sorts one chip's intensities for QuantileNormalization without making a Quantile per probe.
+ * sort() replaces the values with their sorted order and saves the permutation, scatter() puts the averaged
+ * values back in their original positions.*/
+public class QuantileChipSorter implements Runnable {
+
+	//fields
+	private float[] values;
+	private int[] order;
+	private float[] rankAverages = null;
+	private float targetMedian = 0;
+	private double rawMedian = 0;
+	private boolean failed = false;
+
+	/**Set targetMedian to 0 to skip median scaling.*/
+	public QuantileChipSorter(float[] values, float targetMedian){
+		this.values = values;
+		this.targetMedian = targetMedian;
+	}
+
+	public void run(){
+		try {
+			if (rankAverages == null) sort();
+			else scatter();
+		} catch (Exception e){
+			failed = true;
+			e.printStackTrace();
+		}
+	}
+
+	/**Sorts the values smallest to biggest, ties stay in position order just like Arrays.sort with ComparatorQuantile.
+	 * The value bits and the position are packed into one long so a primitive sort does it all.*/
+	private void sort(){
+		int num = values.length;
+		long[] keys = new long[num];
+		for (int i=0; i< num; i++) keys[i] = (((long)sortableBits(values[i])) << 32) | i;
+		java.util.Arrays.sort(keys);
+		order = new int[num];
+		float[] sorted = new float[num];
+		for (int i=0; i< num; i++) {
+			order[i] = (int)keys[i];
+			sorted[i] = values[order[i]];
+		}
+		keys = null;
+		System.arraycopy(sorted, 0, values, 0, num);
+
+		//median scale
+		if (targetMedian != 0){
+			rawMedian = median(values);
+			if (rawMedian == 0) return;
+			double scalar = ((double)targetMedian)/rawMedian;
+			for (int i=num-1; i>=0; i--) values[i] *= scalar;
+		}
+	}
+
+	/**Writes the rank averages back into their original positions.*/
+	private void scatter(){
+		for (int i=order.length-1; i>=0; i--) values[order[i]] = rankAverages[i];
+		order = null;
+	}
+
+	/**Flips the float bits so signed int order matches numeric order. -0 is folded into 0 to match the comparator.*/
+	private static int sortableBits(float f){
+		if (f == 0) return 0;
+		int bits = Float.floatToIntBits(f);
+		return bits ^ ((bits >> 31) & 0x7fffffff);
+	}
+
+	/**Median of a sorted float[], same math as QuantileNormalization.fetchMedianQuantileValue().*/
+	private static double median(float[] sorted){
+		int middle = sorted.length/2;
+		if (sorted.length%2 == 1) return sorted[middle];
+		return ((double)sorted[middle-1] + (double)sorted[middle]) / 2.0;
+	}
+
+	/**Call after sorting to switch this to scatter mode.*/
+	public void setRankAverages(float[] rankAverages) {
+		this.rankAverages = rankAverages;
+	}
+	public float[] getSortedValues() {
+		return values;
+	}
+	public double getRawMedian() {
+		return rawMedian;
+	}
+	public boolean isFailed() {
+		return failed;
+	}
+}
@@ -1,5 +1,8 @@
 package trans.cel;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.io.*;
 
 import trans.tpmap.MummerMapper;
@@ -29,12 +32,13 @@ public class QuantileNormalization {
 	private int[][] controlIndexes;
 	private float targetMedian =250; 
 	private boolean useMMData = false;
-	private ComparatorQuantile quantileComparator= null;
+	private ComparatorQuantile quantileComparator= new ComparatorQuantile(true);
 	private boolean scaleByControlStats = false;	
 	private ControlStats[] controlStats;
 	private  ArrayList tpmapInfo;
 	private String[] controlChromosomeNames = {"chrGapdh", "chrActb"};
 	private double[] modelValuesForScaling = {30, 900, 1200};
+	private int numberThreads = Runtime.getRuntime().availableProcessors();
 
 	public QuantileNormalization(){}
 	
@@ -66,40 +70,112 @@ public class QuantileNormalization {
 	}
 	
 	//methods
-	/**Performs a median scaling then quantile normalization of the loaded float[replicas][intensities].*/
+	/**Performs a median scaling then quantile normalization of the loaded float[replicas][intensities].
+	 * Works on primitive arrays, each chip is index sorted in its own thread and the rank averages are
+	 * calculated in blocks across chips, results match the Quantile[][] version. The normalized values
+	 * replace the intensities, no Quantile[][] is made.*/
 	public void quantileNormalize(){
-		//convert arrays to Quantile arrays
-		System.out.println("\tMaking Quantiles...");
-		quantiles = makeQuantiles(intensities);
-		intensities = null;
-		
-		//sort Quantile arrays by intensity value
-		quantileComparator = new ComparatorQuantile(true);
-		System.out.println("\tSorting Quantiles by intensity...");
-		sortQuantileArrays(quantiles);
+		int numChips = intensities.length;
+		int numValues = intensities[0].length;
 		
-		//no control indexes therefore median scale by all mapped intensities  
-		if (controlIndexes == null){
-			System.out.println("\tScaling intensities to a median of "+targetMedian+"...");
-			scaleQuantileArraysByMedian(quantiles, targetMedian);
+		//no control indexes therefore median scale by all mapped intensities
+		float medianToScaleTo = 0;
+		if (controlIndexes == null) {
+			medianToScaleTo = targetMedian;
+			System.out.println("\tSorting intensities and scaling to a median of "+targetMedian+"...");
 		}
- 
-		//normalize the scores
+		else System.out.println("\tSorting intensities...");
+		QuantileChipSorter[] sorters = new QuantileChipSorter[numChips];
+		for (int i=0; i< numChips; i++) sorters[i] = new QuantileChipSorter(intensities[i], medianToScaleTo);
+		runThreads(sorters);
+		for (int i=0; i< numChips; i++) {
+			if (sorters[i].isFailed()) Misc.printExit("\nError: failed to sort the intensities from "+celaMapFiles[i]+"\n");
+			if (controlIndexes == null){
+				double actualMedian = sorters[i].getRawMedian();
+				System.out.println("\t\tRaw Median "+actualMedian);
+				if (actualMedian == 0) Misc.printExit("\nError: median of a file is zero! Check your xxx.cela conversions. Use the -s flag to find the file.\n");
+			}
+		}
+		
+		//average the ranks across chips
 		System.out.println("\tAveraging Quantiles...");
-		normalizeQuantileArrayScores(quantiles); 
+		float[] rankAverages = new float[numValues];
+		int numBlocks = numberThreads * 4;
+		int blockSize = numValues/numBlocks + 1;
+		ArrayList<QuantileRankAverager> averagers = new ArrayList<QuantileRankAverager>();
+		for (int start = 0; start < numValues; start+= blockSize){
+			int stop = start + blockSize;
+			if (stop > numValues) stop = numValues;
+			averagers.add(new QuantileRankAverager(intensities, rankAverages, start, stop));
+		}
+		runThreads(averagers.toArray(new Runnable[averagers.size()]));
 		
-		//sort Quantile Arrays by original position
-		System.out.println("\tResorting Quantiles by original position...");
-		quantileComparator.setSortByValue(false);
-		sortQuantileArrays(quantiles);
+		//put them back in their original positions
+		System.out.println("\tRestoring original positions...");
+		for (QuantileChipSorter s: sorters) s.setRankAverages(rankAverages);
+		runThreads(sorters);
+		for (int i=0; i< numChips; i++) {
+			if (sorters[i].isFailed()) Misc.printExit("\nError: failed to restore the intensities from "+celaMapFiles[i]+"\n");
+		}
 
 		//median scale by control intensities?
 		if (controlIndexes != null){
 			System.out.println("\tScaling intensities based on the median of the control oligos. CompositCNV-> "+targetMedian+"....");
-			scaleQuantileArraysByControlIntensities();
+			scaleIntensitiesByControlIntensities();
+		}
+	}
+	
+	/**Runs the jobs in a fixed thread pool and waits for them to finish.*/
+	private void runThreads(Runnable[] jobs){
+		int num = Math.min(numberThreads, jobs.length);
+		if (num < 1) num = 1;
+		ExecutorService executor = Executors.newFixedThreadPool(num);
+		for (Runnable r: jobs) executor.execute(r);
+		executor.shutdown();
+		try {
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+			Misc.printExit("\nError: interrupted while quantile normalizing.\n");
 		}
 	}
 	
+	/**Same as scaleQuantileArraysByControlIntensities() but for the position ordered intensities.*/
+	public void scaleIntensitiesByControlIntensities(){
+		for (int i=0; i<intensities.length; i++){
+			float[] ctrlInt = fetchControlIntensities(intensities[i]);
+			//too few control values?
+			if (ctrlInt.length<25) Misc.printExit("\nError: too few control intensities! (<25) Did you " +
+					"include a 'chromosome' fasta file named and headed '"+
+					MummerMapper.controlChromosomeName+" loaded with control genomic sequences " +
+							"when making your tpmap?\n");
+			Arrays.sort(ctrlInt);
+			double actualMedian = Num.median(ctrlInt);
+			System.out.println("\t\tRaw Control Median "+actualMedian);
+			if (actualMedian == 0) Misc.printExit("\nError: median of control sequences is zero! " +
+					"Check your xxx.cela conversions. Use the -s flag to find the file.\n");
+			double scalar = ((double)targetMedian)/actualMedian;
+			float[] values = intensities[i];
+			for (int j=values.length-1; j>=0; j--) values[j] *=scalar;
+		}
+	}
+	
+	/**Same as fetchControlIntensities(Quantile[]) for a position ordered float[].*/
+	public float[] fetchControlIntensities(float[] positionOrdered){
+		float[] ctrl = new float[controlIndexes.length];
+		for (int i=0; i< controlIndexes.length; i++){
+			int[] dupIndexes = controlIndexes[i];
+			float[] values = new float[dupIndexes.length];
+			for (int j=0; j< dupIndexes.length; j++){
+				if (useMMData) values[j]=positionOrdered[dupIndexes[j]*2];
+				else values[j]=positionOrdered[dupIndexes[j]];
+			}
+			Arrays.sort(values);
+			ctrl[i] = new Double(Num.median(values)).floatValue();
+		}
+		return ctrl;
+	}
+	
 	/**Uses a cubic spline and user defined regions to non-linearly scale the data.*/
 	public void splineNormalize(){
 		//convert arrays to Quantile arrays
@@ -287,8 +363,12 @@ public class QuantileNormalization {
 	}
 	
 	/**Takes the Quantile[][], fetches the float[] values for each, nulls the Quantile[], saves the float[] to disk.
-	 * Transforms the data if mm is present.*/
+	 * Transforms the data if mm is present. After quantileNormalize() there are no Quantiles so the intensities are saved.*/
 	public void saveAndNullQuantiles(){
+		if (quantiles == null) {
+			saveIntensities();
+			return;
+		}
 		int numColumns = quantiles.length;
 		int numRows = quantiles[0].length;
 		intensities = new float[numColumns][];
@@ -456,6 +536,7 @@ public class QuantileNormalization {
 	/**Extracts out the normalized values regenerating the original float[][] except
 	 * the scores have been quantile normalized.*/
 	public float[][] extractNormalizedValues(){
+		if (quantiles == null) return intensities;
 		int numColumns = quantiles.length;
 		int numValues = quantiles[0].length;
 		
@@ -468,7 +549,7 @@ public class QuantileNormalization {
 		return q;		
 	}
 	
-	/** Fetches an array of sorted normalized Quantiles*/
+	/** Fetches an array of sorted normalized Quantiles, null after quantileNormalize()*/
 	public Quantile[][] getQuantiles() {
 		return quantiles;
 	}
@@ -520,6 +601,10 @@ public class QuantileNormalization {
 		this.modelValuesForScaling = modelValuesForScaling;
 	}
 
+	public void setNumberThreads(int numberThreads) {
+		this.numberThreads = numberThreads;
+	}
+
 	public File[] getCelpFiles() {
 		return celpFiles;
 	}
@@ -0,0 +1,30 @@
+package trans.cel;
+
+/**Averages a block of ranks across value sorted chips for QuantileNormalization. Each chip's column is added in chip
+ * order so the float sums match the original row by row Quantile[][] averaging.*/
+public class QuantileRankAverager implements Runnable {
+
+	//fields
+	private float[][] sortedChips;
+	private float[] rankAverages;
+	private int startRank;
+	private int stopRank;
+
+	/**Stop rank is excluded.*/
+	public QuantileRankAverager(float[][] sortedChips, float[] rankAverages, int startRank, int stopRank){
+		this.sortedChips = sortedChips;
+		this.rankAverages = rankAverages;
+		this.startRank = startRank;
+		this.stopRank = stopRank;
+	}
+
+	public void run(){
+		float columns = sortedChips.length;
+		for (int i=startRank; i< stopRank; i++) rankAverages[i] = 0;
+		for (int j=0; j< sortedChips.length; j++){
+			float[] chip = sortedChips[j];
+			for (int i=startRank; i< stopRank; i++) rankAverages[i] += chip[i];
+		}
+		for (int i=startRank; i< stopRank; i++) rankAverages[i] = rankAverages[i]/columns;
+	}
+}
@@ -1,6 +1,5 @@
 package util.apps;
 import java.io.*;
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -37,41 +36,11 @@ public class FindSharedRegions {
 				if (sub2 == null) continue;
 				System.out.println("\t"+chrom);
 
-				//make boolean of covered bps
-				int lastBase1 = sub1[sub1.length -1].getStop();
-				boolean[] coveredBps1 = new boolean[lastBase1 +1];
-				Arrays.fill(coveredBps1, false);
+				//intersect with a sweep over the sorted regions
+				int[][] blocks = RegionAlgebra.filterLength(RegionAlgebra.intersect(fetchBlocks(sub1), fetchBlocks(sub2)), minimumLength);
 				
-				//for each region flip to false
-				for (int i=0; i< sub1.length; i++){
-					int start = sub1[i].getStart();
-					if (start < 0) start = 0;
-					int stop = sub1[i].getStop();
-					for (int k=start; k< stop; k++) coveredBps1[k] = true;
-				}
-				
-				boolean[] commonBPs = new boolean[ coveredBps1.length];
-				Arrays.fill(commonBPs, true);
-				
-				//for each region flip to false
-				for (int i=0; i< sub2.length; i++){
-					int start = sub2[i].getStart();
-					if (start < 0) start = 0;
-					int stop = sub2[i].getStop();
-					for (int k=start; k< stop; k++) {
-						if (k > lastBase1) break;
-						if (coveredBps1[k]) commonBPs[k] = false;
-					}
-				}
-				
-				//write out blocks
-				int[][] blocks = ExportIntergenicRegions.fetchFalseBlocks(commonBPs, 0, minimumLength);
-				
-				for (int j=0; j< blocks.length; j++){
-					bedOut.println(chrom+"\t"+ blocks[j][0]+ "\t"+ (blocks[j][1]+1));
-					lenSharedRegions+= ((blocks[j][1]+1) - blocks[j][0]);
-				}
-				numSharedRegions+= blocks.length;
+				numSharedRegions+= RegionAlgebra.printBed(chrom, blocks, bedOut);
+				lenSharedRegions+= RegionAlgebra.countBases(blocks);
 			}
 			bedOut.close();
 			
@@ -87,6 +56,16 @@ public class FindSharedRegions {
 	}
 
 
+	private static int[][] fetchBlocks(RegionScoreText[] regions){
+		int[][] blocks = new int[regions.length][];
+		for (int i=0; i< regions.length; i++) {
+			int start = regions[i].getStart();
+			if (start < 0) start = 0;
+			blocks[i] = new int[]{start, regions[i].getStop()};
+		}
+		return blocks;
+	}
+
 	public static void main(String[] args) {
 		if (args.length ==0){
 			printDocs();
@@ -133,7 +112,7 @@ public class FindSharedRegions {
 	public static void printDocs(){
 		System.out.println("\n" +
 				"**************************************************************************************\n" +
-				"**                            Find Shared Regions: Dec 2018                         **\n" +
+				"**                            Find Shared Regions: Oct 2026                         **\n" +
 				"**************************************************************************************\n" +
 				"Writes out a bed file of shared regions. Interbase coordinates.\n\n"+
 
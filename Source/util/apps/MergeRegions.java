@@ -1,10 +1,7 @@
 package util.apps;
 import java.io.*;
 
-import trans.anno.GenomicRegion;
-import trans.anno.GenomicRegionComparator;
-import util.bio.seq.OligoTiler;
-import util.bio.seq.Seq;
+import util.bio.annotation.RegionAlgebra;
 import util.gen.*;
 
 import java.util.*;
@@ -51,70 +48,25 @@ public class MergeRegions {
 		doWork();
 	}
 	
+	/**Streams each file keeping just the start and stop of each region by chromosome, then sweeps the sorted endpoints.
+	 * Memory scales with the number of regions, not the chromosome lengths.*/
 	public void doWork(){
-		//load and sort all of the regions
-		GenomicRegion[][] regions = new GenomicRegion[regionFiles.length][];
-		GenomicRegionComparator comp = new GenomicRegionComparator();
-		for (int i=0; i<regionFiles.length; i++) {
-			regions[i] = GenomicRegion.parseRegions(regionFiles[i]);
-			if (pad !=0) for (GenomicRegion g: regions[i]) g.pad(pad);
-			numberRegions+= regions[i].length;
-			Arrays.sort(regions[i], comp);
-		}
-		
-		//find all chromosomes and the maxBase
-		TreeMap<String, Integer> map = new TreeMap<String, Integer>();
-		for (int i=0; i<regions.length; i++){
-			for (int j=0; j< regions[i].length; j++){
-				//does chromosome exist
-				Integer max = map.get(regions[i][j].getChromosome());
-				if (max == null){
-					map.put(regions[i][j].getChromosome(), new Integer(regions[i][j].getEnd()));
-				}
-				//exists, reset maxBase?
-				else {
-					int num = max.intValue();
-					if (regions[i][j].getEnd() > num) map.put(regions[i][j].getChromosome(), new Integer(regions[i][j].getEnd()));
-				}
-			}
-		}
-		
-		//for each chromosome make merge
-		Iterator<String> it = map.keySet().iterator();
-		
 		try {
+			//load the endpoints
+			TreeMap<String, RegionAlgebra.Endpoints> chromEndpoints = new TreeMap<String, RegionAlgebra.Endpoints>();
+			for (int i=0; i<regionFiles.length; i++) numberRegions+= RegionAlgebra.loadEndpoints(regionFiles[i], pad, chromEndpoints);
+
 			PrintWriter out = new PrintWriter( new FileWriter( mergedFile));
 			if (printHeader) {
 				out.println("# MinOverlap\t"+ minimumCount);
 				out.println("# BpPadding\t"+ pad);
 				for (File f: regionFiles) out.println("# "+f.getCanonicalPath());
 			}
-			while (it.hasNext()){
-				//get text of chromosome and maxBase
-				String chrom = it.next();
+			//for each chromosome make merge
+			for (String chrom: chromEndpoints.keySet()){
 				if (verbose) IO.p(chrom+" ");
-				int maxBase =map.get(chrom);
-				//make boolean array to hold whether it's flagged, initially they are all false
-				//boolean[] bps = new boolean[maxBase+1];
-				int[] bpsCounts = new int[maxBase+1];
-				//for each GenomicRegion[] scan and throw booleans to true
-				for (int i=0; i<regions.length; i++){
-					boolean found = false;
-					for (int j=0; j< regions[i].length; j++){
-						//correct chromosome?
-						if (regions[i][j].getChromosome().equals(chrom)){
-							int stop = regions[i][j].getEnd();
-							for (int k=regions[i][j].getStart(); k< stop; k++){
-								//bps[k] = true;
-								bpsCounts[k]++;
-							}
-							found = true;
-						}
-						else if (found) break;
-					}
-				}
-				//print merged chrom
-				print(chrom, thresholdCountArray(bpsCounts), out);
+				int[][] blocks = chromEndpoints.get(chrom).minimumCoverage(minimumCount);
+				numberMergedRegions+= RegionAlgebra.printBed(chrom, blocks, out);
 			}
 			if (verbose) IO.pl();
 			out.close();
@@ -123,36 +75,6 @@ public class MergeRegions {
 		}
 	}
 	
-	public boolean[] thresholdCountArray(int[] counts) {
-		boolean[] bps = new boolean[counts.length];
-		for (int i=0; i< counts.length; i++) if (counts[i]>=minimumCount) bps[i]=true;
-		return bps;
-	}
-	
-	public void print(String chromosome, boolean[] bps, PrintWriter out){
-		boolean in = false;
-		int i=0;
-		for (; i<bps.length; i++){
-			//start new line?
-			if (bps[i] && in==false){
-				out.print(chromosome+"\t"+i+"\t");
-				in = true;
-			}
-			//close old?
-			else if (in && bps[i] == false){
-				out.println(i);
-				in = false;
-				numberMergedRegions++;
-			}
-		}
-		//close old?
-		if (in){
-			if (bps[i-1]) out.println(i);
-			else out.println(i-1);
-			numberMergedRegions++;
-		}
-	}
-	
 	public static void main(String[] args) {
 		if (args.length ==0){
 			printDocs();
@@ -203,7 +125,7 @@ public class MergeRegions {
 	public static void printDocs(){
 		System.out.println("\n" +
 				"**************************************************************************************\n" +
-				"**                             Merge Regions: March 2021                            **\n" +
+				"**                             Merge Regions: Oct 2026                              **\n" +
 				"**************************************************************************************\n" +
 				"Flattens tab delimited bed files (chr start stop ...). Assumes interbase coordinates.\n" +
 				"Set the -m threshold to restrict the output to bps with that minimum of overlapping\n"+
@@ -211,7 +133,7 @@ public class MergeRegions {
 
 				"\nOptions:\n"+
 				"-r Path to a region file or directory containing such, xxx.gz/xxx.zip OK.\n"+
-				"-m Minimum overlapping bp to save, defaults to 1\n"+
+				"-m Minimum overlapping regions for a bp to save, defaults to 1\n"+
 				"-p Pad input regions +/- bps, defaults to 0\n"+
 				"-o Path to the merged output file, optional\n"+
 
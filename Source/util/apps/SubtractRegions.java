@@ -33,6 +33,7 @@ public class SubtractRegions {
 		}
 	}
 
+	/**Clips each region by the masks with a sweep over the sorted regions, the pieces are written in order.*/
 	public void mask (Coordinate[] coor, File toSave){		
 		try {
 			PrintWriter out = new PrintWriter (new FileWriter (toSave));
@@ -40,45 +41,12 @@ public class SubtractRegions {
 			HashMap chrCoor = Coordinate.splitByChromosome(coor);
 			//for each chromosome
 			Iterator it = chrCoor.keySet().iterator();
-			Coordinate[] mask;
-			Coordinate[] forReduction;
 			while (it.hasNext()){
 				String chromosome = (String) it.next();
-				mask = (Coordinate[])maskerCoor.get(chromosome);
-				forReduction = (Coordinate[])chrCoor.get(chromosome);
-				//convert to arraylist
-				ArrayList forReductionAL = new ArrayList(forReduction.length);
-				for (int i=0; i< forReduction.length; i++) forReductionAL.add(forReduction[i]);
-				
-				//for each region to be reduced
-				while (forReductionAL.size() !=0){
-					Coordinate region = (Coordinate) forReductionAL.remove(0);
-					if (mask !=null){
-						//for each masked region
-						for (int j=0; j< mask.length; j++){
-							Coordinate[] pair = Coordinate.subtract (region, mask[j]);
-							//completely covered?
-							if (pair == null) {
-								region = null;
-								break;
-							}
-							//trimmed
-							else if (pair.length == 1){
-								region = pair[0];
-							}
-							//center punched
-							else {
-								//add second to arraylist
-								forReductionAL.add(pair[1]);
-								region = pair[0];
-							}
-						}
-					}
-					if (region != null) {
-						out.println(region);
-						//System.out.println(region);
-					}
-				}
+				int[][] forReduction = fetchBlocks((Coordinate[])chrCoor.get(chromosome));
+				Coordinate[] mask = (Coordinate[])maskerCoor.get(chromosome);
+				if (mask != null) forReduction = RegionAlgebra.clip(forReduction, fetchBlocks(mask));
+				RegionAlgebra.printBed(chromosome, forReduction, out);
 			}
 			out.close();
 		} catch (Exception e){
@@ -86,7 +54,11 @@ public class SubtractRegions {
 		}
 	}
 
-
+	private static int[][] fetchBlocks(Coordinate[] c){
+		int[][] blocks = new int[c.length][];
+		for (int i=0; i< c.length; i++) blocks[i] = new int[]{c[i].getStart(), c[i].getStop()};
+		return blocks;
+	}
 
 	public static void main(String[] args) {
 		if (args.length ==0){
@@ -131,7 +103,7 @@ public class SubtractRegions {
 	public static void printDocs(){
 		System.out.println("\n" +
 				"**************************************************************************************\n" +
-				"**                             Subtract Regions: May 2009                           **\n" +
+				"**                             Subtract Regions: Oct 2026                           **\n" +
 				"**************************************************************************************\n" +
 				"Removes regions and parts there of that intersect the masking region file.  Provide\n" +
 				"tab delimited bed files (chr start stop ...). Assumes interbase coordinates.\n" +
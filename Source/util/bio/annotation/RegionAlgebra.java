@@ -0,0 +1,239 @@
+package util.bio.annotation;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+
+import util.gen.IO;
+import util.gen.Misc;
+
+/**Union, intersect, subtract, complement and minimum coverage of regions using a sweep over sorted start and stop arrays.
+ * The work is O(n log n) in the number of regions and the memory doesn't depend on the chromosome length, unlike
+ * flagging each base in a boolean[] or int[] count array. Regions are int[]{start, stop} blocks from one chromosome
+ * in interbase coordinates. Unless noted, results are sorted and overlapping or abutting blocks are joined, the
+ * same blocks ExportIntergenicRegions.fetchFalseBlocks() pulls from a boolean[] mask.
+ * @author david.nix@hci.utah.edu*/
+public class RegionAlgebra {
+
+	/**Returns the blocks covered by at least minimumCount (min 1) regions. Only the endpoints matter so the starts and
+	 * stops needn't be paired, both are sorted in place.
+	 * @param numberRegions the number of starts and stops to use from each array*/
+	public static int[][] minimumCoverage(int[] starts, int[] stops, int numberRegions, int minimumCount){
+		if (minimumCount < 1) minimumCount = 1;
+		Arrays.sort(starts, 0, numberRegions);
+		Arrays.sort(stops, 0, numberRegions);
+		ArrayList<int[]> al = new ArrayList<int[]>();
+		int i = 0;
+		int j = 0;
+		int coverage = 0;
+		int blockStart = 0;
+		boolean inBlock = false;
+		while (j < numberRegions){
+			//next endpoint, all the starts and stops at a position are applied before checking the coverage
+			int position = stops[j];
+			if (i < numberRegions && starts[i] < position) position = starts[i];
+			while (i < numberRegions && starts[i] == position) {
+				coverage++;
+				i++;
+			}
+			while (j < numberRegions && stops[j] == position) {
+				coverage--;
+				j++;
+			}
+			if (coverage >= minimumCount){
+				if (inBlock == false){
+					blockStart = position;
+					inBlock = true;
+				}
+			}
+			else if (inBlock){
+				al.add(new int[]{blockStart, position});
+				inBlock = false;
+			}
+		}
+		return toArray(al);
+	}
+
+	/**Returns the blocks covered by at least minimumCount regions from any of the sets.*/
+	public static int[][] minimumCoverage(int minimumCount, int[][]... regionSets){
+		int num = 0;
+		for (int[][] r: regionSets) num+= r.length;
+		int[] starts = new int[num];
+		int[] stops = new int[num];
+		int index = 0;
+		for (int[][] set: regionSets){
+			for (int[] r: set){
+				//skip empty regions
+				if (r[1] <= r[0]) continue;
+				starts[index] = r[0];
+				stops[index++] = r[1];
+			}
+		}
+		return minimumCoverage(starts, stops, index, minimumCount);
+	}
+
+	/**Returns the bases covered by any of the regions.*/
+	public static int[][] union(int[][]... regionSets){
+		return minimumCoverage(1, regionSets);
+	}
+
+	/**Returns the bases in both a and b.*/
+	public static int[][] intersect(int[][] a, int[][] b){
+		a = union(a);
+		b = union(b);
+		ArrayList<int[]> al = new ArrayList<int[]>();
+		int i = 0;
+		int j = 0;
+		while (i < a.length && j < b.length){
+			int start = Math.max(a[i][0], b[j][0]);
+			int stop = Math.min(a[i][1], b[j][1]);
+			if (start < stop) al.add(new int[]{start, stop});
+			if (a[i][1] < b[j][1]) i++;
+			else j++;
+		}
+		return toArray(al);
+	}
+
+	/**Returns the bases in the regions that aren't in the mask.*/
+	public static int[][] subtract(int[][] regions, int[][] mask){
+		return clip(union(regions), mask);
+	}
+
+	/**Removes the bases in the mask from each region separately, regions that overlap aren't joined. Returns the pieces
+	 * that remain, in order of region start.*/
+	public static int[][] clip(int[][] regions, int[][] mask){
+		mask = union(mask);
+		regions = sortByStart(regions);
+		ArrayList<int[]> al = new ArrayList<int[]>();
+		int m = 0;
+		for (int[] r: regions){
+			if (r[1] <= r[0]) continue;
+			//skip masks that end before this region, regions are sorted by start so these can't hit later ones
+			while (m < mask.length && mask[m][1] <= r[0]) m++;
+			int start = r[0];
+			for (int x = m; x < mask.length && mask[x][0] < r[1]; x++){
+				if (mask[x][0] > start) al.add(new int[]{start, mask[x][0]});
+				if (mask[x][1] > start) start = mask[x][1];
+			}
+			if (start < r[1]) al.add(new int[]{start, r[1]});
+		}
+		return toArray(al);
+	}
+
+	/**Returns the bases from 0 to the length (not included) that aren't in the regions.*/
+	public static int[][] complement(int[][] regions, int length){
+		return clip(new int[][]{{0, length}}, regions);
+	}
+
+	/**Returns the blocks that are at least minimumLength long.*/
+	public static int[][] filterLength(int[][] blocks, int minimumLength){
+		ArrayList<int[]> al = new ArrayList<int[]>();
+		for (int[] b: blocks) if (b[1] - b[0] >= minimumLength) al.add(b);
+		return toArray(al);
+	}
+
+	public static long countBases(int[][] blocks){
+		long total = 0;
+		for (int[] b: blocks) total+= (b[1] - b[0]);
+		return total;
+	}
+
+	/**Returns the regions sorted by start, the same array if already sorted.*/
+	public static int[][] sortByStart(int[][] regions){
+		for (int i=1; i< regions.length; i++){
+			if (regions[i][0] < regions[i-1][0]){
+				int[][] sorted = regions.clone();
+				Arrays.sort(sorted, new Comparator<int[]>(){
+					public int compare(int[] a, int[] b){
+						return Integer.compare(a[0], b[0]);
+					}
+				});
+				return sorted;
+			}
+		}
+		return regions;
+	}
+
+	/**Writes each block as a chr start stop bed line, returns the number written.*/
+	public static int printBed(String chromosome, int[][] blocks, PrintWriter out){
+		for (int[] b: blocks) out.println(chromosome+"\t"+b[0]+"\t"+b[1]);
+		return blocks.length;
+	}
+
+	private static int[][] toArray(ArrayList<int[]> al){
+		int[][] blocks = new int[al.size()][];
+		al.toArray(blocks);
+		return blocks;
+	}
+
+	/**Reads a whitespace delimited chr start stop ... file line by line adding each region to its chromosome's
+	 * Endpoints, so only 8 bytes are held per region. Skips blank, # and stop < start lines, clips padded starts at 0.
+	 * @return the number of regions added*/
+	public static long loadEndpoints(File bedFile, int pad, Map<String, Endpoints> chromEndpoints) throws IOException{
+		BufferedReader in = IO.fetchBufferedReader(bedFile);
+		long numberRegions = 0;
+		String line;
+		String chrom = null;
+		Endpoints ep = null;
+		try {
+			while ((line = in.readLine()) != null){
+				line = line.trim();
+				if (line.length() == 0 || line.startsWith("#")) continue;
+				String[] tokens = Misc.WHITESPACE.split(line);
+				if (tokens.length < 3) continue;
+				int start = Integer.parseInt(tokens[1]);
+				int stop = Integer.parseInt(tokens[2]);
+				if (stop < start) {
+					System.err.println("Stop position is less than start! "+bedFile.getName()+ line);
+					continue;
+				}
+				if (tokens[0].equals(chrom) == false){
+					chrom = tokens[0];
+					ep = chromEndpoints.get(chrom);
+					if (ep == null){
+						ep = new Endpoints();
+						chromEndpoints.put(chrom, ep);
+					}
+				}
+				start -= pad;
+				if (start < 0) start = 0;
+				ep.add(start, stop + pad);
+				numberRegions++;
+			}
+		} finally {
+			in.close();
+		}
+		return numberRegions;
+	}
+
+	/**Growable start and stop arrays for one chromosome, see minimumCoverage().*/
+	public static class Endpoints {
+		private int[] starts = new int[1024];
+		private int[] stops = new int[1024];
+		private int size = 0;
+
+		public void add(int start, int stop){
+			if (size == starts.length){
+				starts = Arrays.copyOf(starts, size * 2);
+				stops = Arrays.copyOf(stops, size * 2);
+			}
+			starts[size] = start;
+			stops[size++] = stop;
+		}
+
+		/**Returns the blocks covered by at least minimumCount regions, sorts the endpoints so the regions are no longer
+		 * paired.*/
+		public int[][] minimumCoverage(int minimumCount){
+			return RegionAlgebra.minimumCoverage(starts, stops, size, minimumCount);
+		}
+
+		public int size(){
+			return size;
+		}
+	}
+}
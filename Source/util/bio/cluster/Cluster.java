@@ -1,9 +1,7 @@
 package util.bio.cluster;
 
-import java.io.File;
 import javax.swing.*;
 import java.awt.geom.*;
-import util.gen.IO;
 import util.gen.Num;
 import java.io.*;
 
@@ -15,15 +13,16 @@ public class Cluster implements Serializable{
 	private Cluster bottomCluster = null;
 	private double totalClusters =1;
 	private String name;
-	private File floatArrayFile;
+	private String id;
 	private JLabel nameLabel;
 	private Line2D line;
 	private Point2D parentPoint;
 	private double nameLabelCenterYCoordinate;
 	
-	/**Initializing Constructor*/
-	public Cluster(File floatArrayFile, String name){
-		this.floatArrayFile = floatArrayFile;
+	/**Initializing Constructor
+	 * @param id the array number, merged clusters join their children's ids with an underscore*/
+	public Cluster(String id, String name){
+		this.id = id;
 		this.name = name;
 	}
 	
@@ -44,29 +43,10 @@ public class Cluster implements Serializable{
 		}
 		//set total number of clusters
 		totalClusters = one.totalClusters+two.getTotalClusters();
-		//average their float[]s, save, and set the file
-		merge();
+		id = topCluster.id+"_"+bottomCluster.id;
 		//save results summary
 		String cc = Num.formatNumber((correlationCoefficient * correlationCoefficient * 100), 1);
-		results.append(cc+"\t"+topCluster.getFloatArrayFile().getName()+"\t"+
-				bottomCluster.getFloatArrayFile().getName()+ "\t"+ floatArrayFile.getName()+"\n");
-	}
-	
-	public float[] getValues(){
-		return (float[])IO.fetchObject(floatArrayFile);
-	}
-
-	/**Average float arrays from top and bottom clusters, same the float[], set the file*/
-	private void merge(){
-		float[] one = topCluster.getValues();
-		float[] two = bottomCluster.getValues();
-		float[] merged = Num.mean(one, two);
-		File file = new File(topCluster.getFloatArrayFile().getParentFile(),topCluster.getFloatArrayFile().getName()+"_"+bottomCluster.getFloatArrayFile().getName());
-		IO.saveObject(file, merged);
-		floatArrayFile = file;
-		one = null;
-		two = null;
-		merged = null;
+		results.append(cc+"\t"+topCluster.id+"\t"+bottomCluster.id+ "\t"+ id+"\n");
 	}
 
 	public Cluster getBottomCluster() {
@@ -85,12 +65,8 @@ public class Cluster implements Serializable{
 		this.correlationCoefficient = correlationCoefficient;
 	}
 
-	public File getFloatArrayFile() {
-		return floatArrayFile;
-	}
-
-	public void setFloatArrayFile(File floatArrayFile) {
-		this.floatArrayFile = floatArrayFile;
+	public String getId() {
+		return id;
 	}
 
 	public String getName() {
@@ -0,0 +1,215 @@
+package util.bio.cluster;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+import util.gen.ParallelRunner;
+
+/**Memory mapped matrix of float rows, one per array or sample, for clustering more arrays than fit in the heap.
+ * The xxx.fmx file holds the magic number, the number of rows and columns, the rows of big endian floats, then the
+ * row names. Each row is mapped separately so a row may be up to 2GB.
+ * @author david.nix@hci.utah.edu*/
+public class FloatMatrix {
+
+	//fields
+	private File file;
+	private int numberRows;
+	private int numberColumns;
+	private String[] names;
+	private FloatBuffer[] rows;
+
+	public static final int MAGIC = 0x464d5831;
+	public static final String EXTENSION = ".fmx";
+	/**Columns per chunk when multiplying rows, sized to keep a block of rows in cache.*/
+	private static final int CHUNK = 4096;
+	private static final int ROWS_PER_BLOCK = 16;
+
+	public FloatMatrix(File file) throws IOException{
+		this.file = file;
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			if (raf.length() < 12 || raf.readInt() != MAGIC) throw new IOException("This does not appear to be a float matrix file "+file);
+			numberRows = raf.readInt();
+			numberColumns = raf.readInt();
+			long rowBytes = 4L * numberColumns;
+			long namesOffset = 12 + rowBytes * numberRows;
+			if (raf.length() < namesOffset) throw new IOException("Truncated float matrix file "+file);
+			FileChannel channel = raf.getChannel();
+			rows = new FloatBuffer[numberRows];
+			for (int i=0; i< numberRows; i++) rows[i] = channel.map(FileChannel.MapMode.READ_ONLY, 12 + rowBytes * i, rowBytes).asFloatBuffer();
+			raf.seek(namesOffset);
+			names = new String[numberRows];
+			for (int i=0; i< numberRows; i++) names[i] = raf.readUTF();
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**Returns a copy of the row.*/
+	public float[] getRow(int index){
+		float[] f = new float[numberColumns];
+		rows[index].duplicate().get(f);
+		return f;
+	}
+
+	/**Returns the centered cross products of every pair of rows, sum((x-meanX)*(y-meanY)), computed in parallel blocks
+	 * of rows. Divide [i][j] by the square root of [i][i]*[j][j] for the Pearson correlation.*/
+	public double[][] crossProducts(int numberThreads) throws IOException{
+		final double[] means = new double[numberRows];
+		final double[][] products = new double[numberRows][numberRows];
+
+		//row means
+		ArrayList<Runnable> tasks = new ArrayList<Runnable>();
+		for (int i=0; i< numberRows; i++){
+			final int row = i;
+			tasks.add(new Runnable(){
+				public void run(){
+					FloatBuffer fb = rows[row].duplicate();
+					double total = 0;
+					for (int x=0; x< numberColumns; x++) total+= fb.get(x);
+					means[row] = total / numberColumns;
+				}
+			});
+		}
+		ParallelRunner.runAll(tasks, numberThreads);
+
+		//upper triangle of row blocks, each task fills its own cells
+		tasks.clear();
+		for (int i=0; i< numberRows; i+= ROWS_PER_BLOCK){
+			for (int j=i; j< numberRows; j+= ROWS_PER_BLOCK){
+				tasks.add(new BlockProduct(i, Math.min(i+ROWS_PER_BLOCK, numberRows), j, Math.min(j+ROWS_PER_BLOCK, numberRows), means, products));
+			}
+		}
+		ParallelRunner.runAll(tasks, numberThreads);
+
+		//fill the lower triangle
+		for (int i=0; i< numberRows; i++){
+			for (int j=0; j< i; j++) products[i][j] = products[j][i];
+		}
+		return products;
+	}
+
+	private class BlockProduct implements Runnable {
+		private int startA, stopA, startB, stopB;
+		private double[] means;
+		private double[][] products;
+
+		BlockProduct(int startA, int stopA, int startB, int stopB, double[] means, double[][] products){
+			this.startA = startA;
+			this.stopA = stopA;
+			this.startB = startB;
+			this.stopB = stopB;
+			this.means = means;
+			this.products = products;
+		}
+
+		public void run(){
+			int numA = stopA - startA;
+			int numB = stopB - startB;
+			double[][] a = new double[numA][CHUNK];
+			double[][] b = new double[numB][CHUNK];
+			double[][] sums = new double[numA][numB];
+			float[] buffer = new float[CHUNK];
+			for (int start = 0; start < numberColumns; start+= CHUNK){
+				int len = Math.min(CHUNK, numberColumns - start);
+				loadCentered(startA, numA, start, len, buffer, a);
+				loadCentered(startB, numB, start, len, buffer, b);
+				for (int i=0; i< numA; i++){
+					double[] x = a[i];
+					for (int j=0; j< numB; j++){
+						//only the upper triangle for diagonal blocks
+						if (startB + j < startA + i) continue;
+						double[] y = b[j];
+						double total = 0;
+						for (int k=0; k< len; k++) total+= x[k] * y[k];
+						sums[i][j]+= total;
+					}
+				}
+			}
+			for (int i=0; i< numA; i++){
+				for (int j=0; j< numB; j++){
+					if (startB + j >= startA + i) products[startA + i][startB + j] = sums[i][j];
+				}
+			}
+		}
+
+		private void loadCentered(int firstRow, int num, int start, int len, float[] buffer, double[][] centered){
+			for (int i=0; i< num; i++){
+				FloatBuffer fb = rows[firstRow + i].duplicate();
+				fb.position(start);
+				fb.get(buffer, 0, len);
+				double mean = means[firstRow + i];
+				double[] c = centered[i];
+				for (int k=0; k< len; k++) c[k] = buffer[k] - mean;
+			}
+		}
+	}
+
+	/**Writes a xxx.fmx file one row at a time, all rows must be the same length.*/
+	public static class Writer {
+		private File file;
+		private RandomAccessFile raf;
+		private ArrayList<String> names = new ArrayList<String>();
+		private int numberColumns = -1;
+		private ByteBuffer buffer;
+
+		public Writer(File file) throws IOException{
+			this.file = file;
+			raf = new RandomAccessFile(file, "rw");
+			raf.setLength(0);
+			//header is written on close
+			raf.write(new byte[12]);
+		}
+
+		public void addRow(String name, float[] values) throws IOException{
+			if (numberColumns == -1) {
+				numberColumns = values.length;
+				buffer = ByteBuffer.allocate(4 * Math.min(numberColumns, 1 << 20));
+			}
+			else if (values.length != numberColumns) throw new IOException("Row "+name+" has "+values.length+" values, not "+numberColumns+", all must be the same length for "+file);
+			FileChannel channel = raf.getChannel();
+			int index = 0;
+			while (index < values.length){
+				buffer.clear();
+				FloatBuffer fb = buffer.asFloatBuffer();
+				int n = Math.min(fb.capacity(), values.length - index);
+				fb.put(values, index, n);
+				buffer.limit(4 * n);
+				while (buffer.hasRemaining()) channel.write(buffer);
+				index+= n;
+			}
+			names.add(name);
+		}
+
+		public void close() throws IOException{
+			DataOutputStream dos = new DataOutputStream(Channels.newOutputStream(raf.getChannel()));
+			for (String n: names) dos.writeUTF(n);
+			dos.flush();
+			raf.seek(0);
+			raf.writeInt(MAGIC);
+			raf.writeInt(names.size());
+			raf.writeInt(Math.max(numberColumns, 0));
+			raf.close();
+		}
+	}
+
+	public File getFile() {
+		return file;
+	}
+	public int getNumberRows() {
+		return numberRows;
+	}
+	public int getNumberColumns() {
+		return numberColumns;
+	}
+	public String[] getNames() {
+		return names;
+	}
+}
@@ -6,14 +6,19 @@ import util.gen.*;
 
 /**
  * Calculates a Pearson correlation coefficient between all pairs of serialized float[]s, uses hierarchical clustering to
- * group like arrays. Displays on screen and saves as a png.
+ * group like arrays. Displays on screen and saves as a png. The arrays are written to a memory mapped FloatMatrix and
+ * their centered cross products computed once in parallel. Merging two clusters averages their arrays so the merged
+ * cluster's cross products are the average of its children's, no arrays are reloaded. The best partner of each cluster
+ * is cached and only rescanned when it's merged away, so most rounds are O(n) rather than O(n^2).
  */
 public class HierarchicalClustering {
 
 	//fields
 	private File[] celpFiles;
+	private File matrixFile = null;
+	private boolean saveMatrix = false;
+	private int numberThreads = Runtime.getRuntime().availableProcessors();
 	private ArrayList clusters = new ArrayList();
-	private HashMap correlationCoefficients = new HashMap();
 	private Cluster megaCluster;
 	private double minimalCorrelationCoefficient = 0.75;
 	private boolean savePNG = true;
@@ -65,7 +70,8 @@ public class HierarchicalClustering {
 			results.append("Ordering...\n");
 			breakOutClusters();
 			//display cluster on screen?
-			if (savePNG && pngResultFile == null) pngResultFile = new File(celpFiles[0].getParentFile(),title+"ClusterPlot.png");
+			File parent = celpFiles != null ? celpFiles[0].getParentFile() : matrixFile.getAbsoluteFile().getParentFile();
+			if (savePNG && pngResultFile == null) pngResultFile = new File(parent,title+"ClusterPlot.png");
 			if (displayClusterPlot) new ClusterDrawFrame(this);
 			else {
 				//kill the need to display
@@ -101,40 +107,32 @@ public class HierarchicalClustering {
 		Arrays.sort(virtualCelFiles);
 		//get trimmed file names
 		String[] trimmedNames = IO.getTruncatedNames(virtualCelFiles);
-		//make temp directory and copy files into it, also create ArrayList to hold Clusters
-		File tempDir = null;
-		results.append("\nMaking temp files...\n");
-		tempDir = new File(virtualCelFiles[0].getParent(),"HRClusterTempDir");
-		if (tempDir.exists()) IO.deleteDirectory(tempDir);
-		tempDir.mkdir();
-		for (int i=0; i<virtualCelFiles.length; i++){
-			File x = new File (tempDir,(i+1)+"");
-			//fetch virtual cel matrix
-			float[][] virtualCel = (float[][])IO.fetchObject(virtualCelFiles[i]);
-			//extract and median normalize pm intensities
-			float[] pmValues = Num.fetchMatrixValues(virtualCel, pmCoordinates);
-			pmValues = Num.medianNormalize(pmValues, 100);
-			//save in temp directory
-			IO.saveObject(x, pmValues);
-			//make VCluster
-			Cluster cluster = new Cluster(x,trimmedNames[i]);
-			clusters.add(cluster);
-			results.append("\t"+x.getName()+"\t"+virtualCelFiles[i].getName()+"\n");
-		}
-
-		//run thru clusters making all pairwise corr coefs, merging best two, saving badFiles
-		results.append("\nClustering...\nR Squared * 100\tCluster 1 \t Cluster 2\t Merged Cluster\n");
-		while (clusters.size()>1){
-			double[] ccBestPair = findBestPair();
-			//merge best
-			mergeClusters(ccBestPair);
+		//write the pm intensities to a temp matrix
+		results.append("\nMaking temp float matrix...\n");
+		File matrix = new File(virtualCelFiles[0].getParent(),"HRClusterTemp_"+Passwords.createRandowWord(10)+FloatMatrix.EXTENSION);
+		try {
+			FloatMatrix.Writer writer = new FloatMatrix.Writer(matrix);
+			for (int i=0; i<virtualCelFiles.length; i++){
+				//fetch virtual cel matrix
+				float[][] virtualCel = (float[][])IO.fetchObject(virtualCelFiles[i]);
+				//extract and median normalize pm intensities
+				float[] pmValues = Num.fetchMatrixValues(virtualCel, pmCoordinates);
+				pmValues = Num.medianNormalize(pmValues, 100);
+				writer.addRow(trimmedNames[i], pmValues);
+				results.append("\t"+(i+1)+"\t"+virtualCelFiles[i].getName()+"\n");
+			}
+			writer.close();
+
+			//cluster, saving badFiles
+			results.append("\nClustering...\nR Squared * 100\tCluster 1 \t Cluster 2\t Merged Cluster\n");
+			clusterMatrix(matrix);
+		} catch (IOException e){
+			e.printStackTrace();
+			Misc.printErrAndExit("\nError: problem clustering the virtual cel files.\n");
+		} finally {
+			matrix.delete();
 		}
 
-		megaCluster = (Cluster)clusters.get(0);
-
-		//delete temp dir
-		IO.deleteDirectory(tempDir);
-
 		//convert baddies into File[]
 		if (badFileNumbers.size() == 0) return null;
 		File[] badFiles = new File[badFileNumbers.size()];
@@ -150,36 +148,119 @@ public class HierarchicalClustering {
 	}
 
 
-	/**Clusters float[] files, does not median normalize*/
-	public void clusterNormalizedFloatArrayFiles(){
-		Arrays.sort(celpFiles);
-		//get trimmed file names
-		String[] trimmedNames = IO.getTruncatedNames(celpFiles);
-		//make temp directory and copy files into it, also create ArrayList to hold Clusters
-		File tempDir = null;
-		results.append("\nMaking temp files...\n");
-		String random = Passwords.createRandowWord(10);
-		tempDir = new File(celpFiles[0].getParent(),"HRClusterTempDir_"+random);
-		if (tempDir.exists()) IO.deleteDirectory(tempDir);
-		tempDir.mkdir();
-		for (int i=0; i<celpFiles.length; i++){
-			File x = new File (tempDir,(i+1)+"");
-			IO.copyViaFileChannel(celpFiles[i],x);
-			clusters.add(new Cluster(x,trimmedNames[i]));
-			results.append("\t"+x.getName()+"\t"+celpFiles[i].getName()+"\n");
+	/**Clusters float[] files or the float matrix, does not median normalize*/
+	public void clusterNormalizedFloatArrayFiles() throws IOException{
+		File matrix = matrixFile;
+		if (matrix == null){
+			Arrays.sort(celpFiles);
+			//get trimmed file names
+			String[] trimmedNames = IO.getTruncatedNames(celpFiles);
+			results.append("\nMaking float matrix...\n");
+			if (saveMatrix) matrix = new File(celpFiles[0].getParent(), "clusterArrays"+FloatMatrix.EXTENSION);
+			else matrix = new File(celpFiles[0].getParent(),"HRClusterTemp_"+Passwords.createRandowWord(10)+FloatMatrix.EXTENSION);
+			FloatMatrix.Writer writer = new FloatMatrix.Writer(matrix);
+			for (int i=0; i<celpFiles.length; i++){
+				writer.addRow(trimmedNames[i], (float[])IO.fetchObject(celpFiles[i]));
+				results.append("\t"+(i+1)+"\t"+celpFiles[i].getName()+"\n");
+			}
+			writer.close();
+		}
+		try {
+			results.append("\nClustering...\n");
+			clusterMatrix(matrix);
+		} finally {
+			if (matrixFile == null && saveMatrix == false) matrix.delete();
 		}
+	}
 
-		//run thru clusters making all pairwise corr coefs, merging best two
-		results.append("\nClustering...\n");
-		while (clusters.size()>1){
-			double[] ccBestPair = findBestPair ();
-			//merge best
-			mergeClusters(ccBestPair);
+	/**Clusters the rows of the matrix until one cluster remains, it's set as the megaCluster and only item in clusters.
+	 * Each round merges the pair with the highest r, same as scanning every pair.*/
+	private void clusterMatrix(File matrix) throws IOException{
+		FloatMatrix fm = new FloatMatrix(matrix);
+		String[] names = fm.getNames();
+		int num = names.length;
+		//centered cross products, merged clusters take the slot of their first child
+		double[][] cp = fm.crossProducts(numberThreads);
+		Cluster[] slots = new Cluster[num];
+		//clusters in the order of the old pool, merged ones are added to the end
+		ArrayList<Integer> pool = new ArrayList<Integer>(num);
+		for (int i=0; i< num; i++) {
+			slots[i] = new Cluster((i+1)+"", names[i]);
+			pool.add(i);
 		}
-		megaCluster = (Cluster)clusters.get(0);
+		//best partner of each
+		int[] bestIndex = new int[num];
+		double[] bestCC = new double[num];
+		for (int i=0; i< num; i++) findBestPartner(i, pool, cp, bestIndex, bestCC);
+
+		while (pool.size() > 1){
+			//best pair
+			int one = -1;
+			double maxCC = -3;
+			for (int i: pool){
+				if (bestCC[i] > maxCC){
+					maxCC = bestCC[i];
+					one = i;
+				}
+			}
+			int two = bestIndex[one];
+			//keep the pool order for top and bottom
+			if (pool.indexOf(two) < pool.indexOf(one)){
+				int x = one;
+				one = two;
+				two = x;
+			}
+			slots[one] = mergeClusters(maxCC, slots[one], slots[two]);
+			slots[two] = null;
+			pool.remove(Integer.valueOf(one));
+			pool.remove(Integer.valueOf(two));
+
+			//cross products of the averaged array
+			double self = (cp[one][one] + 2*cp[one][two] + cp[two][two]) / 4;
+			for (int k: pool){
+				cp[one][k] = (cp[one][k] + cp[two][k]) / 2;
+				cp[k][one] = cp[one][k];
+			}
+			cp[one][one] = self;
 
-		//delete temp dir
-		IO.deleteDirectory(tempDir);
+			//update the best partners
+			for (int k: pool){
+				if (bestIndex[k] == one || bestIndex[k] == two) findBestPartner(k, pool, cp, bestIndex, bestCC);
+				else {
+					double cc = correlation(cp, k, one);
+					if (cc > bestCC[k]){
+						bestCC[k] = cc;
+						bestIndex[k] = one;
+					}
+				}
+			}
+			pool.add(one);
+			findBestPartner(one, pool, cp, bestIndex, bestCC);
+		}
+		megaCluster = slots[pool.get(0)];
+		clusters.clear();
+		clusters.add(megaCluster);
+	}
+
+	private static void findBestPartner(int index, ArrayList<Integer> pool, double[][] cp, int[] bestIndex, double[] bestCC){
+		bestIndex[index] = -1;
+		bestCC[index] = -3;
+		for (int k: pool){
+			if (k == index) continue;
+			double cc = correlation(cp, index, k);
+			if (cc > bestCC[index]){
+				bestCC[index] = cc;
+				bestIndex[index] = k;
+			}
+		}
+	}
+
+	/**Pearson r from the cross products, -2 if either array is flat, same as PearsonCorrelation.*/
+	private static double correlation(double[][] cp, int i, int j){
+		double v = cp[i][i] * cp[j][j];
+		if (v == 0) return -2;
+		if (cp[i][j] == cp[i][i] && cp[i][i] == cp[j][j]) return 1;
+		return cp[i][j] / Math.sqrt(v);
 	}
 
 	public void breakOutClusters() {
@@ -207,19 +288,13 @@ public class HierarchicalClustering {
 		}
 	}	
 
-	/**Merges Clusters from best pair notes whether they have a bad cc.*/
-	public void mergeClusters(double[] ccBestPair){
-		double cc = ccBestPair[0];
-		int indexFirst = (int)ccBestPair[1];
-		int indexSecond = (int)ccBestPair[2];
-		Cluster one = (Cluster)clusters.get(indexFirst);
-		Cluster two = (Cluster)clusters.get(indexSecond);
-
+	/**Merges two Clusters and notes whether they have a bad cc.*/
+	private Cluster mergeClusters(double cc, Cluster one, Cluster two){
 		//check for bad cc and set
 		//same number names of bad clusters
 		if (cc == 1 || cc< minimalCorrelationCoefficient) {
-			String[] ones = one.getFloatArrayFile().getName().split("_");
-			String[] twos = two.getFloatArrayFile().getName().split("_");
+			String[] ones = one.getId().split("_");
+			String[] twos = two.getId().split("_");
 			//save baddies
 			//both with one file, add both
 			if (twos.length == ones.length && ones.length ==1) {
@@ -236,56 +311,7 @@ public class HierarchicalClustering {
 			}
 		}
 		//make new cluster
-		Cluster combo = new Cluster (one, two, cc, results);
-		//remove old 
-		if (indexFirst > indexSecond) {
-			clusters.remove(indexFirst);
-			clusters.remove(indexSecond);
-		}
-		else {
-			clusters.remove(indexSecond);
-			clusters.remove(indexFirst);
-		}
-		//add new
-		clusters.add(combo);
-	}
-
-	/**Takes an ArrayList of VCluster and finds the best pair based on a 
-	 * PearsonCorrelationCoefficient.  Returns a double[3]{cc, indexOne, indexTwo}.
-	 * The HashMap contains calculated ccs.  These will be used if the same comparison is made again.*/
-	public double[] findBestPair (){
-		int num = clusters.size();
-		double maxCC = -1;
-		int maxOne = -1;
-		int maxTwo = -1; 
-		for (int i=0; i<num; i++){
-			int j = i+1;
-			Cluster c1 = (Cluster)clusters.get(i);
-			float[] one = c1.getValues();
-			for (; j<num; j++){
-				Cluster c2 = (Cluster)clusters.get(j);
-				//look for previously calculated correlation coefficient
-				Object objFor = correlationCoefficients.get(c1.getFloatArrayFile().getName()+":"+c2.getFloatArrayFile().getName());
-				double pcc;
-				//calculate new cc
-				if (objFor == null){
-					float[] two = c2.getValues();
-					pcc = PearsonCorrelation.correlationCoefficient(one, two);
-					//save cc in hash
-					correlationCoefficients.put(c1.getFloatArrayFile().getName()+":"+c2.getFloatArrayFile().getName(), new Double(pcc));
-				}
-				//already exists
-				else pcc = ((Double)objFor).doubleValue();
-
-				//set max values?
-				if (pcc>maxCC) {
-					maxCC = pcc;
-					maxOne = i;
-					maxTwo = j;
-				}
-			}
-		}
-		return new double[] {maxCC, maxOne, maxTwo};
+		return new Cluster (one, two, cc, results);
 	}
 
 
@@ -305,6 +331,9 @@ public class HierarchicalClustering {
 					case 'd': dir = new File(args[i+1]); i++; break;
 					case 'c': convert = true; break;
 					case 'a': antiLog = true; break;
+					case 'm': matrixFile = new File(args[++i]); break;
+					case 's': saveMatrix = true; break;
+					case 't': numberThreads = Integer.parseInt(args[++i]); break;
 					case 'h': printDocs(); System.exit(0);
 					default: Misc.printExit("\nProblem, unknown option! " + mat.group()+"\n");
 					}
@@ -314,6 +343,10 @@ public class HierarchicalClustering {
 				}
 			}
 		}
+		if (matrixFile != null) {
+			if (matrixFile.canRead() == false) Misc.printExit("\nCannot find or read your float matrix file!\n");
+			return;
+		}
 		if (dir == null || dir.canRead() == false) {
 			Misc.printExit("\nCannot find or read your float[] directory!\n");
 		}
@@ -337,19 +370,24 @@ public class HierarchicalClustering {
 	public static void printDocs(){
 		System.out.println("\n" +
 				"**************************************************************************************\n" +
-				"**                        Hierarchical Clustering: June 2012                        **\n" +
+				"**                        Hierarchical Clustering: Oct 2026                         **\n" +
 				"**************************************************************************************\n" +
 				"HC hierarchically clusters serialized float[] arrays using a Pearson correlation\n" +
-				"coefficient (r) as a metric.  For each round, all pairwise r values between the arrays\n" +
-				"are calculated, the pair of arrays with the highest r value is removed from the pool,\n" +
-				"their intensities are averaged, and the averaged array is added back to the pool.\n" +
+				"coefficient (r) as a metric.  For each round, the pair of arrays with the highest r\n" +
+				"value is removed from the pool, their intensities are averaged, and the averaged\n" +
+				"array is added back to the pool. The pairwise r values are calculated once and\n" +
+				"updated for each averaged array without reloading the data.\n" +
 				"Rounds of clustering continue until only one cluster remains. R values are typically\n" +
 				"squared and multiplied by 100 to give a similarity percentage. For ChIP chip\n" +
 				"experiments, clusters with an r < 0.75 (50% similar) are processed separately.\n\n"+ 
 
 				"-d Full path directory text containing serialized float[] arrays, 'xxx.celp' files.\n" +
 				"-c These are text files containing one column of floats, convert to 'xxx.celp'\n" +
-				"-a AntiLog base 2 the values.\n\n"+
+				"-a AntiLog base 2 the values.\n"+
+				"-s Save the arrays as a clusterArrays.fmx float matrix for reuse with -m.\n"+
+				"-m Cluster a xxx.fmx float matrix in place of -d, it's memory mapped so the arrays\n" +
+				"      needn't fit in memory.\n"+
+				"-t Number of threads for the pairwise r values, defaults to all.\n\n"+
 
 				"Example: java -Xmx1500M -jar pathTo/T2/HierarchicalClustering -d /affy/CelpFiles\n\n" +
 
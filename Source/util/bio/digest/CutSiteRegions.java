@@ -5,62 +5,97 @@ import util.bio.parsers.*;
 import util.gen.*;
 import java.io.*;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
+/**Writes a bed file of the regions around each match to an IUPAC site on either strand. Chromosomes are scanned in
+ * parallel with a SiteScanner, from a directory of fasta files or a memory mapped xxx.2bit.*/
 public class CutSiteRegions {
 
 	//fields
-	Pattern cutSite;
+	SiteScanner scanner;
 	HashMap<String, File> fastas;
+	TwoBitGenome twoBit = null;
 	int radius;
 	int halfLength;
-	String chromosomeName;
-	String chromosomeSequence;
-	PrintWriter out;
 	File bedFile;
-	
+
 	//constructors
 	public CutSiteRegions (String[] args){
-		
+		if (args.length < 4) Misc.printExit("\nUsage: CutSiteRegions fastaDirectory|xxx.2bit IUPACSite radius results.bed (threads)\n");
+
 		//set fields
-		fastas = Seq.fetchChromosomeFastaFileHashMap(new File (args[0]));
-		cutSite = Pattern.compile(args[1], Pattern.CASE_INSENSITIVE);
-		halfLength = Math.round(((float)args[1].length())/2.0f);
-		radius = Integer.parseInt(args[2]);
-		bedFile = new File (args[3]);
-		
-		//for each chromosome
 		try {
-			out = new PrintWriter (new FileWriter (bedFile));
-			for (String seq: fastas.keySet()){
-				chromosomeName = seq;
-				MultiFastaParser mfp = new MultiFastaParser(fastas.get(seq));
-				chromosomeSequence = mfp.getSeqs()[0];
-				System.out.println(chromosomeName+"\t0\t"+chromosomeSequence.length());
-				makeRegions();
+			File seqFile = new File (args[0]);
+			String[] chromosomes;
+			if (seqFile.getName().endsWith(".2bit")) {
+				twoBit = new TwoBitGenome(seqFile);
+				chromosomes = twoBit.getNames().clone();
+			}
+			else {
+				fastas = Seq.fetchChromosomeFastaFileHashMap(seqFile);
+				chromosomes = fastas.keySet().toArray(new String[fastas.size()]);
+			}
+			Arrays.sort(chromosomes);
+			scanner = new SiteScanner(new String[]{args[1].toUpperCase()}, true);
+			halfLength = Math.round(((float)args[1].length())/2.0f);
+			radius = Integer.parseInt(args[2]);
+			bedFile = new File (args[3]);
+			int numberThreads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+
+			//scan each chromosome
+			ChromosomeScanner[] scanners = new ChromosomeScanner[chromosomes.length];
+			for (int i=0; i< chromosomes.length; i++) scanners[i] = new ChromosomeScanner(chromosomes[i]);
+			ParallelRunner.runAll(scanners, numberThreads);
+
+			//write in chromosome order
+			PrintWriter out = new PrintWriter (new FileWriter (bedFile));
+			for (ChromosomeScanner cs: scanners){
+				System.out.println(cs.chromosomeName+"\t0\t"+cs.length+"\t"+cs.starts.length+" sites");
+				makeRegions(cs.chromosomeName, cs.starts, out);
 			}
 			out.close();
+		} catch (IllegalArgumentException e) {
+			Misc.printErrAndExit("\nError: "+e.getMessage()+"\n");
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 	}
-	
+
+	private class ChromosomeScanner implements Runnable {
+		String chromosomeName;
+		int length;
+		int[] starts;
+
+		ChromosomeScanner(String chromosomeName){
+			this.chromosomeName = chromosomeName;
+		}
+
+		public void run(){
+			if (twoBit != null) {
+				int index = twoBit.getContigIndex(chromosomeName);
+				length = twoBit.getLengths()[index];
+				starts = scanner.fetchStarts(twoBit, index)[0];
+			}
+			else {
+				MultiFastaParser mfp = new MultiFastaParser(fastas.get(chromosomeName));
+				String chromosomeSequence = mfp.getSeqs()[0];
+				length = chromosomeSequence.length();
+				starts = scanner.fetchStarts(chromosomeSequence.getBytes())[0];
+			}
+		}
+	}
+
 	//methods
-	public void makeRegions(){
-		Matcher m = cutSite.matcher(chromosomeSequence);
-		int counter =0;
-		while (m.find()) {
-				int center = m.start() + halfLength;
+	public void makeRegions(String chromosomeName, int[] starts, PrintWriter out){
+		for (int s: starts) {
+				int center = s + halfLength;
 				int start = center - radius;
 				if (start < 0) start = 0;
-				int end = center + radius; 
+				int end = center + radius;
 				out.println(chromosomeName +"\t"+start+"\t"+end);
-				if (counter++ < 5) System.out.println("\tFound: "+m.group());
 		}
 	}
-	
-	
+
+
 	public static void main(String[] args) {
 		new CutSiteRegions(args);
 
@@ -1,11 +1,11 @@
 package util.bio.digest;
-import java.util.regex.*;
 import java.util.*;
 
 import util.gen.*;
 
 /**
- StandAlone class to perform a restriction digestion on a sequence, a hack, uses as a template.
+ StandAlone class to perform a restriction digestion on a sequence, a hack, uses as a template. All of the enzymes are
+ found in one pass with a SiteScanner.
  */
 
 public class REDigest {
@@ -29,18 +29,11 @@ public class REDigest {
 	/**Returns an arraylist of enzymes found to cut the sequence*/
 	public static ArrayList restrictionMapHTML (String DNA, Enzyme[] e) {
 		ArrayList al  = new ArrayList();
+		int[][] starts = findTopStrandSites(DNA, e);
 		for (int i = 0; i < e.length; i++) {
-			Pattern p = Pattern.compile(e[i].getRegEx(), Pattern.CASE_INSENSITIVE);
-			Matcher m = p.matcher(DNA);
-			
-			if (m.find()){
-				int cut = e[i].getCutTop() + m.start();
-				StringBuffer sb = new StringBuffer(e[i].getName() + "<small>("+e[i].getRecogSeq()+")</small>: " + cut);
-				
-				while (m.find()) {
-					cut = e[i].getCutTop() + m.start();
-					sb.append(", " + cut);
-				}    
+			if (starts[i].length != 0){
+				StringBuffer sb = new StringBuffer(e[i].getName() + "<small>("+e[i].getRecogSeq()+")</small>: " + (e[i].getCutTop() + starts[i][0]));
+				for (int j=1; j< starts[i].length; j++) sb.append(", " + (e[i].getCutTop() + starts[i][j]));
 				al.add(sb.toString()); 
 			}
 		}
@@ -57,29 +50,64 @@ public class REDigest {
 	}
 	/**Runs thru an enzyme array attempting to cut a particular sequence*/
 	public static Enzyme[] restrictionMap(String DNA, Enzyme[] e) {
-		ArrayList al  = new ArrayList();
-		ArrayList cutSites;
+		int[][] starts = findTopStrandSites(DNA, e);
 		for (int i = 0; i < e.length; i++) {
-			Pattern p = Pattern.compile(e[i].getRegEx(), Pattern.CASE_INSENSITIVE);
-			Matcher m = p.matcher(DNA);
-			
-			if (m.find()){
-				cutSites = new ArrayList();
-				int cut = e[i].getCutTop() + m.start();
-				cutSites.add(new Integer(cut));
-				while (m.find()) {
-					cut = e[i].getCutTop() + m.start();
-					cutSites.add(new Integer(cut));
-				}    
-				e[i].setTopCuts(Misc.integerArrayListToIntArray(cutSites));	 
+			if (starts[i].length != 0){
+				int[] cuts = new int[starts[i].length];
+				for (int j=0; j< cuts.length; j++) cuts[j] = e[i].getCutTop() + starts[i][j];
+				e[i].setTopCuts(cuts);
 			}
 			else e[i].setTopCuts(null);
-			al.add(e[i]);
 		}
-		Enzyme[] cutters = new Enzyme[al.size()];
-		al.toArray(cutters);
+		Enzyme[] cutters = new Enzyme[e.length];
+		System.arraycopy(e, 0, cutters, 0, e.length);
 		return cutters;
 	}
+
+	/**Returns the top strand starts of each enzyme's sites, skipping those that overlap the prior site as a regex
+	 * Matcher.find() loop would.*/
+	private static int[][] findTopStrandSites(String DNA, Enzyme[] e){
+		int[][] starts = makeScanner(e, false).fetchStarts(DNA.getBytes());
+		for (int i=0; i< starts.length; i++){
+			int len = e[i].getLength();
+			int n = 0;
+			int lastEnd = Integer.MIN_VALUE;
+			for (int s: starts[i]){
+				if (s < lastEnd) continue;
+				starts[i][n++] = s;
+				lastEnd = s + len;
+			}
+			starts[i] = Arrays.copyOf(starts[i], n);
+		}
+		return starts;
+	}
+
+	public static SiteScanner makeScanner(Enzyme[] e, boolean bothStrands){
+		String[] sites = new String[e.length];
+		for (int i=0; i< e.length; i++) sites[i] = e[i].getStrippedRecogSeq().toUpperCase();
+		return new SiteScanner(sites, bothStrands);
+	}
+
+	/**Returns the sorted top strand cut positions of each enzyme, overlapping sites included. Reverse strand sites of
+	 * non palindromic enzymes are cut at their start + length - cutBottom.*/
+	public static int[][] cutSites(byte[] seq, Enzyme[] e, boolean bothStrands){
+		final Enzyme[] enzymes = e;
+		final int[][] cuts = new int[e.length][16];
+		final int[] sizes = new int[e.length];
+		makeScanner(e, bothStrands).scan(seq, new SiteScanner.Listener(){
+			public void hit(int siteIndex, int start, boolean reverseStrand){
+				Enzyme ez = enzymes[siteIndex];
+				int cut = reverseStrand ? start + ez.getLength() - ez.getCutBottom() : start + ez.getCutTop();
+				if (sizes[siteIndex] == cuts[siteIndex].length) cuts[siteIndex] = Arrays.copyOf(cuts[siteIndex], sizes[siteIndex] * 2);
+				cuts[siteIndex][sizes[siteIndex]++] = cut;
+			}
+		});
+		for (int i=0; i< cuts.length; i++){
+			Arrays.sort(cuts[i], 0, sizes[i]);
+			cuts[i] = Arrays.copyOf(cuts[i], sizes[i]);
+		}
+		return cuts;
+	}
 	
 
 	/**Restriction map a sequence. Makes an ordered list of enzymes. First by number of cuts, second alphabetically.*/
@@ -0,0 +1,309 @@
+package util.bio.digest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import util.bio.seq.TwoBitGenome;
+
+/**Finds every match to a set of IUPAC sites, e.g. GAATTC or GCCNNNNNGGC, in one pass over a sequence with an
+ * Aho-Corasick automaton. Expanding every N would blow up the automaton so each site is entered by its longest window
+ * with few degenerate bases, the anchor, and each anchor hit is checked against the full site with base masks.
+ * Matching is case insensitive, bases other than ACGT never match, and matches may overlap. With both strands the
+ * reverse complement of each non palindromic site is also searched, its hits are reported with the top strand start.
+ * The automaton isn't modified by a scan so one may be shared between threads.
+ * @author david.nix@hci.utah.edu*/
+public class SiteScanner {
+
+	//fields
+	private String[] sites;
+	private int numberPatterns;
+	/**A,C,G,T bit masks for each position of each pattern.*/
+	private byte[][] masks;
+	/**Index of the site for each pattern.*/
+	private int[] siteIndexes;
+	private boolean[] reverse;
+	private int maxLength = 0;
+	/**Automaton, next state for state * 4 + base code.*/
+	private int[] transitions;
+	/**For each state, pairs of pattern index and offset of the anchor end from the pattern start.*/
+	private int[][] outputs;
+
+	/**Anchors whose expansion exceeds this are shortened.*/
+	private static final int MAX_ANCHOR_EXPANSION = 256;
+	private static final byte[] CODES = new byte[256];
+	private static final byte[] IUPAC_MASKS = new byte[256];
+	static {
+		Arrays.fill(CODES, (byte)-1);
+		String acgt = "ACGT";
+		for (int i=0; i< 4; i++) {
+			CODES[acgt.charAt(i)] = (byte)i;
+			CODES[Character.toLowerCase(acgt.charAt(i))] = (byte)i;
+		}
+		String[] iupac = {"A","A","C","C","G","G","T","T","R","AG","Y","CT","M","AC","K","GT","S","CG","W","AT","B","CGT","D","AGT","H","ACT","V","ACG","N","ACGT"};
+		for (int i=0; i< iupac.length; i+=2){
+			int mask = 0;
+			for (char c: iupac[i+1].toCharArray()) mask |= 1 << CODES[c];
+			IUPAC_MASKS[iupac[i].charAt(0)] = (byte)mask;
+			IUPAC_MASKS[Character.toLowerCase(iupac[i].charAt(0))] = (byte)mask;
+		}
+	}
+
+	/**Called for each match.*/
+	public interface Listener {
+		/**@param start interbase start on the top strand
+		 * @param reverseStrand true if the reverse complement of the site matched*/
+		public void hit(int siteIndex, int start, boolean reverseStrand);
+	}
+
+	/**@param sites IUPAC sequences, ACGTRYMKSWBDHVN only, see Enzyme.getStrippedRecogSeq()*/
+	public SiteScanner(String[] sites, boolean bothStrands){
+		this.sites = sites;
+		ArrayList<byte[]> maskAL = new ArrayList<byte[]>();
+		ArrayList<Integer> siteAL = new ArrayList<Integer>();
+		ArrayList<Boolean> reverseAL = new ArrayList<Boolean>();
+		for (int i=0; i< sites.length; i++){
+			byte[] m = makeMasks(sites[i]);
+			maskAL.add(m);
+			siteAL.add(i);
+			reverseAL.add(false);
+			if (bothStrands){
+				byte[] rc = reverseComplement(m);
+				if (Arrays.equals(m, rc) == false){
+					maskAL.add(rc);
+					siteAL.add(i);
+					reverseAL.add(true);
+				}
+			}
+			if (m.length > maxLength) maxLength = m.length;
+		}
+		numberPatterns = maskAL.size();
+		masks = maskAL.toArray(new byte[numberPatterns][]);
+		siteIndexes = new int[numberPatterns];
+		reverse = new boolean[numberPatterns];
+		for (int i=0; i< numberPatterns; i++){
+			siteIndexes[i] = siteAL.get(i);
+			reverse[i] = reverseAL.get(i);
+		}
+		buildAutomaton();
+	}
+
+	private static byte[] makeMasks(String site){
+		if (site.length() == 0) throw new IllegalArgumentException("Empty site.");
+		byte[] m = new byte[site.length()];
+		for (int i=0; i< m.length; i++){
+			char c = site.charAt(i);
+			if (c > 255 || IUPAC_MASKS[c] == 0) throw new IllegalArgumentException("Site "+site+" contains a non IUPAC base '"+c+"'.");
+			m[i] = IUPAC_MASKS[c];
+		}
+		return m;
+	}
+
+	/**A,C,G,T masks reverse complement by reversing the order and the bits.*/
+	private static byte[] reverseComplement(byte[] m){
+		byte[] rc = new byte[m.length];
+		for (int i=0; i< m.length; i++){
+			int x = m[m.length - 1 - i];
+			rc[i] = (byte)(((x & 1) << 3) | ((x & 2) << 1) | ((x & 4) >> 1) | ((x & 8) >> 3));
+		}
+		return rc;
+	}
+
+	/**Returns {start, stop} of the longest window whose expansion is at most MAX_ANCHOR_EXPANSION, fewest expansions
+	 * on ties.*/
+	private static int[] pickAnchor(byte[] m){
+		int bestStart = 0;
+		int bestStop = 1;
+		long bestExpansion = Long.MAX_VALUE;
+		for (int i=0; i< m.length; i++){
+			long expansion = 1;
+			for (int j=i; j< m.length; j++){
+				expansion *= Integer.bitCount(m[j]);
+				if (expansion > MAX_ANCHOR_EXPANSION) break;
+				int len = j - i + 1;
+				if (len > bestStop - bestStart || (len == bestStop - bestStart && expansion < bestExpansion)){
+					bestStart = i;
+					bestStop = j + 1;
+					bestExpansion = expansion;
+				}
+			}
+		}
+		return new int[]{bestStart, bestStop};
+	}
+
+	private void buildAutomaton(){
+		//trie of the expanded anchors
+		ArrayList<int[]> trie = new ArrayList<int[]>();
+		ArrayList<ArrayList<Integer>> outs = new ArrayList<ArrayList<Integer>>();
+		trie.add(newNode());
+		outs.add(new ArrayList<Integer>());
+		for (int p=0; p< numberPatterns; p++){
+			int[] anchor = pickAnchor(masks[p]);
+			ArrayList<Integer> states = new ArrayList<Integer>();
+			states.add(0);
+			for (int i=anchor[0]; i< anchor[1]; i++){
+				ArrayList<Integer> next = new ArrayList<Integer>();
+				for (int s: states){
+					for (int code=0; code< 4; code++){
+						if ((masks[p][i] & (1 << code)) == 0) continue;
+						int[] node = trie.get(s);
+						if (node[code] == -1){
+							node[code] = trie.size();
+							trie.add(newNode());
+							outs.add(new ArrayList<Integer>());
+						}
+						next.add(node[code]);
+					}
+				}
+				states = next;
+			}
+			for (int s: states){
+				outs.get(s).add(p);
+				outs.get(s).add(anchor[1]);
+			}
+		}
+
+		//breadth first failure links, turning the trie into a DFA and merging outputs
+		int numStates = trie.size();
+		transitions = new int[numStates * 4];
+		int[] fail = new int[numStates];
+		int[] queue = new int[numStates];
+		int head = 0;
+		int tail = 0;
+		for (int code=0; code< 4; code++){
+			int child = trie.get(0)[code];
+			if (child == -1) transitions[code] = 0;
+			else {
+				transitions[code] = child;
+				fail[child] = 0;
+				queue[tail++] = child;
+			}
+		}
+		while (head < tail){
+			int s = queue[head++];
+			outs.get(s).addAll(outs.get(fail[s]));
+			for (int code=0; code< 4; code++){
+				int child = trie.get(s)[code];
+				if (child == -1) transitions[s*4 + code] = transitions[fail[s]*4 + code];
+				else {
+					transitions[s*4 + code] = child;
+					fail[child] = transitions[fail[s]*4 + code];
+					queue[tail++] = child;
+				}
+			}
+		}
+		outputs = new int[numStates][];
+		for (int s=0; s< numStates; s++){
+			ArrayList<Integer> o = outs.get(s);
+			if (o.size() == 0) continue;
+			outputs[s] = new int[o.size()];
+			for (int i=0; i< o.size(); i++) outputs[s][i] = o.get(i);
+		}
+	}
+
+	private static int[] newNode(){
+		return new int[]{-1, -1, -1, -1};
+	}
+
+	/**Scans seq from start to stop, reporting matches that lie within it and end after reportAfter.*/
+	private void scan(byte[] seq, int offset, int start, int stop, int reportAfter, Listener listener){
+		int state = 0;
+		for (int i=start; i< stop; i++){
+			int code = CODES[seq[i - offset] & 0xFF];
+			if (code == -1) {
+				state = 0;
+				continue;
+			}
+			state = transitions[state*4 + code];
+			int[] out = outputs[state];
+			if (out == null) continue;
+			for (int x=0; x< out.length; x+=2){
+				int p = out[x];
+				int siteStart = i + 1 - out[x+1];
+				byte[] m = masks[p];
+				int siteStop = siteStart + m.length;
+				if (siteStart < start || siteStop > stop || siteStop <= reportAfter) continue;
+				//check the whole site
+				boolean match = true;
+				for (int j=0; j< m.length; j++){
+					int c = CODES[seq[siteStart + j - offset] & 0xFF];
+					if (c == -1 || (m[j] & (1 << c)) == 0){
+						match = false;
+						break;
+					}
+				}
+				if (match) listener.hit(siteIndexes[p], siteStart, reverse[p]);
+			}
+		}
+	}
+
+	/**Reports every match in the sequence.*/
+	public void scan(byte[] seq, Listener listener){
+		scan(seq, 0, 0, seq.length, 0, listener);
+	}
+
+	/**Reports every match in the contig, reading it from the memory mapped genome a chunk at a time.*/
+	public void scan(TwoBitGenome genome, int contigIndex, Listener listener){
+		int length = genome.getLengths()[contigIndex];
+		int chunk = 1 << 20;
+		int overlap = maxLength - 1;
+		byte[] buffer = new byte[chunk + overlap];
+		for (int s=0; s< length; s+= chunk){
+			//back up so sites spanning the chunk boundary are seen whole
+			int from = Math.max(0, s - overlap);
+			int to = Math.min(length, s + chunk);
+			genome.getBases(contigIndex, from, to, buffer, 0, false);
+			scan(buffer, from, from, to, s, listener);
+		}
+	}
+
+	/**Returns the sorted starts of the matches to each site, both strands combined.*/
+	public int[][] fetchStarts(byte[] seq){
+		final StartCollector sc = new StartCollector(sites.length);
+		scan(seq, sc);
+		return sc.fetchStarts();
+	}
+
+	/**Returns the sorted starts of the matches to each site in the contig, both strands combined.*/
+	public int[][] fetchStarts(TwoBitGenome genome, int contigIndex){
+		final StartCollector sc = new StartCollector(sites.length);
+		scan(genome, contigIndex, sc);
+		return sc.fetchStarts();
+	}
+
+	/**Collects the starts for each site.*/
+	private static class StartCollector implements Listener {
+		private int[][] starts;
+		private int[] sizes;
+
+		StartCollector(int numberSites){
+			starts = new int[numberSites][16];
+			sizes = new int[numberSites];
+		}
+		public void hit(int siteIndex, int start, boolean reverseStrand){
+			int n = sizes[siteIndex];
+			if (n == starts[siteIndex].length) starts[siteIndex] = Arrays.copyOf(starts[siteIndex], n * 2);
+			starts[siteIndex][sizes[siteIndex]++] = start;
+		}
+		int[][] fetchStarts(){
+			int[][] s = new int[starts.length][];
+			for (int i=0; i< s.length; i++) {
+				//the strands are anchored at different offsets so their hits interleave out of order
+				Arrays.sort(starts[i], 0, sizes[i]);
+				//a degenerate site and its reverse complement can both match the same bases
+				int n = 0;
+				for (int j=0; j< sizes[i]; j++){
+					if (n == 0 || starts[i][j] != starts[i][n-1]) starts[i][n++] = starts[i][j];
+				}
+				s[i] = Arrays.copyOf(starts[i], n);
+			}
+			return s;
+		}
+	}
+
+	public int getNumberSites() {
+		return sites.length;
+	}
+	public int getMaxLength() {
+		return maxLength;
+	}
+}
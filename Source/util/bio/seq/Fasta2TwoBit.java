@@ -0,0 +1,102 @@
+package util.bio.seq;
+
+import java.io.File;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import util.gen.IO;
+import util.gen.Misc;
+
+/**Converts a multi fasta into a memory mappable .2bit file for TwoBitGenome.
+ * @author david.nix@hci.utah.edu*/
+public class Fasta2TwoBit {
+
+	//fields
+	private File fastaFile;
+	private File twoBitFile;
+
+	public Fasta2TwoBit (String[] args){
+		long startTime = System.currentTimeMillis();
+		processArgs(args);
+
+		try {
+			IO.pl("Converting "+fastaFile.getName()+" to "+twoBitFile.getName()+"...");
+			TwoBitGenome.writeTwoBit(fastaFile, twoBitFile);
+
+			//check it
+			TwoBitGenome genome = new TwoBitGenome(twoBitFile);
+			long totalBps = 0;
+			for (int l: genome.getLengths()) totalBps += l;
+			IO.pl("\t"+genome.getNumberContigs()+"\tSequences");
+			IO.pl("\t"+totalBps+"\tBps");
+		} catch (Exception e){
+			twoBitFile.delete();
+			e.printStackTrace();
+			Misc.printErrAndExit("\nError: failed to convert "+fastaFile);
+		}
+
+		double diffTime = ((double)(System.currentTimeMillis() -startTime))/1000;
+		IO.pl("\nDone! "+Math.round(diffTime)+" seconds\n");
+	}
+
+	public static void main(String[] args) {
+		if (args.length ==0){
+			printDocs();
+			System.exit(0);
+		}
+		new Fasta2TwoBit(args);
+	}
+
+	/**This method will process each argument and assign new variables*/
+	public void processArgs(String[] args){
+		Pattern pat = Pattern.compile("-[a-z]");
+		System.out.println("\n"+IO.fetchUSeqVersion()+" Arguments: "+Misc.stringArrayToString(args, " ")+"\n");
+		for (int i = 0; i<args.length; i++){
+			String lcArg = args[i].toLowerCase();
+			Matcher mat = pat.matcher(lcArg);
+			if (mat.matches()){
+				char test = args[i].charAt(1);
+				try{
+					switch (test){
+					case 'f': fastaFile = new File(args[++i]); break;
+					case 's': twoBitFile = new File(args[++i]); break;
+					case 'h': printDocs(); System.exit(0);
+					default: Misc.printExit("\nProblem, unknown option! " + mat.group());
+					}
+				}
+				catch (Exception e){
+					Misc.printExit("\nSorry, something doesn't look right with this parameter: -"+test+"\n");
+				}
+			}
+		}
+
+		if (fastaFile == null || fastaFile.canRead() == false) Misc.printErrAndExit("\nError: cannot find or read your fasta file?\n");
+		if (twoBitFile == null){
+			String name = fastaFile.getName().replaceAll("\\.(gz|zip)$", "").replaceAll("\\.(fasta|fa|fna)$", "");
+			twoBitFile = new File(fastaFile.getParentFile(), name+".2bit");
+		}
+		if (twoBitFile.getName().endsWith(".2bit") == false) Misc.printErrAndExit("\nError: your save file must end with .2bit\n");
+	}
+
+	public static void printDocs(){
+		System.out.println("\n" +
+				"**************************************************************************************\n" +
+				"**                               Fasta 2 Two Bit: Oct 2026                          **\n" +
+				"**************************************************************************************\n" +
+				"Converts a multi fasta into a UCSC .2bit file. Bases are packed four per byte with a\n" +
+				"list of N and soft masked blocks and a contig index. Apps that accept a xxx.2bit in\n" +
+				"place of an indexed fasta memory map it so threads and concurrent jobs on a node share\n" +
+				"one page cached copy of the genome. Non ACGT IUPAC codes are saved as N's.\n\n" +
+
+				"Options:\n"+
+				"-f Path to a multi fasta file, xxx.gz/.zip OK.\n"+
+				"-s Path to a xxx.2bit file to save, defaults to the fasta name with .2bit\n"+
+
+				"\n"+
+
+				"Example: java -Xmx1G -jar pathTo/USeq/Apps/Fasta2TwoBit -f hg38.fa.gz\n\n" +
+
+		"**************************************************************************************\n");
+
+	}
+}
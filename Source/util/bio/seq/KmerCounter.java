@@ -0,0 +1,452 @@
+package util.bio.seq;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import util.gen.ParallelRunner;
+
+/**Counts k-mers, k 1 to 31, packed two bits a base into a long with a rolling update, so no Strings are made. Bases
+ * are case insensitive, k-mers holding anything other than ACGT are skipped. Canonical counting adds each k-mer and its
+ * reverse complement under the smaller of the two. Small k, up to 12, count into a dense int[4^k], larger k into an
+ * open addressing long to int table that can spill sorted runs to disk when it holds too many entries. Counters from
+ * different threads are combined with merge(). Not thread safe, use one per thread.
+ * @author david.nix@hci.utah.edu*/
+public class KmerCounter {
+
+	//fields
+	private int k;
+	private boolean canonical;
+	private long mask;
+	private int rcShift;
+	private int[] dense = null;
+	private LongIntTable table = null;
+	private long maxEntriesInMemory = Long.MAX_VALUE;
+	private File tempDirectory = null;
+	private ArrayList<File> spillFiles = new ArrayList<File>();
+	private long numberKmers = 0;
+
+	public static final int MAX_DENSE_K = 12;
+	public static final long MIN_SPILL_ENTRIES = 65536;
+	private static final byte[] CODES = new byte[256];
+	private static final char[] BASES = {'A', 'C', 'G', 'T'};
+	static {
+		Arrays.fill(CODES, (byte)-1);
+		for (int i=0; i< 4; i++) {
+			CODES[BASES[i]] = (byte)i;
+			CODES[Character.toLowerCase(BASES[i])] = (byte)i;
+		}
+	}
+
+	public KmerCounter(int k, boolean canonical){
+		if (k < 1 || k > 31) throw new IllegalArgumentException("k must be between 1 and 31, not "+k);
+		this.k = k;
+		this.canonical = canonical;
+		mask = (1L << (2*k)) - 1;
+		rcShift = 2 * (k-1);
+		if (k <= MAX_DENSE_K) dense = new int[1 << (2*k)];
+		else table = new LongIntTable(1024);
+	}
+
+	/**Sets the number of distinct k-mers held in memory before a sorted run is written to the temp directory, only
+	 * used for k > MAX_DENSE_K.*/
+	public void setSpilling(long maxEntriesInMemory, File tempDirectory){
+		this.maxEntriesInMemory = maxEntriesInMemory;
+		this.tempDirectory = tempDirectory;
+	}
+
+	/**Counts the k-mers in seq from start to stop, interbase coordinates.*/
+	public void count(byte[] seq, int start, int stop) throws IOException{
+		long kmer = 0;
+		long rc = 0;
+		int valid = 0;
+		for (int i=start; i< stop; i++){
+			int code = CODES[seq[i] & 0xFF];
+			if (code == -1){
+				valid = 0;
+				continue;
+			}
+			kmer = ((kmer << 2) | code) & mask;
+			rc = (rc >>> 2) | (((long)(3 - code)) << rcShift);
+			if (++valid >= k) add(canonical && rc < kmer ? rc : kmer);
+		}
+	}
+
+	public void count(byte[] seq) throws IOException{
+		count(seq, 0, seq.length);
+	}
+
+	/**Counts the k-mers in the contig, reading it from the memory mapped genome a chunk at a time.*/
+	public void count(TwoBitGenome genome, int contigIndex) throws IOException{
+		int length = genome.getLengths()[contigIndex];
+		int chunk = 1 << 20;
+		//each chunk starts k-1 bases back so k-mers spanning the boundary are counted once
+		byte[] buffer = new byte[chunk + k - 1];
+		for (int s=0; s< length; s+= chunk){
+			int from = Math.max(0, s - (k-1));
+			int to = Math.min(length, s + chunk);
+			genome.getBases(contigIndex, from, to, buffer, 0, false);
+			count(buffer, 0, to - from);
+		}
+	}
+
+	private void add(long kmer) throws IOException{
+		numberKmers++;
+		if (dense != null) dense[(int)kmer]++;
+		else {
+			table.add(kmer, 1);
+			if (table.size() >= maxEntriesInMemory) spill();
+		}
+	}
+
+	/**Writes the table as a sorted run of long k-mer int count pairs and clears it.*/
+	private void spill() throws IOException{
+		File f = File.createTempFile("kmers", ".spill", tempDirectory);
+		f.deleteOnExit();
+		long[][] sorted = table.sortedEntries();
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f), 65536));
+		try {
+			for (int i=0; i< sorted[0].length; i++){
+				out.writeLong(sorted[0][i]);
+				out.writeInt((int)sorted[1][i]);
+			}
+		} finally {
+			out.close();
+		}
+		spillFiles.add(f);
+		table = new LongIntTable(1024);
+	}
+
+	/**Adds the counts from the other counter, which must have the same k and canonical setting, and empties it.*/
+	public void merge(KmerCounter other) throws IOException{
+		if (other.k != k || other.canonical != canonical) throw new IllegalArgumentException("Cannot merge k-mer counters with different k or canonical settings.");
+		numberKmers += other.numberKmers;
+		if (dense != null){
+			for (int i=0; i< dense.length; i++) dense[i] += other.dense[i];
+		}
+		else {
+			LongIntTable t = other.table;
+			for (int i=0; i< t.keys.length; i++){
+				if (t.keys[i] == LongIntTable.EMPTY) continue;
+				table.add(t.keys[i], t.counts[i]);
+				if (table.size() >= maxEntriesInMemory) spill();
+			}
+			spillFiles.addAll(other.spillFiles);
+			other.spillFiles.clear();
+		}
+		other.numberKmers = 0;
+		if (other.dense != null) other.dense = new int[0];
+		else other.table = new LongIntTable(16);
+	}
+
+	/**Returns the count, for k > MAX_DENSE_K only the unspilled counts are seen, use iterator() after spilling.*/
+	public long getCount(long kmer){
+		if (dense != null) return dense[(int)kmer];
+		return table.get(kmer);
+	}
+
+	/**Returns the k-mers with a count in sorted order, which is alphabetical, merging any spilled runs. Don't add more
+	 * counts while iterating.*/
+	public KmerIterator iterator() throws IOException{
+		if (dense != null) return new DenseIterator();
+		return new MergingIterator();
+	}
+
+	/**Steps through the counted k-mers, call next() before the first.*/
+	public interface KmerIterator {
+		/**Moves to the next k-mer, false when done.*/
+		public boolean next() throws IOException;
+		public long getKmer();
+		public long getCount();
+		/**Closes any spill files, call if stopping early.*/
+		public void close() throws IOException;
+	}
+
+	private class DenseIterator implements KmerIterator {
+		private int index = -1;
+		public boolean next(){
+			while (++index < dense.length) if (dense[index] != 0) return true;
+			return false;
+		}
+		public long getKmer(){
+			return index;
+		}
+		public long getCount(){
+			return dense[index];
+		}
+		public void close(){}
+	}
+
+	/**K-way merge of the sorted table and the spilled runs, summing counts for the same k-mer.*/
+	private class MergingIterator implements KmerIterator {
+		private PriorityQueue<Run> queue = new PriorityQueue<Run>();
+		private long kmer;
+		private long count;
+
+		MergingIterator() throws IOException{
+			long[][] sorted = table.sortedEntries();
+			Run memory = new Run(sorted);
+			if (memory.advance()) queue.add(memory);
+			for (File f: spillFiles){
+				Run r = new Run(f);
+				if (r.advance()) queue.add(r);
+			}
+		}
+
+		public boolean next() throws IOException{
+			if (queue.isEmpty()) return false;
+			Run r = queue.poll();
+			kmer = r.kmer;
+			count = r.count;
+			if (r.advance()) queue.add(r);
+			while (queue.isEmpty() == false && queue.peek().kmer == kmer){
+				r = queue.poll();
+				count += r.count;
+				if (r.advance()) queue.add(r);
+			}
+			return true;
+		}
+		public long getKmer(){
+			return kmer;
+		}
+		public long getCount(){
+			return count;
+		}
+		public void close() throws IOException{
+			for (Run r: queue) r.close();
+			queue.clear();
+		}
+	}
+
+	private static class Run implements Comparable<Run> {
+		private long[][] sorted = null;
+		private int index = 0;
+		private DataInputStream in = null;
+		long kmer;
+		long count;
+
+		Run(long[][] sorted){
+			this.sorted = sorted;
+		}
+		Run(File spill) throws IOException{
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(spill), 65536));
+		}
+		/**Loads the next entry, false and closed when done.*/
+		boolean advance() throws IOException{
+			if (sorted != null){
+				if (index == sorted[0].length) return false;
+				kmer = sorted[0][index];
+				count = sorted[1][index++];
+				return true;
+			}
+			try {
+				kmer = in.readLong();
+				count = in.readInt();
+				return true;
+			} catch (EOFException e){
+				close();
+				return false;
+			}
+		}
+		void close() throws IOException{
+			if (in != null) in.close();
+		}
+		public int compareTo(Run other){
+			return Long.compare(kmer, other.kmer);
+		}
+	}
+
+	/**Open addressing table of non negative long keys to int counts with linear probing.*/
+	private static class LongIntTable {
+		static final long EMPTY = -1;
+		long[] keys;
+		int[] counts;
+		int size = 0;
+		int threshold;
+
+		LongIntTable(int capacity){
+			keys = new long[capacity];
+			counts = new int[capacity];
+			Arrays.fill(keys, EMPTY);
+			threshold = (int)(capacity * 0.7);
+		}
+
+		private static int hash(long key){
+			key ^= key >>> 33;
+			key *= 0xff51afd7ed558ccdL;
+			key ^= key >>> 33;
+			return (int)key;
+		}
+
+		void add(long key, int count){
+			int m = keys.length - 1;
+			int i = hash(key) & m;
+			while (true){
+				if (keys[i] == key){
+					counts[i] += count;
+					return;
+				}
+				if (keys[i] == EMPTY){
+					keys[i] = key;
+					counts[i] = count;
+					if (++size > threshold) resize();
+					return;
+				}
+				i = (i + 1) & m;
+			}
+		}
+
+		int get(long key){
+			int m = keys.length - 1;
+			int i = hash(key) & m;
+			while (keys[i] != EMPTY){
+				if (keys[i] == key) return counts[i];
+				i = (i + 1) & m;
+			}
+			return 0;
+		}
+
+		private void resize(){
+			long[] oldKeys = keys;
+			int[] oldCounts = counts;
+			keys = new long[oldKeys.length * 2];
+			counts = new int[oldKeys.length * 2];
+			Arrays.fill(keys, EMPTY);
+			threshold = (int)(keys.length * 0.7);
+			size = 0;
+			for (int i=0; i< oldKeys.length; i++) if (oldKeys[i] != EMPTY) add(oldKeys[i], oldCounts[i]);
+		}
+
+		int size(){
+			return size;
+		}
+
+		/**Returns {keys, counts} sorted by key.*/
+		long[][] sortedEntries(){
+			long[] k = new long[size];
+			int n = 0;
+			for (int i=0; i< keys.length; i++) if (keys[i] != EMPTY) k[n++] = keys[i];
+			Arrays.sort(k);
+			long[] c = new long[size];
+			for (int i=0; i< size; i++) c[i] = get(k[i]);
+			return new long[][]{k, c};
+		}
+	}
+
+	/**Counts the sequences in parallel, each thread fills its own counter pulling the next sequence index as it finishes
+	 * one, then the counters are merged.
+	 * @param sequences called with each sequence index and the counter to add it to
+	 * @param maxEntriesInMemory distinct k-mers held in memory by all the threads together, each gets an equal share,
+	 * at least MIN_SPILL_ENTRIES, before spilling. A table entry with the sorted copy made to spill it takes up to ~50 bytes.*/
+	public static KmerCounter countParallel(final int numberSequences, final SequenceCounter sequences, final int k, final boolean canonical, int numberThreads, final long maxEntriesInMemory, final File tempDirectory) throws IOException{
+		if (numberThreads > numberSequences) numberThreads = Math.max(1, numberSequences);
+		final AtomicInteger nextIndex = new AtomicInteger(0);
+		final KmerCounter[] counters = new KmerCounter[numberThreads];
+		Runnable[] workers = new Runnable[numberThreads];
+		//not so small that every few k-mers spill a run
+		long share = Math.max(MIN_SPILL_ENTRIES, maxEntriesInMemory / numberThreads);
+		for (int i=0; i< numberThreads; i++){
+			final KmerCounter c = new KmerCounter(k, canonical);
+			c.setSpilling(share, tempDirectory);
+			counters[i] = c;
+			workers[i] = new Runnable(){
+				public void run(){
+					try {
+						int index;
+						while ((index = nextIndex.getAndIncrement()) < numberSequences) sequences.count(index, c);
+					} catch (IOException e){
+						throw new RuntimeException(e);
+					}
+				}
+			};
+		}
+		ParallelRunner.runAll(workers, numberThreads);
+		//grow the merged counter by the share of each counter emptied into it so the total stays within budget
+		for (int i=1; i< counters.length; i++) {
+			counters[0].maxEntriesInMemory = share * i;
+			counters[0].merge(counters[i]);
+		}
+		counters[0].maxEntriesInMemory = maxEntriesInMemory;
+		return counters[0];
+	}
+
+	/**Adds one sequence to a counter, see countParallel().*/
+	public interface SequenceCounter {
+		public void count(int sequenceIndex, KmerCounter counter) throws IOException;
+	}
+
+	/**Counts every contig of the genome in parallel.*/
+	public static KmerCounter countParallel(final TwoBitGenome genome, int k, boolean canonical, int numberThreads, long maxEntriesInMemory, File tempDirectory) throws IOException{
+		return countParallel(genome.getNumberContigs(), new SequenceCounter(){
+			public void count(int sequenceIndex, KmerCounter counter) throws IOException{
+				counter.count(genome, sequenceIndex);
+			}
+		}, k, canonical, numberThreads, maxEntriesInMemory, tempDirectory);
+	}
+
+	/**Returns the packed forward strand k-mers of seq in order, skipping any holding a base other than ACGT.*/
+	public static long[] encodeAll(byte[] seq, int k){
+		long mask = (1L << (2*k)) - 1;
+		long[] kmers = new long[Math.max(0, seq.length - k + 1)];
+		int n = 0;
+		long kmer = 0;
+		int valid = 0;
+		for (int i=0; i< seq.length; i++){
+			int code = CODES[seq[i] & 0xFF];
+			if (code == -1){
+				valid = 0;
+				continue;
+			}
+			kmer = ((kmer << 2) | code) & mask;
+			if (++valid >= k) kmers[n++] = kmer;
+		}
+		return n == kmers.length ? kmers : Arrays.copyOf(kmers, n);
+	}
+
+	/**Returns the packed k-mer or -1 if it holds a base other than ACGT.*/
+	public static long encode(String word){
+		long kmer = 0;
+		for (int i=0; i< word.length(); i++){
+			int code = CODES[word.charAt(i) & 0xFF];
+			if (code == -1 || word.charAt(i) > 255) return -1;
+			kmer = (kmer << 2) | code;
+		}
+		return kmer;
+	}
+
+	public static String decode(long kmer, int k){
+		char[] c = new char[k];
+		for (int i=k-1; i>= 0; i--){
+			c[i] = BASES[(int)(kmer & 3)];
+			kmer >>>= 2;
+		}
+		return new String(c);
+	}
+
+	/**Deletes any spilled runs.*/
+	public void deleteSpillFiles(){
+		for (File f: spillFiles) f.delete();
+		spillFiles.clear();
+	}
+
+	public int getK() {
+		return k;
+	}
+	public boolean isCanonical() {
+		return canonical;
+	}
+	/**The number of k-mers counted, not distinct.*/
+	public long getNumberKmers() {
+		return numberKmers;
+	}
+}
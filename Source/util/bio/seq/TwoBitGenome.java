@@ -0,0 +1,498 @@
+package util.bio.seq;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.cram.ref.CRAMReferenceSource;
+import util.gen.IO;
+
+/**Read only reference genome backed by a UCSC .2bit file. The packed bases are memory mapped, in a few large windows each
+ * holding whole contigs, so many threads and many JVMs on the same node share one page cached copy instead of each loading
+ * the fasta text. Fragmented assemblies with millions of contigs still only take a handful of maps. Base lookups are allocation free
+ * and safe to call from any thread. Soft masked bases come back lower case and N blocks as N, just like the source fasta.
+ * Use Fasta2TwoBit or writeTwoBit() to make the file, UCSC's faToTwoBit output also works.
+ * @author david.nix@hci.utah.edu*/
+public class TwoBitGenome implements CRAMReferenceSource {
+
+	//fields
+	private File twoBitFile;
+	private String[] names;
+	private int[] lengths;
+	private int[][] nStarts;
+	private int[][] nEnds;
+	private int[][] maskStarts;
+	private int[][] maskEnds;
+	//packed bases, each contig is in windows[windowIndex[i]] starting at packedOffsets[i]
+	private MappedByteBuffer[] windows;
+	private int[] windowIndex;
+	private int[] packedOffsets;
+	private HashMap<String, Integer> nameIndex = new HashMap<String, Integer>();
+
+	//upper cased contigs for cram decoding, soft so the gc can drop them, same as htsjdk's ReferenceSource
+	private HashMap<Integer, SoftReference<byte[]>> cramContigs = new HashMap<Integer, SoftReference<byte[]>>();
+
+	public static final int SIGNATURE = 0x1A412743;
+	/**Max bytes per mapped window, a contig bigger than this gets its own.*/
+	private static final long WINDOW_SIZE = 1l << 30;
+	private static final byte[] CODE_TO_BASE = {'T', 'C', 'A', 'G'};
+	private static final byte[] BASE_TO_CODE = new byte[128];
+	static {
+		BASE_TO_CODE['C'] = 1; BASE_TO_CODE['c'] = 1;
+		BASE_TO_CODE['A'] = 2; BASE_TO_CODE['a'] = 2;
+		BASE_TO_CODE['G'] = 3; BASE_TO_CODE['g'] = 3;
+	}
+
+	//constructor
+	public TwoBitGenome(File twoBitFile) throws IOException {
+		this.twoBitFile = twoBitFile;
+		RandomAccessFile raf = new RandomAccessFile(twoBitFile, "r");
+		try {
+			load(raf.getChannel());
+		} finally {
+			//mappings stay valid after the channel is closed
+			raf.close();
+		}
+	}
+
+	private void load(FileChannel channel) throws IOException {
+		ByteBuffer header = read(channel, 0, 16, ByteOrder.LITTLE_ENDIAN);
+		int signature = header.getInt();
+		if (signature != SIGNATURE) {
+			if (Integer.reverseBytes(signature) != SIGNATURE) throw new IOException("\nError: "+twoBitFile+" is not a .2bit file, bad signature.");
+			header.order(ByteOrder.BIG_ENDIAN);
+		}
+		ByteOrder order = header.order();
+		int version = header.getInt();
+		if (version != 0 && version != 1) throw new IOException("\nError: unsupported .2bit version "+version+" in "+twoBitFile);
+		int seqCount = header.getInt();
+
+		names = new String[seqCount];
+		lengths = new int[seqCount];
+		nStarts = new int[seqCount][];
+		nEnds = new int[seqCount][];
+		maskStarts = new int[seqCount][];
+		maskEnds = new int[seqCount][];
+		long[] offsets = new long[seqCount];
+		final long[] packedStarts = new long[seqCount];
+		long[] packedSizes = new long[seqCount];
+
+		//index, version 1 uses 64 bit offsets
+		long pos = 16;
+		int offsetSize = version == 0 ? 4: 8;
+		for (int i=0; i< seqCount; i++){
+			int nameSize = read(channel, pos, 1, order).get() & 0xFF;
+			ByteBuffer entry = read(channel, pos+1, nameSize + offsetSize, order);
+			byte[] name = new byte[nameSize];
+			entry.get(name);
+			names[i] = new String(name, "US-ASCII");
+			offsets[i] = version == 0 ? (entry.getInt() & 0xFFFFFFFFL) : entry.getLong();
+			pos += 1 + nameSize + offsetSize;
+			if (nameIndex.put(names[i], i) != null) throw new IOException("\nError: duplicate sequence name '"+names[i]+"' in "+twoBitFile);
+		}
+
+		//sequence records
+		for (int i=0; i< seqCount; i++){
+			pos = offsets[i];
+			ByteBuffer bb = read(channel, pos, 8, order);
+			long dnaSize = bb.getInt() & 0xFFFFFFFFL;
+			if (dnaSize > Integer.MAX_VALUE) throw new IOException("\nError: "+names[i]+" is too long to index with an int.");
+			lengths[i] = (int)dnaSize;
+			int nBlockCount = bb.getInt();
+			pos += 8;
+
+			int[][] se = readBlocks(channel, pos, nBlockCount, order);
+			nStarts[i] = se[0];
+			nEnds[i] = se[1];
+			pos += 8l * nBlockCount;
+
+			int maskBlockCount = read(channel, pos, 4, order).getInt();
+			pos += 4;
+			se = readBlocks(channel, pos, maskBlockCount, order);
+			maskStarts[i] = se[0];
+			maskEnds[i] = se[1];
+			//skip reserved
+			pos += 8l * maskBlockCount + 4;
+
+			packedStarts[i] = pos;
+			packedSizes[i] = (dnaSize + 3) / 4;
+		}
+		mapWindows(channel, packedStarts, packedSizes);
+	}
+
+	/**Walks the contigs in file order, packing as many as fit into each window, then maps the windows.*/
+	private void mapWindows(FileChannel channel, final long[] packedStarts, long[] packedSizes) throws IOException{
+		int seqCount = packedStarts.length;
+		windowIndex = new int[seqCount];
+		packedOffsets = new int[seqCount];
+		Integer[] byStart = new Integer[seqCount];
+		for (int i=0; i< seqCount; i++) byStart[i] = i;
+		Arrays.sort(byStart, new Comparator<Integer>(){
+			public int compare(Integer a, Integer b){
+				return Long.compare(packedStarts[a], packedStarts[b]);
+			}
+		});
+		ArrayList<MappedByteBuffer> al = new ArrayList<MappedByteBuffer>();
+		int first = 0;
+		while (first < seqCount){
+			long windowStart = packedStarts[byStart[first]];
+			long windowEnd = windowStart + packedSizes[byStart[first]];
+			int last = first + 1;
+			while (last < seqCount){
+				int c = byStart[last];
+				long end = Math.max(windowEnd, packedStarts[c] + packedSizes[c]);
+				if (end - windowStart > WINDOW_SIZE) break;
+				windowEnd = end;
+				last++;
+			}
+			for (int i=first; i< last; i++){
+				int c = byStart[i];
+				windowIndex[c] = al.size();
+				packedOffsets[c] = (int)(packedStarts[c] - windowStart);
+			}
+			al.add(channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowEnd - windowStart));
+			first = last;
+		}
+		windows = new MappedByteBuffer[al.size()];
+		al.toArray(windows);
+	}
+
+	/**Returns starts and ends (start + size).*/
+	private static int[][] readBlocks(FileChannel channel, long pos, int count, ByteOrder order) throws IOException{
+		int[] starts = new int[count];
+		int[] ends = new int[count];
+		if (count != 0) {
+			ByteBuffer bb = read(channel, pos, 8 * count, order);
+			for (int i=0; i< count; i++) starts[i] = bb.getInt();
+			for (int i=0; i< count; i++) ends[i] = starts[i] + bb.getInt();
+		}
+		return new int[][]{starts, ends};
+	}
+
+	private static ByteBuffer read(FileChannel channel, long pos, int size, ByteOrder order) throws IOException{
+		ByteBuffer bb = ByteBuffer.allocate(size).order(order);
+		while (bb.hasRemaining()){
+			int n = channel.read(bb, pos + bb.position());
+			if (n < 0) throw new IOException("\nError: unexpected end of .2bit file.");
+		}
+		bb.flip();
+		return bb;
+	}
+
+	/**Returns the contig index or -1 if not found.*/
+	public int getContigIndex(String name){
+		Integer index = nameIndex.get(name);
+		if (index == null) return -1;
+		return index;
+	}
+
+	/**Returns the contig length or -1 if not found.*/
+	public int getLength(String name){
+		Integer index = nameIndex.get(name);
+		if (index == null) return -1;
+		return lengths[index];
+	}
+
+	/**Returns the base at the interbase coordinate, A C G T N or lower case if soft masked.*/
+	public byte getBase(int contigIndex, int position){
+		if (position < 0 || position >= lengths[contigIndex]) throw new IndexOutOfBoundsException(names[contigIndex]+" position "+position+" is outside 0-"+lengths[contigIndex]);
+		if (inBlock(nStarts[contigIndex], nEnds[contigIndex], position)) {
+			return inBlock(maskStarts[contigIndex], maskEnds[contigIndex], position) ? (byte)'n' : (byte)'N';
+		}
+		int code = (windows[windowIndex[contigIndex]].get(packedOffsets[contigIndex] + (position >> 2)) >> (6 - ((position & 3) << 1))) & 3;
+		byte base = CODE_TO_BASE[code];
+		if (inBlock(maskStarts[contigIndex], maskEnds[contigIndex], position)) return (byte)(base | 0x20);
+		return base;
+	}
+
+	/**Fills dest starting at destOffset with the bases from start to stop, interbase coordinates so stop is excluded.
+	 * Set keepCase to false to upper case everything.*/
+	public void getBases(int contigIndex, int start, int stop, byte[] dest, int destOffset, boolean keepCase){
+		if (start < 0 || stop > lengths[contigIndex] || start > stop) throw new IndexOutOfBoundsException(names[contigIndex]+" "+start+"-"+stop+" is outside 0-"+lengths[contigIndex]);
+		MappedByteBuffer mb = windows[windowIndex[contigIndex]];
+		int offset = packedOffsets[contigIndex];
+		int d = destOffset;
+		int i = start;
+		//walk a byte at a time
+		while (i < stop){
+			int b = mb.get(offset + (i >> 2));
+			int shift = 6 - ((i & 3) << 1);
+			while (shift >= 0 && i < stop){
+				dest[d++] = CODE_TO_BASE[(b >> shift) & 3];
+				shift -= 2;
+				i++;
+			}
+		}
+		overlay(nStarts[contigIndex], nEnds[contigIndex], start, stop, dest, destOffset, true);
+		if (keepCase) overlay(maskStarts[contigIndex], maskEnds[contigIndex], start, stop, dest, destOffset, false);
+	}
+
+	/**Allocates and returns the bases from start to stop, interbase coordinates. Returns null if the contig isn't found.*/
+	public byte[] getBases(String name, int start, int stop){
+		int index = getContigIndex(name);
+		if (index == -1) return null;
+		byte[] bases = new byte[stop-start];
+		getBases(index, start, stop, bases, 0, true);
+		return bases;
+	}
+
+	/**For htsjdk cram decoding. Returns the whole contig upper cased or null if not found.*/
+	public synchronized byte[] getReferenceBases(SAMSequenceRecord record, boolean tryNameVariants){
+		int index = getContigIndex(record.getSequenceName());
+		if (index == -1 && tryNameVariants){
+			String name = record.getSequenceName();
+			if (name.startsWith("chr")) index = getContigIndex(name.substring(3));
+			else index = getContigIndex("chr"+name);
+			if (index == -1 && name.equals("chrM")) index = getContigIndex("MT");
+			else if (index == -1 && name.equals("MT")) index = getContigIndex("chrM");
+		}
+		if (index == -1) return null;
+		SoftReference<byte[]> ref = cramContigs.get(index);
+		byte[] bases = ref == null ? null : ref.get();
+		if (bases == null){
+			bases = new byte[lengths[index]];
+			getBases(index, 0, lengths[index], bases, 0, false);
+			cramContigs.put(index, new SoftReference<byte[]>(bases));
+		}
+		return bases;
+	}
+
+	/**Binary search for the block containing the position.*/
+	private static boolean inBlock(int[] starts, int[] ends, int position){
+		int hit = lastStartAtOrBefore(starts, position);
+		return hit != -1 && position < ends[hit];
+	}
+
+	/**Returns the index of the last block start <= position or -1.*/
+	private static int lastStartAtOrBefore(int[] starts, int position){
+		int low = 0;
+		int high = starts.length - 1;
+		int hit = -1;
+		while (low <= high){
+			int mid = (low + high) >>> 1;
+			if (starts[mid] <= position) {
+				hit = mid;
+				low = mid + 1;
+			}
+			else high = mid - 1;
+		}
+		return hit;
+	}
+
+	/**Sets N's or lower cases the bases in dest that fall in the blocks.*/
+	private static void overlay(int[] starts, int[] ends, int start, int stop, byte[] dest, int destOffset, boolean setN){
+		int b = lastStartAtOrBefore(starts, start);
+		if (b == -1) b = 0;
+		for (; b < starts.length && starts[b] < stop; b++){
+			int s = Math.max(starts[b], start);
+			int e = Math.min(ends[b], stop);
+			for (int i=s; i< e; i++) {
+				int d = destOffset + i - start;
+				if (setN) dest[d] = 'N';
+				else dest[d] = (byte)(dest[d] | 0x20);
+			}
+		}
+	}
+
+	/**Converts a multi fasta, gz/zip OK, into a .2bit file. Makes two passes through the fasta so whole chromosomes are never
+	 * held in memory. IUPAC codes other than ACGT are saved as N's. Lower case bases are saved as soft masked blocks.*/
+	public static void writeTwoBit(File fasta, File twoBit) throws IOException{
+		//first pass collects names, lengths, and the N and mask blocks
+		LinkedHashMap<String, FastaBlocks> contigs = new LinkedHashMap<String, FastaBlocks>();
+		BufferedReader in = IO.fetchBufferedReader(fasta);
+		FastaBlocks current = null;
+		String line;
+		while ((line = in.readLine()) != null){
+			if (line.startsWith(">")){
+				if (current != null) current.close();
+				String name = line.substring(1).trim().split("\\s+")[0];
+				if (name.length() == 0 || name.length() > 255) {
+					in.close();
+					throw new IOException("\nError: bad fasta header, names must be 1-255 characters -> "+line);
+				}
+				if (contigs.containsKey(name)) {
+					in.close();
+					throw new IOException("\nError: duplicate fasta name "+name);
+				}
+				current = new FastaBlocks();
+				contigs.put(name, current);
+			}
+			else if (current != null) {
+				int len = line.length();
+				for (int i=0; i< len; i++) {
+					char c = line.charAt(i);
+					if (c > ' ') current.add(c);
+				}
+			}
+		}
+		if (current != null) current.close();
+		in.close();
+		if (contigs.size() == 0) throw new IOException("\nError: no sequences found in "+fasta);
+
+		//work out the offsets, switch to version 1 if past 4G
+		String[] names = new String[contigs.size()];
+		contigs.keySet().toArray(names);
+		long indexSize = 16;
+		for (String n: names) indexSize += 1 + n.length() + 4;
+		long total = indexSize;
+		for (String n: names) total += contigs.get(n).recordSize();
+		int version = total > 0xFFFFFFFFL ? 1 : 0;
+		if (version == 1) indexSize += 4 * names.length;
+
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(twoBit), 1<<16);
+		try {
+			writeInt(out, SIGNATURE);
+			writeInt(out, version);
+			writeInt(out, names.length);
+			writeInt(out, 0);
+			long offset = indexSize;
+			for (String n: names){
+				out.write(n.length());
+				out.write(n.getBytes("US-ASCII"));
+				if (version == 0) writeInt(out, (int)offset);
+				else {
+					writeInt(out, (int)offset);
+					writeInt(out, (int)(offset >>> 32));
+				}
+				offset += contigs.get(n).recordSize();
+			}
+
+			//second pass writes each record and packs the bases
+			in = IO.fetchBufferedReader(fasta);
+			current = null;
+			int packedByte = 0;
+			int count = 0;
+			while ((line = in.readLine()) != null){
+				if (line.startsWith(">")){
+					if (current != null && (count & 3) != 0) out.write(packedByte << (2 * (4 - (count & 3))));
+					String name = line.substring(1).trim().split("\\s+")[0];
+					current = contigs.get(name);
+					current.writeRecordHeader(out);
+					packedByte = 0;
+					count = 0;
+				}
+				else if (current != null) {
+					int len = line.length();
+					for (int i=0; i< len; i++) {
+						char c = line.charAt(i);
+						if (c <= ' ') continue;
+						packedByte = (packedByte << 2) | (c < 128 ? BASE_TO_CODE[c] : 0);
+						if ((++count & 3) == 0){
+							out.write(packedByte);
+							packedByte = 0;
+						}
+					}
+				}
+			}
+			if (current != null && (count & 3) != 0) out.write(packedByte << (2 * (4 - (count & 3))));
+		} finally {
+			in.close();
+			out.close();
+		}
+	}
+
+	private static void writeInt(OutputStream out, int v) throws IOException{
+		out.write(v);
+		out.write(v >>> 8);
+		out.write(v >>> 16);
+		out.write(v >>> 24);
+	}
+
+	/**Collects the length and the N and lower case runs of one fasta sequence.*/
+	private static class FastaBlocks {
+		int length = 0;
+		IntBlocks nBlocks = new IntBlocks();
+		IntBlocks maskBlocks = new IntBlocks();
+		int nStart = -1;
+		int maskStart = -1;
+
+		void add(char c){
+			boolean isN = c >= 128 || (BASE_TO_CODE[c] == 0 && c != 'T' && c != 't');
+			boolean isLower = Character.isLowerCase(c);
+			if (isN) {
+				if (nStart == -1) nStart = length;
+			}
+			else if (nStart != -1) {
+				nBlocks.add(nStart, length - nStart);
+				nStart = -1;
+			}
+			if (isLower) {
+				if (maskStart == -1) maskStart = length;
+			}
+			else if (maskStart != -1) {
+				maskBlocks.add(maskStart, length - maskStart);
+				maskStart = -1;
+			}
+			length++;
+		}
+
+		void close(){
+			if (nStart != -1) nBlocks.add(nStart, length - nStart);
+			if (maskStart != -1) maskBlocks.add(maskStart, length - maskStart);
+			nStart = -1;
+			maskStart = -1;
+		}
+
+		long recordSize(){
+			return 4 + 4 + 8l*nBlocks.size + 4 + 8l*maskBlocks.size + 4 + (length + 3l)/4;
+		}
+
+		void writeRecordHeader(OutputStream out) throws IOException{
+			writeInt(out, length);
+			nBlocks.write(out);
+			maskBlocks.write(out);
+			writeInt(out, 0);
+		}
+	}
+
+	/**Growable start size pairs.*/
+	private static class IntBlocks {
+		int[] starts = new int[16];
+		int[] sizes = new int[16];
+		int size = 0;
+
+		void add(int start, int blockSize){
+			if (size == starts.length){
+				starts = Arrays.copyOf(starts, size * 2);
+				sizes = Arrays.copyOf(sizes, size * 2);
+			}
+			starts[size] = start;
+			sizes[size++] = blockSize;
+		}
+
+		void write(OutputStream out) throws IOException{
+			writeInt(out, size);
+			for (int i=0; i< size; i++) writeInt(out, starts[i]);
+			for (int i=0; i< size; i++) writeInt(out, sizes[i]);
+		}
+	}
+
+	public File getTwoBitFile() {
+		return twoBitFile;
+	}
+	public String[] getNames() {
+		return names;
+	}
+	public int[] getLengths() {
+		return lengths;
+	}
+	public int getNumberContigs(){
+		return names.length;
+	}
+
+}
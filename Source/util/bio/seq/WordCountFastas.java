@@ -2,95 +2,83 @@ package util.bio.seq;
 import java.io.*;
 import java.util.*;
 import util.gen.*;
-import util.apps.MergeRegions;
 import util.bio.parsers.*;
 
+/**Counts the words, k-mers, in a multi fasta or a xxx.2bit genome with a packed KmerCounter, printing those seen at
+ * least maxNumber times. For fastas with a non zero maxNumber the sequences free of these words are then printed.
+ * Words holding bases other than ACGT are skipped and case is ignored. Words longer than 12 are held in a table that
+ * spills sorted runs next to the input once all the threads together hold millionKmersInMemory distinct words.*/
 public class WordCountFastas {
 
 	public static void main (String[] args){
-		File fastaFile = new File (args[0]);
-		MultiFastaParser fastas = new MultiFastaParser(fastaFile);
-		String[] seqs = fastas.getSeqs();
-		String[] names = fastas.getNames();
-
+		if (args.length < 3) Misc.printExit("\nUsage: WordCountFastas xxx.fasta|xxx.2bit wordSize maxNumber (threads) (millionKmersInMemory)\n"+
+				"   millionKmersInMemory is shared by all the threads, only used for a wordSize > 12, up to ~50 bytes a k-mer,\n"+
+				"   defaults to 50, ~2.5GB.\n");
+		File seqFile = new File (args[0]);
 		int sizeOfWord = Integer.parseInt(args[1]);
 		int maxNumber = Integer.parseInt(args[2]);
+		int numberThreads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+		//spill big tables next to the input
+		long maxEntries = args.length > 4 ? Long.parseLong(args[4]) * 1000000 : 50000000;
+		File tempDir = seqFile.getAbsoluteFile().getParentFile();
 
-		HashMap<String, Integer> seqCounts = new HashMap<String, Integer>();
-
-
-		for (int i=0; i< seqs.length; i++){
-			int numWords = seqs[i].length()- sizeOfWord;
-			for (int j=0; j< numWords; j++){
-				int end = j+ sizeOfWord;
-				String word = seqs[i].substring(j, end);
-				Integer count = seqCounts.get(word);
-				int num = 1;
-				if (count != null) num = count.intValue() + 1;
-				seqCounts.put(word, new Integer(num));
+		try {
+			String[] seqs = null;
+			String[] names = null;
+			KmerCounter counter;
+			if (seqFile.getName().endsWith(".2bit")) {
+				counter = KmerCounter.countParallel(new TwoBitGenome(seqFile), sizeOfWord, false, numberThreads, maxEntries, tempDir);
+			}
+			else {
+				MultiFastaParser fastas = new MultiFastaParser(seqFile);
+				seqs = fastas.getSeqs();
+				names = fastas.getNames();
+				final String[] s = seqs;
+				counter = KmerCounter.countParallel(seqs.length, new KmerCounter.SequenceCounter(){
+					public void count(int sequenceIndex, KmerCounter c) throws IOException{
+						c.count(s[sequenceIndex].getBytes());
+					}
+				}, sizeOfWord, false, numberThreads, maxEntries, tempDir);
 			}
-		}
 
-		//find bad words
-		Iterator<String> it = seqCounts.keySet().iterator();
-		HashSet<String> badWords = new HashSet<String>();
-		while (it.hasNext()){
-			String word = it.next();
-			int count = seqCounts.get(word).intValue();
-			if (count >= maxNumber) {
-				badWords.add(word);
-				System.out.println(word + "\t" + count);
+			//find bad words, in alphabetical order
+			long[] badWords = new long[1024];
+			int numBadWords = 0;
+			KmerCounter.KmerIterator it = counter.iterator();
+			while (it.next()){
+				long count = it.getCount();
+				if (count >= maxNumber) {
+					if (numBadWords == badWords.length) badWords = Arrays.copyOf(badWords, numBadWords * 2);
+					badWords[numBadWords++] = it.getKmer();
+					System.out.println(KmerCounter.decode(it.getKmer(), sizeOfWord) + "\t" + count);
+				}
 			}
-		}
+			counter.deleteSpillFiles();
 
-		//make mask and print
-		/*
-		try{
-			File results = new File (args[0]+".bed");
-			PrintWriter out = new PrintWriter (new FileWriter(results));
+			//print good sequences
+			if (maxNumber ==0 || seqs == null) System.exit(0);
+			badWords = Arrays.copyOf(badWords, numBadWords);
+			int numGoodSeqs = 0;
 			for (int i=0; i< seqs.length; i++){
-				int numWords = seqs[i].length()- sizeOfWord;
-				boolean[] mask = new boolean[seqs[i].length()];
-				for (int j=0; j< numWords; j++){
-					int stop = j+ sizeOfWord;
-					String word = seqs[i].substring(j, stop);
-					if (badWords.contains(word)){
-						for (int k=j; k< stop; k++) mask[k] = true;
+				boolean printMe = true;
+				for (long word: KmerCounter.encodeAll(seqs[i].getBytes(), sizeOfWord)){
+					if (Arrays.binarySearch(badWords, word) >= 0) {
+						printMe = false;
+						break;
 					}
 				}
-				MergeRegions.print(names[i], mask, out);
-			}
-		}catch (Exception e){
-			e.printStackTrace();
-		}*/
-
-
-		//print good sequences
-		if (maxNumber ==0) System.exit(0);
-		int numGoodSeqs = 0;
-		for (int i=0; i< seqs.length; i++){
-			int numWords = seqs[i].length()- sizeOfWord;
-			boolean printMe = true;
-			for (int j=0; j< numWords; j++){
-				int end = j+ sizeOfWord;
-				String word = seqs[i].substring(j, end);
-				if (badWords.contains(word)) {
-					printMe = false;
-					break;
+				if (printMe) {
+					System.out.println(names[i]);
+					System.out.println(seqs[i]);
+					numGoodSeqs++;
 				}
 			}
-			if (printMe) {
-				System.out.println(names[i]);
-				System.out.println(seqs[i]);
-				numGoodSeqs++;
-			}
-		}
-		
-		System.out.println(seqs.length+"\tNumber starting seqs");
-		System.out.println(numGoodSeqs+"\tNumber filtered seqs");
-		 
-
 
+			System.out.println(seqs.length+"\tNumber starting seqs");
+			System.out.println(numGoodSeqs+"\tNumber filtered seqs");
+		} catch (IOException e){
+			e.printStackTrace();
+		}
 	}
 
 }
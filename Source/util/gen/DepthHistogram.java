@@ -0,0 +1,192 @@
+package util.gen;
+
+import java.util.ArrayList;
+
+/**Histogram of integer depths (e.g. per base read coverage) that many threads can count into without locks or boxing.
+ * Each thread counts into its own growable Shard and the shards are merged on read by summarize(). The returned Summary
+ * holds a cumulative array so counts, numbers and fractions at or above a depth are constant time lookups. Depths are
+ * truncated to an int, negative ones are counted as zero, there is no upper limit.
+ * Call summarize() after the counting threads have finished, e.g. after ParallelRunner.run(), to get exact totals.
+ * @author david.nix@hci.utah.edu*/
+public class DepthHistogram {
+
+	//fields
+	private ArrayList<Shard> shards = new ArrayList<Shard>();
+	private ThreadLocal<Shard> localShard = new ThreadLocal<Shard>(){
+		protected Shard initialValue(){
+			return fetchShard();
+		}
+	};
+
+	/**Returns a new shard for the calling thread to count into. Faster than count() in tight loops.*/
+	public synchronized Shard fetchShard(){
+		Shard s = new Shard();
+		shards.add(s);
+		return s;
+	}
+
+	/**Counts the depth in the calling thread's shard.*/
+	public void count(double depth){
+		localShard.get().count(depth);
+	}
+
+	/**Counts the depth numberTimes in the calling thread's shard.*/
+	public void count(double depth, long numberTimes){
+		localShard.get().count(depth, numberTimes);
+	}
+
+	/**Adds the counts of another histogram to this one.*/
+	public void addCounts(DepthHistogram other){
+		Summary o = other.summarize();
+		Shard s = fetchShard();
+		s.ensureCapacity(o.maxDepth);
+		for (int i=0; i<= o.maxDepth; i++) s.counts[i] += o.counts[i];
+		if (o.maxDepth > s.maxDepth) s.maxDepth = o.maxDepth;
+		s.total += o.total;
+		s.sum += o.sum;
+	}
+
+	/**Merges the shards into a new Summary.*/
+	public synchronized Summary summarize(){
+		int maxDepth = -1;
+		for (Shard s: shards) if (s.maxDepth > maxDepth) maxDepth = s.maxDepth;
+		long[] counts = new long[maxDepth+1];
+		long total = 0;
+		double sum = 0;
+		for (Shard s: shards){
+			for (int i=0; i<= s.maxDepth; i++) counts[i] += s.counts[i];
+			total += s.total;
+			sum += s.sum;
+		}
+		return new Summary(counts, total, sum);
+	}
+
+	/**Single thread counter, get one from fetchShard().*/
+	public static class Shard {
+		private long[] counts = new long[128];
+		private int maxDepth = -1;
+		private long total = 0;
+		private double sum = 0;
+
+		private Shard(){}
+
+		public void count(double depth){
+			int d = depth > 0 ? (int)depth : 0;
+			if (d >= counts.length) ensureCapacity(d);
+			counts[d]++;
+			if (d > maxDepth) maxDepth = d;
+			total++;
+			sum += depth;
+		}
+
+		public void count(double depth, long numberTimes){
+			int d = depth > 0 ? (int)depth : 0;
+			if (d >= counts.length) ensureCapacity(d);
+			counts[d] += numberTimes;
+			if (d > maxDepth) maxDepth = d;
+			total += numberTimes;
+			sum += depth * numberTimes;
+		}
+
+		private void ensureCapacity(int depth){
+			if (depth < counts.length) return;
+			int size = counts.length;
+			while (size <= depth) size *= 2;
+			long[] bigger = new long[size];
+			System.arraycopy(counts, 0, bigger, 0, counts.length);
+			counts = bigger;
+		}
+	}
+
+	/**Immutable merged counts with a cumulative array, atOrAbove[d] is the number of observations with a depth >= d.*/
+	public static class Summary {
+		private long[] counts;
+		private long[] atOrAbove;
+		private int maxDepth;
+		private long total;
+		private double sum;
+
+		private Summary(long[] counts, long total, double sum){
+			this.counts = counts;
+			this.total = total;
+			this.sum = sum;
+			maxDepth = counts.length-1;
+			atOrAbove = new long[counts.length+1];
+			for (int i=maxDepth; i>=0; i--) atOrAbove[i] = atOrAbove[i+1] + counts[i];
+		}
+
+		/**Number of observations with the given depth.*/
+		public long getCount(int depth){
+			if (depth < 0 || depth > maxDepth) return 0;
+			return counts[depth];
+		}
+
+		/**Number of observations with a depth >= the given depth.*/
+		public long getNumberAtOrAbove(int depth){
+			if (depth <= 0) return total;
+			if (depth > maxDepth) return 0;
+			return atOrAbove[depth];
+		}
+
+		/**Fraction of observations with a depth >= the given depth, NaN if empty.*/
+		public double getFractionAtOrAbove(int depth){
+			return (double)getNumberAtOrAbove(depth) / (double)total;
+		}
+
+		/**Returns the depth of the observation with the given 0 based rank in the sorted depths by a binary search of
+		 * the cumulative array, -1 if the rank is out of range.*/
+		public int getDepthAtRank(long rank){
+			if (rank < 0 || rank >= total) return -1;
+			//find the largest depth with more than total-rank-1 observations at or above it
+			long needed = total - rank;
+			int lo = 0;
+			int hi = maxDepth;
+			while (lo < hi){
+				int mid = (lo + hi + 1) >>> 1;
+				if (atOrAbove[mid] >= needed) lo = mid;
+				else hi = mid - 1;
+			}
+			return lo;
+		}
+
+		/**Returns the depth at the given quantile, 0-1, using the nearest lower rank, -1 if empty.*/
+		public int getQuantile(double quantile){
+			if (total == 0) return -1;
+			long rank = (long)(quantile * (total-1));
+			return getDepthAtRank(rank);
+		}
+
+		/**Returns the median depth, the mean of the two middle ranks when the total is even, -1 if empty.*/
+		public double getMedian(){
+			if (total == 0) return -1;
+			long mid = total/2;
+			if (total % 2 == 1) return getDepthAtRank(mid);
+			return (getDepthAtRank(mid-1) + getDepthAtRank(mid)) / 2.0;
+		}
+
+		/**Lowest observed depth, -1 if empty.*/
+		public int getMinimum(){
+			for (int i=0; i<= maxDepth; i++) if (counts[i] != 0) return i;
+			return -1;
+		}
+
+		/**Highest observed depth, -1 if empty.*/
+		public int getMaximum(){
+			return maxDepth;
+		}
+
+		/**Mean of the untruncated depths.*/
+		public double getMean(){
+			return sum/total;
+		}
+
+		public long getTotal(){
+			return total;
+		}
+
+		/**Counts indexed by depth from 0 to the maximum, do not modify.*/
+		public long[] getCounts(){
+			return counts;
+		}
+	}
+}
@@ -1014,19 +1014,52 @@ public class Num {
 	
 	/**Returns B&H corrected -10Log10(FDRs) in order provided.  Assumes -10log10(pvals).*/
 	public static float[] benjaminiHochbergCorrectUnsorted(float[] unsortedPValues){
-		//load Point[] with all of the pvalues
-		Point[] point = new Point[unsortedPValues.length];
-		for (int i=0; i< point.length; i++) point[i] = new Point(i, unsortedPValues[i]);
-		//sort by score smallest -10Log10(pval) to largest
-		Arrays.sort(point, new ComparatorPointAscendingScore());
-		//correct
-		Point.benjaminiHochbergCorrect(point, 0);
-		//sort back to original position
-		Arrays.sort(point, new ComparatorPointPosition());
-		//assign FDRs to pVals
-		float[] fdr = new float[point.length];
-		for (int i=0; i< point.length; i++) fdr[i] = point[i].getScore();
-		return fdr;
+		return benjaminiHochbergCorrectUnsorted(unsortedPValues.clone(), 0);
+	}
+	
+	/**Replaces the -10Log10(pvals) with B&H corrected -10Log10(FDRs) in the order provided. Same as sorting Points by
+	 * ascending score, calling Point.benjaminiHochbergCorrect(), and sorting back, but each value and its index are packed
+	 * into a long and primitive sorted so huge arrays don't need a Point per value. Ties stay in input order.
+	 * @param offset Number of pvalues with poor significance not included in the array
+	 * @return the modified input array*/
+	public static float[] benjaminiHochbergCorrectUnsorted(float[] unsortedPValues, long offset){
+		int len = unsortedPValues.length;
+		if (len <=1) return unsortedPValues;
+		long[] order = new long[len];
+		for (int i=0; i< len; i++) {
+			float f = unsortedPValues[i];
+			//flip the bits so signed int order matches float order, fold -0 into 0
+			int bits = f == 0 ? 0 : Float.floatToIntBits(f);
+			bits = bits ^ ((bits >> 31) & 0x7fffffff);
+			order[i] = (((long)bits) << 32) | i;
+		}
+		Arrays.sort(order);
+		
+		//correct, each index is visited once so the values can be replaced in place
+		double num = len + offset;
+		double offsetDouble = (double)offset;
+		double prior = 1;
+		float maxFDR = 0;
+		for (int i=1; i< len; i++){
+			int index = (int)order[i];
+			double val = Num.antiNeg10log10(unsortedPValues[index]);
+			val = val * num / (num-i-offsetDouble);
+			if(val < prior) prior = val; 
+			else val = prior;
+			float fdr = Num.minus10log10Float(val);
+			unsortedPValues[index] = fdr;
+			if (fdr > maxFDR && Float.isInfinite(fdr) == false) maxFDR = fdr;
+		}
+		//look for Infinity and replace with max
+		for (int i=1; i< len; i++){
+			int index = (int)order[i];
+			if (Float.isInfinite(unsortedPValues[index])) unsortedPValues[index] = maxFDR;
+		}
+		//check first value, if larger than second, replace with second
+		int first = (int)order[0];
+		int second = (int)order[1];
+		if (unsortedPValues[first] > unsortedPValues[second]) unsortedPValues[first] = unsortedPValues[second];
+		return unsortedPValues;
 	}
 
 	/**Assumes pvalues are -10Log10(pval) transformed and sorted in ascending order. Alters the input array.*/
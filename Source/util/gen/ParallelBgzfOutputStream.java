@@ -0,0 +1,173 @@
+package util.gen;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**Writes BGZF, the blocked gzip used by bam and tabix files, deflating the blocks in a thread pool. Blocks are written
+ * in order so the output is the same as from a single threaded writer. Be sure to close() to write the last block and
+ * the EOF marker.
+ * @author david.nix@hci.utah.edu*/
+public class ParallelBgzfOutputStream extends OutputStream {
+
+	//fields
+	private OutputStream out;
+	private ExecutorService executor;
+	private ArrayDeque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+	private int maxPending;
+	private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+	private byte[] buffer = new byte[BLOCK_SIZE];
+	private int size = 0;
+	private boolean closed = false;
+
+	/**Bytes of input per block, the samtools default, leaves room for incompressible data.*/
+	public static final int BLOCK_SIZE = 0xff00;
+	private static final int MAX_BLOCK_SIZE = 65536;
+	private static final byte[] EOF_BLOCK = {31, -117, 8, 4, 0, 0, 0, 0, 0, -1, 6, 0, 66, 67, 2, 0, 27, 0, 3, 0, 0, 0, 0, 0, 0, 0, 0, 0};
+
+	public ParallelBgzfOutputStream(File file, int numberThreads) throws IOException{
+		this(new BufferedOutputStream(new FileOutputStream(file), MAX_BLOCK_SIZE * 4), numberThreads);
+	}
+
+	/**@param numberThreads the number of deflating threads, each holds a few blocks in the queue*/
+	public ParallelBgzfOutputStream(OutputStream out, int numberThreads){
+		this.out = out;
+		if (numberThreads < 1) numberThreads = 1;
+		maxPending = numberThreads * 4;
+		executor = Executors.newFixedThreadPool(numberThreads, new ThreadFactory(){
+			public Thread newThread(Runnable r){
+				Thread t = new Thread(r, "BgzfDeflater");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	public void write(int b) throws IOException{
+		if (size == BLOCK_SIZE) submitBlock();
+		buffer[size++] = (byte)b;
+	}
+
+	public void write(byte[] b, int off, int len) throws IOException{
+		while (len > 0){
+			if (size == BLOCK_SIZE) submitBlock();
+			int n = Math.min(len, BLOCK_SIZE - size);
+			System.arraycopy(b, off, buffer, size, n);
+			size += n;
+			off += n;
+			len -= n;
+		}
+	}
+
+	/**Ends the current block and writes all of the pending blocks.*/
+	public void flush() throws IOException{
+		submitBlock();
+		while (pending.isEmpty() == false) writeNextBlock();
+		out.flush();
+	}
+
+	public void close() throws IOException{
+		if (closed) return;
+		closed = true;
+		try {
+			flush();
+			out.write(EOF_BLOCK);
+			out.close();
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private void submitBlock() throws IOException{
+		if (size == 0) return;
+		final byte[] block = buffer;
+		final int length = size;
+		final int level = compressionLevel;
+		pending.add(executor.submit(new Callable<byte[]>(){
+			public byte[] call(){
+				return compress(block, length, level);
+			}
+		}));
+		buffer = new byte[BLOCK_SIZE];
+		size = 0;
+		while (pending.size() >= maxPending) writeNextBlock();
+	}
+
+	private void writeNextBlock() throws IOException{
+		try {
+			out.write(pending.poll().get());
+		} catch (InterruptedException e) {
+			throw new IOException("Interrupted while deflating a BGZF block", e);
+		} catch (ExecutionException e) {
+			throw new IOException("Failed to deflate a BGZF block", e.getCause());
+		}
+	}
+
+	/**Returns one complete BGZF block, stored rather than deflated if deflating makes it too big.*/
+	public static byte[] compress(byte[] input, int length, int level){
+		byte[] block = new byte[MAX_BLOCK_SIZE];
+		Deflater deflater = new Deflater(level, true);
+		int compLength;
+		try {
+			deflater.setInput(input, 0, length);
+			deflater.finish();
+			compLength = deflater.deflate(block, 18, MAX_BLOCK_SIZE - 26);
+			if (deflater.finished() == false) {
+				deflater.end();
+				deflater = new Deflater(Deflater.NO_COMPRESSION, true);
+				deflater.setInput(input, 0, length);
+				deflater.finish();
+				compLength = deflater.deflate(block, 18, MAX_BLOCK_SIZE - 26);
+			}
+		} finally {
+			deflater.end();
+		}
+		int blockSize = compLength + 26;
+		//gzip header with the BC extra field holding the block size - 1
+		block[0] = 31;
+		block[1] = (byte)139;
+		block[2] = 8;
+		block[3] = 4;
+		block[9] = (byte)255;
+		block[10] = 6;
+		block[12] = 'B';
+		block[13] = 'C';
+		block[14] = 2;
+		writeShort(block, 16, blockSize - 1);
+		CRC32 crc = new CRC32();
+		crc.update(input, 0, length);
+		writeInt(block, 18 + compLength, (int)crc.getValue());
+		writeInt(block, 22 + compLength, length);
+		byte[] trimmed = new byte[blockSize];
+		System.arraycopy(block, 0, trimmed, 0, blockSize);
+		return trimmed;
+	}
+
+	private static void writeShort(byte[] b, int index, int v){
+		b[index] = (byte)v;
+		b[index+1] = (byte)(v >>> 8);
+	}
+
+	private static void writeInt(byte[] b, int index, int v){
+		b[index] = (byte)v;
+		b[index+1] = (byte)(v >>> 8);
+		b[index+2] = (byte)(v >>> 16);
+		b[index+3] = (byte)(v >>> 24);
+	}
+
+	/**Call before writing, 0-9, defaults to Deflater.DEFAULT_COMPRESSION.*/
+	public void setCompressionLevel(int compressionLevel) {
+		this.compressionLevel = compressionLevel;
+	}
+}
@@ -0,0 +1,140 @@
+package util.gen;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**Runs an array of Runnable tasks on a fixed pool of threads and blocks until they are done without spinning a core.
+ * Tasks are queued in array order and each idle thread pulls the next one, so splitting work into more tasks than threads
+ * keeps every thread busy when a few chunks are slow. The first task to throw cancels the rest and its exception is
+ * rethrown from run(). Workers that catch their own errors and set a failed flag should still be checked by the caller.
+ * @author david.nix@hci.utah.edu*/
+public class ParallelRunner {
+
+	//fields
+	private int numberThreads;
+	private ProgressListener progressListener = null;
+	private ExecutorService executor = null;
+	private volatile boolean cancelled = false;
+	private volatile Throwable failure = null;
+	private long[] taskMillis = null;
+	private int numberCompleted = 0;
+	private int numberTasks = 0;
+
+	/**Number of tasks to split a job into for each thread when the work can be chunked, see fetchChunkSize().*/
+	public static final int CHUNKS_PER_THREAD = 4;
+
+	/**Called by the worker thread each time a task finishes, implementations must be thread safe.*/
+	public interface ProgressListener {
+		public void taskCompleted(int taskIndex, long millis, int numberCompleted, int numberTasks);
+	}
+
+	/**Values less than 1 are set to 1.*/
+	public ParallelRunner(int numberThreads){
+		this.numberThreads = numberThreads < 1 ? 1: numberThreads;
+	}
+
+	/**Convenience method, runs the tasks with up to numberThreads and waits for them to complete.*/
+	public static void runAll(Runnable[] tasks, int numberThreads) throws IOException{
+		new ParallelRunner(numberThreads).run(tasks);
+	}
+
+	public static void runAll(List<? extends Runnable> tasks, int numberThreads) throws IOException{
+		new ParallelRunner(numberThreads).run(tasks.toArray(new Runnable[tasks.size()]));
+	}
+
+	/**Returns the minimum number of items to place in each chunk for Misc.chunk() so the work is split into at least
+	 * CHUNKS_PER_THREAD tasks for each thread when there are enough items, min 1.*/
+	public static int fetchChunkSize(int numberItems, int numberThreads){
+		int numberChunks = CHUNKS_PER_THREAD * (numberThreads < 1 ? 1: numberThreads);
+		int chunkSize = numberItems / numberChunks;
+		if (chunkSize < 1) chunkSize = 1;
+		return chunkSize;
+	}
+
+	/**Runs the tasks and waits for all of them to finish. Uses no more threads than tasks.
+	 * @throws IOException if a task threw an exception, the run was cancelled, or the calling thread was interrupted.*/
+	public void run(Runnable[] tasks) throws IOException{
+		numberTasks = tasks.length;
+		numberCompleted = 0;
+		taskMillis = new long[numberTasks];
+		failure = null;
+		cancelled = false;
+		if (numberTasks == 0) return;
+
+		int num = numberThreads;
+		if (num > numberTasks) num = numberTasks;
+		executor = Executors.newFixedThreadPool(num);
+		for (int i=0; i< numberTasks; i++) executor.execute(new TimedTask(i, tasks[i]));
+		executor.shutdown();
+
+		//block here until complete
+		try {
+			while (executor.awaitTermination(1, TimeUnit.MINUTES) == false){}
+		} catch (InterruptedException e) {
+			cancel();
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for "+(numberTasks-numberCompleted)+" tasks to complete.", e);
+		}
+
+		if (failure != null) throw new IOException("ERROR: task failed, "+failure.toString(), failure);
+		if (cancelled) throw new IOException("ERROR: cancelled with "+(numberTasks-numberCompleted)+" tasks incomplete.");
+	}
+
+	/**Drops queued tasks and interrupts running ones. Safe to call from a task or the progress listener.*/
+	public void cancel(){
+		cancelled = true;
+		if (executor != null) executor.shutdownNow();
+	}
+
+	private synchronized void taskFinished(int taskIndex, long millis, Throwable t){
+		taskMillis[taskIndex] = millis;
+		numberCompleted++;
+		if (t != null && failure == null) failure = t;
+		if (progressListener != null) progressListener.taskCompleted(taskIndex, millis, numberCompleted, numberTasks);
+	}
+
+	/**Wraps a task to time it and catch anything it throws.*/
+	private class TimedTask implements Runnable {
+		private int index;
+		private Runnable task;
+
+		TimedTask(int index, Runnable task){
+			this.index = index;
+			this.task = task;
+		}
+
+		public void run(){
+			if (cancelled) return;
+			long start = System.currentTimeMillis();
+			Throwable thrown = null;
+			try {
+				task.run();
+			} catch (Throwable t){
+				thrown = t;
+				t.printStackTrace();
+			}
+			taskFinished(index, System.currentTimeMillis()-start, thrown);
+			if (thrown != null) cancel();
+		}
+	}
+
+	public void setProgressListener(ProgressListener progressListener) {
+		this.progressListener = progressListener;
+	}
+	public boolean isCancelled() {
+		return cancelled;
+	}
+	public Throwable getFailure() {
+		return failure;
+	}
+	/**Run time of each task in milliseconds, zero for those that were cancelled before starting.*/
+	public long[] getTaskMillis() {
+		return taskMillis;
+	}
+	public int getNumberCompleted() {
+		return numberCompleted;
+	}
+}